@@ -0,0 +1,182 @@
+package org.ggp.base.util.statemachine.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.GameRepository;
+import org.ggp.base.util.game.LocalGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.FailsafeStateMachine;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.cache.CachedStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.forwardDeadReckon.ForwardDeadReckonPropnetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.implementation.reasoner.ReasonerStateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the state machines on the games of the local repository.
+ *
+ * "gradlew jmh" runs every game directory under games/games, as found when
+ * the task runs. The games only found in bundles (all_games.zip and the like,
+ * several dozen more, mostly other versions of the same games) would multiply
+ * the length of a run, so they are benchmarked on request, by key, e.g.
+ * -PjmhArgs="-p game=AlexHex". Run outside Gradle, the benchmark plays
+ * ticTacToe unless told otherwise with -p game=...
+ *
+ * Every query is asked about a fixed sample of states, taken from random
+ * games played at setup, so that the machines answer the same queries; the
+ * sample is cycled through, so the cached machine mostly measures its hits.
+ * Run with "gradlew jmh", which also records allocation (-prof gc) and writes
+ * the results as JSON to build/reports/jmh/results.json.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateMachineBenchmark
+{
+    private static final GameRepository GAMES = new LocalGameRepository();
+    private static final int SAMPLE_GAMES = 8;
+    private static final long PROPNET_BUILD_TIME_MS = 60000;
+
+    // Key of the game in the local repository; the jmh task passes every game directory
+    @Param({"ticTacToe"})
+    public String game;
+
+    @Param({"prover", "cached", "failsafe", "propnet", "reasoner"})
+    public String machine;
+
+    private StateMachine stateMachine;
+    // Non-terminal states with a legal joint move in each, and terminal states, of the sample games
+    private MachineState[] states;
+    private List<List<Move>> jointMoves;
+    private MachineState[] terminalStates;
+    private int next;
+    private int nextTerminal;
+    private final int[] depth = new int[1];
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        List<Gdl> rules = loadRules(game);
+        stateMachine = createStateMachine(machine);
+        stateMachine.initialize(rules);
+
+        List<MachineState> sampleStates = new ArrayList<MachineState>();
+        List<List<Move>> sampleMoves = new ArrayList<List<Move>>();
+        List<MachineState> sampleTerminals = new ArrayList<MachineState>();
+        stateMachine.setRandomSeed(1);
+        for (int i = 0; i < SAMPLE_GAMES; i++)
+        {
+            MachineState state = stateMachine.getInitialState();
+            while (!stateMachine.isTerminal(state))
+            {
+                List<Move> jointMove = stateMachine.getRandomJointMove(state);
+                sampleStates.add(state);
+                sampleMoves.add(jointMove);
+                state = stateMachine.getNextState(state, jointMove);
+            }
+            sampleTerminals.add(state);
+        }
+        states = sampleStates.toArray(new MachineState[0]);
+        jointMoves = sampleMoves;
+        terminalStates = sampleTerminals.toArray(new MachineState[0]);
+    }
+
+    /**
+     * @return The rules of the game with the given key in the local repository, bundled games included
+     */
+    static List<Gdl> loadRules(String name)
+    {
+        Game theGame = GAMES.getGame(name);
+        if (theGame == null)
+            throw new IllegalArgumentException("No game " + name + " in the local repository");
+        return theGame.getRules();
+    }
+
+    /**
+     * The state machines as the gamers build them
+     */
+    static StateMachine createStateMachine(String name)
+    {
+        long buildDeadline = System.currentTimeMillis() + PROPNET_BUILD_TIME_MS;
+        switch (name)
+        {
+            case "prover":
+                return new ProverStateMachine();
+            case "cached":
+                return new CachedStateMachine(new ProverStateMachine());
+            case "failsafe":
+                return new FailsafeStateMachine(new ForwardDeadReckonPropnetStateMachine(1, buildDeadline, null, null), buildDeadline);
+            case "propnet":
+                return new ForwardDeadReckonPropnetStateMachine(1, buildDeadline, null, null);
+            case "reasoner":
+                return new ReasonerStateMachine();
+            default:
+                throw new IllegalArgumentException("Unknown state machine " + name);
+        }
+    }
+
+    private int nextSample()
+    {
+        int sample = next;
+        next = sample + 1 == states.length ? 0 : sample + 1;
+        return sample;
+    }
+
+    @Benchmark
+    public MachineState getInitialState()
+    {
+        return stateMachine.getInitialState();
+    }
+
+    @Benchmark
+    public List<List<Move>> getLegalJointMoves() throws Exception
+    {
+        return stateMachine.getLegalJointMoves(states[nextSample()]);
+    }
+
+    @Benchmark
+    public MachineState getNextState()
+    {
+        int sample = nextSample();
+        return stateMachine.getNextState(states[sample], jointMoves.get(sample));
+    }
+
+    /**
+     * Terminal check of a non-terminal state, then terminal check and goals of a terminal one
+     */
+    @Benchmark
+    public void isTerminalAndGetGoals(Blackhole blackhole) throws Exception
+    {
+        blackhole.consume(stateMachine.isTerminal(states[nextSample()]));
+        MachineState terminal = terminalStates[nextTerminal];
+        nextTerminal = nextTerminal + 1 == terminalStates.length ? 0 : nextTerminal + 1;
+        blackhole.consume(stateMachine.isTerminal(terminal));
+        blackhole.consume(stateMachine.getGoals(terminal));
+    }
+
+    @Benchmark
+    public MachineState performDepthCharge() throws Exception
+    {
+        return stateMachine.performDepthCharge(stateMachine.getInitialState(), depth);
+    }
+}
@@ -0,0 +1,126 @@
+package org.ggp.base.apps.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.ggp.base.util.files.FileUtils;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.cache.CachedStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.forwardDeadReckon.ForwardDeadReckonPropnetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.implementation.reasoner.ReasonerStateMachine;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Divergence;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Method;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Report;
+
+/**
+ * StateMachineFuzzRunner checks state machines against the prover on every
+ * .kif file under a directory, with the {@link DifferentialFuzzer}, and
+ * prints the divergences found, shrunk, and the latencies of every machine.
+ * It exits with status 1 if any subject diverged or failed, so it can gate
+ * switching players to a faster state machine.
+ *
+ * Usage: StateMachineFuzzRunner [path] [subjects] [walksPerGame] [secondsPerGame] [threads]
+ * where path is a directory searched recursively or a single .kif file
+ * (default "games"), and subjects a comma-separated list among
+ * reasoner, propnet and cached (default "reasoner,propnet").
+ */
+public final class StateMachineFuzzRunner {
+    private static final long PROPNET_BUILD_TIME_MS = 60000;
+
+    private StateMachineFuzzRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File path = new File(args.length > 0 ? args[0] : "games");
+        String[] subjectNames = (args.length > 1 ? args[1] : "reasoner,propnet").split(",");
+        int walks = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        long millisPerGame = (args.length > 3 ? Long.parseLong(args[3]) : 30) * 1000;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        Map<String, Supplier<StateMachine>> subjects = new LinkedHashMap<>();
+        for (String name : subjectNames) {
+            subjects.put(name, getSupplier(name));
+        }
+        long millisPerSubject = millisPerGame / subjects.size();
+
+        List<File> games = new ArrayList<>();
+        findRules(path, games);
+        Collections.sort(games);
+
+        int failedGames = 0;
+        for (File game : games) {
+            List<Gdl> rules;
+            try {
+                rules = Game.createEphemeralGame(Game.preprocessRulesheet(FileUtils.readFileAsString(game))).getRules();
+            } catch (Exception e) {
+                System.out.println(game + ": could not be read: " + e);
+                continue;
+            }
+
+            boolean failed = false;
+            // One subject at a time: the propnet drops the base propositions it doesn't need, so its states are only compared by their answers
+            for (Map.Entry<String, Supplier<StateMachine>> subject : subjects.entrySet()) {
+                DifferentialFuzzer fuzzer = new DifferentialFuzzer(rules, "prover", ProverStateMachine::new,
+                        Collections.singletonMap(subject.getKey(), subject.getValue()), !subject.getKey().equals("propnet"));
+                Report report = fuzzer.run(walks, 0, threads, System.currentTimeMillis() + millisPerSubject);
+                System.out.println(game + " " + subject.getKey() + ": " + report.getWalks() + " walks, " + report.getSteps() + " moves, "
+                        + (report.isClean() ? "OK" : report.getDivergences().size() + " divergences, " + report.getErrors().size() + " errors"));
+                for (Divergence divergence : report.getDivergences()) {
+                    System.out.println("  DIVERGENCE " + divergence);
+                }
+                for (String error : report.getErrors()) {
+                    System.out.println("  ERROR " + error);
+                }
+                for (String machine : report.getMachineNames()) {
+                    for (Method method : Method.values()) {
+                        if (report.getLatency(machine, method).getCount() > 0) {
+                            System.out.println("  " + machine + " " + method + " " + report.getLatency(machine, method));
+                        }
+                    }
+                }
+                failed |= !report.isClean();
+            }
+            if (failed) {
+                failedGames++;
+            }
+        }
+
+        System.out.println(games.size() + " games, " + failedGames + " with divergences or errors");
+        System.exit(failedGames == 0 ? 0 : 1);
+    }
+
+    private static void findRules(File path, List<File> games) {
+        if (path.isDirectory()) {
+            File[] children = path.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    findRules(child, games);
+                }
+            }
+        } else if (path.getName().endsWith(".kif")) {
+            games.add(path);
+        }
+    }
+
+    private static Supplier<StateMachine> getSupplier(String name) {
+        switch (name) {
+            case "reasoner":
+                return ReasonerStateMachine::new;
+            case "propnet":
+                return () -> new ForwardDeadReckonPropnetStateMachine(1, System.currentTimeMillis() + PROPNET_BUILD_TIME_MS, null, null);
+            case "cached":
+                return () -> new CachedStateMachine(new ProverStateMachine());
+            default:
+                throw new IllegalArgumentException("Unknown state machine " + name);
+        }
+    }
+}
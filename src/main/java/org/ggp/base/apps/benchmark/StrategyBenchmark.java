@@ -0,0 +1,203 @@
+package org.ggp.base.apps.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ggp.base.player.gamer.statemachine.mcts.MCTSConfiguration;
+import org.ggp.base.player.gamer.statemachine.mcts.model.strategy.PoolOfStrategies;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+import org.ggp.base.util.files.FileUtils;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.GameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.cache.CachedStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+
+/**
+ * StrategyBenchmark plays MCTS search trees configured with two different
+ * sets of strategies against each other (A/B testing), without any network
+ * or game server in the way.
+ *
+ * In every match configuration A plays one role and configuration B plays all
+ * the others; A's role rotates from match to match. In single-player games
+ * the two configurations play alternate matches instead, and only their
+ * scores are compared. Both sides get the same
+ * number of iterations per move, so the comparison is about the quality of
+ * the strategies. Their speed is reported separately, as iterations per
+ * second.
+ *
+ * Usage: StrategyBenchmark game configA configB [matches] [iterationsPerMove]
+ * where game is a .kif file or a key of the default game repository, and a
+ * configuration is "selection/playout/matchSelection", e.g. "rave/random/robust".
+ */
+public final class StrategyBenchmark {
+
+    private final Game game;
+    private final String configA;
+    private final String configB;
+    private final int iterationsPerMove;
+
+    // Totals of configuration A, and the scores of B in single-player games
+    private final List<Double> scoresA = new ArrayList<>();
+    private final List<Double> scoresB = new ArrayList<>();
+    private boolean singlePlayer = false;
+    private int winsA = 0;
+    private int lossesA = 0;
+    private final long[] iterations = new long[2];
+    private final long[] nanos = new long[2];
+
+    public StrategyBenchmark(Game game, String configA, String configB, int iterationsPerMove) {
+        this.game = game;
+        this.configA = configA;
+        this.configB = configB;
+        this.iterationsPerMove = iterationsPerMove;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: StrategyBenchmark game configA configB [matches] [iterationsPerMove]");
+            System.err.println("Selection strategies: " + PoolOfStrategies.getSelectionStrategyNames());
+            System.err.println("Playout strategies: " + PoolOfStrategies.getPlayoutStrategyNames());
+            System.err.println("Match selection strategies: " + PoolOfStrategies.getSelectionStrategyForMatchNames());
+            return;
+        }
+        int matches = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int iterationsPerMove = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        StrategyBenchmark benchmark = new StrategyBenchmark(loadGame(args[0]), args[1], args[2], iterationsPerMove);
+        for (int match = 0; match < matches; match++) {
+            benchmark.playMatch(match);
+            System.out.println("After match " + (match + 1) + ": " + benchmark.getSummary());
+        }
+    }
+
+    private static Game loadGame(String gameName) {
+        File file = new File(gameName);
+        if (file.isFile()) {
+            return Game.createEphemeralGame(Game.preprocessRulesheet(FileUtils.readFileAsString(file)));
+        }
+        return GameRepository.getDefaultRepository().getGame(gameName);
+    }
+
+    /**
+     * Plays one match; configuration A plays the role number (match mod number of roles).
+     * In single-player games, A plays the even matches and B the odd ones.
+     */
+    public void playMatch(int match) throws Exception {
+        StateMachine referee = createStateMachine();
+        List<Role> roles = referee.getRoles();
+        singlePlayer = roles.size() == 1;
+        int roleA = singlePlayer && match % 2 == 1 ? -1 : match % roles.size();
+
+        int transpositionTableSize = MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.TRANSPOSITION_TABLE_SIZE);
+        StateMachine machineA = createStateMachine();
+        StateMachine machineB = createStateMachine();
+        SearchTree treeA = new SearchTree(machineA, transpositionTableSize, PoolOfStrategies.fromSpec(configA));
+        SearchTree treeB = new SearchTree(machineB, transpositionTableSize, PoolOfStrategies.fromSpec(configB));
+
+        MachineState state = referee.getInitialState();
+        while (!referee.isTerminal(state)) {
+            // A gamer prunes its cache once per move; so do the machines here
+            referee.doPerMoveWork();
+            machineA.doPerMoveWork();
+            machineB.doPerMoveWork();
+            if (!singlePlayer || roleA == 0) {
+                search(treeA, state, 0);
+            }
+            if (!singlePlayer || roleA < 0) {
+                search(treeB, state, 1);
+            }
+
+            List<Move> jointMove = new ArrayList<>();
+            for (int i = 0; i < roles.size(); i++) {
+                Move move = (i == roleA ? treeA : treeB).getBestAction(roles.get(i));
+                if (move == null) {
+                    move = referee.getRandomMove(state, roles.get(i));
+                }
+                jointMove.add(move);
+            }
+            state = referee.getNextState(state, jointMove);
+        }
+
+        if (singlePlayer) {
+            (roleA == 0 ? scoresA : scoresB).add((double) referee.getGoal(state, roles.get(0)));
+            return;
+        }
+        double scoreA = referee.getGoal(state, roles.get(roleA));
+        double bestOtherScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < roles.size(); i++) {
+            if (i != roleA) {
+                bestOtherScore = Math.max(bestOtherScore, referee.getGoal(state, roles.get(i)));
+            }
+        }
+        scoresA.add(scoreA);
+        if (scoreA > bestOtherScore) {
+            winsA++;
+        } else if (scoreA < bestOtherScore) {
+            lossesA++;
+        }
+    }
+
+    private void search(SearchTree tree, MachineState state, int side) throws Exception {
+        SearchTreeNode startRootNode = tree.findNode(state);
+        if (startRootNode == null) {
+            startRootNode = new SearchTreeNode(tree, state, null);
+        }
+        tree.cut(startRootNode);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterationsPerMove; i++) {
+            tree.grow();
+        }
+        nanos[side] += System.nanoTime() - start;
+        iterations[side] += iterationsPerMove;
+    }
+
+    private StateMachine createStateMachine() {
+        StateMachine stateMachine = new CachedStateMachine(new ProverStateMachine());
+        stateMachine.initialize(game.getRules());
+        return stateMachine;
+    }
+
+    /**
+     * @return Average score of A with its standard error, wins, losses and the speed of both sides;
+     *         in single-player games, the average scores of both sides instead of wins and losses
+     */
+    public String getSummary() {
+        String speed = String.format("iterations/s A=%.0f B=%.0f",
+                nanos[0] > 0 ? iterations[0] / (nanos[0] / 1e9) : 0, nanos[1] > 0 ? iterations[1] / (nanos[1] / 1e9) : 0);
+        if (singlePlayer) {
+            return String.format("A=%s scored %s; B=%s scored %s; %s",
+                    configA, formatScores(scoresA), configB, formatScores(scoresB), speed);
+        }
+        int n = scoresA.size();
+        return String.format("A=%s scored %s, won %d, lost %d, drew %d; %s (B=%s)",
+                configA, formatScores(scoresA), winsA, lossesA, n - winsA - lossesA, speed, configB);
+    }
+
+    /**
+     * @return Average of the scores with its standard error, and their number
+     */
+    private static String formatScores(List<Double> scores) {
+        int n = scores.size();
+        if (n == 0) {
+            return "nothing yet";
+        }
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= n;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double standardError = n > 1 ? Math.sqrt(variance / (n - 1) / n) : 0;
+        return String.format("%.1f +- %.1f of %d", mean, standardError, n);
+    }
+}
@@ -18,13 +18,15 @@ public final class PlayerRunner
 {
     public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException
     {
-        if (args.length != 2 || args[0].equals("${arg0}")) {
-            System.out.println("PlayerRunner [port] [name]");
+        if (args.length < 2 || args.length > 3 || args[0].equals("${arg0}")) {
+            System.out.println("PlayerRunner [port] [name] [nio]");
             System.out.println("example: ant PlayerRunner -Darg0=9147 -Darg1=TurboTurtle");
             return;
         }
         int port = Integer.parseInt(args[0]);
         String name = args[1];
+        // With "nio", INFO and ABORT are answered while the player is thinking about a move
+        boolean nonBlocking = args.length > 2 && args[2].equals("nio");
         System.out.println("Starting up preconfigured player on port " + port + " using player class named " + name);
         Class<?> chosenGamerClass = null;
         List<String> availableGamers = new ArrayList<String>();
@@ -39,6 +41,6 @@ public final class PlayerRunner
             return;
         }
         Gamer gamer = (Gamer) chosenGamerClass.newInstance();
-        new GamePlayer(port, gamer).start();
+        new GamePlayer(port, gamer, nonBlocking).start();
     }
 }
\ No newline at end of file
@@ -74,6 +74,19 @@ public final class GameServerRunner
         server.start();
         server.join();
 
+        saveMatch(tourneyName, match, server.getGoals());
+    }
+
+    /**
+     * Saves a finished match in the directory of its tournament, as XML and JSON,
+     * and appends its goals to the "scores" file of the tournament.
+     * Synchronized so that matches played at once don't mix their lines.
+     */
+    static synchronized void saveMatch(String tourneyName, Match match, List<Integer> goals) throws IOException
+    {
+        String matchName = match.getMatchId();
+        List<String> playerNames = match.getPlayerNamesFromHost();
+
         // Open up the directory for this tournament.
         // Create a "scores" file if none exists.
         File f = new File(tourneyName);
@@ -102,12 +115,11 @@ public final class GameServerRunner
 
         // Save the goals in the "/scores" file for the tournament.
         bw = new BufferedWriter(new FileWriter(tourneyName + "/scores", true));
-        List<Integer> goals = server.getGoals();
         String goalStr = "";
         String playerStr = "";
         for (int i = 0; i < goals.size(); i++)
         {
-            Integer goal = server.getGoals().get(i);
+            Integer goal = goals.get(i);
             goalStr += Integer.toString(goal);
             playerStr += playerNames.get(i);
             if (i != goals.size() - 1)
@@ -1,14 +1,23 @@
 package org.ggp.base.apps.utilities;
 
-import org.ggp.base.util.gdl.factory.exceptions.GdlFormatException;
-import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
-import org.ggp.base.util.symbol.factory.exceptions.SymbolFormatException;
+import org.ggp.base.apps.utilities.Tournament.PlayerPool;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.LocalGameRepository;
+import org.ggp.base.util.match.Match;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Plays NUMBER_OF_GAMES matches between two players with a {@link Tournament},
+ * CONCURRENT_GAMES of them at once. A player's host may be a comma-separated
+ * list of endpoints host or host:port, each playing MATCHES_PER_PLAYER matches
+ * at once (1 by default).
+ */
 public class GameServerRunnerMany {
 
-    public static void main(String[] args) throws IOException, SymbolFormatException, GdlFormatException, InterruptedException, GoalDefinitionException
+    public static void main(String[] args) throws InterruptedException, IOException
     {
         // Получение параметров из аргументов командной строки
         String tournamentName = args.length > 0 ? args[0] : "MyTur";
@@ -25,41 +34,32 @@ public class GameServerRunnerMany {
         String randomName = args.length > 9 ? args[9] : "RandomGamer";
 
         // Число игр по-прежнему можно брать из переменной окружения
-        int numberOfGames = System.getenv("NUMBER_OF_GAMES") != null ?
-                Integer.parseInt(System.getenv("NUMBER_OF_GAMES")) : 1;
+        int numberOfGames = getIntFromEnv("NUMBER_OF_GAMES", 1);
+        int matchesPerPlayer = getIntFromEnv("MATCHES_PER_PLAYER", 1);
 
-        System.out.println("Starting " + numberOfGames + " games with parameters:");
+        PlayerPool mcts = PlayerPool.parse(mctsName, mctsHost, Integer.parseInt(mctsPort), matchesPerPlayer);
+        PlayerPool random = PlayerPool.parse(randomName, randomHost, Integer.parseInt(randomPort), matchesPerPlayer);
+        // Больше партий одновременно игроки всё равно не примут
+        int concurrentGames = getIntFromEnv("CONCURRENT_GAMES", Math.min(mcts.getCapacity(), random.getCapacity()));
+
+        System.out.println("Starting " + numberOfGames + " games, " + concurrentGames + " at once, with parameters:");
         System.out.println("Tournament: " + tournamentName);
         System.out.println("Game: " + gameName);
         System.out.println("Start clock: " + startClock + ", Play clock: " + playClock);
         System.out.println("MCTS Player: " + mctsName + " at " + mctsHost + ":" + mctsPort);
         System.out.println("Random Player: " + randomName + " at " + randomHost + ":" + randomPort);
 
-        // Запуск указанного количества игр
-        for (int i = 0; i < numberOfGames; i++) {
-            System.out.println("\n========= Starting game " + (i+1) + " of " + numberOfGames + " =========\n");
-
-            GameServerRunner.main(new String[] {
-                    tournamentName,
-                    gameName,
-                    startClock,
-                    playClock,
-                    mctsHost,
-                    mctsPort,
-                    mctsName,
-                    randomHost,
-                    randomPort,
-                    randomName
-            });
-
-            // Небольшая пауза между играми
-            if (i < numberOfGames - 1) {
-                System.out.println("Waiting 5 seconds before starting next game...");
-                Thread.sleep(5000);
-            }
-        }
+        Game game = new LocalGameRepository().getGame(gameName);
+        Tournament tournament = new Tournament(tournamentName, game, Integer.parseInt(startClock), Integer.parseInt(playClock),
+                Arrays.asList(mcts, random));
+        List<Match> completed = tournament.run(numberOfGames, concurrentGames);
 
-        System.out.println("\n========= All " + numberOfGames + " games completed =========\n");
+        System.out.println("\n========= " + completed.size() + " of " + numberOfGames + " games completed =========\n");
         System.exit(0);
     }
-}
\ No newline at end of file
+
+    private static int getIntFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
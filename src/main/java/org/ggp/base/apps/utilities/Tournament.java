@@ -0,0 +1,272 @@
+package org.ggp.base.apps.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.ggp.base.server.GameServer;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.http.AsyncHttpClient;
+import org.ggp.base.util.match.Match;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+
+/**
+ * Tournament plays a batch of matches of one game, several at once. Every
+ * role is played by a pool of interchangeable endpoints (e.g. copies of one
+ * player on several hosts), each playing a limited number of matches at a
+ * time. A match starts as soon as one of the concurrent slots is free and
+ * every pool has a free endpoint.
+ *
+ * The game is loaded once, and the referee state machines are built once per
+ * slot and reused from match to match. All the requests to the players go
+ * through one {@link AsyncHttpClient}, which keeps their connections.
+ *
+ * Every match is journaled step by step in the directory of the tournament
+ * (see {@link org.ggp.base.util.match.MatchJournal}), and once finished saved
+ * as GameServerRunner does: in JSON and XML, with its goals appended to the
+ * "scores" file.
+ */
+public final class Tournament
+{
+    /**
+     * Endpoints that can play one role, with the number of matches each of them plays at most at once.
+     */
+    public static final class PlayerPool
+    {
+        private final String name;
+        private final List<String> hosts;
+        private final List<Integer> ports;
+        private final int maxMatchesPerEndpoint;
+        private final int[] activeMatches;
+
+        public PlayerPool(String name, List<String> hosts, List<Integer> ports, int maxMatchesPerEndpoint)
+        {
+            if (hosts.isEmpty() || hosts.size() != ports.size()) {
+                throw new IllegalArgumentException("Player " + name + " needs a port for every host");
+            }
+            if (maxMatchesPerEndpoint < 1) {
+                throw new IllegalArgumentException("Player " + name + " must be able to play a match");
+            }
+            this.name = name;
+            this.hosts = hosts;
+            this.ports = ports;
+            this.maxMatchesPerEndpoint = maxMatchesPerEndpoint;
+            activeMatches = new int[hosts.size()];
+        }
+
+        /**
+         * @param endpoints Comma-separated endpoints of the form host or host:port
+         * @param defaultPort Port of the endpoints that name none
+         */
+        public static PlayerPool parse(String name, String endpoints, int defaultPort, int maxMatchesPerEndpoint)
+        {
+            List<String> hosts = new ArrayList<String>();
+            List<Integer> ports = new ArrayList<Integer>();
+            for (String endpoint : endpoints.split(",")) {
+                int colon = endpoint.lastIndexOf(':');
+                if (colon < 0) {
+                    hosts.add(endpoint.trim());
+                    ports.add(defaultPort);
+                } else {
+                    hosts.add(endpoint.substring(0, colon).trim());
+                    ports.add(Integer.valueOf(endpoint.substring(colon + 1).trim()));
+                }
+            }
+            return new PlayerPool(name, hosts, ports, maxMatchesPerEndpoint);
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getCapacity()
+        {
+            return hosts.size() * maxMatchesPerEndpoint;
+        }
+
+        // Called with the tournament's monitor held
+        private int tryAcquire()
+        {
+            int best = -1;
+            for (int i = 0; i < activeMatches.length; i++) {
+                if (activeMatches[i] < maxMatchesPerEndpoint && (best < 0 || activeMatches[i] < activeMatches[best])) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                activeMatches[best]++;
+            }
+            return best;
+        }
+
+        private void release(int endpoint)
+        {
+            activeMatches[endpoint]--;
+        }
+    }
+
+    private static final int PREVIEW_CLOCK = 2;
+
+    private final String tourneyName;
+    private final Game game;
+    private final int startClock;
+    private final int playClock;
+    private final List<PlayerPool> players;
+    private final List<Gdl> rules;
+    private final Queue<StateMachine> idleStateMachines = new ConcurrentLinkedQueue<StateMachine>();
+
+    /**
+     * @param players Pool of every role, in the order of the roles of the game.
+     *                A pool may play several roles, if it has enough endpoints.
+     */
+    public Tournament(String tourneyName, Game game, int startClock, int playClock, List<PlayerPool> players)
+    {
+        this.tourneyName = tourneyName;
+        this.game = game;
+        this.startClock = startClock;
+        this.playClock = playClock;
+        this.players = players;
+        rules = game.getRules();
+
+        int expectedRoles = Role.computeRoles(rules).size();
+        if (players.size() != expectedRoles) {
+            throw new IllegalArgumentException("Invalid number of players for game " + game.getKey() + ": " + players.size() + " vs " + expectedRoles);
+        }
+        Map<PlayerPool, Integer> rolesPerPool = new IdentityHashMap<PlayerPool, Integer>();
+        for (PlayerPool pool : players) {
+            Integer roles = rolesPerPool.get(pool);
+            rolesPerPool.put(pool, roles == null ? 1 : roles + 1);
+        }
+        for (Map.Entry<PlayerPool, Integer> entry : rolesPerPool.entrySet()) {
+            if (entry.getKey().getCapacity() < entry.getValue()) {
+                throw new IllegalArgumentException("Player " + entry.getKey().getName() + " has too few endpoints for " + entry.getValue() + " roles");
+            }
+        }
+    }
+
+    /**
+     * Plays the matches and returns when all of them are over.
+     *
+     * @param concurrency Number of matches played at most at once
+     * @return The completed matches, in the order they ended; the others failed
+     */
+    public List<Match> run(int numberOfMatches, int concurrency) throws InterruptedException, IOException
+    {
+        final AsyncHttpClient requestClient = new AsyncHttpClient();
+        new File(tourneyName).mkdirs();
+        final List<Match> completed = Collections.synchronizedList(new ArrayList<Match>());
+        final String matchPrefix = new File(tourneyName).getName() + "." + game.getKey() + "." + System.currentTimeMillis() + ".";
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int i = 0; i < numberOfMatches; i++) {
+                final String matchName = matchPrefix + i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Match match = playMatch(matchName, requestClient);
+                            if (match != null) {
+                                completed.add(match);
+                                System.out.println("Completed " + completed.size() + " of " + numberOfMatches + ": " + matchName);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Exception e) {
+                            System.err.println("Match " + matchName + " failed");
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+            requestClient.close();
+        }
+        return completed;
+    }
+
+    /**
+     * @return The match, or null if it did not complete
+     */
+    private Match playMatch(String matchName, AsyncHttpClient requestClient) throws Exception
+    {
+        int[] endpoints = acquireEndpoints();
+        StateMachine stateMachine = idleStateMachines.poll();
+        if (stateMachine == null) {
+            stateMachine = new ProverStateMachine();
+            stateMachine.initialize(rules);
+        }
+        try {
+            List<String> hostNames = new ArrayList<String>(players.size());
+            List<Integer> portNumbers = new ArrayList<Integer>(players.size());
+            List<String> playerNames = new ArrayList<String>(players.size());
+            for (int i = 0; i < players.size(); i++) {
+                PlayerPool pool = players.get(i);
+                hostNames.add(pool.hosts.get(endpoints[i]));
+                portNumbers.add(pool.ports.get(endpoints[i]));
+                playerNames.add(pool.getName());
+            }
+            Match match = new Match(matchName, PREVIEW_CLOCK, startClock, playClock, game, "");
+            match.setPlayerNamesFromHost(playerNames);
+
+            GameServer server = new GameServer(match, hostNames, portNumbers, stateMachine);
+            server.setRequestClient(requestClient);
+            server.startJournalingToFilename(new File(tourneyName, matchName + ".journal").getPath());
+            server.start();
+            server.join();
+            if (!match.isCompleted()) {
+                System.err.println("Match " + matchName + " did not complete");
+                return null;
+            }
+            GameServerRunner.saveMatch(tourneyName, match, server.getGoals());
+            return match;
+        } finally {
+            idleStateMachines.add(stateMachine);
+            releaseEndpoints(endpoints);
+        }
+    }
+
+    /**
+     * Takes an endpoint of every pool at once, so that matches waiting for players never hold some of them.
+     */
+    private synchronized int[] acquireEndpoints() throws InterruptedException
+    {
+        int[] endpoints = new int[players.size()];
+        while (true) {
+            int acquired = 0;
+            while (acquired < endpoints.length && (endpoints[acquired] = players.get(acquired).tryAcquire()) >= 0) {
+                acquired++;
+            }
+            if (acquired == endpoints.length) {
+                return endpoints;
+            }
+            for (int i = 0; i < acquired; i++) {
+                players.get(i).release(endpoints[i]);
+            }
+            wait();
+        }
+    }
+
+    private synchronized void releaseEndpoints(int[] endpoints)
+    {
+        for (int i = 0; i < endpoints.length; i++) {
+            players.get(i).release(endpoints[i]);
+        }
+        notifyAll();
+    }
+}
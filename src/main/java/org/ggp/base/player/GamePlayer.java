@@ -26,16 +26,31 @@ public final class GamePlayer extends Thread implements Subject
     private final int port;
     private final Gamer gamer;
     private ServerSocket listener;
+    private NonBlockingPlayerServer server;
     private final List<Observer> observers;
 
     public GamePlayer(int port, Gamer gamer) throws IOException
+    {
+        this(port, gamer, false);
+    }
+
+    /**
+     * @param nonBlocking Whether to serve the requests from a selector thread, which answers INFO and ABORT
+     *                    even while the gamer computes a move, rather than one at a time
+     */
+    public GamePlayer(int port, Gamer gamer, boolean nonBlocking) throws IOException
     {
         observers = new ArrayList<Observer>();
         listener = null;
+        server = null;
 
-        while(listener == null) {
+        while(listener == null && server == null) {
             try {
-                listener = new ServerSocket(port);
+                if (nonBlocking) {
+                    server = new NonBlockingPlayerServer(this, gamer, port);
+                } else {
+                    listener = new ServerSocket(port);
+                }
             } catch (IOException ex) {
                 listener = null;
                 port++;
@@ -43,7 +58,7 @@ public final class GamePlayer extends Thread implements Subject
             }
         }
 
-        this.port = port;
+        this.port = port == 0 ? (server != null ? server.getPort() : listener.getLocalPort()) : port;
         this.gamer = gamer;
     }
 
@@ -71,6 +86,10 @@ public final class GamePlayer extends Thread implements Subject
     }
 
     public void shutdown() {
+        if (server != null) {
+            server.close();
+            return;
+        }
         try {
             listener.close();
             listener = null;
@@ -82,6 +101,10 @@ public final class GamePlayer extends Thread implements Subject
     @Override
     public void run()
     {
+        if (server != null) {
+            server.run();
+            return;
+        }
         while (listener != null) {
             try {
                 Socket connection = listener.accept();
@@ -0,0 +1,429 @@
+package org.ggp.base.player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ggp.base.player.event.PlayerDroppedPacketEvent;
+import org.ggp.base.player.event.PlayerReceivedMessageEvent;
+import org.ggp.base.player.event.PlayerSentMessageEvent;
+import org.ggp.base.player.gamer.Gamer;
+import org.ggp.base.player.request.factory.RequestFactory;
+import org.ggp.base.player.request.factory.exceptions.RequestFormatException;
+import org.ggp.base.player.request.grammar.AbortRequest;
+import org.ggp.base.player.request.grammar.InfoRequest;
+import org.ggp.base.player.request.grammar.PlayRequest;
+import org.ggp.base.player.request.grammar.Request;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.match.Match;
+
+/**
+ * The non-blocking mode of {@link GamePlayer}: one selector thread accepts
+ * connections, reads and parses the requests and writes the responses, so
+ * that INFO and ABORT are answered right away even while a move is being
+ * computed. START, PLAY, STOP and PREVIEW go to a single worker thread, in
+ * the order they arrived, with the time their first bytes were read as
+ * reception time, so the clock the gamer gets doesn't include a wait.
+ *
+ * Only the worker thread changes the gamer's state. ABORT goes to it as well,
+ * after any request waiting before it; it's answered ahead of the worker
+ * only while a move is being computed with nothing queued behind it, since
+ * the match can't change until the abort is processed then.
+ *
+ * Connections are kept for further requests when the client asks for it
+ * with "Connection: keep-alive" or HTTP/1.1, as AsyncHttpClient does.
+ */
+final class NonBlockingPlayerServer
+{
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final GamePlayer player;
+    private final Gamer gamer;
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final ExecutorService gameRequests;
+    // Requests queued for the worker and not started yet, and the one it's processing
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    private volatile Request currentRequest;
+    private final Queue<Connection> responded = new ConcurrentLinkedQueue<Connection>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private volatile boolean closed = false;
+
+    NonBlockingPlayerServer(GamePlayer player, Gamer gamer, int port) throws IOException
+    {
+        this.player = player;
+        this.gamer = gamer;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        try {
+            listener.bind(new InetSocketAddress(port));
+            listener.configureBlocking(false);
+            listener.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            listener.close();
+            selector.close();
+            throw e;
+        }
+        gameRequests = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "GamePlayer requests");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getPort()
+    {
+        return listener.socket().getLocalPort();
+    }
+
+    void run()
+    {
+        try {
+            while (!closed) {
+                selector.select();
+                Connection connection;
+                while ((connection = responded.poll()) != null) {
+                    try {
+                        connection.startWriting();
+                    } catch (IOException | RuntimeException e) {
+                        connection.drop(e);
+                    }
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            GamerLogger.logStackTrace("GamePlayer", e);
+                        }
+                        continue;
+                    }
+                    // As in the blocking mode, a bad request only costs its own connection
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        connection.drop(e);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                GamerLogger.logStackTrace("GamePlayer", e);
+            }
+        } finally {
+            gameRequests.shutdownNow();
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                ;
+            }
+        }
+    }
+
+    void close()
+    {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel = listener.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private static void closeQuietly(SelectionKey key)
+    {
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            ;
+        }
+    }
+
+    private final class Connection
+    {
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        private byte[] buffer = new byte[1024];
+        private int received = 0;
+        private long receptionTime;
+        private int headerEnd;
+        // Length of the request being processed, followed by any pipelined one
+        private int requestEnd;
+        private String requestLine;
+        private int contentLength;
+        private boolean keepAlive;
+
+        // Written by the worker thread before it queues the connection in responded
+        private volatile String response;
+        private ByteBuffer responseBytes;
+
+        private Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException
+        {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                if (received > 0 && headerEnd > 0 && contentLength < 0 && requestLine.toUpperCase().startsWith("POST ")) {
+                    // Without a Content-Length the content ends with the connection
+                    keepAlive = false;
+                    key.interestOps(0);
+                    dispatch(new String(buffer, headerEnd, received - headerEnd, CHARSET).trim());
+                } else {
+                    closeQuietly(key);
+                }
+                return;
+            }
+            if (received == 0) {
+                receptionTime = System.currentTimeMillis();
+                headerEnd = -1;
+            }
+            if (received + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, received + n));
+            }
+            System.arraycopy(readBuffer.array(), 0, buffer, received, n);
+            received += n;
+            handleRequest();
+        }
+
+        /**
+         * Dispatches the request at the start of the buffer once all of it has been received.
+         */
+        private void handleRequest() throws IOException
+        {
+            if (headerEnd < 0 && !parseHeaders()) {
+                return;
+            }
+            String upperRequestLine = requestLine.toUpperCase();
+            if (upperRequestLine.startsWith("GET ")) {
+                int end = requestLine.lastIndexOf(' ');
+                if (end < 5) {
+                    throw new IOException("Malformed request line: " + requestLine);
+                }
+                String message = URLDecoder.decode(requestLine.substring(5, end), "UTF-8");
+                requestEnd = headerEnd;
+                key.interestOps(0);
+                dispatch(message.replace((char)13, ' '));
+            } else if (upperRequestLine.startsWith("POST ")) {
+                if (contentLength >= 0 && received - headerEnd >= contentLength) {
+                    requestEnd = headerEnd + contentLength;
+                    key.interestOps(0);
+                    dispatch(new String(buffer, headerEnd, contentLength, CHARSET).trim());
+                }
+            } else {
+                // OPTIONS and the unexpected requests get a blank response, as in HttpReader
+                requestEnd = Math.min(received, headerEnd + Math.max(contentLength, 0));
+                key.interestOps(0);
+                respond("");
+            }
+        }
+
+        private boolean parseHeaders()
+        {
+            int end = -1;
+            for (int i = 0; i < received && end < 0; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                if (i + 1 < received && buffer[i + 1] == '\n') {
+                    end = i + 2;
+                } else if (i + 2 < received && buffer[i + 1] == '\r' && buffer[i + 2] == '\n') {
+                    end = i + 3;
+                }
+            }
+            if (end < 0) {
+                return false;
+            }
+            headerEnd = end;
+            contentLength = -1;
+            String[] lines = new String(buffer, 0, end, StandardCharsets.ISO_8859_1).split("\r?\n");
+            requestLine = lines[0];
+            String connection = null;
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i].toLowerCase();
+                if (line.startsWith("content-length:")) {
+                    try {
+                        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    } catch (NumberFormatException e) {
+                        contentLength = -1;
+                    }
+                } else if (line.startsWith("connection:")) {
+                    connection = line.substring("connection:".length()).trim();
+                }
+            }
+            keepAlive = requestLine.endsWith("HTTP/1.1") ? !"close".equals(connection) : "keep-alive".equals(connection);
+            return true;
+        }
+
+        private void dispatch(String in)
+        {
+            if (in.length() == 0) {
+                drop(new IOException("Empty message received."));
+                return;
+            }
+
+            // Set game visuals
+            int space = in.indexOf(' ');
+            if (space >= 0 && in.substring(0, space).contains("#GETVISUALS#")) {
+                gamer.setGameVisuals(in.substring(space + 1));
+                respond("");
+                return;
+            }
+
+            player.notifyObservers(new PlayerReceivedMessageEvent(in));
+            GamerLogger.log("GamePlayer", "[Received at " + receptionTime + "] " + in, GamerLogger.LOG_LEVEL_DATA_DUMP);
+
+            final Request request;
+            try {
+                request = new RequestFactory().create(gamer, in);
+            } catch (RequestFormatException e) {
+                drop(e);
+                return;
+            }
+            if (request instanceof InfoRequest) {
+                // INFO only reads the gamer's state
+                respond(request.process(receptionTime));
+            } else if (request instanceof AbortRequest && pendingRequests.get() == 0 && currentRequest instanceof PlayRequest) {
+                // Nothing can be queued before the abort but by this thread, and a move
+                // doesn't change the match: this is the answer the worker will give
+                Match match = gamer.getMatch();
+                respond(match != null && match.getMatchId().equals(request.getMatchId()) ? "aborted" : "busy");
+                process(request, false);
+            } else {
+                process(request, true);
+            }
+        }
+
+        /**
+         * Hands the request to the worker thread, which answers it unless it has already been answered.
+         */
+        private void process(Request request, boolean respond)
+        {
+            final long requestReceptionTime = receptionTime;
+            pendingRequests.incrementAndGet();
+            gameRequests.execute(() -> {
+                currentRequest = request;
+                pendingRequests.decrementAndGet();
+                String out = null;
+                try {
+                    out = request.process(requestReceptionTime);
+                } catch (RuntimeException e) {
+                    GamerLogger.logStackTrace("GamePlayer", e);
+                } finally {
+                    currentRequest = null;
+                }
+                if (respond) {
+                    respond(out);
+                }
+            });
+        }
+
+        /**
+         * Queues the response for the selector thread; a null response drops the connection.
+         */
+        private void respond(String out)
+        {
+            response = out;
+            responded.add(this);
+            selector.wakeup();
+        }
+
+        private void startWriting() throws IOException
+        {
+            if (response == null) {
+                drop(new IOException("The request could not be processed."));
+                return;
+            }
+            byte[] content = response.getBytes(CHARSET);
+            StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.0 200 OK\r\n");
+            head.append("Content-type: text/acl\r\n");
+            head.append("Content-length: ").append(content.length).append("\r\n");
+            head.append("Access-Control-Allow-Origin: *\r\n");
+            head.append("Access-Control-Allow-Methods: POST, GET, OPTIONS\r\n");
+            head.append("Access-Control-Allow-Headers: Content-Type\r\n");
+            head.append("Access-Control-Allow-Age: 86400\r\n");
+            if (keepAlive) {
+                head.append("Connection: keep-alive\r\n");
+            }
+            head.append("\r\n");
+            byte[] headBytes = head.toString().getBytes(CHARSET);
+            responseBytes = ByteBuffer.allocate(headBytes.length + content.length);
+            responseBytes.put(headBytes).put(content);
+            responseBytes.flip();
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void write() throws IOException
+        {
+            channel.write(responseBytes);
+            if (responseBytes.hasRemaining()) {
+                return;
+            }
+            player.notifyObservers(new PlayerSentMessageEvent(response));
+            GamerLogger.log("GamePlayer", "[Sent at " + System.currentTimeMillis() + "] " + response, GamerLogger.LOG_LEVEL_DATA_DUMP);
+            if (keepAlive) {
+                // Keep what the client has already sent of its next request
+                received -= requestEnd;
+                System.arraycopy(buffer, requestEnd, buffer, 0, received);
+                headerEnd = -1;
+                response = null;
+                responseBytes = null;
+                key.interestOps(SelectionKey.OP_READ);
+                if (received > 0) {
+                    receptionTime = System.currentTimeMillis();
+                    handleRequest();
+                }
+            } else {
+                closeQuietly(key);
+            }
+        }
+
+        private void drop(Exception e)
+        {
+            GamerLogger.log("GamePlayer", "[Dropped data at " + System.currentTimeMillis() + "] Due to " + e, GamerLogger.LOG_LEVEL_DATA_DUMP);
+            player.notifyObservers(new PlayerDroppedPacketEvent());
+            closeQuietly(key);
+        }
+    }
+}
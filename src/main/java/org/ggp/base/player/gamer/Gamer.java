@@ -42,8 +42,9 @@ import javax.swing.*;
  */
 public abstract class Gamer implements Subject
 {
-    private Match match;
-    private GdlConstant roleName;
+    // Volatile, since the non-blocking player server reads them on its I/O thread
+    private volatile Match match;
+    private volatile GdlConstant roleName;
     protected RuntimeGameCharacteristics mGameCharacteristics;
 
     protected String gameVisuals = null;
@@ -0,0 +1,101 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+/**
+ * Decides after which iterations of a turn the growing tree is logged.
+ *
+ * The snapshots of a turn are spread over the time of the turn on a
+ * logarithmic scale, from a minimum delay after the start up to the end, so
+ * that the fast early growth of the tree is seen in detail; their number per
+ * turn is fixed. The times are turned into iteration counts with the speed of
+ * the search measured so far, and corrected at every snapshot, so the search
+ * loop only compares its iteration count with a single threshold.
+ *
+ * Times are in nanoseconds from System.nanoTime().
+ */
+public final class GrowthLogSchedule {
+
+    private final int budget;
+    private final long minDelay;
+
+    private long turnStart;
+    private long turnDuration;
+    private int nextPoint;
+    private long nextThreshold;
+    // Итераций в наносекунду; до первого замера в ходе - от предыдущего хода
+    private double rate = 0;
+
+    /**
+     * @param budget Number of snapshots per turn
+     * @param minDelay Time after the start of the turn of the first snapshot
+     */
+    public GrowthLogSchedule(int budget, long minDelay) {
+        this.budget = budget;
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * @param now Start of the turn
+     * @param duration Time the search will run for
+     * @return Iteration count at which the first snapshot is due
+     */
+    public long startTurn(long now, long duration) {
+        turnStart = now;
+        turnDuration = Math.max(duration, minDelay);
+        nextPoint = 0;
+        nextThreshold = 0;
+        return schedule(0, now);
+    }
+
+    /**
+     * Called once the snapshot due at the current threshold has been taken.
+     * Points of the schedule whose time already passed are skipped.
+     * @param iterations Number of iterations done in this turn
+     * @param now Current time
+     * @return Iteration count at which the next snapshot is due, or Long.MAX_VALUE if none is left this turn
+     */
+    public long next(long iterations, long now) {
+        long elapsed = now - turnStart;
+        if (elapsed > 0 && iterations > 0) {
+            rate = (double) iterations / elapsed;
+        }
+        nextPoint++;
+        while (nextPoint < budget && getPointTime(nextPoint) <= elapsed) {
+            nextPoint++;
+        }
+        return schedule(iterations, now);
+    }
+
+    private long schedule(long iterations, long now) {
+        if (nextPoint >= budget) {
+            nextThreshold = Long.MAX_VALUE;
+        } else if (rate == 0) {
+            // Скорость пока неизвестна - снимок на следующей итерации
+            nextThreshold = iterations + 1;
+        } else {
+            long wait = getPointTime(nextPoint) - (now - turnStart);
+            nextThreshold = iterations + Math.max(1, (long) Math.ceil(wait * rate));
+        }
+        return nextThreshold;
+    }
+
+    /**
+     * @return Time of the given point of the schedule from the start of the turn
+     */
+    long getPointTime(int point) {
+        if (budget == 1) {
+            return turnDuration;
+        }
+        return (long) (minDelay * Math.pow((double) turnDuration / minDelay, (double) point / (budget - 1)));
+    }
+
+    public long getNextThreshold() {
+        return nextThreshold;
+    }
+
+    /**
+     * @return Measured speed of the search, 0 before the first measurement
+     */
+    public double getIterationsPerSecond() {
+        return rate * 1e9;
+    }
+}
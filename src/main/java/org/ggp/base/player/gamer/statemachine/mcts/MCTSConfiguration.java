@@ -0,0 +1,173 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+/**
+ * Runtime configuration of MCTSGamer.
+ *
+ * Every item can be set with a JVM system property "mcts.ITEM_NAME"
+ * (e.g. -Dmcts.STATE_MACHINE=propnet) or with an environment variable
+ * "MCTS_ITEM_NAME" (e.g. MCTS_STATE_MACHINE=propnet), which is the easiest
+ * way to configure the docker containers. System properties take precedence.
+ */
+public final class MCTSConfiguration {
+
+    /**
+     * Available configuration items, with their default values.
+     */
+    public enum CfgItem {
+        /**
+         * State machine the search runs on: "prover" (CachedStateMachine over
+         * ProverStateMachine, as every SampleGamer), "reasoner" (the same over
+         * ReasonerStateMachine, which chains forward) or "propnet"
+         * (ForwardDeadReckonPropnetStateMachine, with the prover as fallback).
+         */
+        STATE_MACHINE("prover"),
+
+        /**
+         * Time in milliseconds that the propnet build must leave free at the
+         * end of the start clock. If the propnet is not ready by then the
+         * prover is used instead.
+         */
+        PROPNET_BUILD_MARGIN(3000),
+
+        /**
+         * Number of states whose answers the prover's CachedStateMachine
+         * keeps. Zero keeps the states used during the current move, without
+         * bound. The hit rate is printed after every move, to size it.
+         */
+        STATE_CACHE_SIZE(0),
+
+        /**
+         * Number of threads growing the search tree (root parallelization:
+         * one tree and one state machine per thread). Zero or less uses one
+         * thread per available processor.
+         */
+        SEARCH_THREADS(1),
+
+        /**
+         * Maximum number of search tree nodes indexed by state in the
+         * transposition table of each tree. States reached by different move
+         * orders share one node while they are in the table; the least
+         * recently used ones are forgotten beyond this size. Zero disables
+         * transpositions.
+         */
+        TRANSPOSITION_TABLE_SIZE(500000),
+
+        /**
+         * Maximum number of nodes of each search tree, which bounds the memory
+         * it takes. Above it the least visited leaves are evicted (their
+         * parents keep their statistics and are expanded again when needed),
+         * so a long match keeps a flat heap profile. Zero means no limit.
+         */
+        MAX_TREE_NODES(0),
+
+        /**
+         * Number of nodes released by a tree (cut off when the root advances,
+         * or evicted) that it keeps to reuse instead of allocating new ones.
+         * Zero leaves them all to the garbage collector.
+         */
+        NODE_POOL_SIZE(0),
+
+        /**
+         * Tree policy: "uct", "ucb1tuned", "rave" or "progressivebias" (see
+         * PoolOfStrategies for the registered names).
+         */
+        SELECTION_STRATEGY("uct"),
+
+        /**
+         * Playout policy: "random", or a heavy playout steered by one of the
+         * propnet playout policies: "goalgreedy", "goalgreedywithpop",
+         * "lastgoodresponse", "criticalresponse". Heavy playouts need
+         * STATE_MACHINE=propnet and are random otherwise.
+         */
+        PLAYOUT_STRATEGY("random"),
+
+        /**
+         * How the played move is chosen at the root: "robust" (most visited
+         * action) or "max" (best average score).
+         */
+        MATCH_SELECTION_STRATEGY("robust"),
+
+        /**
+         * Seed of the random choices of the search (expansion, playouts, ties).
+         * Every tree has its own generator, the helper trees' split from the
+         * main tree's, so a search with the same seed and the same number of
+         * iterations per thread makes the same choices. Zero seeds from the
+         * clock.
+         */
+        RANDOM_SEED(0),
+
+        /**
+         * Number of snapshots of the growing tree taken per turn. They are
+         * spread over the turn on a logarithmic time scale, denser at the
+         * start (see GrowthLogSchedule).
+         */
+        GROWTH_LOG_BUDGET(100),
+
+        /**
+         * Number of tree snapshots that may wait for the Redis writer. When
+         * the queue is full, growth snapshots are dropped instead of stalling
+         * the search.
+         */
+        SNAPSHOT_QUEUE_CAPACITY(32),
+
+        /**
+         * Maximum number of snapshots sent to Redis in one pipeline.
+         */
+        SNAPSHOT_BATCH_SIZE(8),
+
+        /**
+         * Whether tree snapshots after the first of each turn only hold the
+         * nodes that changed since the previous snapshot (see
+         * DeltaSnapshotEncoder and SnapshotReconstructor).
+         */
+        SNAPSHOT_DELTAS(false),
+
+        /**
+         * Format of the full tree snapshots: "json" (Gson) or "binary"
+         * (BinaryTreeSerializer, several times smaller and much cheaper to
+         * produce; BinaryTreeSerializer.toJSON converts it back for viewing).
+         * Ignored when SNAPSHOT_DELTAS is on.
+         */
+        SNAPSHOT_FORMAT("json");
+
+        /**
+         * Default value, as a string.
+         */
+        public final String defaultValue;
+
+        CfgItem(String defaultValue) {
+            this.defaultValue = defaultValue;
+        }
+
+        CfgItem(long defaultValue) {
+            this.defaultValue = String.valueOf(defaultValue);
+        }
+
+        CfgItem(boolean defaultValue) {
+            this.defaultValue = String.valueOf(defaultValue);
+        }
+    }
+
+    private MCTSConfiguration() {
+    }
+
+    public static String getCfgStr(CfgItem item) {
+        String value = System.getProperty("mcts." + item.name());
+        if (value == null) {
+            value = System.getenv("MCTS_" + item.name());
+        }
+        return value == null ? item.defaultValue : value.trim();
+    }
+
+    public static int getCfgInt(CfgItem item) {
+        return Integer.parseInt(getCfgStr(item));
+    }
+
+    public static long getCfgLong(CfgItem item) {
+        return Long.parseLong(getCfgStr(item));
+    }
+
+    public static boolean getCfgBool(CfgItem item) {
+        return Boolean.parseBoolean(getCfgStr(item));
+    }
+}
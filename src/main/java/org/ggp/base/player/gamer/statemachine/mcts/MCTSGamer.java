@@ -2,25 +2,29 @@ package org.ggp.base.player.gamer.statemachine.mcts;
 
 import org.ggp.base.player.gamer.statemachine.mcts.event.TreeEvent;
 import org.ggp.base.player.gamer.statemachine.mcts.event.TreeStartEvent;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.ParallelSearch;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
 import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
 import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
 import org.ggp.base.player.gamer.statemachine.mcts.observer.TreeObserver;
 import org.ggp.base.player.gamer.statemachine.sample.SampleGamer;
+import org.ggp.base.util.statemachine.FailsafeStateMachine;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.cache.CachedStateMachine;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+import org.ggp.base.util.statemachine.implementation.propnet.forwardDeadReckon.ForwardDeadReckonPropnetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.implementation.reasoner.ReasonerStateMachine;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class MCTSGamer extends SampleGamer {
     private final long SAFETY_MARGIN = 2000;
@@ -28,14 +32,11 @@ public class MCTSGamer extends SampleGamer {
     // Progressive logging configuration
     private final boolean ENABLE_GROWTH_LOGGING = true;
 
-    // Logging progression settings
-    private final int[] ITERATIONS_FIRST_10 = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
-    private final int[] ITERATIONS_FIRST_100 = {15, 20, 25, 30, 40, 50, 60, 70, 80, 90, 100};
-    private final double PROGRESSION_FACTOR = 1.3;
-    private final int MAX_LOG_INTERVAL = 5000;
-    private final int MAX_LOG_POINTS = 100;
+    // Time after the start of the turn of the first growth snapshot
+    private final long FIRST_LOG_DELAY_NANOS = 1000000;
 
     private SearchTree tree = null;
+    private ParallelSearch search = null;
     private int turnCount = 0;
     private int growthLogCount = 0;
     private String sessionIdentifier;
@@ -43,16 +44,84 @@ public class MCTSGamer extends SampleGamer {
     // Observer for tree events
     private TreeObserver treeObserver;
 
-    // Set for storing iterations to log
-    private Set<Integer> iterationsToLog = new HashSet<>();
+    // When to log the growing tree
+    private GrowthLogSchedule growthLogSchedule;
+
+    /**
+     * Selects the state machine backend configured by
+     * {@link MCTSConfiguration.CfgItem#STATE_MACHINE}. The propnet is wrapped
+     * in a FailsafeStateMachine, so the prover takes over if the propnet can't
+     * be built, or can't be built before the start clock runs out.
+     */
+    @Override
+    public StateMachine getInitialStateMachine() {
+        String backend = MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.STATE_MACHINE);
+        if (backend.equalsIgnoreCase("propnet")) {
+            long buildDeadline = getMetaGamingTimeout() - MCTSConfiguration.getCfgLong(MCTSConfiguration.CfgItem.PROPNET_BUILD_MARGIN);
+            // No role is passed, so the propnet keeps the logic behind every role's goals, not only ours.
+            // One propnet instance is needed per search thread.
+            StateMachine propnet = new ForwardDeadReckonPropnetStateMachine(getNumSearchThreads(), buildDeadline, null, null);
+            return new FailsafeStateMachine(propnet, buildDeadline);
+        }
+        return createProverStateMachine();
+    }
+
+    /**
+     * A cached prover, or forward-chaining reasoner when
+     * {@link MCTSConfiguration.CfgItem#STATE_MACHINE} is "reasoner"; with
+     * {@link MCTSConfiguration.CfgItem#STATE_CACHE_SIZE} set, its cache is
+     * bounded instead of being pruned every move.
+     */
+    private StateMachine createProverStateMachine() {
+        String backend = MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.STATE_MACHINE);
+        StateMachine machine = backend.equalsIgnoreCase("reasoner") ? new ReasonerStateMachine() : new ProverStateMachine();
+        int cacheSize = MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.STATE_CACHE_SIZE);
+        if (cacheSize > 0) {
+            return new CachedStateMachine(machine, cacheSize);
+        }
+        return new CachedStateMachine(machine);
+    }
+
+    private int getNumSearchThreads() {
+        int threads = MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.SEARCH_THREADS);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates the state machines for the helper threads of the search. State
+     * machines are not shared between threads: propnet instances are cloned
+     * from the main propnet, anything else gets a fresh cached prover.
+     */
+    private List<StateMachine> createHelperStateMachines() {
+        List<StateMachine> helperMachines = new ArrayList<>();
+        StateMachine mainMachine = getStateMachine();
+        if (mainMachine instanceof FailsafeStateMachine) {
+            mainMachine = ((FailsafeStateMachine) mainMachine).getBackingMachine();
+        }
+
+        for (int i = 1; i < getNumSearchThreads(); i++) {
+            if (mainMachine instanceof ForwardDeadReckonPropnetStateMachine) {
+                helperMachines.add(((ForwardDeadReckonPropnetStateMachine) mainMachine).createInstance());
+            } else {
+                StateMachine helperMachine = createProverStateMachine();
+                helperMachine.initialize(getMatch().getGame().getRules());
+                helperMachines.add(helperMachine);
+            }
+        }
+        return helperMachines;
+    }
 
     @Override
     public void stateMachineMetaGame(long xiTimeout)
             throws TransitionDefinitionException, MoveDefinitionException,
             GoalDefinitionException {
         tree = new SearchTree(getStateMachine());
+        search = new ParallelSearch(tree, createHelperStateMachines());
+        System.out.println("Searching with " + search.getNumThreads() + " thread(s)");
         turnCount = 0;
         growthLogCount = 0;
+        growthLogSchedule = new GrowthLogSchedule(
+                MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.GROWTH_LOG_BUDGET), FIRST_LOG_DELAY_NANOS);
 
         //     
         String gameName = determineGameName();
@@ -148,6 +217,7 @@ public class MCTSGamer extends SampleGamer {
 
         // Clean up
         treeObserver.shutdown();
+        search.shutdown();
     }
 
     @Override
@@ -158,101 +228,18 @@ public class MCTSGamer extends SampleGamer {
 
         // Clean up
         treeObserver.shutdown();
-    }
-
-    /**
-     * Generate set of iteration numbers to log using a progressive scheme
-     * @param estimatedTotalIterations Estimated total number of iterations
-     */
-    private void generateProgressiveLoggingPoints(int estimatedTotalIterations) {
-        iterationsToLog.clear();
-
-        // Always log iteration 0 (initial state)
-        iterationsToLog.add(0);
-
-        // Add all early iterations (1-10)
-        for (int early : ITERATIONS_FIRST_10) {
-            iterationsToLog.add(early);
-        }
-
-        // Add intermediate iterations (up to 100)
-        for (int mid : ITERATIONS_FIRST_100) {
-            iterationsToLog.add(mid);
-        }
-
-        // Generate progressive logging points
-        double nextPoint = 100; // Start from 100
-        List<Integer> generatedPoints = new ArrayList<>();
-
-        while (nextPoint < estimatedTotalIterations) {
-            nextPoint = Math.ceil(nextPoint * PROGRESSION_FACTOR);
-
-            // Ensure maximum interval is not exceeded
-            int lastPoint = iterationsToLog.stream().mapToInt(i -> i).max().orElse(0);
-            if (nextPoint - lastPoint > MAX_LOG_INTERVAL) {
-                nextPoint = lastPoint + MAX_LOG_INTERVAL;
-            }
-
-            generatedPoints.add((int)nextPoint);
-
-            // Safety check - if approaching very large numbers, stop
-            if (nextPoint > Integer.MAX_VALUE / 2) break;
-
-            // If generated too many points, stop
-            if (generatedPoints.size() >= MAX_LOG_POINTS -
-                    ITERATIONS_FIRST_10.length - ITERATIONS_FIRST_100.length - 1) { // -1 for iteration 0
-                break;
-            }
-        }
-
-        // If too many points, filter them evenly
-        if (generatedPoints.size() > MAX_LOG_POINTS - ITERATIONS_FIRST_10.length - ITERATIONS_FIRST_100.length - 1) {
-            // Select subset of points evenly
-            int available = MAX_LOG_POINTS - ITERATIONS_FIRST_10.length - ITERATIONS_FIRST_100.length - 1;
-            int step = generatedPoints.size() / available;
-
-            for (int i = 0; i < generatedPoints.size(); i += step) {
-                if (i < generatedPoints.size()) {
-                    iterationsToLog.add(generatedPoints.get(i));
-                }
-            }
-
-            // Always add the last point
-            if (!generatedPoints.isEmpty()) {
-                iterationsToLog.add(generatedPoints.get(generatedPoints.size() - 1));
-            }
-        } else {
-            // If not too many points, add them all
-            iterationsToLog.addAll(generatedPoints);
-        }
-
-        // Also add approximately estimated last iteration
-        iterationsToLog.add(estimatedTotalIterations);
-
-        // Sort and output for debugging
-        Integer[] logPoints = iterationsToLog.toArray(new Integer[0]);
-        Arrays.sort(logPoints);
-        System.out.println("Generated " + logPoints.length + " logging points: " + Arrays.toString(logPoints));
+        search.shutdown();
     }
 
     public Move stateMachineSelectMove(long xiTimeout) throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
         long start = System.currentTimeMillis();
 
-        SearchTreeNode startRootNode = tree.findNode(getCurrentState());
         // Perform tree cutting
-        tree.cut(startRootNode);
+        search.advance(getCurrentState());
 
         long finishBy = xiTimeout - SAFETY_MARGIN;
         long availableTime = finishBy - start;
 
-        // Roughly estimate number of iterations we can perform
-        // based on previous experience (~20000 iterations per second)
-        int estimatedIterations = (int)(availableTime * 20000 / 1000);
-        System.out.println("Estimated iterations: " + estimatedIterations);
-
-        // Generate progressive logging points
-        generateProgressiveLoggingPoints(estimatedIterations);
-
         int iterations = 0;
         growthLogCount = 0;
 
@@ -261,12 +248,17 @@ public class MCTSGamer extends SampleGamer {
             notifyObservers(new TreeEvent(tree, turnCount, true, false));
         }
 
+        // Snapshots are spread over the time of the turn; the loop only compares the iteration count
+        long nextLogIteration = ENABLE_GROWTH_LOGGING
+                ? growthLogSchedule.startTurn(System.nanoTime(), availableTime * 1000000)
+                : Long.MAX_VALUE;
+
+        search.startHelpers(finishBy);
         while (System.currentTimeMillis() < finishBy) {
             iterations++;
             tree.grow();
 
-            // Log tree growth according to progressive scheme
-            if (ENABLE_GROWTH_LOGGING && iterationsToLog.contains(iterations)) {
+            if (iterations >= nextLogIteration) {
                 growthLogCount++;
 
                 // Notify observers about tree growth
@@ -276,11 +268,18 @@ public class MCTSGamer extends SampleGamer {
                 if (growthLogCount % 10 == 0) {
                     System.out.println("Progress: logged " + growthLogCount + " states, iteration " + iterations);
                 }
+                nextLogIteration = growthLogSchedule.next(iterations, System.nanoTime());
             }
         }
 
-        System.out.println("Completed " + iterations + " iterations, logged " + growthLogCount + " tree states");
-        Move bestMove = tree.getBestAction(getRole());
+        int helperIterations = search.awaitHelpers();
+
+        System.out.println("Completed " + iterations + " iterations (" + helperIterations + " more in helper threads), logged " + growthLogCount + " tree states, "
+                + (int) growthLogSchedule.getIterationsPerSecond() + " iterations/s");
+        if (getStateMachine() instanceof CachedStateMachine) {
+            System.out.println("State cache: " + ((CachedStateMachine) getStateMachine()).getStatistics());
+        }
+        Move bestMove = search.getBestAction(getRole());
 
         // Notify observers after completing move selection with final tree
         notifyObservers(new TreeEvent(tree, turnCount, false, true));
@@ -6,7 +6,7 @@ import org.ggp.base.player.gamer.statemachine.mcts.model.tree.JointActions;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
 
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 public class CumulativeStatistics {
@@ -22,12 +22,40 @@ public class CumulativeStatistics {
         return statisticsForActions.isEmpty();
     }
 
-    public void addUsedActions(JointActions usedJointMove) {
-        statisticsForActions.addActions(usedJointMove);
+    /**
+     * Numbers the legal actions of each role in the node; called once, when the node is expanded.
+     */
+    public void initActions(List<Role> roles, List<List<Move>> legalActions) {
+        statisticsForActions.init(roles, legalActions);
     }
 
-    public void updateUsedActions(JointActions usedJointMove, Map<Role, Double> playoutScore) {
-        statisticsForActions.updateActions(usedJointMove, playoutScore);
+    /**
+     * Resets the statistics to those of a new node.
+     */
+    public void clear() {
+        statisticsForActions.clear();
+        numVisits = 0;
+    }
+
+    // Обновляет статистику действий, из которых состоит совместный ход с данным индексом
+    public void updateUsedActions(int jointActionIndex, double[] playoutScore) {
+        statisticsForActions.updateJointAction(jointActionIndex, playoutScore);
+    }
+
+    public StatisticsForActions getStatisticsForActions() {
+        return statisticsForActions;
+    }
+
+    public int getNumJointActions() {
+        return statisticsForActions.getNumJointActions();
+    }
+
+    public int getJointActionIndex(JointActions jointActions) {
+        return statisticsForActions.getJointActionIndex(jointActions);
+    }
+
+    public JointActions getJointActions(int jointActionIndex) {
+        return statisticsForActions.getJointActions(jointActionIndex);
     }
 
     public Set<Role> getRoles() {
@@ -50,6 +78,12 @@ public class CumulativeStatistics {
         numVisits++;
     }
 
+    // Добавляет к этой статистике статистику того же узла из другого дерева
+    public void merge(CumulativeStatistics other) {
+        statisticsForActions.merge(other.statisticsForActions);
+        numVisits += other.numVisits;
+    }
+
     public ObjectNode toJSONbyJackson(ObjectMapper mapper){
         ObjectNode statisticsJSON = mapper.createObjectNode();
         statisticsJSON.put("numVisits", numVisits);
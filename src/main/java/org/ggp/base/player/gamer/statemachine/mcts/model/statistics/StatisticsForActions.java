@@ -7,93 +7,304 @@ import org.ggp.base.player.gamer.statemachine.mcts.model.tree.JointActions;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+/**
+ * Scores and numbers of uses of the actions of every role in a node.
+ *
+ * The actions of each role are numbered once, when the node is expanded, and
+ * the statistics are kept in flat arrays by role index and action index. A
+ * joint action is then a single int, with the action index of each role as
+ * the digits of a mixed-radix number (the first role is the lowest digit), so
+ * that the search can select and update without allocating anything.
+ */
 public class StatisticsForActions {
 
-    private final Map<Role, Map<Move, ActionStatistics>> map = new HashMap<>(); // Выигрыши, привязанные к действиям, и их количества использований
-    private List<Role> roles;  // используем только для генерации JSON - так быстрее
+    private List<Role> roles;  // порядок ролей игры; null, пока действий нет
+    private Move[][] actions = new Move[0][];   // действия по индексу роли и индексу действия
+    private double[][] actionScore = new double[0][];  // суммарные выигрыши действий
+    private int[][] actionNumUsed = new int[0][];    // количества использований действий
+    private double[][] actionSquaredScore = new double[0][];  // суммы квадратов выигрышей, для оценки дисперсии
+
+    // Статистика "все ходы как первый" (AMAF) для RAVE; null, пока не понадобится
+    private double[][] amafScore;
+    private int[][] amafNumUsed;
+    private int[][] amafLastIteration;
+    // Эвристические оценки действий для progressive bias; null, пока не посчитаны
+    private double[][] actionHeuristic;
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return roles == null;
+    }
+
+    /**
+     * Forgets the actions and their statistics, as in a new node.
+     */
+    void clear() {
+        roles = null;
+        actions = new Move[0][];
+        actionScore = new double[0][];
+        actionNumUsed = new int[0][];
+        actionSquaredScore = new double[0][];
+        amafScore = null;
+        amafNumUsed = null;
+        amafLastIteration = null;
+        actionHeuristic = null;
+    }
+
+    /**
+     * Numbers the legal actions of each role; the joint actions are all their combinations.
+     */
+    void init(List<Role> roles, List<List<Move>> legalActions) {
+        this.roles = roles;
+        actions = new Move[roles.size()][];
+        actionScore = new double[roles.size()][];
+        actionNumUsed = new int[roles.size()][];
+        actionSquaredScore = new double[roles.size()][];
+        for (int r = 0; r < roles.size(); r++) {
+            actions[r] = legalActions.get(r).toArray(new Move[0]);
+            actionScore[r] = new double[actions[r].length];
+            actionNumUsed[r] = new int[actions[r].length];
+            actionSquaredScore[r] = new double[actions[r].length];
+        }
+        amafScore = null;
+        amafNumUsed = null;
+        amafLastIteration = null;
+        actionHeuristic = null;
+    }
+
+    void updateJointAction(int jointIndex, double[] playoutScore) {
+        for (int r = 0; r < actions.length; r++) {
+            int numActions = actions[r].length;
+            int a = jointIndex % numActions;
+            jointIndex /= numActions;
+            actionScore[r][a] += playoutScore[r];
+            actionSquaredScore[r][a] += playoutScore[r] * playoutScore[r];
+            actionNumUsed[r][a]++;
+        }
+    }
+
+    void merge(StatisticsForActions other) {
+        if (other.roles == null) {
+            return;
+        }
+        ensureRoles(other.roles);
+        for (int r = 0; r < roles.size(); r++) {
+            for (int otherIndex = 0; otherIndex < other.actions[r].length; otherIndex++) {
+                int a = indexOrAdd(r, other.actions[r][otherIndex]);
+                actionScore[r][a] += other.actionScore[r][otherIndex];
+                actionNumUsed[r][a] += other.actionNumUsed[r][otherIndex];
+                actionSquaredScore[r][a] += other.actionSquaredScore[r][otherIndex];
+            }
+        }
+    }
+
+    private void ensureRoles(List<Role> roles) {
+        if (this.roles == null) {
+            init(roles, Collections.nCopies(roles.size(), Collections.<Move>emptyList()));
+        }
+    }
+
+    private int indexOf(int roleIndex, Move action) {
+        Move[] roleActions = actions[roleIndex];
+        for (int a = 0; a < roleActions.length; a++) {
+            if (roleActions[a].equals(action)) {
+                return a;
+            }
+        }
+        return -1;
     }
 
-    void addActions(JointActions actions) {
-        roles = actions.getRoles();
-        for (Role r : actions.getRoles()) {
-            put(r, actions.get(r), new ActionStatistics());
+    private int indexOrAdd(int roleIndex, Move action) {
+        int a = indexOf(roleIndex, action);
+        if (a < 0) {
+            a = actions[roleIndex].length;
+            actions[roleIndex] = Arrays.copyOf(actions[roleIndex], a + 1);
+            actionScore[roleIndex] = Arrays.copyOf(actionScore[roleIndex], a + 1);
+            actionNumUsed[roleIndex] = Arrays.copyOf(actionNumUsed[roleIndex], a + 1);
+            actionSquaredScore[roleIndex] = Arrays.copyOf(actionSquaredScore[roleIndex], a + 1);
+            if (amafScore != null) {
+                amafScore[roleIndex] = Arrays.copyOf(amafScore[roleIndex], a + 1);
+                amafNumUsed[roleIndex] = Arrays.copyOf(amafNumUsed[roleIndex], a + 1);
+                amafLastIteration[roleIndex] = Arrays.copyOf(amafLastIteration[roleIndex], a + 1);
+            }
+            if (actionHeuristic != null) {
+                actionHeuristic[roleIndex] = Arrays.copyOf(actionHeuristic[roleIndex], a + 1);
+            }
+            actions[roleIndex][a] = action;
         }
+        return a;
+    }
+
+    public int getNumRoles() {
+        return actions.length;
+    }
+
+    public int getRoleIndex(Role role) {
+        return roles == null ? -1 : roles.indexOf(role);
+    }
+
+    public int getNumActions(int roleIndex) {
+        return actions[roleIndex].length;
+    }
+
+    public Move getAction(int roleIndex, int actionIndex) {
+        return actions[roleIndex][actionIndex];
+    }
+
+    public double getScore(int roleIndex, int actionIndex) {
+        return actionScore[roleIndex][actionIndex];
+    }
+
+    public int getNumUsed(int roleIndex, int actionIndex) {
+        return actionNumUsed[roleIndex][actionIndex];
+    }
+
+    public double getSquaredScore(int roleIndex, int actionIndex) {
+        return actionSquaredScore[roleIndex][actionIndex];
     }
 
-    void updateActions(JointActions actions, Map<Role, Double> playoutScore) {
-        for (Role r : actions.getRoles()) {
-            update(r, actions.get(r), playoutScore.get(r));
+    /**
+     * Counts the given score for the action of the given role, if the action is
+     * legal in this node and was not counted yet in the same iteration.
+     * @param iteration Number of the current iteration of the search, greater than 0
+     */
+    public void updateAmaf(int roleIndex, Move action, double score, int iteration) {
+        int a = indexOf(roleIndex, action);
+        if (a < 0) {
+            return;
         }
+        if (amafScore == null) {
+            amafScore = new double[actions.length][];
+            amafNumUsed = new int[actions.length][];
+            amafLastIteration = new int[actions.length][];
+            for (int r = 0; r < actions.length; r++) {
+                amafScore[r] = new double[actions[r].length];
+                amafNumUsed[r] = new int[actions[r].length];
+                amafLastIteration[r] = new int[actions[r].length];
+            }
+        }
+        if (amafLastIteration[roleIndex][a] != iteration) {
+            amafLastIteration[roleIndex][a] = iteration;
+            amafScore[roleIndex][a] += score;
+            amafNumUsed[roleIndex][a]++;
+        }
+    }
+
+    public double getAmafScore(int roleIndex, int actionIndex) {
+        return amafScore == null ? 0 : amafScore[roleIndex][actionIndex];
+    }
+
+    public int getAmafNumUsed(int roleIndex, int actionIndex) {
+        return amafNumUsed == null ? 0 : amafNumUsed[roleIndex][actionIndex];
+    }
+
+    public boolean hasHeuristics() {
+        return actionHeuristic != null;
     }
 
-    private void put(Role role, Move action, ActionStatistics actionStatistics) {
+    /**
+     * @param heuristic Heuristic values by role index and action index
+     */
+    public void setHeuristics(double[][] heuristic) {
+        actionHeuristic = heuristic;
+    }
 
-        Map<Move, ActionStatistics> actionStatisticsMap = map.get(role);
+    public double getHeuristic(int roleIndex, int actionIndex) {
+        return actionHeuristic[roleIndex][actionIndex];
+    }
 
-        if (actionStatisticsMap == null) {
-            Map<Move, ActionStatistics> item = new HashMap<>();
-            item.put(action, actionStatistics);
-            map.put(role, item);
+    /**
+     * @return Index of the action of the given role within the given joint action index
+     */
+    public int getActionIndex(int jointIndex, int roleIndex) {
+        return (jointIndex / getJointActionStride(roleIndex)) % actions[roleIndex].length;
+    }
 
-        } else {
-            actionStatisticsMap.put(action, actionStatistics);
+    /**
+     * @return The number of joint actions, i.e. of combinations of the actions of every role
+     */
+    public int getNumJointActions() {
+        int count = 1;
+        for (Move[] roleActions : actions) {
+            count *= roleActions.length;
         }
+        return count;
     }
 
-    void update(Role role, Move action, double actionScore) {
-        ActionStatistics item = get(role, action);
+    /**
+     * @return The weight of the action index of the given role in a joint action index
+     */
+    public int getJointActionStride(int roleIndex) {
+        int stride = 1;
+        for (int r = 0; r < roleIndex; r++) {
+            stride *= actions[r].length;
+        }
+        return stride;
+    }
 
-        if (item == null) {
-            item = new ActionStatistics();
-            put(role, action, item);
+    public int getJointActionIndex(JointActions jointActions) {
+        int jointIndex = 0;
+        int stride = 1;
+        for (int r = 0; r < actions.length; r++) {
+            int a = indexOf(r, jointActions.get(roles.get(r)));
+            if (a < 0) {
+                return -1;
+            }
+            jointIndex += a * stride;
+            stride *= actions[r].length;
         }
+        return jointIndex;
+    }
 
-        item.actionScore += actionScore;
-        item.actionNumUsed++;
+    public JointActions getJointActions(int jointIndex) {
+        JointActions jointActions = new JointActions(roles);
+        for (int r = 0; r < actions.length; r++) {
+            jointActions.put(roles.get(r), actions[r][jointIndex % actions[r].length]);
+            jointIndex /= actions[r].length;
+        }
+        return jointActions;
     }
 
     ActionStatistics get(Role role, Move action) {
-        Map<Move, ActionStatistics> actionStatisticsMap;
-        actionStatisticsMap = map.get(role);
-
-        if (actionStatisticsMap == null) {
+        int r = getRoleIndex(role);
+        int a = r < 0 ? -1 : indexOf(r, action);
+        if (a < 0) {
             return null;
         }
-
-        return actionStatisticsMap.get(action);
+        return new ActionStatistics(actionScore[r][a], actionNumUsed[r][a]);
     }
 
     Set<Move> getUsedActions(Role role) {
-        return map.get(role).keySet();
+        return new LinkedHashSet<>(Arrays.asList(actions[getRoleIndex(role)]));
     }
 
     public Set<Role> getRoles() {
-        return map.keySet();
+        return roles == null ? Collections.<Role>emptySet() : new LinkedHashSet<>(roles);
+    }
+
+    public List<Role> getRoleList() {
+        return roles;
     }
 
     public ArrayNode toJSONbyJackson(ObjectMapper mapper) {
         ArrayNode statisticsJSON = mapper.createArrayNode();
 
-        for(Role r : roles) {
+        for(int r = 0; r < actions.length; r++) {
             ObjectNode roleJSON = mapper.createObjectNode();
-            roleJSON.put("role", r.toString());
+            roleJSON.put("role", roles.get(r).toString());
 
             ArrayNode actionsStatistics = mapper.createArrayNode();
-            for(Move a : getUsedActions(r)) {
+            for(int a = 0; a < actions[r].length; a++) {
                 ObjectNode actionJSON = mapper.createObjectNode();
 
-                ActionStatistics as = get(r, a);
-                actionJSON.put("action", a.toString());
-                actionJSON.put("averageActionScore", as.actionScore /as.actionNumUsed);
-                actionJSON.put("actionNumUsed", as.actionNumUsed);
+                actionJSON.put("action", actions[r][a].toString());
+                actionJSON.put("averageActionScore", actionScore[r][a] / actionNumUsed[r][a]);
+                actionJSON.put("actionNumUsed", actionNumUsed[r][a]);
 
                 actionsStatistics.add( actionJSON );
             }
@@ -105,13 +316,20 @@ public class StatisticsForActions {
         return statisticsJSON;
     }
 
+    /**
+     * Statistics of one action, as read from the arrays.
+     */
     public static class ActionStatistics {
-        private double actionScore;
-        private int actionNumUsed;
+        private final double actionScore;
+        private final int actionNumUsed;
 
         public ActionStatistics() {
-            actionScore = 0;
-            actionNumUsed = 0;
+            this(0, 0);
+        }
+
+        ActionStatistics(double actionScore, int actionNumUsed) {
+            this.actionScore = actionScore;
+            this.actionNumUsed = actionNumUsed;
         }
 
         public double getScore() {
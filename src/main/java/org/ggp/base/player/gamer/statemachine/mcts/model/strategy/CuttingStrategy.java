@@ -3,6 +3,12 @@ package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
 
+/**
+ * Moves the root of the tree to the node of the current state of the match.
+ * The branches cut off are released node by node (see SearchTree#setRoot),
+ * so they are neither kept alive by whatever still refers to the old root nor
+ * left to the garbage collector when a node pool is configured.
+ */
 public class CuttingStrategy {
     public static void execute(SearchTree tree, SearchTreeNode startRootNode) {
         tree.setRoot(startRootNode);
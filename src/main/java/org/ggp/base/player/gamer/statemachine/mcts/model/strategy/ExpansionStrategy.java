@@ -1,26 +1,45 @@
 package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
 
-import org.ggp.base.player.gamer.statemachine.mcts.model.tree.JointActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
 import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateAnswers;
+import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ExpansionStrategy {
 
-    public static SearchTreeNode execute(SearchTreeNode node) throws MoveDefinitionException {
+    public static SearchTreeNode execute(SearchTreeNode node, SearchPath path) throws MoveDefinitionException {
         if (!isNodeNeedExpanded(node)) {
             return node;
         }
 
-        List<List<Move>> jointMoves = node.getGameModel().getLegalJointMoves(node.getState());
-        for (List<Move> jointMove : jointMoves) {
-            node.createChild(new JointActions(node.getGameModel().getRoles(), jointMove));
-            node.getStatistics().addUsedActions(new JointActions(node.getGameModel().getRoles(), jointMove));
+        // Все запросы к состоянию узла - за один проход, с общими промежуточными результатами
+        StateMachine gameModel = node.getGameModel();
+        StateAnswers answers = gameModel.getAnswers(node.getState());
+
+        // Действия ролей нумеруются один раз; совместные ходы - все их сочетания.
+        // Узел, свернутый при вытеснении, сохранил статистику и только заново получает дочерние узлы
+        if (node.getStatistics().isEmpty()) {
+            List<Role> roles = gameModel.getRoles();
+            List<List<Move>> legalActions = new ArrayList<>(roles.size());
+            for (int i = 0; i < roles.size(); i++) {
+                legalActions.add(answers.getLegalMoves(i));
+            }
+            node.getStatistics().initActions(roles, legalActions);
         }
+        node.createChildren(answers);
+
+        int numJointMoves = node.getStatistics().getNumJointActions();
 
-        return PoolOfStrategies.randomElement(node.getChildren());
+        int selectedMove = node.getRandom().nextInt(numJointMoves);
+        SearchTreeNode selectedChild = node.getChild(selectedMove);
+        path.add(selectedChild, selectedMove);
+        return selectedChild;
     }
 
     private static boolean isNodeNeedExpanded(SearchTreeNode node) {
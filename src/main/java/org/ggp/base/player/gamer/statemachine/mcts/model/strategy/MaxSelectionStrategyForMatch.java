@@ -0,0 +1,19 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+
+/**
+ * Max child: the action with the best average score. Actions that were never
+ * used are not chosen while any other was.
+ */
+public class MaxSelectionStrategyForMatch extends RobustSelectionStrategyForMatch {
+
+    @Override
+    protected double evaluateActionScore(StatisticsForActions actions, int roleIndex, int action) {
+        int numUsed = actions.getNumUsed(roleIndex, action);
+        if (numUsed == 0) {
+            return PoolOfStrategies.MIN_SCORE - 1;
+        }
+        return actions.getScore(roleIndex, action) / numUsed;
+    }
+}
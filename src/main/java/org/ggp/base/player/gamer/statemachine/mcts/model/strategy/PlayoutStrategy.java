@@ -1,32 +1,18 @@
 package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
 
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
-import org.ggp.base.util.statemachine.MachineState;
-import org.ggp.base.util.statemachine.Role;
-import org.ggp.base.util.statemachine.StateMachine;
 
-import java.util.HashMap;
-import java.util.Map;
+/**
+ * Plays a game out from a node to estimate its value. Every tree has its own
+ * instance, used by one thread only.
+ */
+public interface PlayoutStrategy {
 
-public class PlayoutStrategy {
-
-    // Возвращаемое значение - полученные выигрыши для каждой роли
-    public Map<Role, Double> execute(SearchTreeNode startNode) {
-        Map<Role, Double> scores = new HashMap<>();
-        StateMachine gameModel = startNode.getGameModel();
-        int[] depth = new int[1];
-
-        try {
-            MachineState finalState = gameModel.performDepthCharge(startNode.getState(), depth);
-            for (Role r : gameModel.getRoles()) {
-                scores.put(r, (double) gameModel.getGoal(finalState, r));
-            }
-
-            startNode.markPlayout();
-            return scores;
-
-        } catch (Exception e) { //// ????!!!! подумать, что делать
-            throw new RuntimeException(e);
-        }
-    }
+    /**
+     * @param startNode Node to play out from; marked as played out afterwards
+     * @param scores Filled with the goal of every role at the end, by role index
+     * @param path Receives the moves of the playout if it is recording them
+     */
+    void execute(SearchTreeNode startNode, double[] scores, SearchPath path);
 }
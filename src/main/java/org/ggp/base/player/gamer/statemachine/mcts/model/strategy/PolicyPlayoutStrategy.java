@@ -0,0 +1,98 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.propnet.polymorphic.forwardDeadReckon.ForwardDeadReckonInternalMachineState;
+import org.ggp.base.util.propnet.polymorphic.forwardDeadReckon.ForwardDeadReckonLegalMoveInfo;
+import org.ggp.base.util.statemachine.FailsafeStateMachine;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.forwardDeadReckon.ForwardDeadReckonPropnetStateMachine;
+import org.ggp.base.util.statemachine.playoutPolicy.IPlayoutPolicy;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Heavy playouts: the propnet plays the game out with one of the playout
+ * policies of org.ggp.base.util.statemachine.playoutPolicy steering the moves.
+ *
+ * Needs the ForwardDeadReckonPropnetStateMachine (STATE_MACHINE=propnet);
+ * on any other state machine it falls back to random playouts.
+ */
+public class PolicyPlayoutStrategy implements PlayoutStrategy {
+
+    // Длина трассы партии; дальше симуляция обрывается и оценивается как есть
+    private static final int MAX_PLAYOUT_LENGTH = 1000;
+
+    private final Function<ForwardDeadReckonPropnetStateMachine, IPlayoutPolicy> policyFactory;
+    private final RandomPlayoutStrategy fallback = new RandomPlayoutStrategy();
+
+    private StateMachine gameModel;
+    private ForwardDeadReckonPropnetStateMachine propnet;
+    private ForwardDeadReckonPropnetStateMachine.PlayoutInfo playoutInfo;
+    // Состояние, в которое копируется начальное состояние каждой симуляции
+    private ForwardDeadReckonInternalMachineState startState;
+
+    /**
+     * @param policyFactory Creates the policy for the propnet instance of a tree
+     */
+    public PolicyPlayoutStrategy(Function<ForwardDeadReckonPropnetStateMachine, IPlayoutPolicy> policyFactory) {
+        this.policyFactory = policyFactory;
+    }
+
+    @Override
+    public void execute(SearchTreeNode startNode, double[] scores, SearchPath path) {
+        if (startNode.getGameModel() != gameModel) {
+            attach(startNode.getGameModel(), startNode.getRandom().nextLong());
+        }
+        if (propnet == null) {
+            fallback.execute(startNode, scores, path);
+            return;
+        }
+
+        playoutInfo.recordTrace = path.isRecordingPlayout();
+        propnet.copyToInternalState(startNode.getState(), startState);
+        propnet.getDepthChargeResult(startState, playoutInfo);
+
+        if (path.isRecordingPlayout()) {
+            for (int i = 0; i < playoutInfo.playoutLength; i++) {
+                ForwardDeadReckonLegalMoveInfo move = playoutInfo.playoutTrace[i];
+                if (move != null) {
+                    path.addPlayoutMove(move.mRoleIndex, move.mMove);
+                }
+            }
+        }
+
+        List<Role> roles = propnet.getRoles();
+        for (int i = 0; i < roles.size(); i++) {
+            scores[i] = propnet.getGoal(roles.get(i));
+        }
+
+        startNode.markPlayout();
+    }
+
+    /**
+     * @param seed Seed of the propnet's random choices, from the generator of the tree, since every
+     *             propnet instance seeds itself the same way when initialized
+     */
+    private void attach(StateMachine model, long seed) {
+        gameModel = model;
+        if (model instanceof FailsafeStateMachine) {
+            model = ((FailsafeStateMachine) model).getBackingMachine();
+        }
+        if (model instanceof ForwardDeadReckonPropnetStateMachine) {
+            propnet = (ForwardDeadReckonPropnetStateMachine) model;
+            propnet.setPlayoutPolicy(policyFactory.apply(propnet));
+            propnet.setRandomSeed(seed);
+            playoutInfo = propnet.new PlayoutInfo(MAX_PLAYOUT_LENGTH);
+            playoutInfo.cutoffDepth = MAX_PLAYOUT_LENGTH - 2;
+            startState = propnet.createEmptyInternalState();
+        } else {
+            propnet = null;
+            startState = null;
+            GamerLogger.log("StateMachine", "Playout policies need the propnet state machine, playing random playouts instead");
+        }
+    }
+}
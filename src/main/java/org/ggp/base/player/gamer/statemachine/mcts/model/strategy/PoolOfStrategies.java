@@ -1,45 +1,159 @@
 package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
 
-import java.util.Collection;
-import java.util.concurrent.ThreadLocalRandom;
+import org.ggp.base.player.gamer.statemachine.mcts.MCTSConfiguration;
+import org.ggp.base.util.statemachine.playoutPolicy.PlayoutPolicyCriticalResponse;
+import org.ggp.base.util.statemachine.playoutPolicy.PlayoutPolicyGoalGreedy;
+import org.ggp.base.util.statemachine.playoutPolicy.PlayoutPolicyGoalGreedyWithPop;
+import org.ggp.base.util.statemachine.playoutPolicy.PlayoutPolicyLastGoodResponse;
 
+import org.ggp.base.util.statemachine.SplitMixRandom;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The strategies of one search tree. The selection, playout and match
+ * selection strategies are chosen by name from the registries below, by
+ * default from {@link MCTSConfiguration}; every tree gets its own instances,
+ * and its own random generator for them.
+ */
 public class PoolOfStrategies {
 
     static final double MIN_SCORE = 0;
     static final double MAX_SCORE = 100;
 
+    private static final Map<String, Supplier<SelectionStrategy>> SELECTION_STRATEGIES = new LinkedHashMap<>();
+    private static final Map<String, Supplier<PlayoutStrategy>> PLAYOUT_STRATEGIES = new LinkedHashMap<>();
+    private static final Map<String, Supplier<SelectionStrategyForMatch>> MATCH_SELECTION_STRATEGIES = new LinkedHashMap<>();
+
+    static {
+        registerSelectionStrategy("uct", UCTSelectionStrategy::new);
+        registerSelectionStrategy("ucb1tuned", UCB1TunedSelectionStrategy::new);
+        registerSelectionStrategy("rave", RAVESelectionStrategy::new);
+        registerSelectionStrategy("progressivebias", ProgressiveBiasSelectionStrategy::new);
+
+        registerPlayoutStrategy("random", RandomPlayoutStrategy::new);
+        registerPlayoutStrategy("goalgreedy", () -> new PolicyPlayoutStrategy(PlayoutPolicyGoalGreedy::new));
+        registerPlayoutStrategy("goalgreedywithpop", () -> new PolicyPlayoutStrategy(PlayoutPolicyGoalGreedyWithPop::new));
+        registerPlayoutStrategy("lastgoodresponse", () -> new PolicyPlayoutStrategy(PlayoutPolicyLastGoodResponse::new));
+        registerPlayoutStrategy("criticalresponse", () -> new PolicyPlayoutStrategy(PlayoutPolicyCriticalResponse::new));
+
+        registerSelectionStrategyForMatch("robust", RobustSelectionStrategyForMatch::new);
+        registerSelectionStrategyForMatch("max", MaxSelectionStrategyForMatch::new);
+    }
+
+    private final String name;
     private final SelectionStrategy selectionStrategy;
     private final SelectionStrategyForMatch selectionStrategyForMatch;
     private final ExpansionStrategy expansionStrategy;
     private final PlayoutStrategy playoutStrategy;
     private final CuttingStrategy cuttingStrategy;
     private final PropagationStrategy propagationStrategy;
+    private final SplitMixRandom random;
 
     public PoolOfStrategies() {
-        selectionStrategy = new SelectionStrategy();
-        selectionStrategyForMatch = new SelectionStrategyForMatch();
+        this(MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.SELECTION_STRATEGY),
+                MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.PLAYOUT_STRATEGY),
+                MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.MATCH_SELECTION_STRATEGY));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a name is not registered
+     */
+    public PoolOfStrategies(String selection, String playout, String matchSelection) {
+        this(selection, playout, matchSelection, createRandom());
+    }
+
+    private PoolOfStrategies(String selection, String playout, String matchSelection, SplitMixRandom random) {
+        this.random = random;
+        selectionStrategy = create(SELECTION_STRATEGIES, "selection", selection);
+        playoutStrategy = create(PLAYOUT_STRATEGIES, "playout", playout);
+        selectionStrategyForMatch = create(MATCH_SELECTION_STRATEGIES, "match selection", matchSelection);
         expansionStrategy = new ExpansionStrategy();
-        playoutStrategy = new PlayoutStrategy();
         cuttingStrategy = new CuttingStrategy();
         propagationStrategy = new PropagationStrategy();
+        name = selection.toLowerCase() + "/" + playout.toLowerCase() + "/" + matchSelection.toLowerCase();
     }
 
-    static double normalize(double score) {
-        return (score - MIN_SCORE) / (MAX_SCORE - MIN_SCORE);
+    /**
+     * @param spec Names of the selection, playout and match selection strategies,
+     *             separated by slashes, e.g. "rave/random/robust"
+     */
+    public static PoolOfStrategies fromSpec(String spec) {
+        String[] names = spec.split("/");
+        if (names.length != 3) {
+            throw new IllegalArgumentException("Expected selection/playout/matchSelection, got " + spec);
+        }
+        return new PoolOfStrategies(names[0].trim(), names[1].trim(), names[2].trim());
+    }
+
+    /**
+     * @return New instances of the same strategies, for another tree, with a generator split from this one's
+     */
+    public PoolOfStrategies copy() {
+        String[] names = name.split("/");
+        return new PoolOfStrategies(names[0], names[1], names[2], random.split());
     }
 
-    static <T> T randomElement(Collection<T> collection) {
-        int pos = ThreadLocalRandom.current().nextInt(collection.size());
+    private static SplitMixRandom createRandom() {
+        long seed = MCTSConfiguration.getCfgLong(MCTSConfiguration.CfgItem.RANDOM_SEED);
+        return new SplitMixRandom(seed != 0 ? seed : System.nanoTime());
+    }
+
+    private static <T> T create(Map<String, Supplier<T>> registry, String kind, String name) {
+        Supplier<T> factory;
+        synchronized (registry) {
+            factory = registry.get(name.toLowerCase());
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown " + kind + " strategy '" + name + "', expected one of " + registry.keySet());
+        }
+        return factory.get();
+    }
 
-        int i = 0;
-        for (T element : collection) {
-            if (i == pos) {
-                return element;
-            }
-            i++;
+    private static <T> void register(Map<String, Supplier<T>> registry, String name, Supplier<T> factory) {
+        synchronized (registry) {
+            registry.put(name.toLowerCase(), factory);
         }
+    }
+
+    public static void registerSelectionStrategy(String name, Supplier<SelectionStrategy> factory) {
+        register(SELECTION_STRATEGIES, name, factory);
+    }
+
+    public static void registerPlayoutStrategy(String name, Supplier<PlayoutStrategy> factory) {
+        register(PLAYOUT_STRATEGIES, name, factory);
+    }
+
+    public static void registerSelectionStrategyForMatch(String name, Supplier<SelectionStrategyForMatch> factory) {
+        register(MATCH_SELECTION_STRATEGIES, name, factory);
+    }
+
+    public static Set<String> getSelectionStrategyNames() {
+        return Collections.unmodifiableSet(SELECTION_STRATEGIES.keySet());
+    }
+
+    public static Set<String> getPlayoutStrategyNames() {
+        return Collections.unmodifiableSet(PLAYOUT_STRATEGIES.keySet());
+    }
 
-        return null;
+    public static Set<String> getSelectionStrategyForMatchNames() {
+        return Collections.unmodifiableSet(MATCH_SELECTION_STRATEGIES.keySet());
+    }
+
+    static double normalize(double score) {
+        return (score - MIN_SCORE) / (MAX_SCORE - MIN_SCORE);
+    }
+
+    /**
+     * @return The mean of the squared normalized scores, from the mean and the mean square of the raw scores
+     */
+    static double normalizeSquared(double meanScore, double meanSquaredScore) {
+        return (meanSquaredScore - 2 * MIN_SCORE * meanScore + MIN_SCORE * MIN_SCORE) /
+                ((MAX_SCORE - MIN_SCORE) * (MAX_SCORE - MIN_SCORE));
     }
 
     public SelectionStrategy getSelectionStrategy() {
@@ -60,4 +174,16 @@ public class PoolOfStrategies {
     public PropagationStrategy getPropagationStrategy() {
         return propagationStrategy;
     }
+
+    /**
+     * @return The generator of the random choices of the tree, to be used only by the thread growing it
+     */
+    public SplitMixRandom getRandom() {
+        return random;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
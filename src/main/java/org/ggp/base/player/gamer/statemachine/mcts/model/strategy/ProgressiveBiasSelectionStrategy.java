@@ -0,0 +1,70 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+
+import java.util.List;
+
+/**
+ * UCT with progressive bias (Chaslot et al.): a heuristic value of the action,
+ * divided by its number of uses, is added to its score, so the heuristic
+ * guides the first visits and then fades out.
+ *
+ * The heuristic of an action is the average goal value of the role in the
+ * states the action leads to, which is meaningful in the many games that
+ * define goals in non-terminal states. It is computed once per node.
+ */
+public class ProgressiveBiasSelectionStrategy extends UCTSelectionStrategy {
+
+    private static final double BIAS_WEIGHT = 1;
+
+    @Override
+    protected void prepare(SearchTreeNode node) {
+        StatisticsForActions actions = node.getStatistics().getStatisticsForActions();
+        if (actions.hasHeuristics()) {
+            return;
+        }
+
+        StateMachine gameModel = node.getGameModel();
+        List<Role> roles = gameModel.getRoles();
+        double[][] heuristic = new double[actions.getNumRoles()][];
+        int[][] counts = new int[actions.getNumRoles()][];
+        for (int role = 0; role < actions.getNumRoles(); role++) {
+            heuristic[role] = new double[actions.getNumActions(role)];
+            counts[role] = new int[actions.getNumActions(role)];
+        }
+
+        for (int jointIndex = 0; jointIndex < actions.getNumJointActions(); jointIndex++) {
+            SearchTreeNode child = node.getChild(jointIndex);
+            for (int role = 0; role < actions.getNumRoles(); role++) {
+                try {
+                    int action = actions.getActionIndex(jointIndex, role);
+                    heuristic[role][action] += PoolOfStrategies.normalize(gameModel.getGoal(child.getState(), roles.get(role)));
+                    counts[role][action]++;
+                } catch (GoalDefinitionException e) {
+                    // Цель в этом состоянии не определена - оно не влияет на оценку
+                }
+            }
+        }
+
+        for (int role = 0; role < heuristic.length; role++) {
+            for (int action = 0; action < heuristic[role].length; action++) {
+                if (counts[role][action] > 0) {
+                    heuristic[role][action] /= counts[role][action];
+                }
+            }
+        }
+        actions.setHeuristics(heuristic);
+    }
+
+    @Override
+    protected double getExploitationScore(CumulativeStatistics statistics, int role, int action) {
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        return super.getExploitationScore(statistics, role, action) +
+                BIAS_WEIGHT * actions.getHeuristic(role, action) / (actions.getNumUsed(role, action) + 1);
+    }
+}
@@ -1,16 +1,15 @@
 package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
 
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
 import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
-import org.ggp.base.util.statemachine.Role;
-
-import java.util.Map;
 
 public class PropagationStrategy {
-    public static void execute(SearchTreeNode node, Map<Role, Double> playoutScore) {
-        if (!node.isRoot()) {
-            node.getParent().getStatistics().updateUsedActions(node.getPrecedingJointMove(), playoutScore);
-            node.getParent().getStatistics().incNumVisits();
-            execute(node.getParent(), playoutScore);
+    // Узел может иметь несколько родителей, поэтому идем по пути этой итерации, а не по ссылкам на родителя
+    public static void execute(SearchPath path, double[] playoutScore) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            SearchTreeNode parent = path.getNode(i - 1);
+            parent.getStatistics().updateUsedActions(path.getMoveInto(i), playoutScore);
+            parent.getStatistics().incNumVisits();
         }
     }
 }
@@ -0,0 +1,63 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
+
+/**
+ * UCT with rapid action value estimation (Gelly and Silver): the average score
+ * of an action is blended with its all-moves-as-first (AMAF) score, i.e. the
+ * average score of the iterations that played the same action later on, in
+ * the tree or in the playout. The AMAF weight fades as the node gets visits.
+ */
+public class RAVESelectionStrategy extends UCTSelectionStrategy {
+
+    // Число посещений узла, при котором AMAF и обычная оценка весят поровну
+    private static final double RAVE_EQUIVALENCE = 500;
+
+    private int iteration = 0;
+
+    @Override
+    public boolean needsPlayoutMoves() {
+        return true;
+    }
+
+    @Override
+    protected double getExploitationScore(CumulativeStatistics statistics, int role, int action) {
+        double score = super.getExploitationScore(statistics, role, action);
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        int amafNumUsed = actions.getAmafNumUsed(role, action);
+        if (amafNumUsed == 0) {
+            return score;
+        }
+        double amafScore = PoolOfStrategies.normalize(actions.getAmafScore(role, action)) / amafNumUsed;
+        double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * statistics.getNumVisits() + RAVE_EQUIVALENCE));
+        return (1 - beta) * score + beta * amafScore;
+    }
+
+    /**
+     * Every action played below a node of the path, in the tree or in the
+     * playout, counts once for the AMAF statistics of the node.
+     */
+    @Override
+    public void afterPropagation(SearchPath path, double[] playoutScore) {
+        iteration++;
+        for (int i = 0; i < path.size() - 1; i++) {
+            StatisticsForActions actions = path.getNode(i).getStatistics().getStatisticsForActions();
+
+            for (int j = i + 1; j < path.size(); j++) {
+                StatisticsForActions parentActions = path.getNode(j - 1).getStatistics().getStatisticsForActions();
+                int jointIndex = path.getMoveInto(j);
+                for (int role = 0; role < parentActions.getNumRoles(); role++) {
+                    int action = parentActions.getActionIndex(jointIndex, role);
+                    actions.updateAmaf(role, parentActions.getAction(role, action), playoutScore[role], iteration);
+                }
+            }
+
+            for (int k = 0; k < path.getNumPlayoutMoves(); k++) {
+                int role = path.getPlayoutRole(k);
+                actions.updateAmaf(role, path.getPlayoutMove(k), playoutScore[role], iteration);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.PlayoutBuffer;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays uniformly random joint moves until the end of the game.
+ */
+public class RandomPlayoutStrategy implements PlayoutStrategy {
+
+    // Переиспользуется от симуляции к симуляции: у каждого дерева параллельного поиска свой экземпляр стратегии
+    private PlayoutBuffer playoutBuffer;
+
+    @Override
+    public void execute(SearchTreeNode startNode, double[] scores, SearchPath path) {
+        StateMachine gameModel = startNode.getGameModel();
+        List<Role> roles = gameModel.getRoles();
+        PlayoutBuffer buffer = getBuffer(roles.size());
+        Random random = startNode.getRandom();
+
+        try {
+            MachineState finalState;
+            if (path.isRecordingPlayout()) {
+                finalState = startNode.getState();
+                while (gameModel.fillLegalMoves(finalState, buffer)) {
+                    List<Move> jointMove = buffer.chooseRandomJointMove(random);
+                    for (int i = 0; i < jointMove.size(); i++) {
+                        path.addPlayoutMove(i, jointMove.get(i));
+                    }
+                    finalState = gameModel.getNextState(finalState, jointMove);
+                }
+            } else {
+                finalState = gameModel.performDepthCharge(startNode.getState(), null, random, buffer);
+            }
+
+            for (int i = 0; i < roles.size(); i++) {
+                scores[i] = gameModel.getGoal(finalState, roles.get(i));
+            }
+
+            startNode.markPlayout();
+
+        } catch (Exception e) { //// ????!!!! подумать, что делать
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PlayoutBuffer getBuffer(int numRoles) {
+        if (playoutBuffer == null || playoutBuffer.getNumRoles() != numRoles) {
+            playoutBuffer = new PlayoutBuffer(numRoles);
+        }
+        return playoutBuffer;
+    }
+}
@@ -0,0 +1,50 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+
+import java.util.Random;
+
+/**
+ * Robust child: the most used action.
+ */
+public class RobustSelectionStrategyForMatch implements SelectionStrategyForMatch {
+
+    @Override
+    public Move execute(CumulativeStatistics statistics, Role role, Random random) {
+
+        if (statistics.isEmpty()) {
+            return null;
+        }
+
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        int roleIndex = actions.getRoleIndex(role);
+
+        int bestAction = -1;
+        int numBestActions = 0;
+        double bestActionScore = Double.NEGATIVE_INFINITY;
+        for (int action = 0; action < actions.getNumActions(roleIndex); action++) {
+
+            double actionScore = evaluateActionScore(actions, roleIndex, action);
+
+            if (actionScore > bestActionScore) {
+                bestActionScore = actionScore;
+                bestAction = action;
+                numBestActions = 1;
+
+            } else if (actionScore == bestActionScore) {
+                numBestActions++;
+                if (random.nextInt(numBestActions) == 0) {
+                    bestAction = action;
+                }
+            }
+        }
+        return bestAction < 0 ? null : actions.getAction(roleIndex, bestAction);
+    }
+
+    protected double evaluateActionScore(StatisticsForActions actions, int roleIndex, int action) {
+        return actions.getNumUsed(roleIndex, action);
+    }
+}
@@ -5,39 +5,20 @@ import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Random;
 
-public class SelectionStrategyForMatch {
+/**
+ * Chooses the move actually played in the match from the statistics of the root.
+ */
+public interface SelectionStrategyForMatch {
 
-    public Move execute(SearchTreeNode node, Role role) {
-
-        CumulativeStatistics statistics = node.getStatistics();
-
-        if (statistics.isEmpty()) {
-            return null;
-        }
-
-        List<Move> bestActions = new ArrayList<>();
-
-        double bestActionScore = PoolOfStrategies.MIN_SCORE - 1;
-        for (Move action : statistics.getUsedActions(role)) {
-
-            double actionScore = evaluateActionScore(statistics, role, action);
-
-            if (actionScore > bestActionScore) {
-                bestActionScore = actionScore;
-                bestActions.clear();
-                bestActions.add(action);
-
-            } else if (actionScore == bestActionScore) {
-                bestActions.add(action);
-            }
-        }
-        return PoolOfStrategies.randomElement(bestActions);
+    default Move execute(SearchTreeNode node, Role role) {
+        return execute(node.getStatistics(), role, node.getRandom());
     }
 
-    private double evaluateActionScore(CumulativeStatistics statistics, Role role, Move action) {
-        return statistics.get(role, action).getNumUsed();
-    }
+    /**
+     * @param random Generator for breaking ties
+     * @return The move of the given role, or null if nothing was searched yet
+     */
+    Move execute(CumulativeStatistics statistics, Role role, Random random);
 }
@@ -0,0 +1,24 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+
+/**
+ * UCB1-Tuned (Auer et al.): the exploration term is scaled by an upper bound
+ * on the variance of the scores of the action instead of a fixed bias.
+ */
+public class UCB1TunedSelectionStrategy extends UCTSelectionStrategy {
+
+    // Наибольшая дисперсия величины из [0, 1]
+    private static final double MAX_VARIANCE = 0.25;
+
+    @Override
+    protected double getExplorationScore(StatisticsForActions actions, int role, int action, double logNumVisits) {
+        int numUsed = actions.getNumUsed(role, action);
+        double mean = PoolOfStrategies.normalize(actions.getScore(role, action) / numUsed);
+        double meanOfSquares = PoolOfStrategies.normalizeSquared(actions.getScore(role, action) / numUsed,
+                actions.getSquaredScore(role, action) / numUsed);
+
+        double varianceBound = meanOfSquares - mean * mean + Math.sqrt(2 * logNumVisits / numUsed);
+        return Math.sqrt(logNumVisits / numUsed * Math.min(MAX_VARIANCE, varianceBound));
+    }
+}
@@ -0,0 +1,101 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchPath;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+
+import java.util.Random;
+
+/**
+ * UCT: every role independently picks the action with the best UCB1 value.
+ * The variants override the exploration and exploitation terms.
+ */
+public class UCTSelectionStrategy implements SelectionStrategy {
+
+    private static final double EXPLORATION_BIAS = 0.4;
+    private static final double FIRST_PLAY_URGENCY = 10;
+
+    @Override
+    public SearchTreeNode execute(SearchTreeNode node, SearchPath path) {
+        path.add(node, -1);
+
+        while (!node.isLeaf()) {
+            prepare(node);
+            int jointBestActions = getJointBestActions(node.getStatistics(), node.getRandom());
+            node = node.getChild(jointBestActions);
+
+            // Продвигаемся в глубину
+            path.add(node, jointBestActions);
+        }
+        return node;
+    }
+
+    /**
+     * Called for every expanded node on the way down, before its actions are compared.
+     */
+    protected void prepare(SearchTreeNode node) {
+    }
+
+    // Индекс совместного хода из лучших действий всех ролей
+    private int getJointBestActions(CumulativeStatistics statistics, Random random) {
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        double logNumVisits = Math.log(statistics.getNumVisits());
+
+        int jointIndex = 0;
+        int stride = 1;
+        for (int role = 0; role < actions.getNumRoles(); role++) {
+            jointIndex += stride * getBestAction(statistics, role, logNumVisits, random);
+            stride *= actions.getNumActions(role);
+        }
+        return jointIndex;
+    }
+
+    private int getBestAction(CumulativeStatistics statistics, int role, double logNumVisits, Random random) {
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+
+        int bestAction = -1;
+        int numBestActions = 0;
+        double bestActionScore = PoolOfStrategies.MIN_SCORE-1;
+        for (int action = 0; action < actions.getNumActions(role); action++) {
+
+            double actionScore;
+            if (actions.getNumUsed(role, action) == 0) {
+                actionScore = FIRST_PLAY_URGENCY + random.nextDouble();
+            } else {
+                actionScore = getExplorationScore(actions, role, action, logNumVisits) +
+                        getExploitationScore(statistics, role, action);
+            }
+
+            if (actionScore > bestActionScore) {
+                bestActionScore = actionScore;
+                bestAction = action;
+                numBestActions = 1;
+            } else if(actionScore == bestActionScore) {
+                // Равновероятный выбор среди равных без списка
+                numBestActions++;
+                if (random.nextInt(numBestActions) == 0) {
+                    bestAction = action;
+                }
+            }
+        }
+
+        return bestAction;
+    }
+
+    /**
+     * Only called for actions used at least once.
+     */
+    protected double getExplorationScore(StatisticsForActions actions, int role, int action, double logNumVisits) {
+        return EXPLORATION_BIAS * Math.sqrt(2 * logNumVisits / actions.getNumUsed(role, action));
+    }
+
+    /**
+     * Only called for actions used at least once.
+     * @return Average normalized score of the action
+     */
+    protected double getExploitationScore(CumulativeStatistics statistics, int role, int action) {
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        return PoolOfStrategies.normalize(actions.getScore(role, action)) / actions.getNumUsed(role, action);
+    }
+}
@@ -0,0 +1,354 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.statemachine.Role;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary snapshots of a search tree, written straight to a stream
+ * without building any intermediate object graph.
+ *
+ * Layout (all integers are unsigned LEB128 varints, doubles are 8 bytes big-endian):
+ * <pre>
+ * "MCTS" version numRoles role*
+ * node*  in depth-first pre-order, each node being
+ *   flags                       bit 0: playout done, bit 1: has a preceding joint move
+ *   [move-ref * numRoles]       preceding joint move, if any
+ *   n sentence-ref * n          state
+ *   numVisits
+ *   per role: n move-ref * n, numUsed * n, score * n
+ *   numChildren node-ref * numChildren
+ * </pre>
+ * Moves and sentences are interned: a ref is 0 followed by the new string
+ * (length and UTF-8 bytes), which gets the next dictionary index, or the
+ * index of an earlier string plus one. Nodes are numbered in the order they
+ * are written, and a node-ref is likewise 0 followed by the child node, or
+ * the number of a node already written plus one (a node with several parents).
+ * Node ids are not stored, they follow from the state.
+ *
+ * An instance reuses its buffers and is not thread-safe. {@link #toJSON(InputStream)}
+ * converts a snapshot to the JSON of {@link SearchTree#toJSONbyJackson()} for offline viewing.
+ */
+public class BinaryTreeSerializer {
+    private static final byte[] MAGIC = {'M', 'C', 'T', 'S'};
+    private static final int VERSION = 2;
+
+    private static final int FLAG_PLAYOUT = 1;
+    private static final int FLAG_PRECEDING_MOVE = 2;
+
+    private final Map<Object, Integer> dictionary = new HashMap<>();
+    private final Map<SearchTreeNode, Integer> writtenNodes = new IdentityHashMap<>();
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private OutputStream out;
+    private List<Role> roles;
+
+    public void write(SearchTree tree, OutputStream target) throws IOException {
+        out = target;
+        position = 0;
+        dictionary.clear();
+        writtenNodes.clear();
+        roles = tree.getGameModel().getRoles();
+        try {
+            for (byte b : MAGIC) {
+                writeByte(b);
+            }
+            writeVarint(VERSION);
+            writeVarint(roles.size());
+            for (Role role : roles) {
+                writeString(role.toString());
+            }
+            writtenNodes.put(tree.getRoot(), 0);
+            writeNode(tree.getRoot());
+            flushBuffer();
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * @throws java.nio.BufferOverflowException if the snapshot does not fit in the buffer
+     */
+    public void write(SearchTree tree, final ByteBuffer target) throws IOException {
+        write(tree, new OutputStream() {
+            @Override
+            public void write(int b) {
+                target.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                target.put(b, off, len);
+            }
+        });
+    }
+
+    private void writeNode(SearchTreeNode node) throws IOException {
+        JointActions precedingJointMove = node.getPrecedingJointMove();
+        writeVarint((node.isPlayout() ? FLAG_PLAYOUT : 0) | (precedingJointMove != null ? FLAG_PRECEDING_MOVE : 0));
+        if (precedingJointMove != null) {
+            for (Role role : roles) {
+                writeRef(precedingJointMove.get(role));
+            }
+        }
+
+        writeVarint(node.getState().getContents().size());
+        for (GdlSentence sentence : node.getState().getContents()) {
+            writeRef(sentence);
+        }
+
+        CumulativeStatistics statistics = node.getStatistics();
+        writeVarint(statistics.getNumVisits());
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+        for (Role role : roles) {
+            int roleIndex = actions.getRoleIndex(role);
+            if (roleIndex < 0) {
+                writeVarint(0);
+                continue;
+            }
+            int numActions = actions.getNumActions(roleIndex);
+            writeVarint(numActions);
+            for (int action = 0; action < numActions; action++) {
+                writeRef(actions.getAction(roleIndex, action));
+            }
+            for (int action = 0; action < numActions; action++) {
+                writeVarint(actions.getNumUsed(roleIndex, action));
+            }
+            for (int action = 0; action < numActions; action++) {
+                writeLong(Double.doubleToLongBits(actions.getScore(roleIndex, action)));
+            }
+        }
+
+        writeVarint(node.getNumChildren());
+        for (SearchTreeNode child : node.getChildren()) {
+            Integer index = writtenNodes.get(child);
+            if (index != null) {
+                writeVarint(index + 1);
+            } else {
+                writtenNodes.put(child, writtenNodes.size());
+                writeVarint(0);
+                writeNode(child);
+            }
+        }
+    }
+
+    private void writeRef(Object item) throws IOException {
+        Integer index = dictionary.get(item);
+        if (index != null) {
+            writeVarint(index + 1);
+        } else {
+            dictionary.put(item, dictionary.size());
+            writeVarint(0);
+            writeString(item.toString());
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+        }
+        if (bytes.length > buffer.length) {
+            out.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Converts a binary snapshot to the JSON format of {@link SearchTree#toJSONbyJackson()}.
+     */
+    public static ObjectNode toJSON(InputStream in) throws IOException {
+        return new Reader(in).readTree(new ObjectMapper());
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+        private final List<String> nodeIds = new ArrayList<>();
+        private String[] roles;
+
+        Reader(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        ObjectNode readTree(ObjectMapper mapper) throws IOException {
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    throw new IOException("Not a binary tree snapshot");
+                }
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary tree snapshot version " + version);
+            }
+            roles = new String[readVarint()];
+            for (int i = 0; i < roles.length; i++) {
+                roles[i] = readString();
+            }
+            return readNode(mapper);
+        }
+
+        private ObjectNode readNode(ObjectMapper mapper) throws IOException {
+            ObjectNode nodeJSON = mapper.createObjectNode();
+            int nodeIndex = nodeIds.size();
+            nodeIds.add(null);
+            int flags = readVarint();
+
+            ArrayNode precedingJointMove = null;
+            if ((flags & FLAG_PRECEDING_MOVE) != 0) {
+                precedingJointMove = mapper.createArrayNode();
+                for (String role : roles) {
+                    ObjectNode actionJSON = mapper.createObjectNode();
+                    actionJSON.put("role", role);
+                    actionJSON.put("action", readRef());
+                    precedingJointMove.add(actionJSON);
+                }
+            }
+
+            // Same text as MachineState.toString(), from which the node id is derived
+            int numSentences = readVarint();
+            StringBuilder state = new StringBuilder("[");
+            for (int i = 0; i < numSentences; i++) {
+                if (i > 0) {
+                    state.append(", ");
+                }
+                state.append(readRef());
+            }
+            state.append(']');
+
+            ObjectNode statisticsJSON = mapper.createObjectNode();
+            statisticsJSON.put("numVisits", readVarint());
+            ArrayNode statisticsForActions = mapper.createArrayNode();
+            for (String role : roles) {
+                int numActions = readVarint();
+                String[] actions = new String[numActions];
+                int[] numUsed = new int[numActions];
+                for (int i = 0; i < numActions; i++) {
+                    actions[i] = readRef();
+                }
+                for (int i = 0; i < numActions; i++) {
+                    numUsed[i] = readVarint();
+                }
+
+                ObjectNode roleJSON = mapper.createObjectNode();
+                roleJSON.put("role", role);
+                ArrayNode actionsStatistics = mapper.createArrayNode();
+                for (int i = 0; i < numActions; i++) {
+                    ObjectNode actionJSON = mapper.createObjectNode();
+                    actionJSON.put("action", actions[i]);
+                    actionJSON.put("averageActionScore", in.readDouble() / numUsed[i]);
+                    actionJSON.put("actionNumUsed", numUsed[i]);
+                    actionsStatistics.add(actionJSON);
+                }
+                roleJSON.putIfAbsent("actions", actionsStatistics);
+                statisticsForActions.add(roleJSON);
+            }
+            statisticsJSON.putIfAbsent("statisticsForActions", statisticsForActions);
+
+            int numChildren = readVarint();
+
+            String id = UUID.nameUUIDFromBytes(state.toString().getBytes()).toString();
+            nodeIds.set(nodeIndex, id);
+            nodeJSON.put("id", id);
+            if (precedingJointMove != null) {
+                nodeJSON.putIfAbsent("precedingJointMove", precedingJointMove);
+            }
+            nodeJSON.put("state", state.toString());
+            if (numChildren > 0) {
+                nodeJSON.putIfAbsent("statistics", statisticsJSON);
+                ArrayNode childrenJSON = mapper.createArrayNode();
+                for (int i = 0; i < numChildren; i++) {
+                    int ref = readVarint();
+                    if (ref == 0) {
+                        childrenJSON.add(readNode(mapper));
+                    } else {
+                        ObjectNode sharedJSON = mapper.createObjectNode();
+                        sharedJSON.put("id", nodeIds.get(ref - 1));
+                        sharedJSON.put("shared", true);
+                        childrenJSON.add(sharedJSON);
+                    }
+                }
+                nodeJSON.putIfAbsent("children", childrenJSON);
+            }
+            return nodeJSON;
+        }
+
+        private String readRef() throws IOException {
+            int ref = readVarint();
+            if (ref == 0) {
+                String s = readString();
+                dictionary.add(s);
+                return s;
+            }
+            return dictionary.get(ref - 1);
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readVarint()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
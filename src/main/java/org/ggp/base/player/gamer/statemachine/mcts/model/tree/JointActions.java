@@ -50,6 +50,11 @@ public class JointActions {
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return actionsMap.hashCode();
+    }
+
     class RoleComparator implements Comparator<Role> {
         public int compare(Role roleA, Role roleB) {
             int roleA_index = roles.indexOf(roleA);
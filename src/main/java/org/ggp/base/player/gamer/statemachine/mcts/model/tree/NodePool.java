@@ -0,0 +1,57 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.util.statemachine.MachineState;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Nodes that left a search tree, kept to be reused by the same tree instead
+ * of allocating new ones. The pool holds at most a fixed number of nodes; the
+ * others are left to the garbage collector. A capacity of zero disables the
+ * pool.
+ *
+ * Like the tree it belongs to, the pool is used by one thread only.
+ */
+public class NodePool {
+    private final int capacity;
+    private final Deque<SearchTreeNode> nodes = new ArrayDeque<>();
+    private long reused = 0;
+
+    public NodePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return A node of the given tree for the given state, from the pool if it is not empty
+     */
+    SearchTreeNode take(SearchTree treeOwner, MachineState state, JointActions precedingJointMove, int depth) {
+        SearchTreeNode node = nodes.pollFirst();
+        if (node == null) {
+            return new SearchTreeNode(treeOwner, state, precedingJointMove, depth);
+        }
+        reused++;
+        node.reset(state, precedingJointMove, depth);
+        return node;
+    }
+
+    /**
+     * Takes a node that is no longer in the tree; it must have been released.
+     */
+    void put(SearchTreeNode node) {
+        if (nodes.size() < capacity) {
+            nodes.addFirst(node);
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return The number of nodes taken from the pool instead of allocated
+     */
+    public long getReused() {
+        return reused;
+    }
+}
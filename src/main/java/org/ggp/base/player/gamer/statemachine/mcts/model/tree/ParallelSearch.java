@@ -0,0 +1,137 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.player.gamer.statemachine.mcts.MCTSConfiguration;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Root-parallel search: the main tree is grown by the calling thread, while
+ * every helper tree is grown by its own worker thread on its own StateMachine
+ * instance. The trees never share nodes; when the move is chosen their root
+ * statistics are summed and the match selection strategy runs on the total.
+ *
+ * With no helper machines this behaves exactly like the main tree alone.
+ */
+public class ParallelSearch {
+    private final SearchTree mainTree;
+    private final List<SearchTree> helperTrees = new ArrayList<>();
+    private final ExecutorService workers;
+    private final List<Future<Integer>> runningHelpers = new ArrayList<>();
+
+    public ParallelSearch(SearchTree mainTree, List<StateMachine> helperGameModels) {
+        this.mainTree = mainTree;
+        for (StateMachine gameModel : helperGameModels) {
+            helperTrees.add(new SearchTree(gameModel,
+                    MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.TRANSPOSITION_TABLE_SIZE),
+                    mainTree.getStrategies().copy()));
+        }
+        workers = helperTrees.isEmpty() ? null : Executors.newFixedThreadPool(helperTrees.size(), new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MCTS search helper " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public SearchTree getMainTree() {
+        return mainTree;
+    }
+
+    public int getNumThreads() {
+        return helperTrees.size() + 1;
+    }
+
+    /**
+     * Moves the root of every tree to the node of the given state. A tree that
+     * never reached this state starts over from it.
+     */
+    public void advance(MachineState currentState) {
+        advance(mainTree, currentState);
+        for (SearchTree helperTree : helperTrees) {
+            advance(helperTree, currentState);
+        }
+    }
+
+    private static void advance(SearchTree tree, MachineState currentState) {
+        SearchTreeNode startRootNode = tree.findNode(currentState);
+        if (startRootNode == null) {
+            startRootNode = new SearchTreeNode(tree, currentState, null);
+        }
+        tree.cut(startRootNode);
+    }
+
+    /**
+     * Starts growing every helper tree until the given time. The caller is
+     * expected to grow the main tree meanwhile and then call {@link #awaitHelpers()}.
+     */
+    public void startHelpers(final long finishBy) {
+        for (final SearchTree helperTree : helperTrees) {
+            runningHelpers.add(workers.submit(() -> {
+                int iterations = 0;
+                while (System.currentTimeMillis() < finishBy) {
+                    helperTree.grow();
+                    iterations++;
+                }
+                return iterations;
+            }));
+        }
+    }
+
+    /**
+     * Waits for the helpers started by {@link #startHelpers(long)}.
+     * @return The number of iterations done by all helpers together
+     */
+    public int awaitHelpers() {
+        int iterations = 0;
+        for (Future<Integer> helper : runningHelpers) {
+            try {
+                iterations += helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                GamerLogger.logError("GamePlayer", "MCTS search helper failed: " + e.getCause());
+                GamerLogger.logStackTrace("GamePlayer", e);
+            }
+        }
+        runningHelpers.clear();
+        return iterations;
+    }
+
+    /**
+     * Chooses a move from the root statistics of all the trees summed together.
+     */
+    public Move getBestAction(Role choosingRole) {
+        if (helperTrees.isEmpty()) {
+            return mainTree.getBestAction(choosingRole);
+        }
+
+        CumulativeStatistics mergedStatistics = new CumulativeStatistics();
+        mergedStatistics.merge(mainTree.getRoot().getStatistics());
+        for (SearchTree helperTree : helperTrees) {
+            mergedStatistics.merge(helperTree.getRoot().getStatistics());
+        }
+        return mainTree.getStrategies().getSelectionStrategyForMatch().execute(mergedStatistics, choosingRole, mainTree.getRandom());
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
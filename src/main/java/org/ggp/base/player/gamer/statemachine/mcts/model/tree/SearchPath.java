@@ -0,0 +1,102 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.util.statemachine.Move;
+
+import java.util.Arrays;
+
+/**
+ * The nodes visited by one iteration of the search, from the root down, with
+ * the index of the joint move that led into each of them.
+ *
+ * A node may have several parents in the tree (transpositions), so the
+ * results of the iteration are propagated along this path rather than
+ * along parent links.
+ *
+ * When asked to, the path also keeps the moves of the playout that followed
+ * it, for strategies that learn from them (RAVE).
+ *
+ * The path is reused by every iteration; it only allocates when it grows
+ * deeper than before.
+ */
+public class SearchPath {
+    private SearchTreeNode[] nodes = new SearchTreeNode[64];
+    private int[] moves = new int[64];
+    private int size = 0;
+
+    private boolean recordingPlayout = false;
+    private Move[] playoutMoves = new Move[0];
+    private int[] playoutRoles = new int[0];
+    private int playoutSize = 0;
+
+    public void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        Arrays.fill(playoutMoves, 0, playoutSize, null);
+        playoutSize = 0;
+    }
+
+    /**
+     * @param node The next node of the path
+     * @param moveIntoNode Index of the joint move leading to it in the statistics
+     *                     of the previous node, -1 for the first node
+     */
+    public void add(SearchTreeNode node, int moveIntoNode) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        nodes[size] = node;
+        moves[size] = moveIntoNode;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SearchTreeNode getNode(int index) {
+        return nodes[index];
+    }
+
+    public int getMoveInto(int index) {
+        return moves[index];
+    }
+
+    public SearchTreeNode getLast() {
+        return nodes[size - 1];
+    }
+
+    public boolean isRecordingPlayout() {
+        return recordingPlayout;
+    }
+
+    public void setRecordingPlayout(boolean recordingPlayout) {
+        this.recordingPlayout = recordingPlayout;
+    }
+
+    /**
+     * @param roleIndex Index of the role that played the move in the playout
+     */
+    public void addPlayoutMove(int roleIndex, Move move) {
+        if (playoutSize == playoutMoves.length) {
+            int capacity = Math.max(64, playoutSize * 2);
+            playoutMoves = Arrays.copyOf(playoutMoves, capacity);
+            playoutRoles = Arrays.copyOf(playoutRoles, capacity);
+        }
+        playoutMoves[playoutSize] = move;
+        playoutRoles[playoutSize] = roleIndex;
+        playoutSize++;
+    }
+
+    public int getNumPlayoutMoves() {
+        return playoutSize;
+    }
+
+    public Move getPlayoutMove(int index) {
+        return playoutMoves[index];
+    }
+
+    public int getPlayoutRole(int index) {
+        return playoutRoles[index];
+    }
+}
@@ -4,27 +4,85 @@ package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ggp.base.player.gamer.statemachine.mcts.MCTSConfiguration;
 import org.ggp.base.player.gamer.statemachine.mcts.model.strategy.PoolOfStrategies;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.SplitMixRandom;
 import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
 
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 public class SearchTree {
     private final transient StateMachine gameModel;
-    private final transient PoolOfStrategies strategies = new PoolOfStrategies();
+    private final transient PoolOfStrategies strategies;
+    private final transient TranspositionTable transpositions;
+    private final transient SearchPath path = new SearchPath();
+    // Выигрыши ролей в последней симуляции; массив переиспользуется всеми итерациями
+    private final transient double[] playoutScore;
+    private final transient NodePool nodePool;
+    // Предел числа узлов, 0 - без предела; после неудачного вытеснения порог временно выше предела
+    private final transient int maxNodes;
+    private transient int evictionThreshold;
+    private transient int numNodes;
+    private transient long numReleased = 0;
     private SearchTreeNode root;
 
     public SearchTree(StateMachine gameModel) {
+        this(gameModel, MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.TRANSPOSITION_TABLE_SIZE));
+    }
+
+    /**
+     * @param transpositionTableSize Maximum number of nodes indexed by state, 0 for no transpositions
+     */
+    public SearchTree(StateMachine gameModel, int transpositionTableSize) {
+        this(gameModel, transpositionTableSize, new PoolOfStrategies());
+    }
+
+    /**
+     * @param strategies Strategies used only by this tree
+     */
+    public SearchTree(StateMachine gameModel, int transpositionTableSize, PoolOfStrategies strategies) {
+        this(gameModel, transpositionTableSize, strategies,
+                MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.MAX_TREE_NODES),
+                MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.NODE_POOL_SIZE));
+    }
+
+    /**
+     * @param maxNodes Number of nodes above which the least visited leaves are evicted, 0 for no limit
+     * @param nodePoolSize Maximum number of discarded nodes kept for reuse, 0 for none
+     */
+    public SearchTree(StateMachine gameModel, int transpositionTableSize, PoolOfStrategies strategies,
+                      int maxNodes, int nodePoolSize) {
         this.gameModel = gameModel;
+        this.strategies = strategies;
+        path.setRecordingPlayout(strategies.getSelectionStrategy().needsPlayoutMoves());
+        this.transpositions = new TranspositionTable(transpositionTableSize);
+        this.playoutScore = new double[gameModel.getRoles().size()];
+        this.nodePool = new NodePool(nodePoolSize);
+        this.maxNodes = maxNodes;
+        this.evictionThreshold = maxNodes;
         MachineState rootState = gameModel.getInitialState();
         root = new SearchTreeNode(this, rootState, null);
+        numNodes = 1;
+        transpositions.put(root);
     }
 
     public SearchTreeNode findNode(MachineState state) {
+        SearchTreeNode node = transpositions.get(state);
+        if (node != null) {
+            return node;
+        }
+        // Узел мог быть вытеснен из таблицы, но остаться в дереве
         return root.findNodeInSubTree(state);
     }
 
@@ -33,18 +91,24 @@ public class SearchTree {
     }
 
     public void grow() throws MoveDefinitionException {
+        path.clear();
+        if (maxNodes > 0 && numNodes > evictionThreshold) {
+            evict();
+        }
+
         // Выбрать листовой "незавершенный" узел с наибольшей оценкой
-        SearchTreeNode selectedNode = getStrategies().getSelectionStrategy().execute(root);
+        SearchTreeNode selectedNode = getStrategies().getSelectionStrategy().execute(root, path);
 
         // Расширить выбранный узел и выбрать один из дочерних узлов для симуляции игры;
         // если это невозможно, то использовать не расширенный узел
-        selectedNode = getStrategies().getExpansionStrategy().execute(selectedNode);
+        selectedNode = getStrategies().getExpansionStrategy().execute(selectedNode, path);
 
         // Провести симуляцию игры, начиная с выбранного узла
-        Map<Role, Double> playoutScore = getStrategies().getPlayoutStrategy().execute(selectedNode);
+        getStrategies().getPlayoutStrategy().execute(selectedNode, playoutScore, path);
 
-        // Распространить полученные выигрыши
-        getStrategies().getPropagationStrategy().execute(selectedNode, playoutScore);
+        // Распространить полученные выигрыши по пройденному пути
+        getStrategies().getPropagationStrategy().execute(path, playoutScore);
+        getStrategies().getSelectionStrategy().afterPropagation(path, playoutScore);
     }
 
     public Move getBestAction(Role choosingRole) {
@@ -60,15 +124,154 @@ public class SearchTree {
     }
 
     public void setRoot(SearchTreeNode newRoot) {
+        SearchTreeNode oldRoot = root;
         root = newRoot;
-        root.becomeRoot();
+        // Отрезанные ветви не должны оставаться в таблице
+        transpositions.rebuild(root);
+        Set<SearchTreeNode> reachable = collectNodes(root);
+        numNodes = reachable.size();
+        evictionThreshold = maxNodes;
+        if (oldRoot != newRoot) {
+            releaseUnreachable(oldRoot, reachable);
+        }
+    }
+
+    /**
+     * @return A new node of this tree, taken from the node pool if possible
+     */
+    SearchTreeNode newNode(MachineState state, JointActions precedingJointMove, int depth) {
+        numNodes++;
+        return nodePool.take(this, state, precedingJointMove, depth);
+    }
+
+    /**
+     * Collapses the least visited nodes whose children are all leaves, i.e.
+     * forgets those leaves, until the tree is back a tenth below its node
+     * limit. A collapsed node keeps its statistics and is expanded again when
+     * the search returns to it. Called between iterations, when no path holds
+     * any node.
+     */
+    private void evict() {
+        int target = maxNodes - maxNodes / 10;
+        List<SearchTreeNode> frontier = new ArrayList<>();
+        Set<SearchTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        visited.add(root);
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            boolean onlyLeaves = true;
+            for (SearchTreeNode child : node.getChildren()) {
+                onlyLeaves &= child.isLeaf();
+                if (visited.add(child)) {
+                    pending.push(child);
+                }
+            }
+            if (onlyLeaves && !node.isLeaf() && node != root) {
+                frontier.add(node);
+            }
+        }
+        frontier.sort(Comparator.comparingInt(node -> node.getStatistics().getNumVisits()));
+
+        Set<SearchTreeNode> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        int remaining = numNodes;
+        for (SearchTreeNode node : frontier) {
+            if (remaining <= target) {
+                break;
+            }
+            // Лист с несколькими родителями может остаться в дереве; точное число узлов считается ниже
+            remaining -= node.getNumChildren();
+            evicted.addAll(node.getChildren());
+            node.collapse();
+        }
+
+        Set<SearchTreeNode> reachable = collectNodes(root);
+        numNodes = reachable.size();
+        for (SearchTreeNode leaf : evicted) {
+            if (!reachable.contains(leaf)) {
+                release(leaf);
+            }
+        }
+        transpositions.rebuild(root);
+        // Если дерево не удалось сократить, следующая попытка - после заметного роста
+        evictionThreshold = numNodes > target ? numNodes + Math.max(1, maxNodes / 10) : maxNodes;
+    }
+
+    private static Set<SearchTreeNode> collectNodes(SearchTreeNode from) {
+        Set<SearchTreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(from);
+        nodes.add(from);
+        while (!pending.isEmpty()) {
+            for (SearchTreeNode child : pending.pop().getChildren()) {
+                if (nodes.add(child)) {
+                    pending.push(child);
+                }
+            }
+        }
+        return nodes;
     }
 
-    PoolOfStrategies getStrategies() {
+    /**
+     * Releases the nodes below the old root that are not in the tree any more.
+     */
+    private void releaseUnreachable(SearchTreeNode oldRoot, Set<SearchTreeNode> reachable) {
+        Set<SearchTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(oldRoot);
+        visited.add(oldRoot);
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            if (reachable.contains(node)) {
+                continue;
+            }
+            for (SearchTreeNode child : node.getChildren()) {
+                if (visited.add(child)) {
+                    pending.push(child);
+                }
+            }
+            release(node);
+        }
+    }
+
+    private void release(SearchTreeNode node) {
+        node.release();
+        nodePool.put(node);
+        numReleased++;
+    }
+
+    /**
+     * @return The number of nodes in the tree
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /**
+     * @return How many nodes have left the tree so far; when it changes, node
+     *         objects seen before may have been reused for other states
+     */
+    public long getNumReleased() {
+        return numReleased;
+    }
+
+    public NodePool getNodePool() {
+        return nodePool;
+    }
+
+    TranspositionTable getTranspositions() {
+        return transpositions;
+    }
+
+    public PoolOfStrategies getStrategies() {
         return strategies;
     }
 
+    public SplitMixRandom getRandom() {
+        return strategies.getRandom();
+    }
+
     public ObjectNode toJSONbyJackson() {
-        return root.toJSONbyJackson(new ObjectMapper());
+        return root.toJSONbyJackson(new ObjectMapper(), Collections.newSetFromMap(new IdentityHashMap<>()));
     }
 }
\ No newline at end of file
@@ -7,58 +7,102 @@ import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeSt
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.SplitMixRandom;
+import org.ggp.base.util.statemachine.StateAnswers;
 import org.ggp.base.util.statemachine.StateMachine;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
 public class SearchTreeNode {
+    private static final SearchTreeNode[] NO_CHILDREN = new SearchTreeNode[0];
+
     private final transient SearchTree treeOwner;
-    private transient SearchTreeNode parent;
-    private final Set<SearchTreeNode> children;
+    // Различные дочерние узлы; в транспозициях несколько ходов ведут в один узел, но в массиве он один раз
+    private SearchTreeNode[] children;
+    // Дочерние узлы по индексам совместных ходов в статистике; разные ходы могут вести в один узел
+    private transient SearchTreeNode[] childrenByMove;
 
-    private final JointActions precedingJointMove;
+    // Ход, которым узел был создан; при транспозициях в узел ведут и другие ходы
+    private JointActions precedingJointMove;
+    // Число ходов от начала игры; общими бывают только узлы одной глубины, поэтому в дереве нет циклов
+    private transient int depth;
 
-    private final MachineState state;
+    private MachineState state;
     private final CumulativeStatistics statistics;
 
     private boolean isPlayout;
 
-    private final String nodeId; // New field for consistent ID
+    private String nodeId; // New field for consistent ID
 
     public SearchTreeNode(SearchTree treeOwner, MachineState state, JointActions precedingJointMove) {
+        this(treeOwner, state, precedingJointMove, 0);
+    }
+
+    SearchTreeNode(SearchTree treeOwner, MachineState state, JointActions precedingJointMove, int depth) {
         this.treeOwner = treeOwner;
+        this.statistics = new CumulativeStatistics();
+        reset(state, precedingJointMove, depth);
+    }
+
+    /**
+     * Turns the node into a new node of the given state; used for nodes taken from the {@link NodePool}.
+     */
+    void reset(MachineState state, JointActions precedingJointMove, int depth) {
         this.state = state;
         this.precedingJointMove = precedingJointMove;
-        this.children = new HashSet<>();
-        this.statistics = new CumulativeStatistics();
+        this.depth = depth;
+        this.children = NO_CHILDREN;
+        this.childrenByMove = null;
         this.isPlayout = false;
 
         // Generate deterministic ID based on state content - always same ID for same state
         this.nodeId = UUID.nameUUIDFromBytes(state.toString().getBytes()).toString();
     }
 
+    /**
+     * Forgets the children of the node, keeping its own statistics; the node
+     * becomes a leaf and is expanded again if the search comes back to it.
+     */
+    void collapse() {
+        children = NO_CHILDREN;
+        childrenByMove = null;
+    }
+
+    /**
+     * Drops everything the node refers to, once it has left the tree.
+     */
+    void release() {
+        collapse();
+        statistics.clear();
+        state = null;
+        precedingJointMove = null;
+        nodeId = null;
+    }
+
     public StateMachine getGameModel() {
         return treeOwner.getGameModel();
     }
 
     public boolean isLeaf() {
-        return children.isEmpty();
+        return children.length == 0;
     }
 
     public boolean isRoot() {
-        return parent == null;
+        return treeOwner.getRoot() == this;
     }
 
     public String getNodeId() {
         return nodeId;
     }
 
-    void becomeRoot() {
-        this.parent = null;
-    }
-
     public boolean isTerminal() {
         return getGameModel().isTerminal(getState()); //TODO пока так, в mctsref определение посложнее
     }
@@ -83,49 +127,121 @@ public class SearchTreeNode {
         return precedingJointMove;
     }
 
-    public SearchTreeNode getParent() { return parent; }
-
     public SearchTreeNode getChild(final JointActions jointMove) {
-        return children.stream().filter(c -> c.precedingJointMove.equals(jointMove)).findFirst().orElse(null);
+        int jointMoveIndex = childrenByMove == null ? -1 : statistics.getJointActionIndex(jointMove);
+        return jointMoveIndex < 0 ? null : childrenByMove[jointMoveIndex];
     }
 
-    public Set<SearchTreeNode> getChildren() {
-        return new HashSet<>(this.children);
+    /**
+     * @param jointMoveIndex Index of the joint move in the statistics of this node
+     */
+    public SearchTreeNode getChild(int jointMoveIndex) {
+        return childrenByMove[jointMoveIndex];
     }
 
-    public SearchTreeNode createChild(JointActions usedJointMove) {
-        MachineState nextState = getGameModel().getNextState(this.getState(), usedJointMove.toList());
-        SearchTreeNode childNode = new SearchTreeNode(treeOwner, nextState, usedJointMove);
-        linkChildToParent(this, childNode);
-        return childNode;
+    public List<SearchTreeNode> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(children));
     }
 
-    private static void linkChildToParent(SearchTreeNode parentNode, SearchTreeNode childNode) {
-        childNode.parent = parentNode;
-        parentNode.children.add(childNode);
+    public Set<JointActions> getChildMoves() {
+        Set<JointActions> moves = new HashSet<>();
+        if (childrenByMove != null) {
+            for (int i = 0; i < childrenByMove.length; i++) {
+                moves.add(statistics.getJointActions(i));
+            }
+        }
+        return moves;
+    }
+
+    public int getNumChildren() {
+        return children.length;
+    }
+
+    /**
+     * Creates the children reached by every joint move numbered in the
+     * statistics of this node by {@link CumulativeStatistics#initActions},
+     * linking the nodes already in the tree for the resulting states
+     * (transpositions).
+     *
+     * @param answers Answers for the state of this node, which the next states
+     *                are taken from where known; may be null
+     */
+    public void createChildren(StateAnswers answers) {
+        int numJointMoves = statistics.getNumJointActions();
+        SearchTreeNode[] byMove = new SearchTreeNode[numJointMoves];
+        SearchTreeNode[] distinct = new SearchTreeNode[numJointMoves];
+        int numDistinct = 0;
+        for (int i = 0; i < numJointMoves; i++) {
+            JointActions usedJointMove = statistics.getJointActions(i);
+            List<Move> moves = usedJointMove.toList();
+            MachineState nextState = answers == null ? null : answers.getNextState(moves);
+            if (nextState == null) {
+                nextState = getGameModel().getNextState(this.getState(), moves);
+            }
+            SearchTreeNode childNode = treeOwner.getTranspositions().get(nextState);
+            if (childNode == null || childNode.depth != depth + 1) {
+                childNode = treeOwner.newNode(nextState, usedJointMove, depth + 1);
+                treeOwner.getTranspositions().put(childNode);
+                distinct[numDistinct++] = childNode;
+            } else if (!contains(distinct, numDistinct, childNode)) {
+                distinct[numDistinct++] = childNode;
+            }
+            byMove[i] = childNode;
+        }
+        childrenByMove = byMove;
+        children = numDistinct == numJointMoves ? distinct : Arrays.copyOf(distinct, numDistinct);
+    }
+
+    private static boolean contains(SearchTreeNode[] nodes, int size, SearchTreeNode node) {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] == node) {
+                return true;
+            }
+        }
+        return false;
     }
 
     SearchTreeNode findNodeInSubTree(MachineState state) {
-        if (state.equals(getState())) {
-            return this;
-        } else {
-            for (SearchTreeNode child : children) {
-                SearchTreeNode finding = child.findNodeInSubTree(state);
-                if (finding != null) {
-                    return finding;
+        // Узлы с несколькими родителями обходим один раз
+        Set<SearchTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            if (state.equals(node.getState())) {
+                return node;
+            }
+            for (SearchTreeNode child : node.children) {
+                if (visited.add(child)) {
+                    pending.push(child);
                 }
             }
-            return null;
         }
+        return null;
+    }
+
+    /**
+     * @return The random generator of the tree of this node
+     */
+    public SplitMixRandom getRandom() {
+        return treeOwner.getRandom();
     }
 
     public Move getBestAction(Role choosingRole) {
         return treeOwner.getStrategies().getSelectionStrategyForMatch().execute(this, choosingRole);
     }
 
-    ObjectNode toJSONbyJackson(ObjectMapper mapper) {
+    /**
+     * @param written Nodes already in the JSON; a node with several parents
+     *                is written once, and referenced by id afterwards
+     */
+    ObjectNode toJSONbyJackson(ObjectMapper mapper, Set<SearchTreeNode> written) {
         ObjectNode nodeJSON = mapper.createObjectNode();
         nodeJSON.put("id", nodeId);
+        if (!written.add(this)) {
+            nodeJSON.put("shared", true);
+            return nodeJSON;
+        }
 
         if(precedingJointMove != null) {
             nodeJSON.putIfAbsent("precedingJointMove", precedingJointMove.toJSONbyJackson(mapper));
@@ -134,10 +250,10 @@ public class SearchTreeNode {
         if(!isLeaf()) {
             nodeJSON.putIfAbsent("statistics", statistics.toJSONbyJackson(mapper));
 
-            if (!children.isEmpty()) {
+            if (children.length > 0) {
                 ArrayNode childrenJSON = mapper.createArrayNode();
                 for (SearchTreeNode child : children) {
-                    childrenJSON.add(child.toJSONbyJackson(mapper));
+                    childrenJSON.add(child.toJSONbyJackson(mapper, written));
                 }
                 nodeJSON.putIfAbsent("children", childrenJSON);
             }
@@ -0,0 +1,89 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.util.statemachine.MachineState;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the nodes of a search tree by state, so that a state reached by
+ * different move orders is searched only once, and the node of any state is
+ * found in constant time.
+ *
+ * The table holds at most a fixed number of nodes and forgets the least
+ * recently used ones beyond that. A forgotten node stays in the tree; it is
+ * just no longer shared with new transpositions. A capacity of zero disables
+ * the table.
+ */
+public class TranspositionTable {
+    private final int capacity;
+    private final Map<MachineState, SearchTreeNode> nodes;
+    private long evictions = 0;
+
+    public TranspositionTable(final int capacity) {
+        this.capacity = capacity;
+        // Порядок доступа - для вытеснения давно не использованных узлов
+        this.nodes = new LinkedHashMap<MachineState, SearchTreeNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MachineState, SearchTreeNode> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public SearchTreeNode get(MachineState state) {
+        return capacity > 0 ? nodes.get(state) : null;
+    }
+
+    public void put(SearchTreeNode node) {
+        if (capacity > 0) {
+            nodes.put(node.getState(), node);
+        }
+    }
+
+    /**
+     * Forgets every node, then indexes the nodes reachable from the given root.
+     * Called when the root moves, so that the table does not keep the cut
+     * branches alive.
+     */
+    public void rebuild(SearchTreeNode root) {
+        nodes.clear();
+        if (capacity <= 0) {
+            return;
+        }
+        Set<SearchTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        visited.add(root);
+        while (!pending.isEmpty() && nodes.size() < capacity) {
+            SearchTreeNode node = pending.pop();
+            nodes.putIfAbsent(node.getState(), node);
+            for (SearchTreeNode child : node.getChildren()) {
+                if (visited.add(child)) {
+                    pending.push(child);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+}
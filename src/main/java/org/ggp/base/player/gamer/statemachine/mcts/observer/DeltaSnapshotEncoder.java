@@ -0,0 +1,171 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes snapshots of a search tree as differences from the previous snapshot.
+ *
+ * A delta snapshot looks like
+ * <pre>
+ * {"delta": true, "base": "key of the previous snapshot", "root": "root nodeId",
+ *  "nodes": {"nodeId": {...}, ...}}
+ * </pre>
+ * A node that is new since the previous snapshot is written whole, with the
+ * ids of its children instead of the children themselves. A node that only
+ * changed is written with its statistics and playout flag, and with its
+ * children ids if it has new children. Unchanged nodes are not written.
+ * {@link SnapshotReconstructor} turns the deltas back into full trees.
+ *
+ * Changes are found by walking down from the root through the nodes whose
+ * visit count changed: every iteration of the search increments the visits
+ * of all the nodes on its path, so an unchanged node has an unchanged subtree.
+ *
+ * Nodes are told apart by nodeId, which is derived from the state. Node
+ * objects released by the tree may come back for other states, so once the
+ * tree has released nodes the next snapshot is full again.
+ */
+public class DeltaSnapshotEncoder {
+
+    private final Gson treeGson;
+    private final Gson nodeGson;
+
+    // What every node looked like in the previous snapshot
+    private final Map<SearchTreeNode, NodeSummary> lastSeen = new IdentityHashMap<>();
+    private long lastNumReleased = -1;
+
+    /**
+     * @param gsonBuilder Configuration of the full snapshots; node records are
+     *                    serialized the same way, without the children
+     */
+    public DeltaSnapshotEncoder(GsonBuilder gsonBuilder) {
+        treeGson = gsonBuilder.create();
+        nodeGson = gsonBuilder.addSerializationExclusionStrategy(new ChildrenExclusionStrategy()).create();
+    }
+
+    /**
+     * Serializes the whole tree and makes it the base of the next delta.
+     */
+    public String full(SearchTree tree) {
+        lastSeen.clear();
+        lastNumReleased = tree.getNumReleased();
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(tree.getRoot());
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            if (lastSeen.put(node, new NodeSummary(node)) == null) {
+                pending.addAll(node.getChildren());
+            }
+        }
+        return treeGson.toJson(tree);
+    }
+
+    /**
+     * Serializes what changed in the tree since the previous snapshot, or the
+     * whole tree if it released nodes meanwhile.
+     * @param baseKey Key the previous snapshot was stored with
+     */
+    public String delta(SearchTree tree, String baseKey) {
+        if (tree.getNumReleased() != lastNumReleased) {
+            return full(tree);
+        }
+        JsonObject nodes = new JsonObject();
+        Set<SearchTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(tree.getRoot());
+
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+
+            NodeSummary before = lastSeen.get(node);
+            NodeSummary now = new NodeSummary(node);
+            if (before == null) {
+                JsonObject record = nodeGson.toJsonTree(node).getAsJsonObject();
+                record.add("children", childIds(node));
+                nodes.add(node.getNodeId(), record);
+                pending.addAll(node.getChildren());
+            } else if (!now.equals(before)) {
+                JsonObject record = new JsonObject();
+                record.add("statistics", nodeGson.toJsonTree(node.getStatistics()));
+                record.addProperty("isPlayout", node.isPlayout());
+                if (now.numChildren != before.numChildren) {
+                    record.add("children", childIds(node));
+                }
+                nodes.add(node.getNodeId(), record);
+                if (now.numVisits != before.numVisits || now.numChildren != before.numChildren) {
+                    pending.addAll(node.getChildren());
+                }
+            }
+            lastSeen.put(node, now);
+        }
+
+        JsonObject delta = new JsonObject();
+        delta.addProperty("delta", true);
+        delta.addProperty("base", baseKey);
+        delta.addProperty("root", tree.getRoot().getNodeId());
+        delta.add("nodes", nodes);
+        return treeGson.toJson(delta);
+    }
+
+    private static JsonArray childIds(SearchTreeNode node) {
+        JsonArray ids = new JsonArray();
+        for (SearchTreeNode child : node.getChildren()) {
+            ids.add(child.getNodeId());
+        }
+        return ids;
+    }
+
+    private static class NodeSummary {
+        private final int numVisits;
+        private final int numChildren;
+        private final boolean isPlayout;
+
+        NodeSummary(SearchTreeNode node) {
+            numVisits = node.getStatistics().getNumVisits();
+            numChildren = node.getNumChildren();
+            isPlayout = node.isPlayout();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof NodeSummary)) {
+                return false;
+            }
+            NodeSummary summary = (NodeSummary) other;
+            return numVisits == summary.numVisits && numChildren == summary.numChildren && isPlayout == summary.isPlayout;
+        }
+
+        @Override
+        public int hashCode() {
+            return (numVisits * 31 + numChildren) * 2 + (isPlayout ? 1 : 0);
+        }
+    }
+
+    private static class ChildrenExclusionStrategy implements ExclusionStrategy {
+        @Override
+        public boolean shouldSkipField(FieldAttributes f) {
+            return f.getDeclaringClass() == SearchTreeNode.class && f.getName().equals("children");
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Snapshot store backed by Redis. A batch is sent as one pipeline of SETs,
+ * so it costs a single round trip.
+ */
+public class RedisSnapshotStore implements SnapshotStore {
+
+    private final JedisPool jedisPool;
+
+    public RedisSnapshotStore(String host, int port, String password) {
+        // Only the writer thread uses the pool
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(2);
+        poolConfig.setMaxIdle(1);
+        poolConfig.setMinIdle(1);
+        jedisPool = new JedisPool(poolConfig, host, port, 2000, password);
+    }
+
+    /**
+     * @return Whether Redis answers a ping
+     */
+    public boolean ping() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.ping();
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to connect to Redis: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void storeAll(Map<String, byte[]> snapshots) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, byte[]> snapshot : snapshots.entrySet()) {
+                pipeline.set(snapshot.getKey().getBytes(StandardCharsets.UTF_8), snapshot.getValue());
+            }
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!jedisPool.isClosed()) {
+            jedisPool.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTreeNode;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Writes a node that has several parents (a transposition) only once per
+ * tree: its later occurrences become {"nodeId": ..., "shared": true}.
+ * Nodes serialized on their own, outside of a tree, are always written whole.
+ *
+ * Keeps state between calls, so a Gson using it must not be shared between threads.
+ */
+class SharedNodeAdapterFactory implements TypeAdapterFactory {
+    private final Set<SearchTreeNode> written = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean inTree = false;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() == SearchTree.class) {
+            return (TypeAdapter<T>) treeAdapter(gson.getDelegateAdapter(this, TypeToken.get(SearchTree.class)));
+        }
+        if (type.getRawType() == SearchTreeNode.class) {
+            return (TypeAdapter<T>) nodeAdapter(gson.getDelegateAdapter(this, TypeToken.get(SearchTreeNode.class)));
+        }
+        return null;
+    }
+
+    private TypeAdapter<SearchTree> treeAdapter(final TypeAdapter<SearchTree> delegate) {
+        return new TypeAdapter<SearchTree>() {
+            @Override
+            public void write(JsonWriter out, SearchTree tree) throws IOException {
+                written.clear();
+                inTree = true;
+                try {
+                    delegate.write(out, tree);
+                } finally {
+                    inTree = false;
+                    written.clear();
+                }
+            }
+
+            @Override
+            public SearchTree read(JsonReader in) {
+                throw new UnsupportedOperationException("Search trees are only written");
+            }
+        };
+    }
+
+    private TypeAdapter<SearchTreeNode> nodeAdapter(final TypeAdapter<SearchTreeNode> delegate) {
+        return new TypeAdapter<SearchTreeNode>() {
+            @Override
+            public void write(JsonWriter out, SearchTreeNode node) throws IOException {
+                if (inTree && node != null && !written.add(node)) {
+                    out.beginObject();
+                    out.name("nodeId").value(node.getNodeId());
+                    out.name("shared").value(true);
+                    out.endObject();
+                } else {
+                    delegate.write(out, node);
+                }
+            }
+
+            @Override
+            public SearchTreeNode read(JsonReader in) {
+                throw new UnsupportedOperationException("Search trees are only written");
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rebuilds full tree snapshots from a full snapshot and the delta snapshots
+ * written after it by {@link DeltaSnapshotEncoder}.
+ *
+ * As in the full snapshots, a node with several parents is written whole at
+ * its first occurrence and as {"nodeId": ..., "shared": true} at the others.
+ */
+public final class SnapshotReconstructor {
+
+    // Node fields without the children, by nodeId
+    private final Map<String, JsonObject> nodes = new HashMap<>();
+    // Children ids, by nodeId
+    private final Map<String, JsonArray> children = new HashMap<>();
+    private String rootId;
+
+    private SnapshotReconstructor(JsonObject fullSnapshot) {
+        JsonObject root = fullSnapshot.getAsJsonObject("root");
+        rootId = root.get("nodeId").getAsString();
+        addSubTree(root);
+    }
+
+    public static boolean isDelta(String snapshot) {
+        JsonElement delta = JsonParser.parseString(snapshot).getAsJsonObject().get("delta");
+        return delta != null && delta.getAsBoolean();
+    }
+
+    /**
+     * @param fullSnapshot A full snapshot of the tree
+     * @param deltas The delta snapshots that followed it, in order
+     * @return The full snapshot of the tree at the last delta
+     */
+    public static JsonObject reconstruct(String fullSnapshot, List<String> deltas) {
+        SnapshotReconstructor reconstructor = new SnapshotReconstructor(JsonParser.parseString(fullSnapshot).getAsJsonObject());
+        for (String delta : deltas) {
+            reconstructor.apply(JsonParser.parseString(delta).getAsJsonObject());
+        }
+        return reconstructor.build();
+    }
+
+    /**
+     * Follows the "base" links from the given snapshot back to a full one.
+     * @param snapshots Stored snapshots by key, e.g. read from Redis
+     * @param key Key of the snapshot to rebuild
+     * @return The full snapshot stored as, or encoded by, the given key
+     * @throws IllegalArgumentException if a snapshot of the chain is missing
+     */
+    public static JsonObject reconstruct(Map<String, String> snapshots, String key) {
+        List<String> deltas = new ArrayList<>();
+        String current = key;
+        while (true) {
+            String snapshot = snapshots.get(current);
+            if (snapshot == null) {
+                throw new IllegalArgumentException("Missing snapshot " + current + " needed to rebuild " + key);
+            }
+            JsonObject json = JsonParser.parseString(snapshot).getAsJsonObject();
+            JsonElement delta = json.get("delta");
+            if (delta == null || !delta.getAsBoolean()) {
+                Collections.reverse(deltas);
+                return reconstruct(snapshot, deltas);
+            }
+            deltas.add(snapshot);
+            current = json.get("base").getAsString();
+        }
+    }
+
+    private void addSubTree(JsonObject node) {
+        JsonElement shared = node.get("shared");
+        if (shared != null && shared.getAsBoolean()) {
+            return;
+        }
+        JsonObject fields = new JsonObject();
+        JsonArray childIds = new JsonArray();
+        for (Map.Entry<String, JsonElement> field : node.entrySet()) {
+            if (field.getKey().equals("children")) {
+                for (JsonElement child : field.getValue().getAsJsonArray()) {
+                    childIds.add(child.getAsJsonObject().get("nodeId"));
+                    addSubTree(child.getAsJsonObject());
+                }
+            } else {
+                fields.add(field.getKey(), field.getValue());
+            }
+        }
+        String id = fields.get("nodeId").getAsString();
+        nodes.put(id, fields);
+        children.put(id, childIds);
+    }
+
+    private void apply(JsonObject delta) {
+        rootId = delta.get("root").getAsString();
+        for (Map.Entry<String, JsonElement> entry : delta.getAsJsonObject("nodes").entrySet()) {
+            JsonObject fields = nodes.computeIfAbsent(entry.getKey(), id -> new JsonObject());
+            for (Map.Entry<String, JsonElement> field : entry.getValue().getAsJsonObject().entrySet()) {
+                if (field.getKey().equals("children")) {
+                    children.put(entry.getKey(), field.getValue().getAsJsonArray());
+                } else {
+                    fields.add(field.getKey(), field.getValue());
+                }
+            }
+        }
+    }
+
+    private JsonObject build() {
+        JsonObject tree = new JsonObject();
+        tree.add("root", buildNode(rootId, new HashSet<>()));
+        return tree;
+    }
+
+    private JsonObject buildNode(String id, Set<String> built) {
+        JsonObject node = new JsonObject();
+        if (!built.add(id)) {
+            node.addProperty("nodeId", id);
+            node.addProperty("shared", true);
+            return node;
+        }
+
+        JsonArray builtChildren = new JsonArray();
+        // Same field order as the full snapshots
+        node.add("children", builtChildren);
+        for (Map.Entry<String, JsonElement> field : nodes.get(id).entrySet()) {
+            node.add(field.getKey(), field.getValue().deepCopy());
+        }
+
+        JsonArray childIds = children.get(id);
+        if (childIds != null) {
+            for (JsonElement childId : childIds) {
+                builtChildren.add(buildNode(childId.getAsString(), built));
+            }
+        }
+        return node;
+    }
+}
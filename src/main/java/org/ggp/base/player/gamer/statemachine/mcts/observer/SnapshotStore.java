@@ -0,0 +1,20 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import java.util.Map;
+
+/**
+ * Key-value storage that tree snapshots are written to.
+ */
+public interface SnapshotStore {
+
+    /**
+     * Stores a batch of snapshots.
+     * @param snapshots Serialized snapshots by key, in the order they were taken
+     */
+    void storeAll(Map<String, byte[]> snapshots) throws Exception;
+
+    /**
+     * Releases the connections of the store.
+     */
+    void close();
+}
@@ -0,0 +1,220 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Writes tree snapshots to a {@link SnapshotStore} from a background thread,
+ * so that the search thread never waits for the store.
+ *
+ * Snapshots wait in a bounded queue and are written in batches. Droppable
+ * snapshots (tree growth) are skipped while the queue is full, before they
+ * are even serialized; the others (initial and final trees) take the place
+ * of the oldest droppable snapshot still waiting, unless eviction is disabled,
+ * in which case they are queued beyond the capacity.
+ */
+public class SnapshotWriter {
+
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private final SnapshotStore store;
+    private final int capacity;
+    private final int batchSize;
+    private final boolean evictDroppable;
+    private final ArrayDeque<Snapshot> queue = new ArrayDeque<>();
+    private final Thread writerThread;
+    private boolean closed = false;
+    private int inFlight = 0;
+
+    // Metrics, guarded by this
+    private long droppedCount = 0;
+    private long writtenCount = 0;
+    private long failedCount = 0;
+    private long batchCount = 0;
+    private long totalWriteNanos = 0;
+    private long lastWriteNanos = 0;
+
+    public SnapshotWriter(SnapshotStore store, int capacity, int batchSize) {
+        this(store, capacity, batchSize, true);
+    }
+
+    /**
+     * @param evictDroppable Whether queued droppable snapshots may be evicted
+     *                       to make room for the others
+     */
+    public SnapshotWriter(SnapshotStore store, int capacity, int batchSize, boolean evictDroppable) {
+        this.store = store;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.evictDroppable = evictDroppable;
+        writerThread = new Thread(this::writeLoop, "MCTS snapshot writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a snapshot for writing.
+     * @param key Key of the snapshot in the store
+     * @param value Serializes the snapshot; only called if the snapshot may be queued
+     * @param droppable Whether the snapshot may be skipped while the queue is full
+     * @return Whether the snapshot was queued
+     */
+    public boolean offer(String key, Supplier<byte[]> value, boolean droppable) {
+        synchronized (this) {
+            if (closed || (droppable && queue.size() >= capacity)) {
+                droppedCount++;
+                return false;
+            }
+        }
+
+        // Serialize without holding the lock, the writer thread may need it meanwhile
+        Snapshot snapshot = new Snapshot(key, value.get(), droppable);
+
+        synchronized (this) {
+            if (queue.size() >= capacity && !(evictDroppable && evictOldestDroppable()) && droppable) {
+                droppedCount++;
+                return false;
+            }
+            queue.addLast(snapshot);
+            notifyAll();
+            return true;
+        }
+    }
+
+    private boolean evictOldestDroppable() {
+        Iterator<Snapshot> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().droppable) {
+                it.remove();
+                droppedCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                while (!queue.isEmpty() && batch.size() < batchSize) {
+                    Snapshot snapshot = queue.pollFirst();
+                    batch.put(snapshot.key, snapshot.value);
+                }
+                inFlight = batch.size();
+            }
+
+            long start = System.nanoTime();
+            boolean success = true;
+            try {
+                store.storeAll(batch);
+            } catch (Exception e) {
+                success = false;
+                System.err.println("Error writing " + batch.size() + " tree snapshots: " + e.getMessage());
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                if (success) {
+                    writtenCount += batch.size();
+                } else {
+                    failedCount += batch.size();
+                }
+                batchCount++;
+                totalWriteNanos += elapsed;
+                lastWriteNanos = elapsed;
+                inFlight = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued snapshot has been written or the timeout expires.
+     * @return Whether everything was written in time
+     */
+    public synchronized boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining;
+        while ((!queue.isEmpty() || inFlight > 0) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+        }
+        return queue.isEmpty() && inFlight == 0;
+    }
+
+    /**
+     * Writes what is still queued (for a few seconds at most), then stops the
+     * writer thread and closes the store.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+        }
+        store.close();
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getWrittenCount() {
+        return writtenCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized double getLastWriteLatencyMillis() {
+        return lastWriteNanos / 1e6;
+    }
+
+    public synchronized double getAverageWriteLatencyMillis() {
+        return batchCount == 0 ? 0 : totalWriteNanos / 1e6 / batchCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("queued %d, written %d, dropped %d, failed %d, write latency %.1f ms (avg %.1f ms)",
+                queue.size(), writtenCount, droppedCount, failedCount,
+                lastWriteNanos / 1e6, batchCount == 0 ? 0 : totalWriteNanos / 1e6 / batchCount);
+    }
+
+    private static class Snapshot {
+        private final String key;
+        private final byte[] value;
+        private final boolean droppable;
+
+        private Snapshot(String key, byte[] value, boolean droppable) {
+            this.key = key;
+            this.value = value;
+            this.droppable = droppable;
+        }
+    }
+}
@@ -1,19 +1,30 @@
 package org.ggp.base.player.gamer.statemachine.mcts.observer;
 
 import com.google.gson.*;
+import org.ggp.base.player.gamer.statemachine.mcts.MCTSConfiguration;
 import org.ggp.base.player.gamer.statemachine.mcts.event.TreeEvent;
 import org.ggp.base.player.gamer.statemachine.mcts.event.TreeStartEvent;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.BinaryTreeSerializer;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.observer.Event;
 import org.ggp.base.util.observer.Observer;
 import org.ggp.base.util.statemachine.MachineState;
 
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
-
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Stores the search trees it observes in Redis.
+ *
+ * The trees are serialized on the search thread, but written by a
+ * {@link SnapshotWriter} in the background. Growth snapshots are skipped
+ * while the writer is behind, so logging never stalls the search.
+ */
 public class TreeObserver implements Observer {
 
     private final Gson gson;
@@ -22,11 +33,20 @@ public class TreeObserver implements Observer {
     private int growthLogCounter = 0;
     private boolean loggingEnabled = true;
 
+    private final SnapshotWriter writer;
+
+    // Delta snapshots: only what changed since the previous snapshot (null if disabled)
+    private final DeltaSnapshotEncoder deltaEncoder;
+    private String lastQueuedKey = null;
+
+    // Binary snapshots (null if the snapshots are JSON); the buffer is reused between snapshots
+    private final BinaryTreeSerializer binarySerializer;
+    private final ByteArrayOutputStream binaryBuffer = new ByteArrayOutputStream(1 << 16);
+
     // Redis connection configuration
-    private final JedisPool jedisPool;
-    private final String redisHost = "redis";
-    private final int redisPort = 6379;
-    private final String redisPassword = "password";
+    private static final String REDIS_HOST = "redis";
+    private static final int REDIS_PORT = 6379;
+    private static final String REDIS_PASSWORD = "password";
 
     /**
      * Create a TreeObserver with a generated session ID
@@ -40,28 +60,45 @@ public class TreeObserver implements Observer {
      * @param sessionId The session ID to use
      */
     public TreeObserver(String sessionId) {
-        // Initialize redis connection pool
-        JedisPoolConfig poolConfig = new JedisPoolConfig();
-        poolConfig.setMaxTotal(10);
-        poolConfig.setMaxIdle(5);
-        poolConfig.setMinIdle(1);
-        jedisPool = new JedisPool(poolConfig, redisHost, redisPort, 2000, redisPassword);
-
-        // Configure gson for pretty printing
-        gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .registerTypeAdapter(MachineState.class, new MachineStateSerializer())
-                .create();
+        this(sessionId, connectToRedis());
+    }
+
+    /**
+     * Create a TreeObserver writing to the given store
+     * @param sessionId The session ID to use
+     * @param store Where the trees are written
+     */
+    public TreeObserver(String sessionId, SnapshotStore store) {
+        gson = createGsonBuilder().create();
+        boolean deltas = MCTSConfiguration.getCfgBool(MCTSConfiguration.CfgItem.SNAPSHOT_DELTAS);
+        deltaEncoder = deltas ? new DeltaSnapshotEncoder(createGsonBuilder()) : null;
+        // Delta snapshots are JSON, their base has to be JSON too
+        boolean binary = !deltas && MCTSConfiguration.getCfgStr(MCTSConfiguration.CfgItem.SNAPSHOT_FORMAT).equalsIgnoreCase("binary");
+        binarySerializer = binary ? new BinaryTreeSerializer() : null;
 
         this.sessionIdentifier = sessionId;
+        // A delta is useless without the snapshot before it, so queued deltas are never evicted
+        this.writer = new SnapshotWriter(store,
+                MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.SNAPSHOT_QUEUE_CAPACITY),
+                MCTSConfiguration.getCfgInt(MCTSConfiguration.CfgItem.SNAPSHOT_BATCH_SIZE),
+                !deltas);
+    }
+
+    static GsonBuilder createGsonBuilder() {
+        // Compact JSON: pretty printing makes the snapshots much larger and slower to produce
+        return new GsonBuilder()
+                // For the subclasses as well, e.g. BitSetMachineState
+                .registerTypeHierarchyAdapter(MachineState.class, new MachineStateSerializer())
+                .registerTypeAdapter(StatisticsForActions.class, new StatisticsForActionsSerializer())
+                .registerTypeAdapterFactory(new SharedNodeAdapterFactory());
+    }
 
-        // Test Redis connection
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.ping();
+    private static SnapshotStore connectToRedis() {
+        RedisSnapshotStore store = new RedisSnapshotStore(REDIS_HOST, REDIS_PORT, REDIS_PASSWORD);
+        if (store.ping()) {
             System.out.println("Successfully connected to Redis");
-        } catch (Exception e) {
-            System.err.println("Failed to connect to Redis: " + e.getMessage());
         }
+        return store;
     }
 
     @Override
@@ -88,6 +125,8 @@ public class TreeObserver implements Observer {
 
                 // Create Redis key
                 String redisKey;
+                // The first snapshot of a turn is always full, so that delta chains stay short
+                boolean startsTurn = treeEvent.isGrowthEvent() && growthLogCounter == 0;
 
                 if (treeEvent.isGrowthEvent()) {
                     // Format for growth events
@@ -114,7 +153,7 @@ public class TreeObserver implements Observer {
 
                     // Reset growth counter for next turn
                     growthLogCounter = 0;
-                    System.out.println("Completed logging for turn " + treeEvent.getTurnNumber());
+                    System.out.println("Completed logging for turn " + treeEvent.getTurnNumber() + ": " + writer);
                 } else {
                     // For the initial tree
                     String turnId = String.format("%03d", treeEvent.getTurnNumber());
@@ -123,19 +162,41 @@ public class TreeObserver implements Observer {
                             turnId);
                 }
 
-                // Store the tree in Redis
-                try (Jedis jedis = jedisPool.getResource()) {
-                    String jsonTree = gson.toJson(treeEvent.getTree());
-                    jedis.set(redisKey, jsonTree);
-                    System.out.println("Stored tree in Redis with key: " + redisKey);
+                // Queue the tree for Redis; growth snapshots may be dropped if Redis is behind
+                if (binarySerializer != null) {
+                    writer.offer(redisKey, () -> toBinary(treeEvent.getTree()), treeEvent.isGrowthEvent());
+                } else if (deltaEncoder == null) {
+                    writer.offer(redisKey, () -> toBytes(gson.toJson(treeEvent.getTree())), treeEvent.isGrowthEvent());
+                } else {
+                    final String baseKey = startsTurn ? null : lastQueuedKey;
+                    boolean queued = writer.offer(redisKey, () -> toBytes(baseKey == null
+                            ? deltaEncoder.full(treeEvent.getTree())
+                            : deltaEncoder.delta(treeEvent.getTree(), baseKey)), treeEvent.isGrowthEvent());
+                    if (queued) {
+                        lastQueuedKey = redisKey;
+                    }
                 }
             }
         } catch (Exception e) {
-            System.err.println("Error writing to Redis: " + e.getMessage());
+            System.err.println("Error logging tree: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private byte[] toBinary(SearchTree tree) {
+        binaryBuffer.reset();
+        try {
+            binarySerializer.write(tree, binaryBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return binaryBuffer.toByteArray();
+    }
+
+    private static byte[] toBytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Enable or disable logging
      * @param enabled Whether logging should be enabled
@@ -145,12 +206,18 @@ public class TreeObserver implements Observer {
     }
 
     /**
-     * Clean up resources
+     * @return The background writer, with its queue and latency metrics
+     */
+    public SnapshotWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Clean up resources, after writing the snapshots still queued
      */
     public void shutdown() {
-        if (jedisPool != null && !jedisPool.isClosed()) {
-            jedisPool.close();
-        }
+        writer.shutdown();
+        System.out.println("Tree logging stopped: " + writer);
     }
 
     static class MachineStateSerializer implements JsonSerializer<MachineState> {
@@ -165,4 +232,28 @@ public class TreeObserver implements Observer {
             return result;
         }
     }
-}
\ No newline at end of file
+
+    // The same JSON that reflection gave for the former statistics maps: {"map": {role: {action: {...}}}, "roles": [...]}
+    static class StatisticsForActionsSerializer implements JsonSerializer<StatisticsForActions> {
+        @Override
+        public JsonElement serialize(StatisticsForActions src, Type typeOfSrc, JsonSerializationContext context) {
+            JsonObject map = new JsonObject();
+            for (int role = 0; role < src.getNumRoles(); role++) {
+                JsonObject actions = new JsonObject();
+                for (int action = 0; action < src.getNumActions(role); action++) {
+                    JsonObject statistics = new JsonObject();
+                    statistics.addProperty("actionScore", src.getScore(role, action));
+                    statistics.addProperty("actionNumUsed", src.getNumUsed(role, action));
+                    actions.add(src.getAction(role, action).toString(), statistics);
+                }
+                map.add(src.getRoleList().get(role).toString(), actions);
+            }
+            JsonObject result = new JsonObject();
+            result.add("map", map);
+            if (src.getRoleList() != null) {
+                result.add("roles", context.serialize(src.getRoleList()));
+            }
+            return result;
+        }
+    }
+}
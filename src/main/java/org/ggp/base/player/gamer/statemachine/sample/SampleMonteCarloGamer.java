@@ -1,9 +1,11 @@
 package org.ggp.base.player.gamer.statemachine.sample;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.ggp.base.player.gamer.event.GamerSelectedMoveEvent;
-import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.DepthChargeResult;
+import org.ggp.base.util.statemachine.DepthChargeService;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
@@ -21,10 +23,26 @@ import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
  * of the default state machine (which is slow) and mostly due to the algorithm
  * assuming that the opponent plays completely randomly, which is inaccurate.
  *
+ * The depth charges run on every core, each with its own state machine.
+ *
  * @author Sam Schreiber
  */
 public final class SampleMonteCarloGamer extends SampleGamer
 {
+    private DepthChargeService depthCharges;
+
+    @Override
+    public void stateMachineMetaGame(long timeout) throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException
+    {
+        List<StateMachine> machines = new ArrayList<StateMachine>();
+        for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+            StateMachine machine = getInitialStateMachine();
+            machine.initialize(getMatch().getGame().getRules());
+            machines.add(machine);
+        }
+        depthCharges = new DepthChargeService(machines);
+    }
+
     /**
      * Employs a simple sample "Monte Carlo" algorithm.
      */
@@ -38,24 +56,17 @@ public final class SampleMonteCarloGamer extends SampleGamer
         List<Move> moves = theMachine.getLegalMoves(getCurrentState(), getRole());
         Move selection = moves.get(0);
         if (moves.size() > 1) {
-            int[] moveTotalPoints = new int[moves.size()];
-            int[] moveTotalAttempts = new int[moves.size()];
-
-            // Perform depth charges for each candidate move, and keep track
-            // of the total score and total attempts accumulated for each move.
-            for (int i = 0; true; i = (i+1) % moves.size()) {
-                if (System.currentTimeMillis() > finishBy)
-                    break;
-
-                int theScore = performDepthChargeFromMove(getCurrentState(), moves.get(i));
-                moveTotalPoints[i] += theScore;
-                moveTotalAttempts[i] += 1;
-            }
+            // Perform depth charges for each candidate move in turn, on every worker
+            // until the time is up, and keep track of the total score and total
+            // attempts accumulated for each move.
+            int roleIndex = theMachine.getRoleIndices().get(getRole());
+            depthCharges.doPerMoveWork();
+            DepthChargeResult[] results = depthCharges.run(getCurrentState(), getRole(), moves, Integer.MAX_VALUE, finishBy);
 
             // Compute the expected score for each move.
             double[] moveExpectedPoints = new double[moves.size()];
             for (int i = 0; i < moves.size(); i++) {
-                moveExpectedPoints[i] = (double)moveTotalPoints[i] / moveTotalAttempts[i];
+                moveExpectedPoints[i] = results[i].getNumCharges() == 0 ? 0 : (double)results[i].getScoreSum(roleIndex) / results[i].getNumCharges();
             }
 
             // Find the move with the best expected score.
@@ -76,15 +87,20 @@ public final class SampleMonteCarloGamer extends SampleGamer
         return selection;
     }
 
-    private int[] depth = new int[1];
-    int performDepthChargeFromMove(MachineState theState, Move myMove) {
-        StateMachine theMachine = getStateMachine();
-        try {
-            MachineState finalState = theMachine.performDepthCharge(theMachine.getRandomNextState(theState, getRole(), myMove), depth);
-            return theMachine.getGoal(finalState, getRole());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0;
+    @Override
+    public void stateMachineStop() {
+        shutdownDepthCharges();
+    }
+
+    @Override
+    public void stateMachineAbort() {
+        shutdownDepthCharges();
+    }
+
+    private void shutdownDepthCharges() {
+        if (depthCharges != null) {
+            depthCharges.shutdown();
+            depthCharges = null;
         }
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import org.ggp.base.util.statemachine.Role;
 import org.ggp.base.util.statemachine.StateMachine;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class RoleOrdering
@@ -26,7 +27,7 @@ public class RoleOrdering
   public RoleOrdering(StateMachine underlyingStateMachine, Role ourRole)
   {
     int numRoles = underlyingStateMachine.getRoles().size();
-    reorderedRoles = new ArrayList<>(numRoles);
+    reorderedRoles = new ArrayList<>(Collections.nCopies(numRoles, (Role)null));
     roleOrderMap = new int[numRoles];
     inverseRoleOrderMap = new int[numRoles];
     reorderedRoles.set(0, ourRole);
@@ -40,6 +41,7 @@ public class RoleOrdering
       if ( ourRole == null )
       {
         ourRole = role;
+        reorderedRoles.set(0, ourRole);
       }
       if (role.equals(ourRole))
       {
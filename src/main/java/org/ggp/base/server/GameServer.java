@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.ggp.base.server.event.ServerAbortedMatchEvent;
 import org.ggp.base.server.event.ServerCompletedMatchEvent;
@@ -21,7 +22,9 @@ import org.ggp.base.server.event.ServerTimeEvent;
 import org.ggp.base.server.event.ServerTimeoutEvent;
 import org.ggp.base.server.threads.*;
 import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.http.AsyncHttpClient;
 import org.ggp.base.util.match.Match;
+import org.ggp.base.util.match.MatchJournal;
 import org.ggp.base.util.match.MatchPublisher;
 import org.ggp.base.util.observer.Event;
 import org.ggp.base.util.observer.Observer;
@@ -51,11 +54,22 @@ public final class GameServer extends Thread implements Subject
     private Map<Role,String> mostRecentErrors;
 
     private String saveToFilename;
+    private String journalFilename;
+    private MatchJournal journal;
     private String spectatorServerURL;
     private String spectatorServerKey;
     private boolean forceUsingEntireClock;
+    private AsyncHttpClient requestClient;
 
     public GameServer(Match match, List<String> hosts, List<Integer> ports) {
+        this(match, hosts, ports, createStateMachine(match));
+    }
+
+    /**
+     * @param stateMachine Referee of the match, initialized with the rules of its game,
+     *                     e.g. reused from a previous match. The server is its only user until the match ends.
+     */
+    public GameServer(Match match, List<String> hosts, List<Integer> ports, StateMachine stateMachine) {
         this.match = match;
 
         this.hosts = hosts;
@@ -63,15 +77,14 @@ public final class GameServer extends Thread implements Subject
 
         playerGetsUnlimitedTime = new boolean[hosts.size()];
         playerPlaysRandomly = new boolean[hosts.size()];
-        List<Role> roles = Role.computeRoles(match.getGame().getRules());
+        List<Role> roles = stateMachine.getRoles();
         for (int r = 0; r < roles.size(); r++) {
             if (roles.get(r).getName() == GdlPool.RANDOM) {
                 playerPlaysRandomly[r] = true;
             }
         }
 
-        stateMachine = new ProverStateMachine();
-        stateMachine.initialize(match.getGame().getRules());
+        this.stateMachine = stateMachine;
         currentState = stateMachine.getInitialState();
         previousMoves = null;
 
@@ -85,10 +98,32 @@ public final class GameServer extends Thread implements Subject
         forceUsingEntireClock = false;
     }
 
+    private static StateMachine createStateMachine(Match match) {
+        StateMachine stateMachine = new ProverStateMachine();
+        stateMachine.initialize(match.getGame().getRules());
+        return stateMachine;
+    }
+
+    /**
+     * Sends the requests of the match through the client, which may be shared by many servers,
+     * instead of a thread per request.
+     */
+    public void setRequestClient(AsyncHttpClient requestClient) {
+        this.requestClient = requestClient;
+    }
+
     public void startSavingToFilename(String theFilename) {
         saveToFilename = theFilename;
     }
 
+    /**
+     * Records the match in a {@link MatchJournal} as it is played, appending every step
+     * instead of rewriting the whole match as startSavingToFilename does.
+     */
+    public void startJournalingToFilename(String theFilename) {
+        journalFilename = theFilename;
+    }
+
     public String startPublishingToSpectatorServer(String theURL) {
         spectatorServerURL = theURL;
         return publishWhenNecessary();
@@ -162,6 +197,7 @@ public final class GameServer extends Thread implements Subject
             while (!stateMachine.isTerminal(currentState)) {
                 publishWhenNecessary();
                 saveWhenNecessary();
+                journalWhenNecessary();
                 notifyObservers(new ServerNewGameStateEvent(currentState));
                 notifyObservers(new ServerTimeEvent(match.getPlayClock() * 1000));
                 notifyObservers(new ServerMatchUpdatedEvent(match, spectatorServerKey, saveToFilename));
@@ -181,6 +217,7 @@ public final class GameServer extends Thread implements Subject
             match.markCompleted(stateMachine.getGoals(currentState));
             publishWhenNecessary();
             saveWhenNecessary();
+            journalWhenNecessary();
             notifyObservers(new ServerNewGameStateEvent(currentState));
             notifyObservers(new ServerCompletedMatchEvent(getGoals()));
             notifyObservers(new ServerMatchUpdatedEvent(match, spectatorServerKey, saveToFilename));
@@ -201,6 +238,7 @@ public final class GameServer extends Thread implements Subject
             match.markAborted();
             sendAbortRequests();
             saveWhenNecessary();
+            journalWhenNecessary();
             publishWhenNecessary();
             notifyObservers(new ServerAbortedMatchEvent());
             notifyObservers(new ServerMatchUpdatedEvent(match, spectatorServerKey, saveToFilename));
@@ -229,6 +267,29 @@ public final class GameServer extends Thread implements Subject
         }
     }
 
+    private void journalWhenNecessary() {
+        // abort() journals from another thread, while the server thread may hold the server's lock
+        synchronized (match) {
+            if (journalFilename == null) {
+                return;
+            }
+
+            try {
+                if (journal == null) {
+                    journal = new MatchJournal(new File(journalFilename), match);
+                } else {
+                    journal.update();
+                }
+                if (match.isCompleted() || match.isAborted()) {
+                    journal.close();
+                    journalFilename = null;
+                }
+            } catch (IOException ie) {
+                ie.printStackTrace();
+            }
+        }
+    }
+
     private String publishWhenNecessary() {
         if (spectatorServerURL == null) {
             return null;
@@ -263,17 +324,15 @@ public final class GameServer extends Thread implements Subject
                 threads.add(new PlayRequestThread(this, match, previousMoves, legalMoves, stateMachine.getRoles().get(i), hosts.get(i), ports.get(i), getPlayerNameFromMatchForRequest(i), playerGetsUnlimitedTime[i]));
             }
         }
-        for (PlayRequestThread thread : threads) {
-            thread.start();
-        }
+        List<CompletableFuture<String>> responses = issueRequests(threads);
 
         if (forceUsingEntireClock) {
             Thread.sleep(match.getPlayClock() * 1000);
         }
 
+        awaitResponses(threads, responses);
         List<Move> moves = new ArrayList<Move>();
         for (PlayRequestThread thread : threads) {
-            thread.join();
             moves.add(thread.getMove());
         }
 
@@ -288,15 +347,11 @@ public final class GameServer extends Thread implements Subject
                 threads.add(new GetGameVisualsRequestThread(this, match, stateMachine.getRoles().get(i), hosts.get(i), ports.get(i), getPlayerNameFromMatchForRequest(i)));
             }
         }
-        for (RequestThread thread : threads) {
-            thread.start();
-        }
+        List<CompletableFuture<String>> responses = issueRequests(threads);
         if (forceUsingEntireClock) {
             Thread.sleep(match.getPreviewClock() * 1000);
         }
-        for (RequestThread thread : threads) {
-            thread.join();
-        }
+        awaitResponses(threads, responses);
     }
 
     private synchronized void sendStartRequests() throws InterruptedException {
@@ -306,15 +361,11 @@ public final class GameServer extends Thread implements Subject
                 threads.add(new StartRequestThread(this, match, stateMachine.getRoles().get(i), hosts.get(i), ports.get(i), getPlayerNameFromMatchForRequest(i)));
             }
         }
-        for (StartRequestThread thread : threads) {
-            thread.start();
-        }
+        List<CompletableFuture<String>> responses = issueRequests(threads);
         if (forceUsingEntireClock) {
             Thread.sleep(match.getStartClock() * 1000);
         }
-        for (StartRequestThread thread : threads) {
-            thread.join();
-        }
+        awaitResponses(threads, responses);
     }
 
     private synchronized void sendStopRequests(List<Move> previousMoves) throws InterruptedException {
@@ -324,12 +375,7 @@ public final class GameServer extends Thread implements Subject
                 threads.add(new StopRequestThread(this, match, previousMoves, stateMachine.getRoles().get(i), hosts.get(i), ports.get(i), getPlayerNameFromMatchForRequest(i)));
             }
         }
-        for (StopRequestThread thread : threads) {
-            thread.start();
-        }
-        for (StopRequestThread thread : threads) {
-            thread.join();
-        }
+        awaitResponses(threads, issueRequests(threads));
     }
 
     private void sendAbortRequests() throws InterruptedException {
@@ -339,13 +385,36 @@ public final class GameServer extends Thread implements Subject
                 threads.add(new AbortRequestThread(this, match, stateMachine.getRoles().get(i), hosts.get(i), ports.get(i), getPlayerNameFromMatchForRequest(i)));
             }
         }
-        for (AbortRequestThread thread : threads) {
-            thread.start();
+        awaitResponses(threads, issueRequests(threads));
+        interrupt();
+    }
+
+    /**
+     * Starts the requests, or sends them through the request client if there is one.
+     * @return Their responses, or null if they were started as threads
+     */
+    private List<CompletableFuture<String>> issueRequests(List<? extends RequestThread> threads) {
+        if (requestClient == null) {
+            for (RequestThread thread : threads) {
+                thread.start();
+            }
+            return null;
+        }
+        List<CompletableFuture<String>> responses = new ArrayList<CompletableFuture<String>>(threads.size());
+        for (RequestThread thread : threads) {
+            responses.add(thread.issue(requestClient));
         }
-        for (AbortRequestThread thread : threads) {
-            thread.join();
+        return responses;
+    }
+
+    private void awaitResponses(List<? extends RequestThread> threads, List<CompletableFuture<String>> responses) throws InterruptedException {
+        for (int i = 0; i < threads.size(); i++) {
+            if (responses == null) {
+                threads.get(i).join();
+            } else {
+                threads.get(i).awaitResponse(responses.get(i));
+            }
         }
-        interrupt();
     }
 
     public void givePlayerUnlimitedTime(int i) {
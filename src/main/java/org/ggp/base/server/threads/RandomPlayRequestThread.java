@@ -1,8 +1,10 @@
 package org.ggp.base.server.threads;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 
+import org.ggp.base.util.http.AsyncHttpClient;
 import org.ggp.base.util.match.Match;
 import org.ggp.base.util.statemachine.Move;
 
@@ -28,4 +30,16 @@ public final class RandomPlayRequestThread extends PlayRequestThread
     {
         ;
     }
+
+    @Override
+    public CompletableFuture<String> issue(AsyncHttpClient client)
+    {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void awaitResponse(CompletableFuture<String> response)
+    {
+        ;
+    }
 }
\ No newline at end of file
@@ -3,10 +3,13 @@ package org.ggp.base.server.threads;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.ggp.base.server.GameServer;
 import org.ggp.base.server.event.ServerConnectionErrorEvent;
 import org.ggp.base.server.event.ServerTimeoutEvent;
+import org.ggp.base.util.http.AsyncHttpClient;
 import org.ggp.base.util.http.HttpRequest;
 import org.ggp.base.util.statemachine.Role;
 
@@ -20,6 +23,11 @@ import org.ggp.base.util.statemachine.Role;
  * that the concrete RequestThread subclasses can focus on request-specific
  * business logic.
  *
+ * Instead of being started, a request can also be sent through an
+ * {@link AsyncHttpClient} with {@link #issue}, and its response handled by
+ * the waiting thread with {@link #awaitResponse}, so that no thread is
+ * created for it.
+ *
  * @author schreib
  */
 public abstract class RequestThread extends Thread
@@ -51,11 +59,41 @@ public abstract class RequestThread extends Thread
         try {
             String response = HttpRequest.issueRequest(host, port, playerName, request, timeout);
             handleResponse(response);
-        } catch (SocketTimeoutException e) {
+        } catch (IOException e) {
+            reportFailure(e);
+        }
+    }
+
+    /**
+     * Sends the request without blocking, in place of starting the thread.
+     */
+    public CompletableFuture<String> issue(AsyncHttpClient client)
+    {
+        return client.issueRequest(host, port, playerName, request, timeout);
+    }
+
+    /**
+     * Waits for the response of {@link #issue} and handles it as {@link #run} would.
+     */
+    public void awaitResponse(CompletableFuture<String> response) throws InterruptedException
+    {
+        String content;
+        try {
+            content = response.get();
+        } catch (ExecutionException e) {
+            reportFailure(e.getCause());
+            return;
+        }
+        handleResponse(content);
+    }
+
+    private void reportFailure(Throwable e)
+    {
+        if (e instanceof SocketTimeoutException) {
             gameServer.notifyObservers(new ServerTimeoutEvent(role));
-        } catch (UnknownHostException e) {
+        } else if (e instanceof UnknownHostException) {
             gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
-        } catch (IOException e) {
+        } else {
             gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
         }
     }
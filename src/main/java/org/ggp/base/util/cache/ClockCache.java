@@ -0,0 +1,140 @@
+package org.ggp.base.util.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded cache that maps keys of type K to values of type V, safe
+ * to share between threads. Lookups are lock-free: they only read from a
+ * ConcurrentHashMap and mark the entry as recently used. Insertions take the
+ * cache's monitor, and once the cache is full each one evicts an entry
+ * chosen by the CLOCK algorithm: a hand sweeps over the entries, clearing
+ * the mark of recently used ones and evicting the first one found unmarked.
+ * This approximates evicting the least recently used entry without keeping
+ * any ordering on lookups.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public final class ClockCache<K, V>
+{
+    private static final class Slot<K, V>
+    {
+        public final K key;
+        public final V value;
+        public volatile boolean referenced;
+
+        public Slot(K key, V value)
+        {
+            this.key = key;
+            this.value = value;
+            this.referenced = true;
+        }
+    }
+
+    private final int capacity;
+    private final ConcurrentHashMap<K, Slot<K, V>> contents;
+    // The ring the hand of the clock sweeps over; guarded by this
+    private final Slot<K, V>[] ring;
+    private int used = 0;
+    private int hand = 0;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of entries, at least one
+     */
+    @SuppressWarnings("unchecked")
+    public ClockCache(int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Cache capacity must be positive, got " + capacity);
+        this.capacity = capacity;
+        this.contents = new ConcurrentHashMap<K, Slot<K, V>>(Math.min(capacity, 1 << 16));
+        this.ring = (Slot<K, V>[]) new Slot<?, ?>[capacity];
+    }
+
+    /**
+     * @return The value cached for the key, or null
+     */
+    public V get(K key)
+    {
+        Slot<K, V> slot = contents.get(key);
+        if (slot == null)
+            return null;
+
+        // Only write when needed, so that hot entries are not written by every thread
+        if (!slot.referenced)
+            slot.referenced = true;
+        return slot.value;
+    }
+
+    /**
+     * Returns the value cached for the key, creating and caching it if there
+     * is none. The factory may be called by several threads for the same key,
+     * but only one of the values is cached and returned to all of them.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> factory)
+    {
+        V value = get(key);
+        if (value != null)
+            return value;
+
+        V created = factory.apply(key);
+        synchronized (this)
+        {
+            Slot<K, V> existing = contents.get(key);
+            if (existing != null)
+                return existing.value;
+
+            int position;
+            if (used < capacity)
+            {
+                position = used++;
+            }
+            else
+            {
+                while (ring[hand].referenced)
+                {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % capacity;
+                }
+                contents.remove(ring[hand].key);
+                evictions.increment();
+                position = hand;
+                hand = (hand + 1) % capacity;
+            }
+            Slot<K, V> slot = new Slot<K, V>(key, created);
+            ring[position] = slot;
+            contents.put(key, slot);
+            return created;
+        }
+    }
+
+    public int size()
+    {
+        return contents.size();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return The number of entries evicted to make room for new ones
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    public synchronized void clear()
+    {
+        contents.clear();
+        for (int i = 0; i < used; i++)
+            ring[i] = null;
+        used = 0;
+        hand = 0;
+    }
+}
@@ -1,9 +1,9 @@
 package org.ggp.base.util.game;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 
+import org.ggp.base.util.cache.ClockCache;
+
 /**
  * Game repositories contain games, and provide two main services: you can
  * query a repository to get a list of available games (by key), and given
@@ -12,22 +12,37 @@ import java.util.Set;
  * All queries to a game repository are cached, and the caching is handled
  * in this abstract base class. Concrete subclasses will implement the actual
  * behavior required for fetching games from the underlying repositories.
+ * The games are kept in a bounded cache that can be shared between threads,
+ * so that a repository used by a long-running server doesn't grow with every
+ * game it was ever asked for.
  *
  * @author Sam
  */
 public abstract class GameRepository {
+    public static final int DEFAULT_CACHE_CAPACITY = 256;
+
     public static GameRepository getDefaultRepository() {
         return new CloudGameRepository("games.ggp.org/base");
     }
 
+    protected GameRepository() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    protected GameRepository(int theCacheCapacity) {
+        theGames = new ClockCache<String, Game>(theCacheCapacity);
+    }
+
     public Game getGame(String theKey) {
-        if (!theGames.containsKey(theKey)) {
-            Game theGame = getUncachedGame(theKey);
-            if (theGame != null) {
-                theGames.put(theKey, theGame);
+        Game theGame = theGames.get(theKey);
+        if (theGame == null) {
+            // Missing games are not cached, so that they can show up later
+            final Game theFetchedGame = getUncachedGame(theKey);
+            if (theFetchedGame != null) {
+                theGame = theGames.computeIfAbsent(theKey, k -> theFetchedGame);
             }
         }
-        return theGames.get(theKey);
+        return theGame;
     }
 
     public Set<String> getGameKeys() {
@@ -42,6 +57,6 @@ public abstract class GameRepository {
     protected abstract Set<String> getUncachedGameKeys();
 
     // Cached values, lazily filled.
-    private Set<String> theGameKeys;
-    private Map<String, Game> theGames = new HashMap<String, Game>();
-}
\ No newline at end of file
+    private volatile Set<String> theGameKeys;
+    private final ClockCache<String, Game> theGames;
+}
@@ -1,334 +1,391 @@
 package org.ggp.base.util.game;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import org.ggp.base.util.statemachine.Role;
-
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import external.JSON.JSONException;
 import external.JSON.JSONObject;
 
 /**
  * Local game repositories provide access to game resources stored on the
- * local disk, bundled with the GGP Base project. For consistency with the
- * web-based GGP.org infrastructure, this starts a simple HTTP server that
- * provides access to the local game resources, and then uses the standard
- * RemoteGameRepository interface to read from that server.
+ * local disk, bundled with the GGP Base project. Games are read directly
+ * from the games/games directory: each game is a directory holding its
+ * METADATA and the files it names, possibly with newer versions of them in
+ * v1, v2, ... subdirectories, as on the GGP.org repository servers.
+ *
+ * Games can also come in bundles: zip archives such as all_games.zip, and
+ * directories such as all_games_from_Sancho, whose game directories are
+ * listed under their own keys. A game directory directly under games/games
+ * takes precedence over a bundled game with the same key, and otherwise the
+ * bundles are searched in the order of their names.
+ *
+ * Nothing is read until it's asked for: looking up a game directly under
+ * games/games reads only that game, and the bundles are only indexed when
+ * the list of games is needed or a game isn't found directly.
  *
  * @author Sam
  */
 public final class LocalGameRepository extends GameRepository {
-    private static final int REPO_SERVER_PORT = 9140;
-    private static HttpServer theLocalRepoServer = null;
-    private static String theLocalRepoURL = "http://127.0.0.1:" + REPO_SERVER_PORT;
+    // Local games used to be served over HTTP from this address. Their URLs
+    // keep that form, since saved matches and the server apps tell local games
+    // apart from published ones by it.
+    private static final String theLocalRepoURL = "http://127.0.0.1:9140";
+    private static final String theLocalGamesURL = theLocalRepoURL + "/games/";
 
-    private static RemoteGameRepository theRealRepo;
+    private final File theGamesDirectory;
+    private final String theRootURL;
+
+    // Where each game of the repository is, in bundles included; lazily filled.
+    private Map<String, GameLocation> theIndex;
 
     public LocalGameRepository() {
-        synchronized (LocalGameRepository.class) {
-            if (theLocalRepoServer == null) {
-                try {
-                    theLocalRepoServer = HttpServer.create(new InetSocketAddress(REPO_SERVER_PORT), 0);
-                    theLocalRepoServer.createContext("/", new LocalRepoServer());
-                    theLocalRepoServer.setExecutor(null); // creates a default executor
-                    theLocalRepoServer.start();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        }
+        this(new File("games"));
+    }
 
-        theRealRepo = new RemoteGameRepository(theLocalRepoURL);
+    /**
+     * @param theRootDirectory Directory holding the games directory and the
+     * shared resources that stylesheets refer to
+     */
+    public LocalGameRepository(File theRootDirectory) {
+        theGamesDirectory = new File(theRootDirectory, "games");
+        String theURL = theRootDirectory.getAbsoluteFile().toURI().toString();
+        theRootURL = theURL.endsWith("/") ? theURL.substring(0, theURL.length()-1) : theURL;
     }
 
-    public void cleanUp()
-    {
-        if (theLocalRepoServer != null) {
-            theLocalRepoServer.stop(0);
+    public static boolean isLocalGameURL(String theGameURL) {
+        return theGameURL.startsWith(theLocalGamesURL);
+    }
+
+    /**
+     * Looks up a game by the URL this repository gives it, in the version
+     * the URL names, or in the latest version when it names none.
+     *
+     * @return The game, or null if the URL isn't that of a local game or the
+     * game doesn't have that version
+     */
+    public Game getGameByURL(String theGameURL) {
+        if (!isLocalGameURL(theGameURL)) {
+            return null;
+        }
+        String[] thePath = theGameURL.substring(theLocalGamesURL.length()).split("/");
+        String theKey = thePath[0];
+        Game theGame = getGame(theKey);
+        if (thePath.length == 1 || theGame == null || theGame.getRepositoryURL().equals(theGameURL)) {
+            return theGame;
+        }
+        if (thePath.length > 2 || !isVersionName(thePath[1])) {
+            return null;
+        }
+        try {
+            return loadGame(theKey, Integer.parseInt(thePath[1].substring(1)));
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
     @Override
     protected Game getUncachedGame(String theKey) {
-        return theRealRepo.getGame(theKey);
+        return loadGame(theKey, -1);
+    }
+
+    /**
+     * @param theVersion Version of the game, or -1 for the latest one
+     */
+    private Game loadGame(String theKey, int theVersion) {
+        if (shouldIgnoreFile(theKey) || theKey.contains("/") || theKey.contains("\\")) {
+            return null;
+        }
+        GameLocation theLocation = null;
+        File theDirectory = new File(theGamesDirectory, theKey);
+        if (isGameDirectory(theDirectory)) {
+            theLocation = new GameLocation(theDirectory, null);
+        } else {
+            theLocation = getIndex().get(theKey);
+        }
+        if (theLocation == null) {
+            return null;
+        }
+
+        try (GameFiles theFiles = theLocation.open()) {
+            return readGame(theKey, theVersion, theFiles);
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     @Override
     protected Set<String> getUncachedGameKeys() {
-        return theRealRepo.getGameKeys();
+        return new HashSet<String>(getIndex().keySet());
     }
 
-    // ========================
+    private Game readGame(String theKey, int theVersion, GameFiles theFiles) throws IOException, JSONException {
+        int theMaxVersion = theFiles.getMaxVersion();
+        if (theVersion < 0) {
+            theVersion = theMaxVersion;
+        } else if (theVersion > theMaxVersion) {
+            return null;
+        }
+        String theMetaString = theFiles.readVersionedFile(theVersion, "METADATA");
+        if (theMetaString == null) {
+            return null;
+        }
+        JSONObject theMetadata = new JSONObject(theMetaString);
 
-    class LocalRepoServer implements HttpHandler {
-        @Override
-        public void handle(HttpExchange t) throws IOException {
-            String theURI = t.getRequestURI().toString();
-            byte[] response = BaseRepository.getResponseBytesForURI(theURI);
-            if (response == null) {
-                t.sendResponseHeaders(404, 0);
-                OutputStream os = t.getResponseBody();
-                os.close();
-            } else {
-                t.sendResponseHeaders(200, response.length);
-                OutputStream os = t.getResponseBody();
-                os.write(response);
-                os.close();
-            }
+        String theName = theMetadata.optString("gameName", null);
+        String theDescription = readResource(theFiles, theVersion, theMetadata, "description");
+        String theStylesheet = readResource(theFiles, theVersion, theMetadata, "stylesheet");
+        String theRulesheet = readResource(theFiles, theVersion, theMetadata, "rulesheet");
+        if (theRulesheet == null) {
+            return null;
+        }
+        theRulesheet = Game.preprocessRulesheet(theRulesheet);
+        if (theRulesheet.isEmpty()) {
+            return null;
+        }
+        if (theStylesheet != null) {
+            // Stylesheets refer to the shared images through this entity
+            theStylesheet = "<!DOCTYPE stylesheet [<!ENTITY ROOT \"" + theRootURL + "\">]>\n\n" + theStylesheet;
         }
-    }
 
-    static class BaseRepository {
-        public static final String repositoryRootDirectory = theLocalRepoURL;
+        String theGameURL = theLocalGamesURL + theKey + "/v" + theVersion + "/";
+        return new Game(theKey, theName, theDescription, theGameURL, theStylesheet, theRulesheet);
+    }
 
-        private BaseRepository() {
+    private static String readResource(GameFiles theFiles, int theVersion, JSONObject theMetadata, String theResource) throws IOException {
+        String theFileName = theMetadata.optString(theResource, null);
+        if (theFileName == null) {
+            return null;
         }
+        return theFiles.readVersionedFile(theVersion, theFileName);
+    }
 
-        public static boolean shouldIgnoreFile(String fileName) {
-            if (fileName.startsWith(".")) return true;
-            if (fileName.contains(" ")) return true;
-            return false;
+    private synchronized Map<String, GameLocation> getIndex() {
+        if (theIndex == null) {
+            theIndex = buildIndex();
         }
+        return theIndex;
+    }
 
-        public static byte[] getResponseBytesForURI(String reqURI) throws IOException {
-            // Files not under /games/games/ aren't versioned,
-            // and can just be accessed directly.
-            if (!reqURI.startsWith("/games/")) {
-                return getBytesForFile(new File("games" + reqURI));
+    private Map<String, GameLocation> buildIndex() {
+        Map<String, GameLocation> theLocations = new LinkedHashMap<String, GameLocation>();
+        String[] theNames = theGamesDirectory.list();
+        if (theNames == null) {
+            return theLocations;
+        }
+        Arrays.sort(theNames);
+
+        List<File> theBundles = new ArrayList<File>();
+        for (String theName : theNames) {
+            if (shouldIgnoreFile(theName)) continue;
+            File theFile = new File(theGamesDirectory, theName);
+            if (isGameDirectory(theFile)) {
+                theLocations.put(theName, new GameLocation(theFile, null));
+            } else if (theFile.isDirectory() || theName.endsWith(".zip")) {
+                theBundles.add(theFile);
             }
+        }
 
-            // Provide a listing of all of the metadata files for all of
-            // the games, on request.
-            if (reqURI.equals("/games/metadata")) {
-                JSONObject theGameMetaMap = new JSONObject();
-                for (String gameName : new File("games", "games").list()) {
-                    if (shouldIgnoreFile(gameName)) continue;
-                    try {
-                        theGameMetaMap.put(gameName, new JSONObject(new String(getResponseBytesForURI("/games/" + gameName + "/"))));
-                    } catch (JSONException e) {
-                        e.printStackTrace();
+        for (File theBundle : theBundles) {
+            if (theBundle.isDirectory()) {
+                String[] theGameNames = theBundle.list();
+                Arrays.sort(theGameNames);
+                for (String theName : theGameNames) {
+                    File theFile = new File(theBundle, theName);
+                    if (!shouldIgnoreFile(theName) && isGameDirectory(theFile) && !theLocations.containsKey(theName)) {
+                        theLocations.put(theName, new GameLocation(theFile, null));
                     }
                 }
-                return theGameMetaMap.toString().getBytes();
+            } else {
+                // Only the directory of the archive is read here
+                try (ZipFile theZip = new ZipFile(theBundle)) {
+                    Enumeration<? extends ZipEntry> theEntries = theZip.entries();
+                    while (theEntries.hasMoreElements()) {
+                        String theEntry = theEntries.nextElement().getName();
+                        if (!theEntry.equals("METADATA") && !theEntry.endsWith("/METADATA")) continue;
+                        String thePrefix = theEntry.substring(0, theEntry.length() - "METADATA".length());
+                        String[] thePath = thePrefix.split("/");
+                        String theName = thePath[thePath.length-1];
+                        // Skip the metadata of the later versions of a game
+                        if (theName.isEmpty() || isVersionName(theName) || shouldIgnoreFile(theName)) continue;
+                        if (!theLocations.containsKey(theName)) {
+                            theLocations.put(theName, new GameLocation(theBundle, thePrefix));
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
+        }
+        return theLocations;
+    }
 
-            // Accessing the folder containing a game should show the game's
-            // associated metadata (which includes the contents of the folder).
-            if(reqURI.endsWith("/") && reqURI.length() > 9) {
-                reqURI += "METADATA";
-            }
+    private static boolean isGameDirectory(File theFile) {
+        return new File(theFile, "METADATA").isFile();
+    }
 
-            // Extract out the version number
-            String thePrefix = reqURI.substring(0, reqURI.lastIndexOf("/"));
-            String theSuffix = reqURI.substring(reqURI.lastIndexOf("/")+1);
-            Integer theExplicitVersion = null;
-            try {
-                String vPart = thePrefix.substring(thePrefix.lastIndexOf("/v")+2);
-                theExplicitVersion = Integer.parseInt(vPart);
-                thePrefix = thePrefix.substring(0, thePrefix.lastIndexOf("/v"));
-            } catch (Exception e) {
-                ;
-            }
+    private static boolean shouldIgnoreFile(String fileName) {
+        if (fileName.startsWith(".")) return true;
+        if (fileName.contains(" ")) return true;
+        return false;
+    }
 
-            // Sanity check: raise an exception if the parsing didn't work.
-            if (theExplicitVersion == null) {
-                if (!reqURI.equals(thePrefix + "/" + theSuffix)) {
-                    throw new RuntimeException(reqURI + " != [~v] " + (thePrefix + "/" + theSuffix));
-                }
-            } else {
-                if (!reqURI.equals(thePrefix + "/v" + theExplicitVersion + "/" + theSuffix)) {
-                    throw new RuntimeException(reqURI + " != [v] " + (thePrefix + "/v" + theExplicitVersion + "/" + theSuffix));
-                }
-            }
+    private static boolean isVersionName(String theName) {
+        return theName.matches("v[0-9]+");
+    }
 
-            // When no version number is explicitly specified, assume that we want the
-            // latest version, whatever that is. Also, make sure the game version being
-            // requested actually exists (i.e. is between 0 and the max version).
-            int nMaxVersion = getMaxVersionForDirectory(new File("games", thePrefix));
-            Integer theFetchedVersion = theExplicitVersion;
-            if (theFetchedVersion == null) theFetchedVersion = nMaxVersion;
-            if (theFetchedVersion < 0 || theFetchedVersion > nMaxVersion) return null;
-
-            while (theFetchedVersion >= 0) {
-                byte[] theBytes = getBytesForVersionedFile(thePrefix, theFetchedVersion, theSuffix);
-                if (theBytes != null) {
-                    if (theSuffix.equals("METADATA")) {
-                        theBytes = adjustMetadataJSON(reqURI, theBytes, theExplicitVersion, nMaxVersion);
-                    }
-                    return theBytes;
-                }
-                theFetchedVersion--;
+    private static String readText(InputStream in) throws IOException {
+        StringBuilder theText = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                theText.append(line).append("\n");
             }
-            return null;
         }
+        return theText.toString();
+    }
 
-        // When the user requests a particular version, the metadata should always be for that version.
-        // When the user requests the latest version, the metadata should always indicate the most recent version.
-        public static byte[] adjustMetadataJSON(String reqURI, byte[] theMetaBytes, Integer nExplicitVersion, int nMaxVersion) throws IOException {
-            try {
-                JSONObject theMetaJSON = new JSONObject(new String(theMetaBytes));
-                if (nExplicitVersion == null) {
-                    theMetaJSON.put("version", nMaxVersion);
-                } else {
-                    theMetaJSON.put("version", nExplicitVersion);
-                }
-                String theRulesheet = new String(getResponseBytesForURI(reqURI.replace("METADATA",theMetaJSON.getString("rulesheet"))));
-                MetadataCompleter.completeMetadataFromRulesheet(theMetaJSON, theRulesheet);
-                return theMetaJSON.toString().getBytes();
-            } catch (JSONException je) {
-                throw new IOException(je);
-            }
+    // ========================
+
+    /**
+     * A game directory, either on the disk or in a zip archive (then under
+     * the given prefix).
+     */
+    private static final class GameLocation {
+        private final File theFile;
+        private final String thePrefix;
+
+        GameLocation(File theFile, String thePrefix) {
+            this.theFile = theFile;
+            this.thePrefix = thePrefix;
         }
 
-        private static int getMaxVersionForDirectory(File theDir) {
-            if (!theDir.exists() || !theDir.isDirectory()) {
-                return -1;
+        GameFiles open() throws IOException {
+            if (thePrefix == null) {
+                return new DirectoryFiles(theFile);
+            } else {
+                return new ZipFiles(new ZipFile(theFile), thePrefix);
             }
+        }
+    }
+
+    /**
+     * The files of one game, open while the game is being read.
+     */
+    private static abstract class GameFiles implements Closeable {
+        /**
+         * @return Contents of the file at the path, relative to the game directory, or null if there's none
+         */
+        abstract String readFile(String thePath) throws IOException;
 
+        /**
+         * @return Names of the files and directories in the game directory
+         */
+        abstract Set<String> list();
+
+        int getMaxVersion() {
             int maxVersion = 0;
-            String[] children = theDir.list();
-            for (String s : children) {
-                if (shouldIgnoreFile(s)) continue;
-                if (s.startsWith("v")) {
-                    int nVersion = Integer.parseInt(s.substring(1));
-                    if (nVersion > maxVersion) {
-                        maxVersion = nVersion;
-                    }
+            for (String s : list()) {
+                if (!shouldIgnoreFile(s) && isVersionName(s)) {
+                    maxVersion = Math.max(maxVersion, Integer.parseInt(s.substring(1)));
                 }
             }
             return maxVersion;
         }
 
-        private static byte[] getBytesForVersionedFile(String thePrefix, int theVersion, String theSuffix) {
-            if (theVersion == 0) {
-                return getBytesForFile(new File("games", thePrefix + "/" + theSuffix));
-            } else {
-                return getBytesForFile(new File("games", thePrefix + "/v" + theVersion + "/" + theSuffix));
-            }
-        }
-
-        private static byte[] getBytesForFile(File theFile) {
-            try {
-                if (!theFile.exists()) {
-                    return null;
-                } else if (theFile.isDirectory()) {
-                    return readDirectory(theFile).getBytes();
-                } else if (theFile.getName().endsWith(".png")) {
-                    // TODO: Handle other binary formats?
-                    return readBinaryFile(theFile);
-                } else if (theFile.getName().endsWith("jpg")) {
-                    return readBinaryFile(theFile);
-                } else if (theFile.getName().endsWith(".xsl")) {
-                    return transformXSL(readFile(theFile)).getBytes();
-                } else if (theFile.getName().endsWith(".js")) {
-                    return transformJS(readFile(theFile)).getBytes();
-                } else {
-                    return readFile(theFile).getBytes();
+        /**
+         * Reads a file of the given version of the game: files that did not
+         * change in that version are found in the earlier ones.
+         */
+        String readVersionedFile(int theVersion, String theName) throws IOException {
+            for (int v = theVersion; v >= 0; v--) {
+                String theContents = readFile(v == 0 ? theName : "v" + v + "/" + theName);
+                if (theContents != null) {
+                    return theContents;
                 }
-            } catch (IOException e) {
-                return null;
             }
+            return null;
         }
 
-        private static String transformXSL(String theContent) {
-            // Special case override for XSLT
-            return "<!DOCTYPE stylesheet [<!ENTITY ROOT \""+repositoryRootDirectory+"\">]>\n\n" + theContent;
+        @Override
+        public void close() throws IOException {
         }
+    }
 
-        private static String transformJS(String theContent) throws IOException {
-            // Horrible hack; fix this later. Right now this is used to
-            // let games share a common board user interface, but this should
-            // really be handled in a cleaner, more general way with javascript
-            // libraries and imports.
-            if (theContent.contains("[BOARD_INTERFACE_JS]")) {
-                String theCommonBoardJS = readFile(new File("games/resources/scripts/BoardInterface.js"));
-                theContent = theContent.replaceFirst("\\[BOARD_INTERFACE_JS\\]", theCommonBoardJS);
-            }
-            return theContent;
+    private static final class DirectoryFiles extends GameFiles {
+        private final File theDirectory;
+
+        DirectoryFiles(File theDirectory) {
+            this.theDirectory = theDirectory;
         }
 
-        private static String readDirectory(File theDirectory) throws IOException {
-            StringBuilder response = new StringBuilder();
-            // Show contents of the directory, using JSON notation.
-            response.append("[");
-
-            String[] children = theDirectory.list();
-            for (int i=0; i<children.length; i++) {
-                if (shouldIgnoreFile(children[i])) continue;
-                // Get filename of file or directory
-                response.append("\"");
-                response.append(children[i]);
-                response.append("\",\n ");
+        @Override
+        String readFile(String thePath) throws IOException {
+            File theFile = new File(theDirectory, thePath);
+            if (!theFile.isFile()) {
+                return null;
             }
+            return readText(new FileInputStream(theFile));
+        }
 
-            response.delete(response.length()-3, response.length());
-            response.append("]");
-            return response.toString();
+        @Override
+        Set<String> list() {
+            String[] theNames = theDirectory.list();
+            return theNames == null ? new HashSet<String>() : new HashSet<String>(Arrays.asList(theNames));
         }
+    }
 
-        public static String readFile(File rootFile) throws IOException {
-            // Show contents of the file.
-            FileReader fr = new FileReader(rootFile);
-            BufferedReader br = new BufferedReader(fr);
-            try {
-                String response = "";
-                String line;
-                while( (line = br.readLine()) != null ) {
-                    response += line + "\n";
-                }
+    private static final class ZipFiles extends GameFiles {
+        private final ZipFile theZip;
+        private final String thePrefix;
 
-                return response;
-            } finally {
-                br.close();
-            }
+        ZipFiles(ZipFile theZip, String thePrefix) {
+            this.theZip = theZip;
+            this.thePrefix = thePrefix;
         }
 
-        private static byte[] readBinaryFile(File rootFile) throws IOException {
-            InputStream in = new FileInputStream(rootFile);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-            // Transfer bytes from in to out
-            byte[] buf = new byte[1024];
-            while (in.read(buf) > 0) {
-                out.write(buf);
+        @Override
+        String readFile(String thePath) throws IOException {
+            ZipEntry theEntry = theZip.getEntry(thePrefix + thePath);
+            if (theEntry == null || theEntry.isDirectory()) {
+                return null;
             }
-            in.close();
-
-            return out.toByteArray();
+            return readText(theZip.getInputStream(theEntry));
         }
-    }
 
-    static class MetadataCompleter {
-        private MetadataCompleter() {
+        @Override
+        Set<String> list() {
+            Set<String> theNames = new HashSet<String>();
+            Enumeration<? extends ZipEntry> theEntries = theZip.entries();
+            while (theEntries.hasMoreElements()) {
+                String theEntry = theEntries.nextElement().getName();
+                if (theEntry.startsWith(thePrefix) && theEntry.length() > thePrefix.length()) {
+                    String theName = theEntry.substring(thePrefix.length());
+                    int slash = theName.indexOf('/');
+                    theNames.add(slash < 0 ? theName : theName.substring(0, slash));
+                }
+            }
+            return theNames;
         }
 
-        /**
-         * Complete fields in the metadata procedurally, based on the game rulesheet.
-         * This is used to fill in the number of roles, and create a list containing
-         * the names of all of the roles. Applications which read the game metadata
-         * can use these without also having to process the rulesheet.
-         *
-         * @param theMetaJSON
-         * @param theRulesheet
-         * @throws JSONException
-         */
-        public static void completeMetadataFromRulesheet(JSONObject theMetaJSON, String theRulesheet) throws JSONException {
-            List<Role> theRoles = Role.computeRoles(Game.createEphemeralGame(Game.preprocessRulesheet(theRulesheet)).getRules());
-            theMetaJSON.put("roleNames", theRoles);
-            theMetaJSON.put("numRoles", theRoles.size());
+        @Override
+        public void close() throws IOException {
+            theZip.close();
         }
     }
 }
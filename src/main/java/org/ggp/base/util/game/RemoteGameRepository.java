@@ -43,6 +43,11 @@ public final class RemoteGameRepository extends GameRepository {
     }
 
     public static Game loadSingleGame(String theGameURL) {
+        // Local games are no longer served over HTTP: read them from the disk
+        if (LocalGameRepository.isLocalGameURL(theGameURL)) {
+            return new LocalGameRepository().getGameByURL(theGameURL);
+        }
+
         String[] theSplitURL = theGameURL.split("/");
         String theKey = theSplitURL[theSplitURL.length-1];
 
@@ -0,0 +1,435 @@
+package org.ggp.base.util.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * AsyncHttpClient issues the same requests as {@link HttpRequest}, but
+ * without blocking: one selector thread sends all of them and reads all the
+ * responses, and every request returns a future of its response.
+ *
+ * Connections are kept alive and reused for the next request to the same
+ * endpoint when the player allows it (HTTP/1.1, or HTTP/1.0 answering
+ * "Connection: keep-alive", with a Content-Length). Players that close the
+ * connection after every response, like GamePlayer, still work; they just
+ * cost a connection per request, as before.
+ *
+ * Every request has a deadline: the future fails with SocketTimeoutException
+ * if the player doesn't connect in time, or doesn't respond within the
+ * timeout after the request was sent, and with another IOException if the
+ * connection fails. Futures are completed on the selector thread, so what
+ * depends on them should be quick or run elsewhere.
+ */
+public final class AsyncHttpClient implements Closeable
+{
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int MAX_IDLE_CONNECTIONS_PER_ENDPOINT = 8;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<Exchange>();
+    private volatile boolean closed = false;
+
+    // Only used by the selector thread
+    private final Set<Exchange> active = new HashSet<Exchange>();
+    private final Map<InetSocketAddress, Deque<SocketChannel>> idleConnections = new HashMap<InetSocketAddress, Deque<SocketChannel>>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+    public AsyncHttpClient() throws IOException
+    {
+        selector = Selector.open();
+        selectorThread = new Thread(this::run, "AsyncHttpClient");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * @param timeoutClock Milliseconds to wait for the response once the request is sent, or -1 to wait forever
+     */
+    public CompletableFuture<String> issueRequest(String targetHost, int targetPort, String forPlayerName, String requestContent, int timeoutClock, Map<String, String> extraHeaders)
+    {
+        CompletableFuture<String> response = new CompletableFuture<String>();
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(InetAddress.getByName(targetHost), targetPort);
+        } catch (UnknownHostException e) {
+            response.completeExceptionally(e);
+            return response;
+        }
+        submitted.add(new Exchange(address, formatRequest(targetHost, requestContent, forPlayerName, extraHeaders), timeoutClock, response));
+        if (closed) {
+            response.completeExceptionally(new IOException("The client is closed."));
+        } else {
+            selector.wakeup();
+        }
+        return response;
+    }
+
+    public CompletableFuture<String> issueRequest(String targetHost, int targetPort, String forPlayerName, String requestContent, int timeoutClock)
+    {
+        return issueRequest(targetHost, targetPort, forPlayerName, requestContent, timeoutClock, null);
+    }
+
+    /**
+     * Closes every connection; the requests still pending fail.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        selector.wakeup();
+        if (Thread.currentThread() == selectorThread) {
+            return;
+        }
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Same request as HttpWriter.writeAsClient, asking to keep the connection
+    private static ByteBuffer formatRequest(String hostField, String data, String playerName, Map<String, String> extraHeaders)
+    {
+        byte[] content = data.getBytes(CHARSET);
+        StringBuilder head = new StringBuilder();
+        head.append("POST / HTTP/1.0\r\n");
+        head.append("Accept: text/delim\r\n");
+        head.append("Host: ").append(hostField).append("\r\n");
+        head.append("Sender: GAMESERVER\r\n");
+        head.append("Receiver: ").append(playerName).append("\r\n");
+        if (extraHeaders != null) {
+            for (Map.Entry<String, String> extraHeader : extraHeaders.entrySet()) {
+                head.append(extraHeader.getKey()).append(": ").append(extraHeader.getValue()).append("\r\n");
+            }
+        }
+        head.append("Connection: keep-alive\r\n");
+        head.append("Content-Type: text/acl\r\n");
+        head.append("Content-Length: ").append(content.length).append("\r\n");
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(CHARSET);
+        ByteBuffer request = ByteBuffer.allocate(headBytes.length + content.length);
+        request.put(headBytes).put(content);
+        request.flip();
+        return request;
+    }
+
+    private void run()
+    {
+        try {
+            while (!closed) {
+                selector.select(getSelectTimeout());
+                Exchange exchange;
+                while ((exchange = submitted.poll()) != null) {
+                    start(exchange, false);
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+                expire();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            shutdown();
+        }
+    }
+
+    private long getSelectTimeout()
+    {
+        long nextDeadline = Long.MAX_VALUE;
+        for (Exchange exchange : active) {
+            nextDeadline = Math.min(nextDeadline, exchange.deadline);
+        }
+        if (nextDeadline == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, nextDeadline - System.currentTimeMillis());
+    }
+
+    private void start(Exchange exchange, boolean fresh)
+    {
+        active.add(exchange);
+        exchange.request.rewind();
+        exchange.received = 0;
+        exchange.headerEnd = -1;
+        try {
+            SocketChannel channel = fresh ? null : pollIdleConnection(exchange.address);
+            if (channel != null) {
+                exchange.reused = true;
+                exchange.channel = channel;
+                SelectionKey key = channel.keyFor(selector);
+                key.attach(exchange);
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                exchange.reused = false;
+                channel = SocketChannel.open();
+                exchange.channel = channel;
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                boolean connected = channel.connect(exchange.address);
+                channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, exchange);
+            }
+            exchange.deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        } catch (IOException e) {
+            fail(exchange, e);
+        }
+    }
+
+    private SocketChannel pollIdleConnection(InetSocketAddress address)
+    {
+        Deque<SocketChannel> idle = idleConnections.get(address);
+        while (idle != null && !idle.isEmpty()) {
+            SocketChannel channel = idle.pollLast();
+            if (channel.isOpen()) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private void handle(SelectionKey key)
+    {
+        if (!key.isValid()) {
+            return;
+        }
+        Exchange exchange = (Exchange) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (exchange == null) {
+            // An idle connection is only readable if the player closed it or sent something unasked
+            closeQuietly(channel);
+            return;
+        }
+        try {
+            if (key.isConnectable() && channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                channel.write(exchange.request);
+                if (!exchange.request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    exchange.deadline = exchange.timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + exchange.timeout;
+                }
+            } else if (key.isReadable()) {
+                read(exchange, channel);
+            }
+        } catch (IOException e) {
+            retryOrFail(exchange, e);
+        }
+    }
+
+    private void read(Exchange exchange, SocketChannel channel) throws IOException
+    {
+        readBuffer.clear();
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            if (exchange.headerEnd >= 0 && exchange.contentLength < 0) {
+                // Without a Content-Length the response ends with the connection
+                complete(exchange, exchange.received - exchange.headerEnd, false);
+            } else {
+                retryOrFail(exchange, new IOException("The connection was closed before the end of the response."));
+            }
+            return;
+        }
+        exchange.append(readBuffer.array(), n);
+        if (exchange.headerEnd < 0 && !exchange.parseHeaders()) {
+            return;
+        }
+        if (exchange.contentLength >= 0 && exchange.received - exchange.headerEnd >= exchange.contentLength) {
+            complete(exchange, exchange.contentLength, exchange.keepAlive);
+        }
+    }
+
+    private void complete(Exchange exchange, int contentLength, boolean keepAlive)
+    {
+        active.remove(exchange);
+        SocketChannel channel = exchange.channel;
+        Deque<SocketChannel> idle = null;
+        if (keepAlive && !closed) {
+            idle = idleConnections.get(exchange.address);
+            if (idle == null) {
+                idle = new ArrayDeque<SocketChannel>();
+                idleConnections.put(exchange.address, idle);
+            }
+        }
+        if (idle != null && idle.size() < MAX_IDLE_CONNECTIONS_PER_ENDPOINT) {
+            SelectionKey key = channel.keyFor(selector);
+            key.attach(null);
+            key.interestOps(SelectionKey.OP_READ);
+            idle.addLast(channel);
+        } else {
+            closeQuietly(channel);
+        }
+        exchange.response.complete(new String(exchange.buffer, exchange.headerEnd, contentLength, CHARSET).trim());
+    }
+
+    /**
+     * A kept connection may have been closed by the player while idle; the request is then sent again on a new one,
+     * since the player didn't receive it.
+     */
+    private void retryOrFail(Exchange exchange, IOException e)
+    {
+        if (exchange.reused && exchange.received == 0) {
+            closeQuietly(exchange.channel);
+            active.remove(exchange);
+            start(exchange, true);
+        } else {
+            fail(exchange, e);
+        }
+    }
+
+    private void fail(Exchange exchange, IOException e)
+    {
+        active.remove(exchange);
+        if (exchange.channel != null) {
+            closeQuietly(exchange.channel);
+        }
+        exchange.response.completeExceptionally(e);
+    }
+
+    private void expire()
+    {
+        long now = System.currentTimeMillis();
+        List<Exchange> expired = new ArrayList<Exchange>();
+        for (Exchange exchange : active) {
+            if (exchange.deadline <= now) {
+                expired.add(exchange);
+            }
+        }
+        for (Exchange exchange : expired) {
+            fail(exchange, new SocketTimeoutException("No response from " + exchange.address + " in time."));
+        }
+    }
+
+    private void shutdown()
+    {
+        IOException e = new IOException("The client is closed.");
+        for (Exchange exchange : new ArrayList<Exchange>(active)) {
+            fail(exchange, e);
+        }
+        Exchange exchange;
+        while ((exchange = submitted.poll()) != null) {
+            exchange.response.completeExceptionally(e);
+        }
+        for (Deque<SocketChannel> idle : idleConnections.values()) {
+            for (SocketChannel channel : idle) {
+                closeQuietly(channel);
+            }
+        }
+        idleConnections.clear();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            ;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel)
+    {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ;
+        }
+    }
+
+    private static final class Exchange
+    {
+        private final InetSocketAddress address;
+        private final ByteBuffer request;
+        private final int timeout;
+        private final CompletableFuture<String> response;
+
+        private SocketChannel channel;
+        private boolean reused;
+        private long deadline;
+
+        private byte[] buffer = new byte[1024];
+        private int received;
+        private int headerEnd;
+        private int contentLength;
+        private boolean keepAlive;
+
+        private Exchange(InetSocketAddress address, ByteBuffer request, int timeout, CompletableFuture<String> response)
+        {
+            this.address = address;
+            this.request = request;
+            this.timeout = timeout;
+            this.response = response;
+        }
+
+        private void append(byte[] bytes, int length)
+        {
+            if (received + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, received + length));
+            }
+            System.arraycopy(bytes, 0, buffer, received, length);
+            received += length;
+        }
+
+        /**
+         * @return Whether the headers have been received, and parsed
+         */
+        private boolean parseHeaders()
+        {
+            int end = -1;
+            for (int i = 0; i < received && end < 0; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                if (i + 1 < received && buffer[i + 1] == '\n') {
+                    end = i + 2;
+                } else if (i + 2 < received && buffer[i + 1] == '\r' && buffer[i + 2] == '\n') {
+                    end = i + 3;
+                }
+            }
+            if (end < 0) {
+                return false;
+            }
+            headerEnd = end;
+            contentLength = -1;
+            String[] lines = new String(buffer, 0, end, StandardCharsets.ISO_8859_1).split("\r?\n");
+            boolean http11 = lines[0].startsWith("HTTP/1.1");
+            String connection = null;
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i].toLowerCase();
+                if (line.startsWith("content-length:")) {
+                    try {
+                        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    } catch (NumberFormatException e) {
+                        contentLength = -1;
+                    }
+                } else if (line.startsWith("connection:")) {
+                    connection = line.substring("connection:".length()).trim();
+                }
+            }
+            keepAlive = contentLength >= 0 && (http11 ? !"close".equals(connection) : "keep-alive".equals(connection));
+            return true;
+        }
+    }
+}
@@ -74,6 +74,7 @@ public final class Match
     private boolean isAborted;
     private final List<Integer> goalValues;
     private final int numRoles;
+    private final List<Role> roles;
 
     private EncodedKeyPair theCryptographicKeys;
     private List<String> thePlayerNamesFromHost;
@@ -96,7 +97,8 @@ public final class Match
         this.isCompleted = false;
         this.isAborted = false;
 
-        this.numRoles = Role.computeRoles(theGame.getRules()).size();
+        this.roles = Role.computeRoles(theGame.getRules());
+        this.numRoles = roles.size();
 
         this.moveHistory = new ArrayList<List<GdlTerm>>();
         this.stateHistory = new ArrayList<Set<GdlSentence>>();
@@ -142,7 +144,8 @@ public final class Match
             this.tournamentNameFromHost = null;
         }
 
-        this.numRoles = Role.computeRoles(this.theGame.getRules()).size();
+        this.roles = Role.computeRoles(this.theGame.getRules());
+        this.numRoles = roles.size();
 
         this.moveHistory = new ArrayList<List<GdlTerm>>();
         this.stateHistory = new ArrayList<Set<GdlSentence>>();
@@ -342,7 +345,6 @@ public final class Match
         ObjectNode root = mapper.createObjectNode();
 
         try {
-            List<Role>  roles =  Role.computeRoles(theGame.getRules());
             List<String>  states = renderStateHistory(stateHistory);
             //List<String>  actions = renderMoveHistory(moveHistory);
             List<String>  errors = renderErrorHistory(errorHistory);
@@ -0,0 +1,259 @@
+package org.ggp.base.util.match;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+
+import external.JSON.JSONArray;
+import external.JSON.JSONException;
+import external.JSON.JSONObject;
+
+/**
+ * MatchJournal records a match as it is played, in an append-only file,
+ * instead of rewriting the whole match every turn as Match.toJSON does:
+ * saving a long match costs one short record per step rather than the
+ * whole history again.
+ *
+ * The journal has one JSON record per line: a header with the metadata of
+ * the match and its game, then one record per state, with the moves that led
+ * to it, the sentences it added and removed, its time and the errors of the
+ * players, and an end record with the goals once the match is over.
+ *
+ * {@link #read} rebuilds the Match from a journal, from which the usual
+ * JSON and XML can be rendered. A journal cut short by a crash reads as the
+ * match up to its last complete record.
+ */
+public final class MatchJournal implements Closeable
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Match match;
+    private final BufferedWriter writer;
+    private int journaledStates = 0;
+    private Set<GdlSentence> lastState = Collections.emptySet();
+    private boolean ended = false;
+
+    /**
+     * Starts the journal of the match in the file, overwriting it, with the steps played so far.
+     */
+    public MatchJournal(File file, Match match) throws IOException {
+        this.match = match;
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        writeRecord(createHeader());
+        update();
+    }
+
+    /**
+     * Appends the steps of the match that were not journaled yet. A state is journaled once the
+     * errors of its step are known, or the match is over.
+     */
+    public void update() throws IOException {
+        boolean over = match.isCompleted() || match.isAborted();
+        List<Set<GdlSentence>> states = match.getStateHistory();
+        while (journaledStates < states.size() && (journaledStates < match.getErrorHistory().size() || over)) {
+            writeRecord(createStep(journaledStates));
+            lastState = states.get(journaledStates);
+            journaledStates++;
+        }
+        if (over && !ended) {
+            ObjectNode end = MAPPER.createObjectNode();
+            end.put("type", "end");
+            end.put("isCompleted", match.isCompleted());
+            end.put("isAborted", match.isAborted());
+            end.set("goalValues", MAPPER.valueToTree(match.getGoalValues()));
+            writeRecord(end);
+            ended = true;
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeRecord(ObjectNode record) throws IOException {
+        writer.write(MAPPER.writeValueAsString(record));
+        writer.write('\n');
+    }
+
+    private ObjectNode createHeader() {
+        ObjectNode header = MAPPER.createObjectNode();
+        header.put("type", "match");
+        header.put("matchId", match.getMatchId());
+        header.put("randomToken", match.getRandomToken());
+        header.put("startTime", match.getStartTime().getTime());
+        header.put("game", match.getGame().serializeToJSON());
+        header.put("previewClock", match.getPreviewClock());
+        header.put("startClock", match.getStartClock());
+        header.put("playClock", match.getPlayClock());
+        if (match.getPlayerNamesFromHost() != null) {
+            header.set("playerNamesFromHost", MAPPER.valueToTree(match.getPlayerNamesFromHost()));
+        }
+        if (match.getTournamentNameFromHost() != null) {
+            header.put("tournamentNameFromHost", match.getTournamentNameFromHost());
+        }
+        return header;
+    }
+
+    private ObjectNode createStep(int index) {
+        ObjectNode step = MAPPER.createObjectNode();
+        step.put("type", "step");
+        if (index > 0 && index - 1 < match.getMoveHistory().size()) {
+            ArrayNode moves = step.putArray("moves");
+            for (GdlTerm move : match.getMoveHistory().get(index - 1)) {
+                moves.add(move.toString());
+            }
+        }
+        step.put("time", match.getStateTimeHistory().get(index).getTime());
+
+        Set<GdlSentence> state = match.getStateHistory().get(index);
+        ArrayNode added = step.putArray("added");
+        for (GdlSentence sentence : state) {
+            if (!lastState.contains(sentence)) {
+                added.add(sentence.toString());
+            }
+        }
+        ArrayNode removed = step.putArray("removed");
+        for (GdlSentence sentence : lastState) {
+            if (!state.contains(sentence)) {
+                removed.add(sentence.toString());
+            }
+        }
+
+        if (index < match.getErrorHistory().size()) {
+            step.set("errors", MAPPER.valueToTree(match.getErrorHistory().get(index)));
+        }
+        return step;
+    }
+
+    /**
+     * Rebuilds a match from its journal.
+     *
+     * @param game Game of the match, or null to use the one saved in the journal
+     */
+    public static Match read(File file, Game game) throws IOException {
+        List<JsonNode> records = new ArrayList<JsonNode>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    records.add(MAPPER.readTree(line));
+                } catch (JsonProcessingException e) {
+                    // The last record may have been cut short by a crash of the server
+                    break;
+                }
+            }
+        }
+        if (records.isEmpty() || !records.get(0).path("type").asText().equals("match")) {
+            throw new IOException("Not a match journal: " + file);
+        }
+        JsonNode header = records.get(0);
+        if (game == null) {
+            game = Game.loadFromJSON(header.get("game").asText());
+        }
+
+        try {
+            JSONObject theJSON = new JSONObject();
+            theJSON.put("matchId", header.get("matchId").asText());
+            theJSON.put("randomToken", header.get("randomToken").asText());
+            theJSON.put("startTime", header.get("startTime").asLong());
+            theJSON.put("previewClock", header.get("previewClock").asInt());
+            theJSON.put("startClock", header.get("startClock").asInt());
+            theJSON.put("playClock", header.get("playClock").asInt());
+            if (header.has("playerNamesFromHost")) {
+                theJSON.put("playerNamesFromHost", toJSONArray(header.get("playerNamesFromHost")));
+            }
+            if (header.has("tournamentNameFromHost")) {
+                theJSON.put("tournamentNameFromHost", header.get("tournamentNameFromHost").asText());
+            }
+
+            JSONArray states = new JSONArray();
+            JSONArray moves = new JSONArray();
+            JSONArray stateTimes = new JSONArray();
+            JSONArray errors = new JSONArray();
+            Set<String> state = new LinkedHashSet<String>();
+            boolean isCompleted = false;
+            boolean isAborted = false;
+            for (JsonNode record : records.subList(1, records.size())) {
+                String type = record.path("type").asText();
+                if (type.equals("step")) {
+                    if (record.has("moves")) {
+                        moves.put(toJSONArray(record.get("moves")));
+                    }
+                    for (JsonNode sentence : record.get("removed")) {
+                        state.remove(sentence.asText());
+                    }
+                    for (JsonNode sentence : record.get("added")) {
+                        state.add(sentence.asText());
+                    }
+                    states.put(renderState(state));
+                    stateTimes.put(record.get("time").asLong());
+                    if (record.has("errors")) {
+                        errors.put(toJSONArray(record.get("errors")));
+                    }
+                } else if (type.equals("end")) {
+                    isCompleted = record.get("isCompleted").asBoolean();
+                    isAborted = record.get("isAborted").asBoolean();
+                    if (record.get("goalValues").size() > 0) {
+                        theJSON.put("goalValues", toJSONArray(record.get("goalValues")));
+                    }
+                }
+            }
+            theJSON.put("states", states);
+            theJSON.put("moves", moves);
+            theJSON.put("stateTimes", stateTimes);
+            if (errors.length() > 0) {
+                theJSON.put("errors", errors);
+            }
+            theJSON.put("isCompleted", isCompleted);
+            theJSON.put("isAborted", isAborted);
+
+            return new Match(theJSON.toString(), game, null);
+        } catch (Exception e) {
+            throw new IOException("Could not rebuild the match of " + file, e);
+        }
+    }
+
+    private static JSONArray toJSONArray(JsonNode array) throws JSONException {
+        JSONArray theArray = new JSONArray();
+        for (JsonNode element : array) {
+            if (element.isNumber()) {
+                theArray.put(element.asInt());
+            } else {
+                theArray.put(element.asText());
+            }
+        }
+        return theArray;
+    }
+
+    // Same rendering as the states of Match.toJSON, without the TRUE of every sentence
+    private static String renderState(Set<String> state) {
+        StringBuilder s = new StringBuilder("( ");
+        for (String sentence : state) {
+            s.append(sentence.substring(6, sentence.length() - 2).trim()).append(" ");
+        }
+        return s.append(")").toString();
+    }
+}
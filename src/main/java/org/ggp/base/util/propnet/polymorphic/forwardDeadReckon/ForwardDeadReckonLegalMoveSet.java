@@ -294,7 +294,7 @@ public class ForwardDeadReckonLegalMoveSet implements ForwardDeadReckonComponent
     masterList = new ArrayList<>();
     alwaysLegalMoves = new ArrayList<>();
     masterListAsArray = null;
-    roles = new ArrayList<>(theRoles.size());
+    roles = new ArrayList<>(theRoles);
     preAllocatedCollections = new ForwardDeadReckonLegalMoveSetCollection[roles.size()];
     numActive = new short[roles.size()];
     numAlwaysActive = new short[roles.size()];
@@ -309,8 +309,7 @@ public class ForwardDeadReckonLegalMoveSet implements ForwardDeadReckonComponent
       preAllocatedCollections[i] = new ForwardDeadReckonLegalMoveSetCollection(this, i);
       firstActive[i] = -1;
       lastActive[i] = -1;
-      lastImmutableActive[i] = -1;
-      this.roles.set(i++, role);
+      lastImmutableActive[i++] = -1;
     }
   }
 
@@ -46,13 +46,63 @@ public final class AimaProver implements Prover
         knowledgeBase = new KnowledgeBase(Sets.newHashSet(description));
     }
 
+    /**
+     * The facts of a state, and the answers proved from them so far. Queries
+     * asked in one context share the answers to their common sub-goals, so
+     * asking all the queries of a state in one context proves each sub-goal
+     * once. A context must not be used by several threads at once.
+     */
+    public static final class Context
+    {
+        private final KnowledgeBase facts;
+        private final Context parent;
+        private final ProverCache cache;
+
+        private Context(Set<GdlSentence> facts, Context parent)
+        {
+            this.facts = new KnowledgeBase(facts);
+            this.parent = parent;
+            this.cache = parent == null ? ProverCache.createSingleThreadedCache() : ProverCache.createChildCache(parent.cache);
+        }
+
+        /**
+         * Creates a context with more facts, which reuses the answers proved
+         * in this one; answers proved in the new context stay there. The
+         * answers proved so far must not depend on the new facts: e.g. the
+         * moves of a state may be added once its legal, goal and terminal
+         * queries have been asked, since those can't depend on "does".
+         */
+        public Context extend(Set<GdlSentence> moreFacts)
+        {
+            return new Context(moreFacts, this);
+        }
+
+        private void fetch(GdlSentence sentence, List<GdlRule> candidates)
+        {
+            for (Context context = this; context != null; context = context.parent)
+            {
+                candidates.addAll(context.facts.fetch(sentence));
+            }
+        }
+    }
+
+    public Context createContext(Set<GdlSentence> facts)
+    {
+        return new Context(facts, null);
+    }
+
     private Set<GdlSentence> ask(GdlSentence query, Set<GdlSentence> context, boolean askOne)
+    {
+        return ask(query, createContext(context), askOne);
+    }
+
+    private Set<GdlSentence> ask(GdlSentence query, Context context, boolean askOne)
     {
         LinkedList<GdlLiteral> goals = new LinkedList<GdlLiteral>();
         goals.add(query);
 
         Set<Substitution> answers = new HashSet<Substitution>();
-        ask(goals, new KnowledgeBase(context), new Substitution(), ProverCache.createSingleThreadedCache(),
+        ask(goals, context, new Substitution(), context.cache,
                 new VariableRenamer(), askOne, answers, new RecursionHandler(), new IsConstant());
 
         Set<GdlSentence> results = new HashSet<GdlSentence>();
@@ -64,7 +114,7 @@ public final class AimaProver implements Prover
         return results;
     }
 
-    private void ask(LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
+    private void ask(LinkedList<GdlLiteral> goals, Context context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
     {
         if (goals.isEmpty())
         {
@@ -108,7 +158,7 @@ public final class AimaProver implements Prover
         return ask(query, context, false);
     }
 
-    private void askDistinct(GdlDistinct distinct, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
+    private void askDistinct(GdlDistinct distinct, LinkedList<GdlLiteral> goals, Context context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
     {
         if (!distinct.getArg1().equals(distinct.getArg2()))
         {
@@ -118,7 +168,7 @@ public final class AimaProver implements Prover
         }
     }
 
-    private void askNot(GdlNot not, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
+    private void askNot(GdlNot not, LinkedList<GdlLiteral> goals, Context context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
     {
         LinkedList<GdlLiteral> notGoals = new LinkedList<GdlLiteral>();
         notGoals.add(not.getBody());
@@ -136,6 +186,14 @@ public final class AimaProver implements Prover
         isConstantRet.value = isConstant;
     }
 
+    /**
+     * Asks the query in a context, sharing its answers with the other queries asked there.
+     */
+    public Set<GdlSentence> askAll(GdlSentence query, Context context)
+    {
+        return ask(query, context, false);
+    }
+
     @Override
     public GdlSentence askOne(GdlSentence query, Set<GdlSentence> context)
     {
@@ -143,7 +201,16 @@ public final class AimaProver implements Prover
         return (!results.isEmpty()) ? results.iterator().next() : null;
     }
 
-    private void askOr(GdlOr or, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
+    /**
+     * Asks the query in a context, sharing its answers with the other queries asked there.
+     */
+    public GdlSentence askOne(GdlSentence query, Context context)
+    {
+        Set<GdlSentence> results = ask(query, context, true);
+        return (!results.isEmpty()) ? results.iterator().next() : null;
+    }
+
+    private void askOr(GdlOr or, LinkedList<GdlLiteral> goals, Context context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
     {
         boolean isConstant = true;
         for (int i = 0; i < or.arity(); i++)
@@ -161,7 +228,7 @@ public final class AimaProver implements Prover
         isConstantRet.value = isConstant;
     }
 
-    private void askSentence(GdlSentence sentence, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler,
+    private void askSentence(GdlSentence sentence, LinkedList<GdlLiteral> goals, Context context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler,
             IsConstant isConstantRet) {
         Collection<Substitution> sentenceResults = findSentenceResults(sentence,
                 context, theta, cache, renamer, recursionHandler, isConstantRet);
@@ -180,7 +247,7 @@ public final class AimaProver implements Prover
     }
 
     private Collection<Substitution> findSentenceResults(GdlSentence sentence,
-            KnowledgeBase context, Substitution theta,
+            Context context, Substitution theta,
             ProverCache cache, VariableRenamer renamer, RecursionHandler recursionHandler,
             IsConstant isConstantRet) {
         GdlSentence varRenamedSentence = new VariableRenamer().rename(sentence);
@@ -200,7 +267,7 @@ public final class AimaProver implements Prover
             recursionHandler.alreadyAsking.add(varRenamedSentence);
             List<GdlRule> candidates = new ArrayList<GdlRule>();
             candidates.addAll(knowledgeBase.fetch(sentence));
-            candidates.addAll(context.fetch(sentence));
+            context.fetch(sentence, candidates);
             boolean isConstant = !isTrueOrDoesSentence(sentence);
 
             Set<Substitution> sentenceResults = new HashSet<Substitution>();
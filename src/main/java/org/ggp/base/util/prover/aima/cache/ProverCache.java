@@ -18,17 +18,28 @@ public final class ProverCache
 {
 
     private final Map<GdlSentence, Set<GdlSentence>> contents;
+    // Answers found here when missing from this cache; never written through this cache
+    private final ProverCache parent;
 
-    private ProverCache(Map<GdlSentence, Set<GdlSentence>> mapForContents) {
+    private ProverCache(Map<GdlSentence, Set<GdlSentence>> mapForContents, ProverCache parent) {
         this.contents = mapForContents;
+        this.parent = parent;
     }
 
     public static ProverCache createSingleThreadedCache() {
-        return new ProverCache(new HashMap<GdlSentence, Set<GdlSentence>>());
+        return new ProverCache(new HashMap<GdlSentence, Set<GdlSentence>>(), null);
     }
 
     public static ProverCache createMultiThreadedCache() {
-        return new ProverCache(new ConcurrentHashMap<GdlSentence, Set<GdlSentence>>());
+        return new ProverCache(new ConcurrentHashMap<GdlSentence, Set<GdlSentence>>(), null);
+    }
+
+    /**
+     * Creates a single-threaded cache that also returns the answers of the
+     * parent cache, and keeps its own answers to itself.
+     */
+    public static ProverCache createChildCache(ProverCache parent) {
+        return new ProverCache(new HashMap<GdlSentence, Set<GdlSentence>>(), parent);
     }
 
     /**
@@ -36,14 +47,14 @@ public final class ProverCache
      */
     public boolean contains(GdlSentence renamedSentence)
     {
-        return contents.containsKey(renamedSentence);
+        return contents.containsKey(renamedSentence) || (parent != null && parent.contains(renamedSentence));
     }
 
     public List<Substitution> get(GdlSentence sentence, GdlSentence varRenamedSentence)
     {
         Set<GdlSentence> cacheContents = contents.get(varRenamedSentence);
         if (cacheContents == null) {
-            return null;
+            return parent != null ? parent.get(sentence, varRenamedSentence) : null;
         }
         Set<Substitution> results = new HashSet<Substitution>();
         for (GdlSentence answer : cacheContents)
@@ -1,6 +1,7 @@
 package org.ggp.base.util.prover.aima.knowledge;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,42 +9,166 @@ import java.util.Set;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlFunction;
 import org.ggp.base.util.gdl.grammar.GdlPool;
 import org.ggp.base.util.gdl.grammar.GdlRule;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
 
 
+/**
+ * The clauses of a description, indexed so that a query only fetches the
+ * clauses whose head can unify with it.
+ *
+ * Clauses are grouped by the name and arity of their head, then by the first
+ * argument of their head: its constant, or its function name. Clauses whose
+ * first argument is a variable are fetched for every first argument. Facts
+ * without variables are also kept in a hash table, so a ground query fetches
+ * at most one of them.
+ *
+ * The knowledge base is immutable once built, so it can be shared by any
+ * number of threads without locking.
+ */
 public final class KnowledgeBase
 {
-    private final Map<GdlConstant, List<GdlRule>> contents;
+    private final Map<GdlConstant, Predicate[]> contents;
+
+    /**
+     * The clauses with one name and arity.
+     */
+    private static final class Predicate
+    {
+        public final List<GdlRule> all = new ArrayList<GdlRule>();
+        // By first argument, each list also holding the clauses whose first argument is a variable
+        public final Map<GdlConstant, List<GdlRule>> byFirstArgument = new HashMap<GdlConstant, List<GdlRule>>();
+        public final List<GdlRule> variableFirstArgument = new ArrayList<GdlRule>();
+        // The same without the ground facts, which are looked up by sentence instead
+        public final Map<GdlConstant, List<GdlRule>> rulesByFirstArgument = new HashMap<GdlConstant, List<GdlRule>>();
+        public final List<GdlRule> rulesWithVariableFirstArgument = new ArrayList<GdlRule>();
+        public final Map<GdlSentence, GdlRule> groundFacts = new HashMap<GdlSentence, GdlRule>();
+
+        public void add(GdlRule rule)
+        {
+            GdlSentence head = rule.getHead();
+            GdlConstant key = getFirstArgumentKey(head);
+            boolean groundFact = rule.arity() == 0 && head.isGround();
+
+            all.add(rule);
+            if (groundFact)
+            {
+                groundFacts.put(head, rule);
+            }
+            if (key == null)
+            {
+                // Clauses seen before keep their place in the lists
+                variableFirstArgument.add(rule);
+                for (List<GdlRule> rules : byFirstArgument.values())
+                    rules.add(rule);
+                if (!groundFact)
+                {
+                    rulesWithVariableFirstArgument.add(rule);
+                    for (List<GdlRule> rules : rulesByFirstArgument.values())
+                        rules.add(rule);
+                }
+            }
+            else
+            {
+                getOrCreate(byFirstArgument, key, variableFirstArgument).add(rule);
+                if (!groundFact)
+                    getOrCreate(rulesByFirstArgument, key, rulesWithVariableFirstArgument).add(rule);
+            }
+        }
+
+        private static List<GdlRule> getOrCreate(Map<GdlConstant, List<GdlRule>> index, GdlConstant key, List<GdlRule> initial)
+        {
+            List<GdlRule> rules = index.get(key);
+            if (rules == null)
+            {
+                rules = new ArrayList<GdlRule>(initial);
+                index.put(key, rules);
+            }
+            return rules;
+        }
+    }
 
     public KnowledgeBase(Set<? extends Gdl> description)
     {
-        contents = new HashMap<GdlConstant, List<GdlRule>>();
+        contents = new HashMap<GdlConstant, Predicate[]>();
         for (Gdl gdl : description)
         {
             GdlRule rule = (gdl instanceof GdlRule) ? (GdlRule) gdl : GdlPool.getRule((GdlSentence) gdl);
-            GdlConstant key = rule.getHead().getName();
+            GdlSentence head = rule.getHead();
+            GdlConstant key = head.getName();
+            int arity = head.arity();
 
-            if (!contents.containsKey(key))
+            Predicate[] byArity = contents.get(key);
+            if (byArity == null || byArity.length <= arity)
+            {
+                Predicate[] grown = new Predicate[arity + 1];
+                if (byArity != null)
+                    System.arraycopy(byArity, 0, grown, 0, byArity.length);
+                byArity = grown;
+                contents.put(key, byArity);
+            }
+            if (byArity[arity] == null)
             {
-                contents.put(key, new ArrayList<GdlRule>());
+                byArity[arity] = new Predicate();
             }
-            contents.get(key).add(rule);
+            byArity[arity].add(rule);
         }
     }
 
-    public synchronized List<GdlRule> fetch(GdlSentence sentence)
+    /**
+     * @return The constant, or the function name, of the first argument of
+     *         the sentence; null if it has no arguments or if the first one is a variable
+     */
+    private static GdlConstant getFirstArgumentKey(GdlSentence sentence)
     {
-        GdlConstant key = sentence.getName();
+        if (sentence.arity() == 0)
+            return null;
+        GdlTerm first = sentence.get(0);
+        if (first instanceof GdlConstant)
+            return (GdlConstant) first;
+        if (first instanceof GdlFunction)
+            return ((GdlFunction) first).getName();
+        return null;
+    }
+
+    /**
+     * @return The clauses whose head may unify with the sentence; the list must not be modified
+     */
+    public List<GdlRule> fetch(GdlSentence sentence)
+    {
+        Predicate[] byArity = contents.get(sentence.getName());
+        int arity = sentence.arity();
+        if (byArity == null || byArity.length <= arity || byArity[arity] == null)
+        {
+            return Collections.emptyList();
+        }
+        Predicate predicate = byArity[arity];
 
-        if (contents.containsKey(key))
+        GdlConstant key = getFirstArgumentKey(sentence);
+        if (sentence.isGround())
         {
-            return contents.get(key);
+            GdlRule fact = predicate.groundFacts.get(sentence);
+            List<GdlRule> rules = predicate.rulesWithVariableFirstArgument;
+            if (key != null && predicate.rulesByFirstArgument.containsKey(key))
+                rules = predicate.rulesByFirstArgument.get(key);
+
+            if (fact == null)
+                return rules;
+            if (rules.isEmpty())
+                return Collections.singletonList(fact);
+            List<GdlRule> candidates = new ArrayList<GdlRule>(rules.size() + 1);
+            candidates.add(fact);
+            candidates.addAll(rules);
+            return candidates;
         }
-        else
+        if (key != null)
         {
-            return new ArrayList<GdlRule>();
+            List<GdlRule> rules = predicate.byFirstArgument.get(key);
+            return rules != null ? rules : predicate.variableFirstArgument;
         }
+        return predicate.all;
     }
-}
\ No newline at end of file
+}
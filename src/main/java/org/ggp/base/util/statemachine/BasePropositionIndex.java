@@ -0,0 +1,117 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+
+/**
+ * Numbers the base propositions of one game, so that its states can be
+ * stored as bitsets (see {@link BitSetMachineState}).
+ *
+ * A proposition gets the next free number the first time it is seen, so the
+ * index does not need to know the base propositions of the game in advance.
+ * Every proposition also gets a random 64-bit Zobrist key; the Zobrist hash
+ * of a state is the XOR of the keys of its true propositions. The keys come
+ * from a fixed seed, so the same game seen in the same order gives the same
+ * hashes from run to run.
+ *
+ * Looking propositions up is lock-free; numbering a new one takes the index's
+ * monitor, so one index can be shared by several threads.
+ */
+public final class BasePropositionIndex
+{
+    private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+
+    private final Map<GdlSentence, Integer> indices = new ConcurrentHashMap<GdlSentence, Integer>();
+    // Arrays by proposition number, with room to grow; guarded by this for writing
+    private volatile GdlSentence[] sentences = new GdlSentence[64];
+    private volatile long[] zobristKeys = new long[64];
+    private volatile int[] sentenceHashes = new int[64];
+    private volatile int size = 0;
+    private final Random random = new Random(ZOBRIST_SEED);
+
+    /**
+     * @return The number of the proposition, numbering it if it is new
+     */
+    public int getIndex(GdlSentence sentence)
+    {
+        Integer index = indices.get(sentence);
+        return index != null ? index : add(sentence);
+    }
+
+    private synchronized int add(GdlSentence sentence)
+    {
+        Integer index = indices.get(sentence);
+        if (index != null)
+            return index;
+
+        int newIndex = size;
+        if (newIndex == sentences.length)
+        {
+            zobristKeys = Arrays.copyOf(zobristKeys, newIndex * 2);
+            sentenceHashes = Arrays.copyOf(sentenceHashes, newIndex * 2);
+            sentences = Arrays.copyOf(sentences, newIndex * 2);
+        }
+        zobristKeys[newIndex] = random.nextLong();
+        sentenceHashes[newIndex] = sentence.hashCode();
+        sentences[newIndex] = sentence;
+        size = newIndex + 1;
+        // The proposition is stored before its number is published, so whoever sees the number sees the proposition
+        indices.put(sentence, newIndex);
+        return newIndex;
+    }
+
+    public GdlSentence getSentence(int index)
+    {
+        return sentences[index];
+    }
+
+    long getZobristKey(int index)
+    {
+        return zobristKeys[index];
+    }
+
+    int getSentenceHash(int index)
+    {
+        return sentenceHashes[index];
+    }
+
+    /**
+     * @return The number of propositions numbered so far
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Converts a set of true base propositions into a state of this index.
+     */
+    public BitSetMachineState encode(Set<GdlSentence> contents)
+    {
+        long[] words = new long[0];
+        for (GdlSentence sentence : contents)
+        {
+            int index = getIndex(sentence);
+            int word = index >>> 6;
+            if (word >= words.length)
+                words = Arrays.copyOf(words, Math.max(word + 1, size + 63 >>> 6));
+            words[word] |= 1L << index;
+        }
+        return new BitSetMachineState(this, words);
+    }
+
+    /**
+     * Converts any state into a state of this index; states of this index are returned as they are.
+     */
+    public BitSetMachineState encode(MachineState state)
+    {
+        if (state instanceof BitSetMachineState && ((BitSetMachineState) state).getIndex() == this)
+            return (BitSetMachineState) state;
+        return encode(state.getContents());
+    }
+}
@@ -0,0 +1,128 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+
+/**
+ * An immutable MachineState stored as a bitset over the base propositions of
+ * a game, numbered by a {@link BasePropositionIndex}.
+ *
+ * Both hashes are computed once: hashCode() is the hash of the sentence set,
+ * as for any MachineState, and getZobristHash() is a 64-bit hash for tables
+ * that want fewer collisions. Two states of the same index are compared word
+ * by word; other states are compared by their sentences, so a BitSetMachineState
+ * equals a plain MachineState with the same contents.
+ *
+ * getContents() builds the sentence set for the network and JSON layers and
+ * for provers; it is a new unmodifiable set on every call.
+ */
+public final class BitSetMachineState extends MachineState
+{
+    private final BasePropositionIndex index;
+    // No trailing zero words, so that equal states have equal arrays
+    private final long[] words;
+    private final long zobristHash;
+    private final int hashCode;
+
+    BitSetMachineState(BasePropositionIndex index, long[] words)
+    {
+        this.index = index;
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0)
+            length--;
+        this.words = length == words.length ? words : Arrays.copyOf(words, length);
+
+        long zobrist = 0;
+        int hash = 0;
+        for (int w = 0; w < this.words.length; w++)
+        {
+            long word = this.words[w];
+            while (word != 0)
+            {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                zobrist ^= index.getZobristKey(bit);
+                hash += index.getSentenceHash(bit);
+                word &= word - 1;
+            }
+        }
+        this.zobristHash = zobrist;
+        this.hashCode = hash;
+    }
+
+    public BasePropositionIndex getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * @return Whether the proposition with the given number is true in this state
+     */
+    public boolean contains(int proposition)
+    {
+        int word = proposition >>> 6;
+        return word < words.length && (words[word] & (1L << proposition)) != 0;
+    }
+
+    public int getNumTrue()
+    {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public long getZobristHash()
+    {
+        return zobristHash;
+    }
+
+    @Override
+    public Set<GdlSentence> getContents()
+    {
+        Set<GdlSentence> contents = new HashSet<GdlSentence>(getNumTrue() * 4 / 3 + 1);
+        for (int w = 0; w < words.length; w++)
+        {
+            long word = words[w];
+            while (word != 0)
+            {
+                contents.add(index.getSentence((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return Collections.unmodifiableSet(contents);
+    }
+
+    /**
+     * The state is immutable, so it is its own copy.
+     */
+    @Override
+    public MachineState clone()
+    {
+        return this;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o instanceof BitSetMachineState && ((BitSetMachineState) o).index == index)
+        {
+            BitSetMachineState state = (BitSetMachineState) o;
+            return zobristHash == state.zobristHash && Arrays.equals(words, state.words);
+        }
+        if (o instanceof MachineState && ((MachineState) o).hashCode() != hashCode)
+            return false;
+        return super.equals(o);
+    }
+}
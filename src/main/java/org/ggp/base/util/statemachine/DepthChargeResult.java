@@ -0,0 +1,62 @@
+package org.ggp.base.util.statemachine;
+
+/**
+ * The totals of a batch of depth charges run by a {@link DepthChargeService}:
+ * the number of charges, and per role the sum and the sum of squares of the
+ * goals of the terminal states reached, as well as the total depth.
+ */
+public final class DepthChargeResult
+{
+    private final int numCharges;
+    private final long[] scoreSums;
+    private final long[] scoreSquareSums;
+    private final long depthSum;
+
+    DepthChargeResult(int numCharges, long[] scoreSums, long[] scoreSquareSums, long depthSum)
+    {
+        this.numCharges = numCharges;
+        this.scoreSums = scoreSums;
+        this.scoreSquareSums = scoreSquareSums;
+        this.depthSum = depthSum;
+    }
+
+    /**
+     * @return Number of charges run; fewer than asked for if the deadline passed
+     */
+    public int getNumCharges()
+    {
+        return numCharges;
+    }
+
+    public long getScoreSum(int roleIndex)
+    {
+        return scoreSums[roleIndex];
+    }
+
+    /**
+     * @return Average goal of the role, 0 if no charge was run
+     */
+    public double getMeanScore(int roleIndex)
+    {
+        return numCharges == 0 ? 0 : (double) scoreSums[roleIndex] / numCharges;
+    }
+
+    /**
+     * @return Variance of the goals of the role over the charges, 0 if no charge was run
+     */
+    public double getScoreVariance(int roleIndex)
+    {
+        if (numCharges == 0)
+            return 0;
+        double mean = getMeanScore(roleIndex);
+        return Math.max(0, (double) scoreSquareSums[roleIndex] / numCharges - mean * mean);
+    }
+
+    /**
+     * @return Average number of joint moves from the start state to the end of the game
+     */
+    public double getAverageDepth()
+    {
+        return numCharges == 0 ? 0 : (double) depthSum / numCharges;
+    }
+}
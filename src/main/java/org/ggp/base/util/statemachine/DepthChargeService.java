@@ -0,0 +1,285 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+
+/**
+ * Runs depth charges on several threads. Every worker thread has its own
+ * StateMachine instance, since state machines are not thread-safe; the
+ * machines must be initialized with the same game, and able to take each
+ * other's states (propnet instances created from one master are).
+ *
+ * The workers take the charges of a batch one at a time, so they share the
+ * work evenly whatever the length of the charges, and keep their totals to
+ * themselves until the end of the batch. A batch can spread its charges over
+ * several first moves, so that comparing moves takes a single batch. The
+ * start state is never changed: the first move of a charge is made with
+ * getRandomNextState, and only the rest of the charge with
+ * performDepthCharge, so the state needs no cloning.
+ * Every machine has its playout buffer, reused by all its charges, and
+ * plays them with its own random generator (see StateMachine.setRandomSeed).
+ *
+ * A service runs one batch at a time; call {@link #shutdown()} when done with it.
+ */
+public final class DepthChargeService
+{
+    private final List<StateMachine> machines;
+    private final List<PlayoutBuffer> buffers;
+    private final ExecutorService workers;
+
+    /**
+     * @param machines One initialized state machine per worker thread
+     */
+    public DepthChargeService(List<StateMachine> machines)
+    {
+        if (machines.isEmpty())
+            throw new IllegalArgumentException("No state machines for the workers");
+        this.machines = new ArrayList<StateMachine>(machines);
+        buffers = new ArrayList<PlayoutBuffer>(machines.size());
+        for (StateMachine machine : machines)
+            buffers.add(new PlayoutBuffer(machine.getRoles().size()));
+        workers = Executors.newFixedThreadPool(machines.size(), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "Depth charge worker " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getNumWorkers()
+    {
+        return machines.size();
+    }
+
+    /**
+     * Runs depth charges from the state until the given number of charges is
+     * done or the deadline passes, whichever comes first.
+     *
+     * @param deadline Time in milliseconds, as given by System.currentTimeMillis()
+     */
+    public DepthChargeResult run(MachineState state, int repetitions, long deadline) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        Totals sum = runBatch(state, null, null, repetitions, deadline)[0];
+        return new DepthChargeResult(sum.numCharges, sum.scoreSums, sum.scoreSquareSums, sum.depthSum);
+    }
+
+    /**
+     * Same as {@link #run(MachineState, int, long)}, with the role making the
+     * given move at the start of every charge, and the other roles random moves.
+     */
+    public DepthChargeResult run(MachineState state, Role role, Move move, int repetitions, long deadline)
+            throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        return run(state, role, Collections.singletonList(move), repetitions, deadline)[0];
+    }
+
+    /**
+     * Runs depth charges from the state for each of the role's moves in turn,
+     * in a single batch: the workers keep taking the next charge, whichever
+     * move it is for, until the given number of charges is done or the
+     * deadline passes. This is how to compare moves, rather than one batch per
+     * move, which would keep the workers waiting for the longest charge of
+     * every batch.
+     *
+     * @param repetitions Number of charges for all the moves together
+     * @return The results by move, in the order of the moves
+     */
+    public DepthChargeResult[] run(MachineState state, Role role, List<Move> moves, int repetitions, long deadline)
+            throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        Totals[] sums = runBatch(state, role, moves, repetitions, deadline);
+        DepthChargeResult[] results = new DepthChargeResult[sums.length];
+        for (int i = 0; i < sums.length; i++)
+            results[i] = new DepthChargeResult(sums[i].numCharges, sums[i].scoreSums, sums[i].scoreSquareSums, sums[i].depthSum);
+        return results;
+    }
+
+    /**
+     * @param moves The role's moves to start the charges with in turn, or null for random moves
+     * @return The totals by move
+     */
+    private synchronized Totals[] runBatch(final MachineState state, final Role role, final List<Move> moves, final int repetitions, final long deadline)
+            throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        final int numRoles = machines.get(0).getRoles().size();
+        final int numMoves = moves == null ? 1 : moves.size();
+        final AtomicInteger remaining = new AtomicInteger(repetitions);
+        // Number of the next charge, which starts with the move of that number modulo the number of moves
+        final AtomicInteger next = new AtomicInteger();
+        List<Future<Totals[]>> running = new ArrayList<Future<Totals[]>>(machines.size());
+        for (int i = 0; i < machines.size(); i++)
+        {
+            final StateMachine machine = machines.get(i);
+            final PlayoutBuffer buffer = buffers.get(i);
+            running.add(workers.submit(() -> {
+                Totals[] totals = newTotals(numMoves, numRoles);
+                int[] depth = new int[1];
+                while (System.currentTimeMillis() < deadline && remaining.getAndDecrement() > 0)
+                {
+                    int m = Math.floorMod(next.getAndIncrement(), numMoves);
+                    charge(machine, buffer, state, role, moves == null ? null : moves.get(m), depth, totals[m]);
+                }
+                return totals;
+            }));
+        }
+
+        // Every worker is waited for, even after a failure, so that no machine is still in use by the next batch
+        Totals[] sums = newTotals(numMoves, numRoles);
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Totals[]> worker : running)
+        {
+            Totals[] totals = null;
+            while (totals == null)
+            {
+                try
+                {
+                    totals = worker.get();
+                }
+                catch (InterruptedException e)
+                {
+                    // The workers stop after their current charge, and what they did is returned
+                    interrupted = true;
+                    remaining.set(0);
+                }
+                catch (ExecutionException e)
+                {
+                    remaining.set(0);
+                    if (failure == null)
+                        failure = e.getCause();
+                    break;
+                }
+                catch (CancellationException e)
+                {
+                    // Never started, the service having been shut down
+                    break;
+                }
+            }
+            if (totals != null)
+            {
+                for (int m = 0; m < numMoves; m++)
+                    sums[m].add(totals[m]);
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure != null)
+            rethrow(failure);
+        return sums;
+    }
+
+    private static Totals[] newTotals(int numMoves, int numRoles)
+    {
+        Totals[] totals = new Totals[numMoves];
+        for (int m = 0; m < numMoves; m++)
+            totals[m] = new Totals(numRoles);
+        return totals;
+    }
+
+    private static void charge(StateMachine machine, PlayoutBuffer buffer, MachineState state, Role role, Move move, int[] depth, Totals totals)
+            throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        MachineState finalState = state;
+        int chargeDepth = 0;
+        if (!machine.isTerminal(state))
+        {
+            MachineState next = role == null ? machine.getRandomNextState(state) : machine.getRandomNextState(state, role, move);
+            finalState = machine.performDepthCharge(next, depth, machine.getRandomGenerator(), buffer);
+            chargeDepth = depth[0] + 1;
+        }
+
+        List<Role> roles = machine.getRoles();
+        for (int i = 0; i < roles.size(); i++)
+        {
+            long goal = machine.getGoal(finalState, roles.get(i));
+            totals.scoreSums[i] += goal;
+            totals.scoreSquareSums[i] += goal * goal;
+        }
+        totals.depthSum += chargeDepth;
+        totals.numCharges++;
+    }
+
+    private static void rethrow(Throwable cause) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException
+    {
+        if (cause instanceof MoveDefinitionException)
+            throw (MoveDefinitionException) cause;
+        if (cause instanceof TransitionDefinitionException)
+            throw (TransitionDefinitionException) cause;
+        if (cause instanceof GoalDefinitionException)
+            throw (GoalDefinitionException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        throw new RuntimeException(cause);
+    }
+
+    /**
+     * Calls {@link StateMachine#doPerMoveWork()} on the machine of every worker, between batches.
+     */
+    public synchronized void doPerMoveWork()
+    {
+        for (StateMachine machine : machines)
+        {
+            machine.doPerMoveWork();
+        }
+    }
+
+    /**
+     * Stops the worker threads; the service can't be used afterwards.
+     */
+    public void shutdown()
+    {
+        for (Runnable neverStarted : workers.shutdownNow())
+        {
+            if (neverStarted instanceof Future)
+                ((Future<?>) neverStarted).cancel(false);
+        }
+    }
+
+    /**
+     * The totals of one worker.
+     */
+    private static final class Totals
+    {
+        public int numCharges;
+        public final long[] scoreSums;
+        public final long[] scoreSquareSums;
+        public long depthSum;
+
+        public Totals(int numRoles)
+        {
+            scoreSums = new long[numRoles];
+            scoreSquareSums = new long[numRoles];
+        }
+
+        public void add(Totals other)
+        {
+            numCharges += other.numCharges;
+            for (int i = 0; i < scoreSums.length; i++)
+            {
+                scoreSums[i] += other.scoreSums[i];
+                scoreSquareSums[i] += other.scoreSquareSums[i];
+            }
+            depthSum += other.depthSum;
+        }
+    }
+}
@@ -27,9 +27,23 @@ public class FailsafeStateMachine extends StateMachine
 {
     private StateMachine theBackingMachine = null;
     private List<Gdl> gameDescription;
+    private final long initialMachineDeadline;
 
     public FailsafeStateMachine (StateMachine theInitialMachine) {
+        this(theInitialMachine, 0);
+    }
+
+    /**
+     * Creates a failsafe wrapper whose initial machine has to finish
+     * initializing by the given time (in milliseconds since the epoch).
+     * Initializing machines such as propnets can take longer than the start
+     * clock allows; when the deadline passes, the regular prover is loaded
+     * instead and the abandoned initialization is left to finish (or fail)
+     * on its own daemon thread. A deadline of zero means no limit.
+     */
+    public FailsafeStateMachine (StateMachine theInitialMachine, long initialMachineDeadline) {
         theBackingMachine = theInitialMachine;
+        this.initialMachineDeadline = initialMachineDeadline;
     }
 
     @Override
@@ -40,6 +54,23 @@ public class FailsafeStateMachine extends StateMachine
         return "Failsafe(null)";
     }
 
+    /**
+     * Seeds the backing machine too, whose depth charges are delegated to.
+     */
+    @Override
+    public void setRandomSeed(long seed) {
+        super.setRandomSeed(seed);
+        if(theBackingMachine != null)
+            theBackingMachine.setRandomSeed(seed);
+    }
+
+    @Override
+    public void clearRandomSeed() {
+        super.clearRandomSeed();
+        if(theBackingMachine != null)
+            theBackingMachine.clearRandomSeed();
+    }
+
     @Override
     public synchronized void initialize(List<Gdl> description) {
         this.gameDescription = description;
@@ -72,6 +103,9 @@ public class FailsafeStateMachine extends StateMachine
     }
 
     private boolean attemptLoadingInitialMachine() {
+        if(initialMachineDeadline > 0)
+            return attemptLoadingInitialMachineBefore(initialMachineDeadline);
+
         try {
             theBackingMachine.initialize(gameDescription);
             GamerLogger.log("StateMachine", "Failsafe Machine: successfully activated initial state machine for use!");
@@ -84,6 +118,45 @@ public class FailsafeStateMachine extends StateMachine
         return false;
     }
 
+    private boolean attemptLoadingInitialMachineBefore(long deadline) {
+        final StateMachine theInitialMachine = theBackingMachine;
+        final boolean[] succeeded = new boolean[1];
+        Thread loader = new Thread("FailsafeStateMachine loader") {
+            @Override
+            public void run() {
+                try {
+                    theInitialMachine.initialize(gameDescription);
+                    succeeded[0] = true;
+                } catch(Exception e1) {
+                } catch(ThreadDeath d) {
+                    throw d;
+                } catch(Error e2) {
+                }
+            }
+        };
+        loader.setDaemon(true);
+        loader.start();
+
+        try {
+            long remaining = deadline - System.currentTimeMillis();
+            if(remaining > 0)
+                loader.join(remaining);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(loader.isAlive()) {
+            loader.interrupt();
+            GamerLogger.logError("StateMachine", "Failsafe Machine: initial state machine " + theInitialMachine.getName() + " missed its initialization deadline.");
+            return false;
+        }
+        if(!succeeded[0])
+            return false;
+
+        GamerLogger.log("StateMachine", "Failsafe Machine: successfully activated initial state machine for use!");
+        return true;
+    }
+
     private boolean attemptLoadingProverMachine() {
         try {
             StateMachine theStateMachine = new ProverStateMachine();
@@ -269,6 +342,50 @@ public class FailsafeStateMachine extends StateMachine
         return getNextStateDestructively(state, moves);
     }
 
+    @Override
+    public boolean fillLegalMoves(MachineState state, PlayoutBuffer buffer) throws MoveDefinitionException {
+        if(theBackingMachine == null)
+            return false;
+
+        try {
+            return theBackingMachine.fillLegalMoves(state, buffer);
+        } catch(MoveDefinitionException me) {
+            throw me;
+        } catch(Exception e) {
+            failGracefully(e, null);
+        } catch(ThreadDeath d) {
+            throw d;
+        } catch(OutOfMemoryError e) {
+            throw e;
+        } catch(Error e) {
+            failGracefully(null, e);
+        }
+
+        return fillLegalMoves(state, buffer);
+    }
+
+    @Override
+    public MachineState getNextStateDestructively(MachineState state, PlayoutBuffer buffer) throws TransitionDefinitionException {
+        if(theBackingMachine == null)
+            return null;
+
+        try {
+            return theBackingMachine.getNextStateDestructively(state, buffer);
+        } catch(TransitionDefinitionException te) {
+            throw te;
+        } catch(Exception e) {
+            failGracefully(e, null);
+        } catch(ThreadDeath d) {
+            throw d;
+        } catch(OutOfMemoryError e) {
+            throw e;
+        } catch(Error e) {
+            failGracefully(null, e);
+        }
+
+        return getNextStateDestructively(state, buffer);
+    }
+
     @Override
     public Role getRoleFromConstant(GdlConstant constant) {
         if(theBackingMachine == null)
@@ -0,0 +1,112 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The working space of a random playout, reused from ply to ply and from
+ * playout to playout so that a depth charge allocates nothing of its own:
+ * the legal moves of every role in the current state, the index of the move
+ * chosen for each role and the joint move they make.
+ *
+ * A state machine fills the legal moves with {@link StateMachine#fillLegalMoves}
+ * and reads the chosen joint move in
+ * {@link StateMachine#getNextStateDestructively(MachineState, PlayoutBuffer)}.
+ * It may store lists of its own (e.g. cached ones) with setLegalMoves, or
+ * refill the list of the buffer returned by clearLegalMoves.
+ *
+ * The joint move is a view of the buffer, overwritten by the next choice, so
+ * state machines must copy it if they keep it. Not thread-safe; every thread
+ * playing out needs its own buffer.
+ */
+public final class PlayoutBuffer
+{
+    private final List<Move>[] legalMoves;
+    private final List<Move>[] ownLegalMoves;
+    private final int[] choices;
+    private final Move[] jointMoveArray;
+    private final List<Move> jointMove;
+
+    public PlayoutBuffer(int numRoles)
+    {
+        legalMoves = StateAnswers.newMoveLists(numRoles);
+        ownLegalMoves = StateAnswers.newMoveLists(numRoles);
+        for (int i = 0; i < numRoles; i++)
+            ownLegalMoves[i] = new ArrayList<Move>();
+        choices = new int[numRoles];
+        jointMoveArray = new Move[numRoles];
+        jointMove = Arrays.asList(jointMoveArray);
+    }
+
+    public int getNumRoles()
+    {
+        return choices.length;
+    }
+
+    /**
+     * Sets the legal moves of the role to a list the caller won't change while the buffer uses it.
+     */
+    public void setLegalMoves(int role, List<Move> moves)
+    {
+        legalMoves[role] = moves;
+    }
+
+    /**
+     * @return The buffer's own list for the legal moves of the role, emptied, to be filled by the caller
+     */
+    public List<Move> clearLegalMoves(int role)
+    {
+        List<Move> moves = ownLegalMoves[role];
+        moves.clear();
+        legalMoves[role] = moves;
+        return moves;
+    }
+
+    public List<Move> getLegalMoves(int role)
+    {
+        return legalMoves[role];
+    }
+
+    /**
+     * Chooses a move for every role, uniformly among its legal moves.
+     * @return The joint move, valid until the next choice
+     */
+    public List<Move> chooseRandomJointMove(Random random)
+    {
+        for (int i = 0; i < choices.length; i++)
+        {
+            List<Move> moves = legalMoves[i];
+            int choice = moves.size() == 1 ? 0 : random.nextInt(moves.size());
+            choices[i] = choice;
+            jointMoveArray[i] = moves.get(choice);
+        }
+        return jointMove;
+    }
+
+    /**
+     * Chooses the move of one role, by its index among the legal moves of the role.
+     */
+    public void choose(int role, int choice)
+    {
+        choices[role] = choice;
+        jointMoveArray[role] = legalMoves[role].get(choice);
+    }
+
+    /**
+     * @return Index of the chosen move of the role among its legal moves
+     */
+    public int getChoice(int role)
+    {
+        return choices[role];
+    }
+
+    /**
+     * @return The chosen joint move, a view of the buffer that the next choice overwrites
+     */
+    public List<Move> getJointMove()
+    {
+        return jointMove;
+    }
+}
@@ -0,0 +1,136 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.Random;
+
+/**
+ * A fast generator with the SplitMix64 algorithm of java.util.SplittableRandom,
+ * as a Random so that it can be passed wherever one is expected.
+ *
+ * {@link #split()} gives an independent generator that the calling one
+ * determines, so one seed can feed every thread of a search, each with its
+ * own generator, and runs with the same seed and the same threads repeat.
+ * Not thread-safe: unlike Random, no method is synchronized.
+ *
+ * nextInt(bound) takes a multiplication and, rarely, a retry, instead of
+ * Random's division, which matters for picking random moves.
+ */
+public final class SplitMixRandom extends Random
+{
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long seed;
+    private final long gamma;
+
+    public SplitMixRandom(long seed)
+    {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitMixRandom(long seed, long gamma)
+    {
+        super(0);
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return A generator whose numbers are independent of this one's, and
+     *         determined by the state of this one
+     */
+    public SplitMixRandom split()
+    {
+        return new SplitMixRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Restarts the sequence. Also called once by the constructor of Random,
+     * before the constructor of this class overwrites the seed.
+     */
+    @Override
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    private long nextSeed()
+    {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+
+    private static long mixGamma(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        // Gammas with too few bit flips give poorly mixed sequences
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return n < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+
+    @Override
+    protected int next(int bits)
+    {
+        return mix32(nextSeed()) >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt()
+    {
+        return mix32(nextSeed());
+    }
+
+    @Override
+    public long nextLong()
+    {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Lemire's method: the high half of a 32 by 32 bit product, rejecting the
+     * few low halves that would bias it.
+     */
+    @Override
+    public int nextInt(int bound)
+    {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        long product = (nextInt() & 0xFFFFFFFFL) * bound;
+        int low = (int) product;
+        if (Integer.compareUnsigned(low, bound) < 0)
+        {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while (Integer.compareUnsigned(low, threshold) < 0)
+            {
+                product = (nextInt() & 0xFFFFFFFFL) * bound;
+                low = (int) product;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean nextBoolean()
+    {
+        return nextInt() < 0;
+    }
+}
@@ -0,0 +1,173 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+
+/**
+ * The answers to every query about one state: whether it is terminal, the
+ * goal of every role, the legal moves of every role and the state reached by
+ * every joint move. See {@link StateMachine#getAnswers(MachineState)}.
+ *
+ * Joint moves are numbered as combinations of the legal moves, the index of
+ * the move of the first role changing fastest. Terminal states, and states
+ * where a role has no legal moves, have no next states.
+ *
+ * The answers are immutable once created.
+ */
+public final class StateAnswers
+{
+    /**
+     * Goal of a role whose goal is not defined in the state
+     */
+    public static final int NO_GOAL = Integer.MIN_VALUE;
+
+    private final MachineState state;
+    private final List<Role> roles;
+    private final boolean terminal;
+    private final int[] goals;
+    // By role; null for a role without legal moves
+    private final List<Move>[] legalMoves;
+    // By joint move index; null if there are no next states
+    private final MachineState[] nextStates;
+
+    /**
+     * @param goals Goal of every role, or {@link #NO_GOAL}
+     * @param legalMoves Legal moves of every role, or null for a role without legal moves
+     * @param nextStates State reached by every joint move, numbered as in
+     *        {@link #getJointMove(List[], int)}; null if there are no next states
+     */
+    public StateAnswers(MachineState state, List<Role> roles, boolean terminal, int[] goals, List<Move>[] legalMoves, MachineState[] nextStates)
+    {
+        this.state = state;
+        this.roles = roles;
+        this.terminal = terminal;
+        this.goals = goals;
+        this.legalMoves = legalMoves;
+        this.nextStates = nextStates;
+    }
+
+    /**
+     * @return An array for the legal moves of every role, all null
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Move>[] newMoveLists(int numRoles)
+    {
+        return (List<Move>[]) new List<?>[numRoles];
+    }
+
+    public MachineState getState()
+    {
+        return state;
+    }
+
+    public boolean isTerminal()
+    {
+        return terminal;
+    }
+
+    public int getGoal(int roleIndex) throws GoalDefinitionException
+    {
+        if (goals[roleIndex] == NO_GOAL)
+            throw new GoalDefinitionException(state, roles.get(roleIndex));
+        return goals[roleIndex];
+    }
+
+    /**
+     * @return The goal of the role, or {@link #NO_GOAL}
+     */
+    public int getGoalOrNone(int roleIndex)
+    {
+        return goals[roleIndex];
+    }
+
+    public List<Move> getLegalMoves(int roleIndex) throws MoveDefinitionException
+    {
+        if (legalMoves[roleIndex] == null)
+            throw new MoveDefinitionException(state, roles.get(roleIndex));
+        return legalMoves[roleIndex];
+    }
+
+    /**
+     * @return The legal moves of the role, or null if it has none
+     */
+    public List<Move> getLegalMovesOrNull(int roleIndex)
+    {
+        return legalMoves[roleIndex];
+    }
+
+    public boolean hasNextStates()
+    {
+        return nextStates != null;
+    }
+
+    /**
+     * @return Number of joint moves with a next state, 0 if there are no next states
+     */
+    public int getNumJointMoves()
+    {
+        return nextStates == null ? 0 : nextStates.length;
+    }
+
+    public List<Move> getJointMove(int jointMoveIndex)
+    {
+        return getJointMove(legalMoves, jointMoveIndex);
+    }
+
+    public MachineState getNextState(int jointMoveIndex)
+    {
+        return nextStates[jointMoveIndex];
+    }
+
+    /**
+     * @return The state reached by the joint move, or null if it isn't among the answers
+     */
+    public MachineState getNextState(List<Move> jointMove)
+    {
+        if (nextStates == null || jointMove.size() != legalMoves.length)
+            return null;
+
+        int index = 0;
+        int stride = 1;
+        for (int i = 0; i < legalMoves.length; i++)
+        {
+            int moveIndex = legalMoves[i].indexOf(jointMove.get(i));
+            if (moveIndex < 0)
+                return null;
+            index += moveIndex * stride;
+            stride *= legalMoves[i].size();
+        }
+        return nextStates[index];
+    }
+
+    /**
+     * @return Number of combinations of the legal moves, for state machines filling the answers
+     */
+    public static int getNumJointMoves(List<Move>[] legalMoves)
+    {
+        long count = 1;
+        for (List<Move> roleMoves : legalMoves)
+        {
+            count *= roleMoves.size();
+        }
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many joint moves: " + count);
+        return (int) count;
+    }
+
+    /**
+     * @return The joint move with the given index among the combinations of the legal moves
+     */
+    public static List<Move> getJointMove(List<Move>[] legalMoves, int jointMoveIndex)
+    {
+        List<Move> jointMove = new ArrayList<Move>(legalMoves.length);
+        for (List<Move> roleMoves : legalMoves)
+        {
+            jointMove.add(roleMoves.get(jointMoveIndex % roleMoves.size()));
+            jointMoveIndex /= roleMoves.size();
+        }
+        return jointMove;
+    }
+}
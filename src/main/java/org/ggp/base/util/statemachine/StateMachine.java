@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -24,6 +25,9 @@ import com.google.common.collect.ImmutableMap;
  */
 public abstract class StateMachine
 {
+    // Null until a seed is requested, ThreadLocalRandom serving every thread until then
+    private Random random = null;
+
     // ============================================
     //          Stubs for implementations
     // ============================================
@@ -123,6 +127,31 @@ public abstract class StateMachine
         return getNextState(state, moves);
     }
 
+    /** Override this to fill a playout buffer without allocating, e.g. with cached lists of moves,
+     * or to answer the terminal and legal queries of a state together.
+     * <p>
+     * CONTRACT: Returns false and leaves the buffer as it is if the state is terminal, and otherwise
+     *           sets the legal moves of every role in the buffer.
+     */
+    public boolean fillLegalMoves(MachineState state, PlayoutBuffer buffer) throws MoveDefinitionException {
+        if (isTerminal(state))
+            return false;
+        List<Role> roles = getRoles();
+        for (int i = 0; i < roles.size(); i++)
+            buffer.setLegalMoves(i, getLegalMoves(state, roles.get(i)));
+        return true;
+    }
+
+    /** Override this to compute the next state from the joint move chosen in a playout buffer,
+     * e.g. by the indices of its moves among the legal moves of the buffer.
+     * <p>
+     * CONTRACT: After calling this method, "state" should not be accessed. The joint move belongs
+     *           to the buffer and should not be kept.
+     */
+    public MachineState getNextStateDestructively(MachineState state, PlayoutBuffer buffer) throws TransitionDefinitionException {
+        return getNextStateDestructively(state, buffer.getJointMove());
+    }
+
     /** Override this to allow the state machine to be conditioned on a particular current state.
      * This means that the state machine will only handle portions of the game tree at and below
      * the given state; it no longer needs to properly handle earlier portions of the game tree.
@@ -283,6 +312,47 @@ public abstract class StateMachine
         return theGoals;
     }
 
+    /**
+     * Returns the answers to every query about the given state at once: whether
+     * it is terminal, the goals and legal moves of every role, and the state
+     * reached by every joint move unless the state is terminal. Goals and legal
+     * moves that are not defined are recorded as such rather than thrown.
+     * <p>
+     * This asks the individual queries one by one; override it when the
+     * queries of a state can share their work.
+     */
+    public StateAnswers getAnswers(MachineState state) {
+        List<Role> roles = getRoles();
+        boolean terminal = isTerminal(state);
+        int[] goals = new int[roles.size()];
+        List<Move>[] legalMoves = StateAnswers.newMoveLists(roles.size());
+        boolean allMovesDefined = true;
+        for (int i = 0; i < roles.size(); i++) {
+            try {
+                goals[i] = getGoal(state, roles.get(i));
+            } catch (GoalDefinitionException e) {
+                goals[i] = StateAnswers.NO_GOAL;
+            }
+            if (!terminal) {
+                try {
+                    legalMoves[i] = getLegalMoves(state, roles.get(i));
+                } catch (MoveDefinitionException e) {
+                    legalMoves[i] = null;
+                }
+            }
+            allMovesDefined &= legalMoves[i] != null;
+        }
+
+        MachineState[] nextStates = null;
+        if (allMovesDefined) {
+            nextStates = new MachineState[StateAnswers.getNumJointMoves(legalMoves)];
+            for (int i = 0; i < nextStates.length; i++) {
+                nextStates[i] = getNextState(state, StateAnswers.getJointMove(legalMoves, i));
+            }
+        }
+        return new StateAnswers(state, roles, terminal, goals, legalMoves, nextStates);
+    }
+
     /**
      * Returns a random joint move from among all the possible joint moves in
      * the given state.
@@ -322,7 +392,7 @@ public abstract class StateMachine
     public Move getRandomMove(MachineState state, Role role) throws MoveDefinitionException
     {
         List<Move> legals = getLegalMoves(state, role);
-        return legals.get(ThreadLocalRandom.current().nextInt(legals.size()));
+        return legals.get(getRandomGenerator().nextInt(legals.size()));
     }
 
     /**
@@ -364,10 +434,21 @@ public abstract class StateMachine
      * the number of state changes that were made to reach a terminal state.
      */
     public MachineState performDepthCharge(MachineState state, final int[] theDepth) throws TransitionDefinitionException, MoveDefinitionException {
+        return performDepthCharge(state, theDepth, getRandomGenerator(), new PlayoutBuffer(getRoles().size()));
+    }
+
+    /**
+     * Performs a depth charge choosing the moves with the given generator and
+     * working in the given buffer, which callers reuse from charge to charge:
+     * apart from what the state machine allocates itself, nothing is allocated
+     * along the way, and a seeded generator replays the same charges.
+     */
+    public MachineState performDepthCharge(MachineState state, final int[] theDepth, Random random, PlayoutBuffer buffer) throws TransitionDefinitionException, MoveDefinitionException {
         int nDepth = 0;
-        while(!isTerminal(state)) {
+        while(fillLegalMoves(state, buffer)) {
             nDepth++;
-            state = getNextStateDestructively(state, getRandomJointMove(state));
+            buffer.chooseRandomJointMove(random);
+            state = getNextStateDestructively(state, buffer);
         }
         if(theDepth != null)
             theDepth[0] = nDepth;
@@ -380,9 +461,10 @@ public abstract class StateMachine
             avgScores[j] = 0;
         }
         final int[] depth = new int[1];
+        final PlayoutBuffer buffer = new PlayoutBuffer(getRoles().size());
         for (int i = 0; i < repetitions; i++) {
             MachineState stateForCharge = state.clone();
-            stateForCharge = performDepthCharge(stateForCharge, depth);
+            stateForCharge = performDepthCharge(stateForCharge, depth, getRandomGenerator(), buffer);
             avgDepth[0] += depth[0];
             final double accumulatedDiscountFactor = Math.pow(discountFactor, depth[0]);
             for (int j = 0; j < avgScores.length; j++) {
@@ -395,14 +477,38 @@ public abstract class StateMachine
         }
     }
 
+    /**
+     * Requests a deterministic random sequence for the random moves and depth
+     * charges of this machine, from a {@link SplitMixRandom} of the given seed.
+     * Until then, and after {@link #clearRandomSeed()}, they come from
+     * ThreadLocalRandom, which cannot be seeded.
+     * <p>
+     * A seeded machine's random choices must then be made by one thread at a time.
+     */
     public void setRandomSeed(long seed)
     {
-        ThreadLocalRandom.current().setSeed(seed);
+        random = new SplitMixRandom(seed);
+    }
+
+    /**
+     * Drops the seed, so that the random choices come from ThreadLocalRandom again.
+     */
+    public void clearRandomSeed()
+    {
+        random = null;
+    }
+
+    /**
+     * @return The generator of the random choices of this machine
+     */
+    public Random getRandomGenerator()
+    {
+        return random != null ? random : ThreadLocalRandom.current();
     }
 
     protected int getRandom(int n)
     {
-        return ThreadLocalRandom.current().nextInt(n);
+        return getRandomGenerator().nextInt(n);
     }
 
     //public Role getNextActiveRole(Role previousRole) {
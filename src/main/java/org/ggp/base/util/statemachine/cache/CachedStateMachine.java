@@ -1,38 +1,77 @@
 package org.ggp.base.util.statemachine.cache;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.ggp.base.util.cache.ClockCache;
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.PlayoutBuffer;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateAnswers;
 import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
-import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
 
 import com.google.common.collect.ImmutableList;
 
+/**
+ * Caches the answers of another state machine, by state.
+ *
+ * By default the cache keeps the states used since the last call to
+ * prune(), which happens once per move (a TtlCache with TTL 1). Given a
+ * capacity, it is instead a ClockCache of at most that many states, which
+ * several threads can share: looking up a cached answer takes no lock.
+ * Either way the answers for a state are kept in arrays indexed by role, and
+ * the next states by the index of the joint move among the cached legal
+ * moves. Answers are written without locking; two threads that miss the
+ * same answer at once both compute it, and store the same value.
+ *
+ * The answers to every query about a state, from getAnswers, are stored
+ * whole, and also fill the per-query answers of the state.
+ *
+ * Playouts get the cached lists of legal moves in their buffers, and find
+ * the cached next state by the indices of the moves chosen among them, so
+ * a playout through cached states allocates nothing.
+ *
+ * The cache counts hits and misses per answer, so that its capacity can be
+ * sized for a game.
+ */
 public final class CachedStateMachine extends StateMachine
 {
+    // Joint moves beyond this count are not cached, to keep entries small
+    private static final int MAX_CACHED_JOINT_MOVES = 1024;
+
     private final StateMachine backingStateMachine;
     private final TtlCache<MachineState, Entry> ttlCache;
+    private final ClockCache<MachineState, Entry> clockCache;
+    private volatile Role[] roles;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long prunedEntries = 0;
 
-    private final class Entry
+    private static final class Entry
     {
-        public Map<Role, Integer> goals;
-        public Map<Role, List<Move>> moves;
-        public Map<List<Move>, MachineState> nexts;
-        public Boolean terminal;
+        public static final int UNKNOWN_GOAL = Integer.MIN_VALUE;
 
-        public Entry()
+        public final int[] goals;
+        public final List<Move>[] moves;
+        // By joint move index; allocated once the legal moves of every role are cached
+        public volatile MachineState[] nexts;
+        // 0 - unknown, 1 - not terminal, 2 - terminal
+        public byte terminal;
+        public volatile StateAnswers answers;
+
+        public Entry(int numRoles)
         {
-            goals = new HashMap<Role, Integer>();
-            moves = new HashMap<Role, List<Move>>();
-            nexts = new HashMap<List<Move>, MachineState>();
-            terminal = null;
+            goals = new int[numRoles];
+            for (int i = 0; i < numRoles; i++)
+                goals[i] = UNKNOWN_GOAL;
+            moves = StateAnswers.newMoveLists(numRoles);
+            nexts = null;
+            terminal = 0;
         }
     }
 
@@ -40,76 +79,265 @@ public final class CachedStateMachine extends StateMachine
     {
         this.backingStateMachine = backingStateMachine;
         ttlCache = new TtlCache<MachineState, Entry>(1);
+        clockCache = null;
     }
 
-    private Entry getEntry(MachineState state)
+    /**
+     * @param capacity Maximum number of states kept in the cache
+     */
+    public CachedStateMachine(StateMachine backingStateMachine, int capacity)
+    {
+        this.backingStateMachine = backingStateMachine;
+        ttlCache = null;
+        clockCache = new ClockCache<MachineState, Entry>(capacity);
+    }
+
+    private Role[] getRoleArray()
     {
-        if (!ttlCache.containsKey(state))
+        Role[] roleArray = roles;
+        if (roleArray == null)
         {
-            ttlCache.put(state, new Entry());
+            roleArray = backingStateMachine.getRoles().toArray(new Role[0]);
+            roles = roleArray;
         }
+        return roleArray;
+    }
 
-        return ttlCache.get(state);
+    private int getRoleIndex(Role role)
+    {
+        Role[] roleArray = getRoleArray();
+        for (int i = 0; i < roleArray.length; i++)
+        {
+            if (roleArray[i].equals(role))
+                return i;
+        }
+        throw new IllegalArgumentException("Unknown role " + role);
+    }
+
+    private Entry getEntry(MachineState state)
+    {
+        if (clockCache != null)
+            return clockCache.computeIfAbsent(state, s -> new Entry(getRoleArray().length));
+
+        Entry entry = ttlCache.get(state);
+        if (entry == null)
+        {
+            entry = new Entry(getRoleArray().length);
+            ttlCache.put(state, entry);
+        }
+        return entry;
     }
 
     @Override
     public int getGoal(MachineState state, Role role) throws GoalDefinitionException
     {
         Entry entry = getEntry(state);
-        synchronized (entry)
+        int roleIndex = getRoleIndex(role);
+        int goal = entry.goals[roleIndex];
+        if (goal == Entry.UNKNOWN_GOAL)
         {
-            if (!entry.goals.containsKey(role))
-            {
-                entry.goals.put(role, backingStateMachine.getGoal(state, role));
-            }
-
-            return entry.goals.get(role);
+            misses.increment();
+            goal = backingStateMachine.getGoal(state, role);
+            entry.goals[roleIndex] = goal;
+        }
+        else
+        {
+            hits.increment();
         }
+        return goal;
     }
 
     @Override
     public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException
     {
-        Entry entry = getEntry(state);
-        synchronized (entry)
-        {
-            if (!entry.moves.containsKey(role))
-            {
-                entry.moves.put(role, ImmutableList.copyOf(backingStateMachine.getLegalMoves(state, role)));
-            }
+        return getLegalMoves(getEntry(state), state, getRoleIndex(role));
+    }
 
-            return entry.moves.get(role);
+    private List<Move> getLegalMoves(Entry entry, MachineState state, int roleIndex) throws MoveDefinitionException
+    {
+        List<Move> legalMoves = entry.moves[roleIndex];
+        if (legalMoves == null)
+        {
+            misses.increment();
+            legalMoves = ImmutableList.copyOf(backingStateMachine.getLegalMoves(state, getRoleArray()[roleIndex]));
+            entry.moves[roleIndex] = legalMoves;
         }
+        else
+        {
+            hits.increment();
+        }
+        return legalMoves;
+    }
+
+    @Override
+    public boolean fillLegalMoves(MachineState state, PlayoutBuffer buffer) throws MoveDefinitionException
+    {
+        Entry entry = getEntry(state);
+        if (isTerminal(entry, state))
+            return false;
+        for (int i = 0; i < entry.moves.length; i++)
+            buffer.setLegalMoves(i, getLegalMoves(entry, state, i));
+        return true;
     }
 
     @Override
     public MachineState getNextState(MachineState state, List<Move> moves)
     {
         Entry entry = getEntry(state);
-        synchronized (entry)
+        return getNextState(entry, state, moves, getJointMoveIndex(entry, moves));
+    }
+
+    @Override
+    public MachineState getNextStateDestructively(MachineState state, PlayoutBuffer buffer)
+    {
+        // Cached states are shared, so nothing is destroyed; the joint move is only passed on to the backing machine
+        Entry entry = getEntry(state);
+        return getNextState(entry, state, buffer.getJointMove(), getJointMoveIndex(entry, buffer));
+    }
+
+    private MachineState getNextState(Entry entry, MachineState state, List<Move> moves, int jointMoveIndex)
+    {
+        if (jointMoveIndex < 0)
         {
-            if (!entry.nexts.containsKey(moves))
-            {
-                entry.nexts.put(moves, backingStateMachine.getNextState(state, moves));
-            }
+            misses.increment();
+            return backingStateMachine.getNextState(state, moves);
+        }
 
-            return entry.nexts.get(moves);
+        MachineState[] nexts = entry.nexts;
+        if (nexts == null)
+        {
+            // If two threads get here at once, the next states stored in one of the arrays are lost
+            nexts = new MachineState[getNumJointMoves(entry)];
+            entry.nexts = nexts;
+        }
+        MachineState next = nexts[jointMoveIndex];
+        if (next == null)
+        {
+            misses.increment();
+            next = backingStateMachine.getNextState(state, moves);
+            nexts[jointMoveIndex] = next;
+        }
+        else
+        {
+            hits.increment();
         }
+        return next;
+    }
+
+    /**
+     * @return Index of the joint move among the combinations of the cached legal moves,
+     *         or -1 if it can't be cached
+     */
+    private static int getJointMoveIndex(Entry entry, List<Move> moves)
+    {
+        if (moves.size() != entry.moves.length || getNumJointMoves(entry) > MAX_CACHED_JOINT_MOVES)
+            return -1;
+
+        int index = 0;
+        int stride = 1;
+        for (int i = 0; i < entry.moves.length; i++)
+        {
+            int moveIndex = entry.moves[i].indexOf(moves.get(i));
+            if (moveIndex < 0)
+                return -1;
+            index += moveIndex * stride;
+            stride *= entry.moves[i].size();
+        }
+        return index;
+    }
+
+    /**
+     * @return Index of the joint move chosen in the buffer, found by the indices of the moves
+     *         if the buffer holds the cached legal moves, or else as for a list of moves
+     */
+    private static int getJointMoveIndex(Entry entry, PlayoutBuffer buffer)
+    {
+        if (buffer.getNumRoles() != entry.moves.length || getNumJointMoves(entry) > MAX_CACHED_JOINT_MOVES)
+            return -1;
+
+        int index = 0;
+        int stride = 1;
+        for (int i = 0; i < entry.moves.length; i++)
+        {
+            if (buffer.getLegalMoves(i) != entry.moves[i])
+                return getJointMoveIndex(entry, buffer.getJointMove());
+            index += buffer.getChoice(i) * stride;
+            stride *= entry.moves[i].size();
+        }
+        return index;
+    }
+
+    private static int getNumJointMoves(Entry entry)
+    {
+        long count = 1;
+        for (List<Move> roleMoves : entry.moves)
+        {
+            if (roleMoves == null)
+                return Integer.MAX_VALUE;
+            count *= roleMoves.size();
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE);
     }
 
     @Override
     public boolean isTerminal(MachineState state)
+    {
+        return isTerminal(getEntry(state), state);
+    }
+
+    private boolean isTerminal(Entry entry, MachineState state)
+    {
+        byte terminal = entry.terminal;
+        if (terminal == 0)
+        {
+            misses.increment();
+            terminal = backingStateMachine.isTerminal(state) ? (byte) 2 : (byte) 1;
+            entry.terminal = terminal;
+        }
+        else
+        {
+            hits.increment();
+        }
+        return terminal == 2;
+    }
+
+    @Override
+    public StateAnswers getAnswers(MachineState state)
     {
         Entry entry = getEntry(state);
-        synchronized (entry)
+        StateAnswers answers = entry.answers;
+        if (answers != null)
+        {
+            hits.increment();
+            return answers;
+        }
+
+        misses.increment();
+        answers = backingStateMachine.getAnswers(state);
+        entry.terminal = answers.isTerminal() ? (byte) 2 : (byte) 1;
+        boolean sameMoves = true;
+        for (int i = 0; i < entry.goals.length; i++)
         {
-            if (entry.terminal == null)
+            if (answers.getGoalOrNone(i) != StateAnswers.NO_GOAL)
+                entry.goals[i] = answers.getGoalOrNone(i);
+            if (answers.hasNextStates())
             {
-                entry.terminal = backingStateMachine.isTerminal(state);
+                // The legal moves may already be cached, in an order the next states must follow
+                List<Move> legalMoves = ImmutableList.copyOf(answers.getLegalMovesOrNull(i));
+                if (entry.moves[i] == null)
+                    entry.moves[i] = legalMoves;
+                sameMoves &= entry.moves[i].equals(legalMoves);
             }
-
-            return entry.terminal;
         }
+        if (answers.hasNextStates() && sameMoves && answers.getNumJointMoves() <= MAX_CACHED_JOINT_MOVES)
+        {
+            MachineState[] nexts = new MachineState[answers.getNumJointMoves()];
+            for (int i = 0; i < nexts.length; i++)
+                nexts[i] = answers.getNextState(i);
+            entry.nexts = nexts;
+        }
+        entry.answers = answers;
+        return answers;
     }
 
     @Override
@@ -118,14 +346,74 @@ public final class CachedStateMachine extends StateMachine
         prune();
     }
 
+    /**
+     * Forgets the states unused since the last call; the bounded cache evicts by itself instead.
+     */
     public void prune()
     {
-        ttlCache.prune();
+        if (ttlCache != null)
+        {
+            synchronized (ttlCache)
+            {
+                int before = ttlCache.size();
+                ttlCache.prune();
+                prunedEntries += before - ttlCache.size();
+            }
+        }
+    }
+
+    /**
+     * @return Number of answers taken from the cache
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of answers asked from the backing state machine
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of states that left the cache, evicted or pruned
+     */
+    public long getEvictions()
+    {
+        return clockCache != null ? clockCache.getEvictions() : prunedEntries;
+    }
+
+    /**
+     * @return Number of states in the cache
+     */
+    public int getSize()
+    {
+        return clockCache != null ? clockCache.size() : ttlCache.size();
+    }
+
+    /**
+     * @return The counters of the cache, for logging
+     */
+    public String getStatistics()
+    {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return String.format("%d states%s, %d hits, %d misses (%.1f%% hits), %d evicted",
+                getSize(), clockCache != null ? " of " + clockCache.getCapacity() : "",
+                hitCount, total - hitCount, total == 0 ? 0.0 : 100.0 * hitCount / total, getEvictions());
     }
 
     @Override
     public void initialize(List<Gdl> description) {
         backingStateMachine.initialize(description);
+        roles = null;
+        if (clockCache != null)
+            clockCache.clear();
+        else
+            ttlCache.clear();
     }
 
     @Override
@@ -139,4 +427,4 @@ public final class CachedStateMachine extends StateMachine
         // TODO(schreib): Should this be cached as well?
         return backingStateMachine.getInitialState();
     }
-}
\ No newline at end of file
+}
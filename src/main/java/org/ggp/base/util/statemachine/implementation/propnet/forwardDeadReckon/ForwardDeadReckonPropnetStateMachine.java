@@ -422,6 +422,22 @@ public class ForwardDeadReckonPropnetStateMachine extends StateMachine
   public ForwardDeadReckonInternalMachineState createInternalState(MachineState state)
   {
     ForwardDeadReckonInternalMachineState result = createEmptyInternalState();
+    copyToInternalState(state, result);
+
+    LOGGER.trace("Created internal state: " + result + " with hash " + result.hashCode());
+    return result;
+  }
+
+  /**
+   * Overwrite an existing internal state with the given state, so that callers converting many states (such as
+   * playouts from tree nodes) can reuse one internal state rather than allocating one per conversion.
+   *
+   * @param state  - the state to convert.
+   * @param result - internal state (created by this state machine) to overwrite.
+   */
+  public void copyToInternalState(MachineState state, ForwardDeadReckonInternalMachineState result)
+  {
+    result.clear();
 
     for (GdlSentence s : state.getContents())
     {
@@ -434,9 +450,6 @@ public class ForwardDeadReckonPropnetStateMachine extends StateMachine
         result.isXState |= (info.sentence == XSentence);
       }
     }
-
-    LOGGER.trace("Created internal state: " + result + " with hash " + result.hashCode());
-    return result;
   }
 
   public ForwardDeadReckonPropositionCrossReferenceInfo[] getInfoSet()
@@ -1025,6 +1038,11 @@ public class ForwardDeadReckonPropnetStateMachine extends StateMachine
     legalPropositionsX = master.legalPropositionsX;
     legalPropositionsO = master.legalPropositionsO;
     legalPropositions = master.legalPropositions;
+    if ( propNetX != null )
+    {
+      propNet = propNetX;
+      propNetInstanceInfo = propNet.animator.getInstanceInfo(instanceId);
+    }
     initialState = master.initialState;
     firstBasePropIndex = master.firstBasePropIndex;
     roles = master.roles;
@@ -1597,6 +1615,9 @@ public class ForwardDeadReckonPropnetStateMachine extends StateMachine
     }
 
     PolymorphicPropNet.sLastSourceToTargetMap = null;
+
+    //  The seed above only makes the build repeatable: play is unseeded unless asked for
+    clearRandomSeed();
   }
 
   private void finalizePropositionCrossReferenceInfo()
@@ -1737,6 +1758,7 @@ public class ForwardDeadReckonPropnetStateMachine extends StateMachine
       getDepthChargeResult(initialInternalState, playoutInfo);
       withTrueCount++;
     }
+    clearRandomSeed();
 
     LOGGER.info("Iterations in " + totalTime/2 + " ms with/without removal before adding: " + withTrueCount + "/" + withFalseCount);
     if ( (Math.abs(withTrueCount-withFalseCount)*100)/Math.max(withTrueCount, withFalseCount) < 4 )
@@ -1,19 +1,25 @@
 package org.ggp.base.util.statemachine.implementation.prover;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
 import org.ggp.base.util.gdl.grammar.GdlRelation;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
 import org.ggp.base.util.logging.GamerLogger;
-import org.ggp.base.util.prover.Prover;
 import org.ggp.base.util.prover.aima.AimaProver;
+import org.ggp.base.util.statemachine.BasePropositionIndex;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.PlayoutBuffer;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateAnswers;
 import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
@@ -24,11 +30,26 @@ import org.ggp.base.util.statemachine.implementation.prover.result.ProverResultP
 import com.google.common.collect.ImmutableList;
 
 
+/**
+ * Answers every query with the AimaProver. Its states are BitSetMachineStates
+ * of an index of the game's base propositions, so that they are cheap to hash
+ * and compare.
+ *
+ * Each query proves its sub-goals from scratch; getAnswers asks all the
+ * queries of a state in one prover context instead, so that their common
+ * sub-goals are proved once. Playouts do the same for the terminal, legal
+ * and next queries of every state they pass through.
+ */
 public class ProverStateMachine extends StateMachine
 {
     private MachineState initialState;
-    private Prover prover;
+    private AimaProver prover;
     private ImmutableList<Role> roles;
+    private BasePropositionIndex propositionIndex;
+    // What each thread last asked about, so that threads sharing the machine don't see each other's states
+    private ThreadLocal<Memo> memos;
+    // The moves of the game by their terms, so that playouts reuse them
+    private ConcurrentMap<GdlTerm, Move> moves;
 
     /**
      * Initialize must be called before using the StateMachine
@@ -43,19 +64,22 @@ public class ProverStateMachine extends StateMachine
     {
         prover = new AimaProver(description);
         roles = ImmutableList.copyOf(Role.computeRoles(description));
+        propositionIndex = new BasePropositionIndex();
+        memos = ThreadLocal.withInitial(Memo::new);
+        moves = new ConcurrentHashMap<GdlTerm, Move>();
         initialState = computeInitialState();
     }
 
     private MachineState computeInitialState()
     {
         Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getInitQuery(), new HashSet<GdlSentence>());
-        return new ProverResultParser().toState(results);
+        return propositionIndex.encode(new ProverResultParser().toState(results).getContents());
     }
 
     @Override
     public int getGoal(MachineState state, Role role) throws GoalDefinitionException
     {
-        Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getGoalQuery(role), ProverQueryBuilder.getContext(state));
+        Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getGoalQuery(role), getContext(state));
 
         if (results.size() != 1)
         {
@@ -63,6 +87,24 @@ public class ProverStateMachine extends StateMachine
             throw new GoalDefinitionException(state, role);
         }
 
+        int goal = toGoal(results);
+        if (goal == StateAnswers.NO_GOAL)
+        {
+            throw new GoalDefinitionException(state, role);
+        }
+        return goal;
+    }
+
+    /**
+     * @return The value of the only goal among the results, or {@link StateAnswers#NO_GOAL}
+     */
+    private static int toGoal(Set<GdlSentence> results)
+    {
+        if (results.size() != 1)
+        {
+            return StateAnswers.NO_GOAL;
+        }
+
         try
         {
             GdlRelation relation = (GdlRelation) results.iterator().next();
@@ -72,7 +114,7 @@ public class ProverStateMachine extends StateMachine
         }
         catch (Exception e)
         {
-            throw new GoalDefinitionException(state, role);
+            return StateAnswers.NO_GOAL;
         }
     }
 
@@ -85,7 +127,7 @@ public class ProverStateMachine extends StateMachine
     @Override
     public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException
     {
-        Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getLegalQuery(role), ProverQueryBuilder.getContext(state));
+        Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getLegalQuery(role), getContext(state));
 
         if (results.isEmpty())
         {
@@ -98,8 +140,11 @@ public class ProverStateMachine extends StateMachine
     @Override
     public MachineState getNextState(MachineState state, List<Move> moves)
     {
-        Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getNextQuery(), ProverQueryBuilder.getContext(state, getRoles(), moves));
+        return toNextState(state, moves, prover.askAll(ProverQueryBuilder.getNextQuery(), getContext(state, moves)));
+    }
 
+    private MachineState toNextState(MachineState state, List<Move> moves, Set<GdlSentence> results)
+    {
         for (GdlSentence sentence : results)
         {
             if (!sentence.isGround())
@@ -108,7 +153,148 @@ public class ProverStateMachine extends StateMachine
             }
         }
 
-        return new ProverResultParser().toState(results);
+        Set<GdlSentence> contents = new ProverResultParser().toState(results).getContents();
+        Memo memo = memos.get();
+        memo.lastComputedState = propositionIndex.encode(contents);
+        memo.lastComputedContents = Collections.unmodifiableSet(contents);
+        return memo.lastComputedState;
+    }
+
+    @Override
+    public StateAnswers getAnswers(MachineState state)
+    {
+        // Legal, goal and terminal don't depend on the moves, so their answers hold in the contexts of every joint move
+        AimaProver.Context context = prover.createContext(getContext(state));
+        boolean terminal = prover.askOne(ProverQueryBuilder.getTerminalQuery(), context) != null;
+        int[] goals = new int[roles.size()];
+        List<Move>[] legalMoves = StateAnswers.newMoveLists(roles.size());
+        boolean allMovesDefined = !terminal;
+        for (int i = 0; i < roles.size(); i++)
+        {
+            Role role = roles.get(i);
+            goals[i] = toGoal(prover.askAll(ProverQueryBuilder.getGoalQuery(role), context));
+            if (!terminal)
+            {
+                Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getLegalQuery(role), context);
+                legalMoves[i] = results.isEmpty() ? null : new ProverResultParser().toMoves(results);
+                allMovesDefined &= legalMoves[i] != null;
+            }
+        }
+
+        MachineState[] nextStates = null;
+        if (allMovesDefined)
+        {
+            nextStates = new MachineState[StateAnswers.getNumJointMoves(legalMoves)];
+            for (int i = 0; i < nextStates.length; i++)
+            {
+                List<Move> moves = StateAnswers.getJointMove(legalMoves, i);
+                Set<GdlSentence> does = new HashSet<GdlSentence>();
+                for (int j = 0; j < roles.size(); j++)
+                {
+                    does.add(ProverQueryBuilder.toDoes(roles.get(j), moves.get(j)));
+                }
+                nextStates[i] = toNextState(state, moves, prover.askAll(ProverQueryBuilder.getNextQuery(), context.extend(does)));
+            }
+        }
+        return new StateAnswers(state, roles, terminal, goals, legalMoves, nextStates);
+    }
+
+    @Override
+    public boolean fillLegalMoves(MachineState state, PlayoutBuffer buffer) throws MoveDefinitionException
+    {
+        AimaProver.Context context = getPlayoutContext(state);
+        if (prover.askOne(ProverQueryBuilder.getTerminalQuery(), context) != null)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < roles.size(); i++)
+        {
+            Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getLegalQuery(roles.get(i)), context);
+            if (results.isEmpty())
+            {
+                throw new MoveDefinitionException(state, roles.get(i));
+            }
+
+            List<Move> legalMoves = buffer.clearLegalMoves(i);
+            for (GdlSentence result : results)
+            {
+                legalMoves.add(getMove(result.get(1)));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public MachineState getNextStateDestructively(MachineState state, PlayoutBuffer buffer)
+    {
+        List<Move> jointMove = buffer.getJointMove();
+        Set<GdlSentence> does = new HashSet<GdlSentence>();
+        for (int i = 0; i < roles.size(); i++)
+        {
+            does.add(ProverQueryBuilder.toDoes(roles.get(i), jointMove.get(i)));
+        }
+        return toNextState(state, jointMove, prover.askAll(ProverQueryBuilder.getNextQuery(), getPlayoutContext(state).extend(does)));
+    }
+
+    private AimaProver.Context getPlayoutContext(MachineState state)
+    {
+        Memo memo = memos.get();
+        if (state != memo.playoutState)
+        {
+            memo.playoutContext = prover.createContext(getContext(state));
+            memo.playoutState = state;
+        }
+        return memo.playoutContext;
+    }
+
+    private Move getMove(GdlTerm term)
+    {
+        Move move = moves.get(term);
+        return move != null ? move : moves.computeIfAbsent(term, Move::new);
+    }
+
+    private Set<GdlSentence> getContext(MachineState state)
+    {
+        Memo memo = memos.get();
+        if (state != memo.lastState)
+        {
+            memo.lastContents = state == memo.lastComputedState ? memo.lastComputedContents : ProverQueryBuilder.getContext(state);
+            memo.lastState = state;
+        }
+        return memo.lastContents;
+    }
+
+    private Set<GdlSentence> getContext(MachineState state, List<Move> moves)
+    {
+        Set<GdlSentence> context = new HashSet<GdlSentence>(getContext(state));
+        for (int i = 0; i < roles.size(); i++)
+        {
+            context.add(ProverQueryBuilder.toDoes(roles.get(i), moves.get(i)));
+        }
+        return context;
+    }
+
+    /**
+     * The sentences of the last state a thread asked about, which is usually
+     * asked about several times in a row, and of the last state it computed,
+     * which is usually asked about next; and the prover context of the last
+     * state of its playout, shared by the queries about that state.
+     */
+    private static final class Memo
+    {
+        private MachineState lastState;
+        private Set<GdlSentence> lastContents;
+        private MachineState lastComputedState;
+        private Set<GdlSentence> lastComputedContents;
+        private MachineState playoutState;
+        private AimaProver.Context playoutContext;
+    }
+
+    @Override
+    public MachineState getMachineStateFromSentenceList(Set<GdlSentence> sentenceList)
+    {
+        return propositionIndex.encode(sentenceList);
     }
 
     @Override
@@ -120,6 +306,6 @@ public class ProverStateMachine extends StateMachine
     @Override
     public boolean isTerminal(MachineState state)
     {
-        return prover.prove(ProverQueryBuilder.getTerminalQuery(), ProverQueryBuilder.getContext(state));
+        return prover.prove(ProverQueryBuilder.getTerminalQuery(), getContext(state));
     }
 }
\ No newline at end of file
@@ -0,0 +1,435 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.GdlUtils;
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlDistinct;
+import org.ggp.base.util.gdl.grammar.GdlFunction;
+import org.ggp.base.util.gdl.grammar.GdlLiteral;
+import org.ggp.base.util.gdl.grammar.GdlNot;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlRule;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+import org.ggp.base.util.gdl.grammar.GdlVariable;
+
+/**
+ * A rule compiled into nested loops over the fact tables of its body.
+ *
+ * The order of the body is chosen once, greedily: the next positive literal
+ * is the one with the fewest variables not bound yet, and negations and
+ * distincts come as soon as their variables are bound. A positive literal
+ * whose slots are all known by then is a hash lookup rather than a scan.
+ *
+ * For semi-naive evaluation there is also one plan per positive literal that
+ * starts with that literal, iterating only over the tuples a pass has added.
+ */
+final class CompiledRule
+{
+    /**
+     * Forms are numbered by the state machine; the rule only knows their numbers.
+     */
+    interface FormNumbering
+    {
+        int getFormIndex(GdlSentence sentence);
+    }
+
+    private static final int POSITIVE = 0;
+    private static final int NEGATIVE = 1;
+    private static final int DISTINCT = 2;
+
+    // How a slot of a literal is matched
+    private static final int CONSTANT = 0;
+    private static final int BIND = 1;
+    private static final int CHECK = 2;
+
+    /**
+     * A literal of the body, compiled for its place in one order of the body.
+     */
+    private static final class Step
+    {
+        final int kind;
+        final int form;
+        final int literal;
+        final int[] modes;
+        final int[] vars;
+        final GdlConstant[] constants;
+        // Whether every slot is known before the step
+        final boolean lookup;
+        final GdlTerm left;
+        final GdlTerm right;
+
+        Step(int kind, int form, int literal, int[] modes, int[] vars, GdlConstant[] constants, boolean lookup, GdlTerm left, GdlTerm right)
+        {
+            this.kind = kind;
+            this.form = form;
+            this.literal = literal;
+            this.modes = modes;
+            this.vars = vars;
+            this.constants = constants;
+            this.lookup = lookup;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private final GdlRule rule;
+    private final int headForm;
+    private final int[] headVars;
+    private final GdlConstant[] headConstants;
+    private final int numVars;
+    private final Map<GdlVariable, Integer> varIndices;
+    private final Step[] fullPlan;
+    // By positive literal; null for the other literals
+    private final Step[][] deltaPlans;
+    private final int[] literalForms;
+
+    CompiledRule(GdlRule rule, FormNumbering forms)
+    {
+        this.rule = rule;
+        varIndices = new HashMap<GdlVariable, Integer>();
+        for (GdlVariable var : GdlUtils.getVariables(rule))
+        {
+            if (!varIndices.containsKey(var))
+                varIndices.put(var, varIndices.size());
+        }
+        numVars = varIndices.size();
+
+        GdlSentence head = rule.getHead();
+        headForm = forms.getFormIndex(head);
+        List<GdlTerm> headTuple = GdlUtils.getTupleFromSentence(head);
+        headVars = new int[headTuple.size()];
+        headConstants = new GdlConstant[headTuple.size()];
+        for (int i = 0; i < headTuple.size(); i++)
+        {
+            GdlTerm term = headTuple.get(i);
+            if (term instanceof GdlVariable)
+            {
+                headVars[i] = varIndices.get(term);
+            }
+            else
+            {
+                headVars[i] = -1;
+                headConstants[i] = (GdlConstant) term;
+            }
+        }
+
+        literalForms = new int[rule.arity()];
+        for (int i = 0; i < rule.arity(); i++)
+        {
+            GdlLiteral literal = rule.get(i);
+            if (literal instanceof GdlSentence)
+                literalForms[i] = forms.getFormIndex((GdlSentence) literal);
+            else if (literal instanceof GdlNot && ((GdlNot) literal).getBody() instanceof GdlSentence)
+                literalForms[i] = forms.getFormIndex((GdlSentence) ((GdlNot) literal).getBody());
+            else if (literal instanceof GdlDistinct)
+                literalForms[i] = -1;
+            else
+                throw new IllegalArgumentException("Can't compile " + literal + " in " + rule);
+        }
+
+        fullPlan = plan(-1);
+        deltaPlans = new Step[rule.arity()][];
+        for (int i = 0; i < rule.arity(); i++)
+        {
+            if (rule.get(i) instanceof GdlSentence)
+                deltaPlans[i] = plan(i);
+        }
+    }
+
+    int getHeadForm()
+    {
+        return headForm;
+    }
+
+    /**
+     * @return The forms of the positive literals, by literal; -1 for the other literals
+     */
+    int getPositiveForm(int literal)
+    {
+        return rule.get(literal) instanceof GdlSentence ? literalForms[literal] : -1;
+    }
+
+    int getNumLiterals()
+    {
+        return rule.arity();
+    }
+
+    private Step[] plan(int first)
+    {
+        List<Step> steps = new ArrayList<Step>();
+        Set<Integer> bound = new HashSet<Integer>();
+        List<Integer> positives = new ArrayList<Integer>();
+        List<Integer> filters = new ArrayList<Integer>();
+        for (int i = 0; i < rule.arity(); i++)
+        {
+            if (i == first)
+                continue;
+            if (rule.get(i) instanceof GdlSentence)
+                positives.add(i);
+            else
+                filters.add(i);
+        }
+
+        if (first >= 0)
+        {
+            // The tuples of the last pass are scanned, even if the literal is ground
+            steps.add(compilePositive(first, bound, false));
+        }
+        while (true)
+        {
+            for (int f = 0; f < filters.size(); f++)
+            {
+                int literal = filters.get(f);
+                if (bound.containsAll(getVars(rule.get(literal))))
+                {
+                    steps.add(compileFilter(literal));
+                    filters.remove(f--);
+                }
+            }
+            if (positives.isEmpty())
+                break;
+
+            int best = 0;
+            int bestUnbound = Integer.MAX_VALUE;
+            for (int p = 0; p < positives.size(); p++)
+            {
+                Set<Integer> vars = getVars(rule.get(positives.get(p)));
+                vars.removeAll(bound);
+                if (vars.size() < bestUnbound)
+                {
+                    best = p;
+                    bestUnbound = vars.size();
+                }
+            }
+            steps.add(compilePositive(positives.remove(best), bound, true));
+        }
+        if (!filters.isEmpty())
+        {
+            throw new IllegalArgumentException("Unsafe rule, some variables are never bound: " + rule);
+        }
+        if (!bound.containsAll(getVars(rule.getHead())))
+        {
+            throw new IllegalArgumentException("Unsafe rule, some variables of the head are never bound: " + rule);
+        }
+        return steps.toArray(new Step[steps.size()]);
+    }
+
+    private Set<Integer> getVars(GdlLiteral literal)
+    {
+        Set<Integer> vars = new HashSet<Integer>();
+        for (GdlVariable var : GdlUtils.getVariables(literal))
+            vars.add(varIndices.get(var));
+        return vars;
+    }
+
+    private int getVarIndex(GdlTerm term)
+    {
+        return term instanceof GdlVariable ? varIndices.get(term) : -1;
+    }
+
+    private Step compilePositive(int literal, Set<Integer> bound, boolean mayLookUp)
+    {
+        List<GdlTerm> tuple = GdlUtils.getTupleFromSentence((GdlSentence) rule.get(literal));
+        int[] modes = new int[tuple.size()];
+        int[] vars = new int[tuple.size()];
+        GdlConstant[] constants = new GdlConstant[tuple.size()];
+        boolean allKnown = true;
+        for (int i = 0; i < tuple.size(); i++)
+        {
+            GdlTerm term = tuple.get(i);
+            if (term instanceof GdlVariable)
+            {
+                vars[i] = varIndices.get(term);
+                if (bound.add(vars[i]))
+                {
+                    modes[i] = BIND;
+                    allKnown = false;
+                }
+                else
+                {
+                    modes[i] = CHECK;
+                }
+            }
+            else
+            {
+                modes[i] = CONSTANT;
+                constants[i] = (GdlConstant) term;
+            }
+        }
+        return new Step(POSITIVE, literalForms[literal], literal, modes, vars, constants, mayLookUp && allKnown, null, null);
+    }
+
+    private Step compileFilter(int literal)
+    {
+        GdlLiteral gdl = rule.get(literal);
+        if (gdl instanceof GdlDistinct)
+        {
+            GdlDistinct distinct = (GdlDistinct) gdl;
+            // Variables and constants are compared directly, functions are built first
+            int[] vars = new int[] { getVarIndex(distinct.getArg1()), getVarIndex(distinct.getArg2()) };
+            GdlConstant[] constants = new GdlConstant[2];
+            if (distinct.getArg1() instanceof GdlConstant)
+                constants[0] = (GdlConstant) distinct.getArg1();
+            if (distinct.getArg2() instanceof GdlConstant)
+                constants[1] = (GdlConstant) distinct.getArg2();
+            return new Step(DISTINCT, -1, literal, null, vars, constants, false, distinct.getArg1(), distinct.getArg2());
+        }
+
+        List<GdlTerm> tuple = GdlUtils.getTupleFromSentence((GdlSentence) ((GdlNot) gdl).getBody());
+        int[] modes = new int[tuple.size()];
+        int[] vars = new int[tuple.size()];
+        GdlConstant[] constants = new GdlConstant[tuple.size()];
+        for (int i = 0; i < tuple.size(); i++)
+        {
+            GdlTerm term = tuple.get(i);
+            if (term instanceof GdlVariable)
+            {
+                modes[i] = CHECK;
+                vars[i] = varIndices.get(term);
+            }
+            else
+            {
+                modes[i] = CONSTANT;
+                constants[i] = (GdlConstant) term;
+            }
+        }
+        return new Step(NEGATIVE, literalForms[literal], literal, modes, vars, constants, true, null, null);
+    }
+
+    /**
+     * Adds the heads of every instance of the rule whose body is true to the
+     * table of the head's form.
+     */
+    void evaluate(FactTable[] tables)
+    {
+        match(fullPlan, 0, new GdlConstant[numVars], tables, 0, 0);
+    }
+
+    /**
+     * Like {@link #evaluate(FactTable[])}, but only for the instances where
+     * the given positive literal is one of the tuples from deltaStart to
+     * deltaEnd of its table.
+     */
+    void evaluateDelta(FactTable[] tables, int literal, int deltaStart, int deltaEnd)
+    {
+        if (deltaStart < deltaEnd)
+            match(deltaPlans[literal], 0, new GdlConstant[numVars], tables, deltaStart, deltaEnd);
+    }
+
+    private void match(Step[] plan, int index, GdlConstant[] binding, FactTable[] tables, int deltaStart, int deltaEnd)
+    {
+        if (index == plan.length)
+        {
+            tables[headForm].add(instantiate(headVars, headConstants, binding));
+            return;
+        }
+
+        Step step = plan[index];
+        switch (step.kind)
+        {
+        case POSITIVE:
+            FactTable table = tables[step.form];
+            if (step.lookup)
+            {
+                if (table.contains(instantiate(step.vars, step.constants, binding)))
+                    match(plan, index + 1, binding, tables, deltaStart, deltaEnd);
+                return;
+            }
+            // A delta plan starts with the literal whose new tuples it joins
+            int start = 0;
+            int end = table.size();
+            if (index == 0 && deltaEnd > 0)
+            {
+                start = deltaStart;
+                end = deltaEnd;
+            }
+            for (int t = start; t < end; t++)
+            {
+                if (unify(step, table.get(t), binding))
+                    match(plan, index + 1, binding, tables, deltaStart, deltaEnd);
+            }
+            return;
+        case NEGATIVE:
+            if (!tables[step.form].contains(instantiate(step.vars, step.constants, binding)))
+                match(plan, index + 1, binding, tables, deltaStart, deltaEnd);
+            return;
+        default:
+            if (getValue(step, 0, step.left, binding) != getValue(step, 1, step.right, binding))
+                match(plan, index + 1, binding, tables, deltaStart, deltaEnd);
+            return;
+        }
+    }
+
+    private static boolean unify(Step step, Tuple tuple, GdlConstant[] binding)
+    {
+        GdlConstant[] values = tuple.values;
+        int[] modes = step.modes;
+        for (int i = 0; i < modes.length; i++)
+        {
+            switch (modes[i])
+            {
+            case CONSTANT:
+                if (values[i] != step.constants[i])
+                    return false;
+                break;
+            case BIND:
+                binding[step.vars[i]] = values[i];
+                break;
+            default:
+                if (values[i] != binding[step.vars[i]])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static Tuple instantiate(int[] vars, GdlConstant[] constants, GdlConstant[] binding)
+    {
+        GdlConstant[] values = new GdlConstant[vars.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = constants[i] != null ? constants[i] : binding[vars[i]];
+        }
+        return new Tuple(values);
+    }
+
+    private GdlTerm getValue(Step step, int arg, GdlTerm term, GdlConstant[] binding)
+    {
+        if (step.vars[arg] >= 0)
+            return binding[step.vars[arg]];
+        if (step.constants[arg] != null)
+            return step.constants[arg];
+        return substitute(term, binding);
+    }
+
+    /**
+     * The term with its variables replaced; terms are interned, so equal terms are the same object.
+     */
+    private GdlTerm substitute(GdlTerm term, GdlConstant[] binding)
+    {
+        if (term instanceof GdlVariable)
+            return binding[varIndices.get(term)];
+        if (term instanceof GdlFunction)
+        {
+            GdlFunction function = (GdlFunction) term;
+            List<GdlTerm> body = new ArrayList<GdlTerm>(function.arity());
+            for (GdlTerm arg : function.getBody())
+                body.add(substitute(arg, binding));
+            return GdlPool.getFunction(function.getName(), body);
+        }
+        return term;
+    }
+
+    @Override
+    public String toString()
+    {
+        return rule.toString();
+    }
+}
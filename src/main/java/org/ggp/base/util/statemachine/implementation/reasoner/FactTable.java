@@ -0,0 +1,63 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The true sentences of one sentence form, as tuples.
+ *
+ * Tuples are kept in the order they were added, so the ones added during an
+ * evaluation pass are a range of indices, which is what semi-naive evaluation
+ * iterates over in the next pass.
+ */
+final class FactTable
+{
+    private final List<Tuple> tuples;
+    private final Set<Tuple> contents;
+
+    FactTable()
+    {
+        tuples = new ArrayList<Tuple>();
+        contents = new HashSet<Tuple>();
+    }
+
+    FactTable(Collection<Tuple> initial)
+    {
+        tuples = new ArrayList<Tuple>(initial);
+        contents = new HashSet<Tuple>(initial);
+    }
+
+    /**
+     * @return Whether the tuple was new
+     */
+    boolean add(Tuple tuple)
+    {
+        if (!contents.add(tuple))
+            return false;
+        tuples.add(tuple);
+        return true;
+    }
+
+    boolean contains(Tuple tuple)
+    {
+        return contents.contains(tuple);
+    }
+
+    Tuple get(int index)
+    {
+        return tuples.get(index);
+    }
+
+    int size()
+    {
+        return tuples.size();
+    }
+
+    boolean isEmpty()
+    {
+        return tuples.isEmpty();
+    }
+}
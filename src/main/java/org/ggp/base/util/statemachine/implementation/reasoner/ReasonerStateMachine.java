@@ -0,0 +1,555 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.GdlUtils;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlLiteral;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlRule;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+import org.ggp.base.util.gdl.grammar.GdlVariable;
+import org.ggp.base.util.gdl.model.DependencyGraphs;
+import org.ggp.base.util.gdl.model.SentenceForm;
+import org.ggp.base.util.gdl.model.SentenceFormModel;
+import org.ggp.base.util.gdl.model.SentenceFormModelFactory;
+import org.ggp.base.util.gdl.model.SentenceForms;
+import org.ggp.base.util.gdl.model.SimpleSentenceForm;
+import org.ggp.base.util.gdl.transforms.VariableConstrainer;
+import org.ggp.base.util.reasoner.gdl.GdlChainingReasoner;
+import org.ggp.base.util.reasoner.gdl.GdlSentenceSet;
+import org.ggp.base.util.statemachine.BasePropositionIndex;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.implementation.prover.query.ProverQueryBuilder;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+
+/**
+ * Answers every query by forward chaining, instead of proving it backwards
+ * as the ProverStateMachine does, so that a fact is derived once per state
+ * rather than once per query that needs it.
+ *
+ * The rules are compiled into joins (see {@link CompiledRule}) and applied
+ * stratum by stratum, recursive strata with semi-naive evaluation, so that a
+ * pass only looks for the rule instances that use a tuple found in the pass
+ * before. The sentences true in every state, starting from the facts the
+ * GdlChainingReasoner lists, are derived once, at initialization. Everything
+ * legal, goal and terminal need is derived at once and kept for the last
+ * state asked about; the next state only derives the forms that depend on
+ * the moves, on top of that.
+ *
+ * Like the ProverStateMachine, its states are BitSetMachineStates, and it is
+ * not thread-safe. Unlike it, it needs every variable of a rule to be bound
+ * by the body, except for the role of legal and goal, and it can't play games
+ * whose functions nest without bound.
+ */
+public class ReasonerStateMachine extends StateMachine
+{
+    private static final FactTable EMPTY = new FactTable();
+
+    private ImmutableList<Role> roles;
+    private BasePropositionIndex propositionIndex;
+    private MachineState initialState;
+
+    private Map<SentenceForm, Integer> formIndices;
+    private List<SentenceForm> forms;
+    // By form: the tables of the constant forms, shared by every state, and the facts of the other forms
+    private FactTable[] constantTables;
+    private List<List<Tuple>> facts;
+    private int[] stateForms;
+    private int[] moveForms;
+    private List<Stratum> constantStrata;
+    private List<Stratum> stateStrata;
+    private List<Stratum> moveStrata;
+    private int[] legalForms;
+    private int[] goalForms;
+    private int[] terminalForms;
+    private int[] nextForms;
+    // Conversions between sentences and tuples, by form where the tuple alone is ambiguous
+    private Map<GdlSentence, Input> inputs;
+    private List<Map<Tuple, Move>> moves;
+    private List<Map<Tuple, GdlSentence>> nextSentences;
+    // The tables of the last state asked about, which is usually asked about several times in a row
+    private MachineState lastState;
+    private FactTable[] lastTables;
+
+    /**
+     * The rules of forms that have to be evaluated together.
+     */
+    private static final class Stratum
+    {
+        final List<CompiledRule> rules = new ArrayList<CompiledRule>();
+        final Set<Integer> forms = new HashSet<Integer>();
+        boolean recursive;
+    }
+
+    /**
+     * A true or does sentence, as a tuple of its form.
+     */
+    private static final class Input
+    {
+        final int form;
+        final Tuple tuple;
+
+        Input(int form, Tuple tuple)
+        {
+            this.form = form;
+            this.tuple = tuple;
+        }
+    }
+
+    /**
+     * Initialize must be called before using the StateMachine
+     */
+    public ReasonerStateMachine()
+    {
+
+    }
+
+    @Override
+    public void initialize(List<Gdl> description)
+    {
+        roles = ImmutableList.copyOf(Role.computeRoles(description));
+        propositionIndex = new BasePropositionIndex();
+        formIndices = new HashMap<SentenceForm, Integer>();
+        forms = new ArrayList<SentenceForm>();
+        inputs = new HashMap<GdlSentence, Input>();
+        moves = new ArrayList<Map<Tuple, Move>>();
+        nextSentences = new ArrayList<Map<Tuple, GdlSentence>>();
+        lastState = null;
+        lastTables = null;
+
+        SentenceFormModel model;
+        try
+        {
+            // Also cleans the description and removes the ORs
+            description = VariableConstrainer.replaceFunctionValuedVariables(bindRoleVariables(description));
+            model = SentenceFormModelFactory.create(description);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while initializing", e);
+        }
+
+        for (SentenceForm form : model.getSentenceForms())
+            getFormIndex(form);
+        createStrata(model);
+
+        // The facts listed in the description, then what the rules of the needed constant forms derive from them
+        GdlSentenceSet listed = GdlChainingReasoner.create(model).getConstantSentences();
+        FactTable[] tables = new FactTable[forms.size()];
+        facts = new ArrayList<List<Tuple>>();
+        for (int i = 0; i < forms.size(); i++)
+        {
+            List<Tuple> tuples = new ArrayList<Tuple>();
+            for (GdlSentence sentence : listed.getSentences().get(forms.get(i)))
+                tuples.add(new Tuple(GdlUtils.getTupleFromGroundSentence(sentence)));
+            facts.add(tuples);
+            tables[i] = model.getConstantSentenceForms().contains(forms.get(i)) ? new FactTable(tuples) : EMPTY;
+            moves.add(new HashMap<Tuple, Move>());
+            nextSentences.add(new HashMap<Tuple, GdlSentence>());
+        }
+        evaluate(tables, constantStrata);
+        constantTables = new FactTable[forms.size()];
+        for (int i = 0; i < forms.size(); i++)
+        {
+            if (tables[i] != EMPTY)
+                constantTables[i] = tables[i];
+        }
+
+        legalForms = getForms(GdlPool.LEGAL);
+        goalForms = getForms(GdlPool.GOAL);
+        terminalForms = getForms(GdlPool.TERMINAL);
+        nextForms = getForms(GdlPool.NEXT);
+        initialState = computeInitialState();
+    }
+
+    /**
+     * Rules of legal and goal may leave the role a variable, which the prover
+     * binds from the query; bottom-up, it has to range over the roles.
+     */
+    private static List<Gdl> bindRoleVariables(List<Gdl> description)
+    {
+        List<Gdl> bound = new ArrayList<Gdl>(description.size());
+        for (Gdl gdl : description)
+        {
+            GdlRule rule = null;
+            if (gdl instanceof GdlRule)
+                rule = (GdlRule) gdl;
+            else if (gdl instanceof GdlSentence && !((GdlSentence) gdl).isGround())
+                rule = GdlPool.getRule((GdlSentence) gdl);
+
+            if (rule != null && isRoleVariable(rule))
+            {
+                List<GdlLiteral> body = new ArrayList<GdlLiteral>(rule.getBody());
+                body.add(GdlPool.getRelation(GdlPool.ROLE, new GdlTerm[] { rule.getHead().get(0) }));
+                gdl = GdlPool.getRule(rule.getHead(), body);
+            }
+            bound.add(gdl);
+        }
+        return bound;
+    }
+
+    private static boolean isRoleVariable(GdlRule rule)
+    {
+        GdlSentence head = rule.getHead();
+        if (head.getName() != GdlPool.LEGAL && head.getName() != GdlPool.GOAL || head.arity() == 0 || !(head.get(0) instanceof GdlVariable))
+            return false;
+        for (GdlLiteral literal : rule.getBody())
+        {
+            if (literal instanceof GdlSentence && GdlUtils.getVariables(literal).contains(head.get(0)))
+                return false;
+        }
+        return true;
+    }
+
+    private int getFormIndex(SentenceForm form)
+    {
+        Integer index = formIndices.get(form);
+        if (index == null)
+        {
+            index = forms.size();
+            formIndices.put(form, index);
+            forms.add(form);
+        }
+        return index;
+    }
+
+    private int[] getForms(GdlConstant name)
+    {
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < forms.size(); i++)
+        {
+            if (forms.get(i).getName() == name)
+                indices.add(i);
+        }
+        return toArray(indices);
+    }
+
+    private static int[] toArray(Iterable<Integer> values)
+    {
+        List<Integer> list = ImmutableList.copyOf(values);
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    private void createStrata(SentenceFormModel model)
+    {
+        SetMultimap<SentenceForm, SentenceForm> dependencyGraph = ImmutableSetMultimap.copyOf(model.getDependencyGraph());
+        Set<SentenceForm> allForms = model.getSentenceForms();
+
+        // Only the forms the queries and the initial state need, of which the constant ones are derived once
+        final Set<GdlConstant> queried = ImmutableSet.of(GdlPool.LEGAL, GdlPool.GOAL, GdlPool.TERMINAL, GdlPool.NEXT, GdlPool.INIT);
+        Set<SentenceForm> neededForms = DependencyGraphs.getMatchingAndUpstream(allForms, dependencyGraph,
+                new Predicate<SentenceForm>() {
+                    @Override
+                    public boolean apply(SentenceForm form) {
+                        return queried.contains(form.getName());
+                    }
+                });
+        Set<SentenceForm> constantForms = Sets.intersection(neededForms, model.getConstantSentenceForms());
+        Set<SentenceForm> derivedForms = new HashSet<SentenceForm>(Sets.difference(neededForms, constantForms));
+        for (SentenceForm form : allForms)
+        {
+            if (SentenceForms.TRUE_PRED.apply(form) || SentenceForms.DOES_PRED.apply(form))
+                derivedForms.remove(form);
+        }
+
+        Set<SentenceForm> dependOnMoves = DependencyGraphs.getMatchingAndDownstream(allForms, dependencyGraph, SentenceForms.DOES_PRED);
+        constantStrata = createStrata(model, constantForms, dependencyGraph);
+        stateStrata = createStrata(model, Sets.difference(derivedForms, dependOnMoves), dependencyGraph);
+        moveStrata = createStrata(model, Sets.intersection(derivedForms, dependOnMoves), dependencyGraph);
+
+        List<Integer> state = new ArrayList<Integer>();
+        List<Integer> move = new ArrayList<Integer>();
+        for (SentenceForm form : allForms)
+        {
+            if (SentenceForms.TRUE_PRED.apply(form) || derivedForms.contains(form) && !dependOnMoves.contains(form))
+                state.add(formIndices.get(form));
+            else if (SentenceForms.DOES_PRED.apply(form) || derivedForms.contains(form))
+                move.add(formIndices.get(form));
+        }
+        stateForms = toArray(state);
+        moveForms = toArray(move);
+    }
+
+    private List<Stratum> createStrata(SentenceFormModel model, Set<SentenceForm> formsToDerive, SetMultimap<SentenceForm, SentenceForm> dependencyGraph)
+    {
+        // Forms outside the set are known by the time the set is evaluated
+        SetMultimap<SentenceForm, SentenceForm> subgraph = HashMultimap.create();
+        for (SentenceForm form : formsToDerive)
+        {
+            for (SentenceForm dependency : dependencyGraph.get(form))
+            {
+                if (formsToDerive.contains(dependency))
+                    subgraph.put(form, dependency);
+            }
+        }
+
+        CompiledRule.FormNumbering numbering = new CompiledRule.FormNumbering() {
+            @Override
+            public int getFormIndex(GdlSentence sentence) {
+                return ReasonerStateMachine.this.getFormIndex(SimpleSentenceForm.create(sentence));
+            }
+        };
+        List<Stratum> strata = new ArrayList<Stratum>();
+        for (Set<SentenceForm> formsOfStratum : DependencyGraphs.toposortSafe(formsToDerive, subgraph))
+        {
+            Stratum stratum = new Stratum();
+            for (SentenceForm form : formsOfStratum)
+            {
+                stratum.forms.add(getFormIndex(form));
+                for (GdlRule rule : model.getRules(form))
+                    stratum.rules.add(new CompiledRule(rule, numbering));
+                if (subgraph.containsEntry(form, form))
+                    stratum.recursive = true;
+            }
+            if (formsOfStratum.size() > 1)
+                stratum.recursive = true;
+            strata.add(stratum);
+        }
+        return strata;
+    }
+
+    private MachineState computeInitialState()
+    {
+        Set<GdlSentence> contents = new HashSet<GdlSentence>();
+        for (int form : getForms(GdlPool.INIT))
+        {
+            FactTable table = constantTables[form];
+            for (int i = 0; table != null && i < table.size(); i++)
+            {
+                GdlSentence init = forms.get(form).getSentenceFromTuple(ImmutableList.copyOf(table.get(i).values));
+                contents.add(GdlPool.getRelation(GdlPool.TRUE, init.getBody()));
+            }
+        }
+        return propositionIndex.encode(contents);
+    }
+
+    /**
+     * Applies the rules of the strata, in order, adding what they derive to the tables.
+     */
+    private static void evaluate(FactTable[] tables, List<Stratum> strata)
+    {
+        for (Stratum stratum : strata)
+        {
+            Map<Integer, Integer> deltaStart = stratum.recursive ? getSizes(tables, stratum) : null;
+            for (CompiledRule rule : stratum.rules)
+                rule.evaluate(tables);
+            if (!stratum.recursive)
+                continue;
+
+            // Semi-naive passes: only the rule instances that use a tuple found in the last pass
+            Map<Integer, Integer> deltaEnd = getSizes(tables, stratum);
+            while (!deltaEnd.equals(deltaStart))
+            {
+                for (CompiledRule rule : stratum.rules)
+                {
+                    for (int literal = 0; literal < rule.getNumLiterals(); literal++)
+                    {
+                        int form = rule.getPositiveForm(literal);
+                        if (stratum.forms.contains(form))
+                            rule.evaluateDelta(tables, literal, deltaStart.get(form), deltaEnd.get(form));
+                    }
+                }
+                deltaStart = deltaEnd;
+                deltaEnd = getSizes(tables, stratum);
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> getSizes(FactTable[] tables, Stratum stratum)
+    {
+        Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+        for (int form : stratum.forms)
+            sizes.put(form, tables[form].size());
+        return sizes;
+    }
+
+    private FactTable[] getTables(MachineState state)
+    {
+        if (state != lastState)
+        {
+            // The forms that depend on the moves stay empty
+            FactTable[] tables = new FactTable[forms.size()];
+            for (int form = 0; form < tables.length; form++)
+                tables[form] = constantTables[form] != null ? constantTables[form] : EMPTY;
+            for (int form : stateForms)
+                tables[form] = new FactTable(facts.get(form));
+            for (GdlSentence sentence : state.getContents())
+                add(tables, sentence);
+            evaluate(tables, stateStrata);
+
+            lastTables = tables;
+            lastState = state;
+        }
+        return lastTables;
+    }
+
+    private void add(FactTable[] tables, GdlSentence sentence)
+    {
+        Input input = inputs.get(sentence);
+        if (input == null)
+        {
+            Integer form = formIndices.get(SimpleSentenceForm.create(sentence));
+            input = new Input(form != null ? form : -1, new Tuple(GdlUtils.getTupleFromGroundSentence(sentence)));
+            inputs.put(sentence, input);
+        }
+        // Sentences of forms the rules don't know can't make anything true
+        if (input.form >= 0 && tables[input.form] != EMPTY && tables[input.form] != constantTables[input.form])
+            tables[input.form].add(input.tuple);
+    }
+
+    @Override
+    public int getGoal(MachineState state, Role role) throws GoalDefinitionException
+    {
+        FactTable[] tables = getTables(state);
+        GdlConstant goal = null;
+        for (int form : goalForms)
+        {
+            FactTable table = tables[form];
+            for (int i = 0; i < table.size(); i++)
+            {
+                GdlConstant[] values = table.get(i).values;
+                if (values[0] == role.getName())
+                {
+                    if (goal != null)
+                        throw new GoalDefinitionException(state, role);
+                    goal = values[values.length - 1];
+                }
+            }
+        }
+        if (goal == null)
+        {
+            throw new GoalDefinitionException(state, role);
+        }
+
+        try
+        {
+            return Integer.parseInt(goal.getValue());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new GoalDefinitionException(state, role);
+        }
+    }
+
+    @Override
+    public MachineState getInitialState()
+    {
+        return initialState;
+    }
+
+    @Override
+    public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException
+    {
+        FactTable[] tables = getTables(state);
+        List<Move> legalMoves = new ArrayList<Move>();
+        for (int form : legalForms)
+        {
+            FactTable table = tables[form];
+            for (int i = 0; i < table.size(); i++)
+            {
+                Tuple tuple = table.get(i);
+                if (tuple.values[0] == role.getName())
+                    legalMoves.add(getMove(form, tuple));
+            }
+        }
+
+        if (legalMoves.isEmpty())
+        {
+            throw new MoveDefinitionException(state, role);
+        }
+        return legalMoves;
+    }
+
+    private Move getMove(int form, Tuple tuple)
+    {
+        Move move = moves.get(form).get(tuple);
+        if (move == null)
+        {
+            move = new Move(forms.get(form).getSentenceFromTuple(ImmutableList.copyOf(tuple.values)).get(1));
+            moves.get(form).put(tuple, move);
+        }
+        return move;
+    }
+
+    @Override
+    public MachineState getNextState(MachineState state, List<Move> jointMove)
+    {
+        // The state's own tables are only read, so they stay as they are for the other queries about it
+        FactTable[] tables = getTables(state).clone();
+        for (int form : moveForms)
+            tables[form] = new FactTable(facts.get(form));
+        for (int i = 0; i < roles.size(); i++)
+            add(tables, ProverQueryBuilder.toDoes(roles.get(i), jointMove.get(i)));
+        evaluate(tables, moveStrata);
+
+        Set<GdlSentence> contents = new HashSet<GdlSentence>();
+        for (int form : nextForms)
+        {
+            FactTable table = tables[form];
+            for (int i = 0; i < table.size(); i++)
+                contents.add(getNextSentence(form, table.get(i)));
+        }
+        return propositionIndex.encode(contents);
+    }
+
+    private GdlSentence getNextSentence(int form, Tuple tuple)
+    {
+        GdlSentence sentence = nextSentences.get(form).get(tuple);
+        if (sentence == null)
+        {
+            GdlSentence next = forms.get(form).getSentenceFromTuple(ImmutableList.copyOf(tuple.values));
+            sentence = GdlPool.getRelation(GdlPool.TRUE, next.getBody());
+            nextSentences.get(form).put(tuple, sentence);
+        }
+        return sentence;
+    }
+
+    @Override
+    public MachineState getMachineStateFromSentenceList(Set<GdlSentence> sentenceList)
+    {
+        return propositionIndex.encode(sentenceList);
+    }
+
+    @Override
+    public List<Role> getRoles()
+    {
+        return roles;
+    }
+
+    @Override
+    public boolean isTerminal(MachineState state)
+    {
+        FactTable[] tables = getTables(state);
+        for (int form : terminalForms)
+        {
+            if (!tables[form].isEmpty())
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+
+/**
+ * The constants of a ground sentence, in the order of its sentence form's
+ * tuple. The form itself is implied by the table the tuple is stored in.
+ */
+final class Tuple
+{
+    final GdlConstant[] values;
+    private final int hashCode;
+
+    Tuple(GdlConstant[] values)
+    {
+        this.values = values;
+        this.hashCode = Arrays.hashCode(values);
+    }
+
+    Tuple(List<GdlConstant> values)
+    {
+        this(values.toArray(new GdlConstant[values.size()]));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (!(o instanceof Tuple))
+            return false;
+        Tuple tuple = (Tuple) o;
+        // Constants are interned, so they are compared by reference
+        if (hashCode != tuple.hashCode || values.length != tuple.values.length)
+            return false;
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] != tuple.values[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(values);
+    }
+}
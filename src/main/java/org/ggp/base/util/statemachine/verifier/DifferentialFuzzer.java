@@ -0,0 +1,585 @@
+package org.ggp.base.util.statemachine.verifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.transforms.GdlCleaner;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+
+/**
+ * Compares state machines with a reference machine (normally the prover)
+ * over many seeded random walks of one game, run on several threads, and
+ * times every call of every machine.
+ *
+ * A walk picks its joint moves with a Random seeded from the walk number,
+ * among the legal moves of the reference sorted by name, so the same seed
+ * replays the same walk. At every state the subjects must agree with the
+ * reference on terminality, on the legal moves of every role and, in
+ * terminal states, on the goals (as StateMachineVerifier checks them); after
+ * every joint move they must reach the same state, unless only what can be
+ * queried of the states is compared. A subject that diverges
+ * leaves the walk, and the moves that led to the divergence are shrunk:
+ * moves are dropped as long as the shortened walk, still legal for the
+ * reference, diverges too.
+ *
+ * Every worker thread has its own instances of the machines, from the given
+ * suppliers, since state machines are not thread-safe.
+ *
+ * Unlike StateMachineVerifier.checkMachineConsistency, this is meant to run
+ * unattended over many games; see StateMachineFuzzRunner.
+ */
+public final class DifferentialFuzzer {
+    public enum Method {
+        GET_INITIAL_STATE, IS_TERMINAL, GET_GOAL, GET_LEGAL_MOVES, GET_NEXT_STATE
+    }
+
+    // Walks longer than this are cut, in case a game doesn't end under random play
+    private static final int MAX_WALK_LENGTH = 1000;
+
+    private static final Comparator<Move> BY_NAME = new Comparator<Move>() {
+        @Override
+        public int compare(Move a, Move b) {
+            return a.toString().compareTo(b.toString());
+        }
+    };
+
+    private final List<Gdl> rules;
+    private final String referenceName;
+    private final Supplier<StateMachine> reference;
+    private final Map<String, Supplier<StateMachine>> subjects;
+    private final boolean compareContents;
+
+    /**
+     * @param rules Given to every machine as the GdlCleaner leaves them, since
+     * the compiled machines clean them anyway and e.g. turn (p) into p
+     * @param subjects Suppliers of the machines to check, by name
+     */
+    public DifferentialFuzzer(List<Gdl> rules, String referenceName, Supplier<StateMachine> reference, Map<String, Supplier<StateMachine>> subjects) {
+        this(rules, referenceName, reference, subjects, true);
+    }
+
+    /**
+     * @param compareContents False for subjects whose states leave out base
+     * propositions nothing depends on, as the propnets prune them
+     */
+    public DifferentialFuzzer(List<Gdl> rules, String referenceName, Supplier<StateMachine> reference, Map<String, Supplier<StateMachine>> subjects,
+            boolean compareContents) {
+        this.rules = GdlCleaner.run(rules);
+        this.referenceName = referenceName;
+        this.reference = reference;
+        this.subjects = new LinkedHashMap<String, Supplier<StateMachine>>(subjects);
+        this.compareContents = compareContents;
+    }
+
+    /**
+     * A subject that disagreed with the reference.
+     */
+    public static final class Divergence {
+        private final String subject;
+        private final long seed;
+        private final List<List<Move>> moves;
+        private final String description;
+
+        Divergence(String subject, long seed, List<List<Move>> moves, String description) {
+            this.subject = subject;
+            this.seed = seed;
+            this.moves = moves;
+            this.description = description;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return Seed of the walk where the divergence was found
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return The shrunk joint moves from the initial state that lead to the divergence
+         */
+        public List<List<Move>> getMoves() {
+            return moves;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return subject + " (seed " + seed + ") after " + moves + ": " + description;
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public static final class Report {
+        private int walks = 0;
+        private long steps = 0;
+        private final List<Divergence> divergences = new ArrayList<Divergence>();
+        private final List<String> errors = new ArrayList<String>();
+        private final Map<String, LatencyHistogram[]> latencies = new LinkedHashMap<String, LatencyHistogram[]>();
+
+        Report(List<String> machineNames) {
+            for (String name : machineNames) {
+                LatencyHistogram[] histograms = new LatencyHistogram[Method.values().length];
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i] = new LatencyHistogram();
+                }
+                latencies.put(name, histograms);
+            }
+        }
+
+        void add(Report other) {
+            walks += other.walks;
+            steps += other.steps;
+            divergences.addAll(other.divergences);
+            errors.addAll(other.errors);
+            for (Map.Entry<String, LatencyHistogram[]> entry : other.latencies.entrySet()) {
+                LatencyHistogram[] histograms = latencies.get(entry.getKey());
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i].merge(entry.getValue()[i]);
+                }
+            }
+        }
+
+        /**
+         * @return Number of walks completed, ended by the game or cut at the deadline
+         */
+        public int getWalks() {
+            return walks;
+        }
+
+        /**
+         * @return Number of joint moves played by the reference over all walks
+         */
+        public long getSteps() {
+            return steps;
+        }
+
+        public List<Divergence> getDivergences() {
+            return divergences;
+        }
+
+        /**
+         * @return Failures that are not divergences, e.g. a machine that couldn't be initialized
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public LatencyHistogram getLatency(String machineName, Method method) {
+            return latencies.get(machineName)[method.ordinal()];
+        }
+
+        public Set<String> getMachineNames() {
+            return latencies.keySet();
+        }
+
+        public boolean isClean() {
+            return divergences.isEmpty() && errors.isEmpty();
+        }
+    }
+
+    /**
+     * Runs walks with seeds firstSeed, firstSeed + 1, ... on the given number
+     * of threads, until the given number of walks is done or the deadline passes.
+     *
+     * @param deadline Time in milliseconds, as given by System.currentTimeMillis()
+     */
+    public Report run(int walks, long firstSeed, int threads, final long deadline) throws InterruptedException {
+        final List<String> machineNames = new ArrayList<String>();
+        machineNames.add(referenceName);
+        machineNames.addAll(subjects.keySet());
+
+        final AtomicInteger nextWalk = new AtomicInteger();
+        final int numWalks = walks;
+        final long seed = firstSeed;
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<Report>> running = new ArrayList<Future<Report>>();
+        for (int i = 0; i < threads; i++) {
+            running.add(workers.submit(() -> {
+                Report report = new Report(machineNames);
+                Worker worker = new Worker(report, deadline);
+                if (!worker.initialize()) {
+                    return report;
+                }
+                int walk;
+                while (System.currentTimeMillis() < deadline && (walk = nextWalk.getAndIncrement()) < numWalks) {
+                    worker.walk(seed + walk);
+                }
+                return report;
+            }));
+        }
+
+        Report total = new Report(machineNames);
+        try {
+            for (Future<Report> worker : running) {
+                try {
+                    total.add(worker.get());
+                } catch (ExecutionException e) {
+                    total.errors.add("Worker failed: " + e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        // Every worker reports the same initialization failures
+        List<String> errors = new ArrayList<String>(new LinkedHashSet<String>(total.errors));
+        total.errors.clear();
+        total.errors.addAll(errors);
+        return total;
+    }
+
+    /**
+     * The machines of one thread, and the walks it runs.
+     */
+    private final class Worker {
+        private final Report report;
+        private final long deadline;
+        private StateMachine referenceMachine;
+        private final Map<String, StateMachine> subjectMachines = new LinkedHashMap<String, StateMachine>();
+
+        Worker(Report report, long deadline) {
+            this.report = report;
+            this.deadline = deadline;
+        }
+
+        boolean initialize() {
+            referenceMachine = create(referenceName, reference);
+            if (referenceMachine == null) {
+                return false;
+            }
+            for (Map.Entry<String, Supplier<StateMachine>> subject : subjects.entrySet()) {
+                StateMachine machine = create(subject.getKey(), subject.getValue());
+                if (machine != null) {
+                    subjectMachines.put(subject.getKey(), machine);
+                }
+            }
+            return true;
+        }
+
+        private StateMachine create(String name, Supplier<StateMachine> supplier) {
+            try {
+                StateMachine machine = supplier.get();
+                machine.initialize(rules);
+                return machine;
+            } catch (Exception | StackOverflowError e) {
+                report.errors.add(name + " could not be initialized: " + e);
+                return null;
+            }
+        }
+
+        private LatencyHistogram latency(String machineName, Method method) {
+            return report.getLatency(machineName, method);
+        }
+
+        void walk(long seed) {
+            Random random = new Random(seed);
+            Map<String, MachineState> states = new LinkedHashMap<String, MachineState>();
+            List<List<Move>> moves = new ArrayList<List<Move>>();
+            long start = System.nanoTime();
+            MachineState referenceState = referenceMachine.getInitialState();
+            latency(referenceName, Method.GET_INITIAL_STATE).record(System.nanoTime() - start);
+            for (Map.Entry<String, StateMachine> subject : subjectMachines.entrySet()) {
+                try {
+                    start = System.nanoTime();
+                    MachineState state = subject.getValue().getInitialState();
+                    latency(subject.getKey(), Method.GET_INITIAL_STATE).record(System.nanoTime() - start);
+                    String difference = compareStates(referenceState, state);
+                    if (difference != null) {
+                        diverged(subject.getKey(), seed, moves, "initial state: " + difference);
+                    } else {
+                        states.put(subject.getKey(), state);
+                    }
+                } catch (Exception | StackOverflowError e) {
+                    diverged(subject.getKey(), seed, moves, "getInitialState threw " + e);
+                }
+            }
+
+            try {
+                while (!states.isEmpty() && moves.size() < MAX_WALK_LENGTH && System.currentTimeMillis() < deadline) {
+                    Answers expected = new Answers(referenceMachine, referenceState, referenceName);
+                    for (String subject : new ArrayList<String>(states.keySet())) {
+                        String difference = expected.compare(subjectMachines.get(subject), states.get(subject), subject);
+                        if (difference != null) {
+                            states.remove(subject);
+                            diverged(subject, seed, moves, difference);
+                        }
+                    }
+                    if (expected.terminal) {
+                        break;
+                    }
+
+                    List<Move> jointMove = new ArrayList<Move>();
+                    for (List<Move> legalMoves : expected.sortedMoves) {
+                        jointMove.add(legalMoves.get(random.nextInt(legalMoves.size())));
+                    }
+                    moves.add(jointMove);
+                    start = System.nanoTime();
+                    referenceState = referenceMachine.getNextState(referenceState, jointMove);
+                    latency(referenceName, Method.GET_NEXT_STATE).record(System.nanoTime() - start);
+                    report.steps++;
+                    for (String subject : new ArrayList<String>(states.keySet())) {
+                        String difference;
+                        try {
+                            start = System.nanoTime();
+                            MachineState next = subjectMachines.get(subject).getNextState(states.get(subject), jointMove);
+                            latency(subject, Method.GET_NEXT_STATE).record(System.nanoTime() - start);
+                            difference = compareStates(referenceState, next);
+                            states.put(subject, next);
+                        } catch (Exception | StackOverflowError e) {
+                            difference = "getNextState threw " + e;
+                        }
+                        if (difference != null) {
+                            states.remove(subject);
+                            diverged(subject, seed, moves, "next state: " + difference);
+                        }
+                    }
+                }
+            } catch (ReferenceFailure e) {
+                report.errors.add(referenceName + " failed (seed " + seed + ") after " + moves + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                report.errors.add(referenceName + " failed (seed " + seed + ") after " + moves + ": " + e);
+            }
+            report.walks++;
+        }
+
+        private void diverged(String subject, long seed, List<List<Move>> moves, String description) {
+            List<List<Move>> shrunk = shrink(subjectMachines.get(subject), new ArrayList<List<Move>>(moves));
+            String shrunkDescription = shrunk.size() < moves.size() ? replay(subjectMachines.get(subject), shrunk).description : null;
+            report.divergences.add(new Divergence(subject, seed, shrunk, shrunkDescription != null ? shrunkDescription : description));
+        }
+
+        /**
+         * Drops chunks of moves, from half the walk down to single moves, for
+         * as long as the walk still diverges. In turn-taking games moves can
+         * only go by whole rounds, so every chunk size is tried down to 1.
+         */
+        private List<List<Move>> shrink(StateMachine subject, List<List<Move>> moves) {
+            boolean shrunk = true;
+            while (shrunk && System.currentTimeMillis() < deadline) {
+                shrunk = false;
+                for (int chunk = Math.max((moves.size() + 1) / 2, 1); chunk >= 1; chunk = chunk == 1 ? 0 : (chunk + 1) / 2) {
+                    for (int from = 0; from + chunk <= moves.size() && System.currentTimeMillis() < deadline; ) {
+                        List<List<Move>> candidate = new ArrayList<List<Move>>(moves.subList(0, from));
+                        candidate.addAll(moves.subList(from + chunk, moves.size()));
+                        Replay replay = replay(subject, candidate);
+                        if (replay.description != null) {
+                            moves = replay.moves;
+                            shrunk = true;
+                        } else {
+                            from++;
+                        }
+                    }
+                }
+            }
+            return moves;
+        }
+
+        /**
+         * Plays the moves on the reference and the subject, without timing them.
+         * @return The first divergence and the moves before it; no divergence if a
+         *         move is not legal for the reference
+         */
+        private Replay replay(StateMachine subject, List<List<Move>> moves) {
+            try {
+                MachineState referenceState = referenceMachine.getInitialState();
+                MachineState state = subject.getInitialState();
+                if (compareStates(referenceState, state) != null) {
+                    return new Replay(new ArrayList<List<Move>>(), compareStates(referenceState, state));
+                }
+                for (int i = 0; i <= moves.size(); i++) {
+                    Answers expected = new Answers(referenceMachine, referenceState, null);
+                    String difference = expected.compare(subject, state, null);
+                    if (difference != null) {
+                        return new Replay(new ArrayList<List<Move>>(moves.subList(0, i)), difference);
+                    }
+                    if (i == moves.size() || expected.terminal) {
+                        return new Replay(moves, null);
+                    }
+                    List<Move> jointMove = moves.get(i);
+                    for (int role = 0; role < jointMove.size(); role++) {
+                        if (!expected.moves.get(role).contains(jointMove.get(role))) {
+                            return new Replay(moves, null);
+                        }
+                    }
+                    referenceState = referenceMachine.getNextState(referenceState, jointMove);
+                    try {
+                        state = subject.getNextState(state, jointMove);
+                        difference = compareStates(referenceState, state);
+                    } catch (Exception | StackOverflowError e) {
+                        difference = "getNextState threw " + e;
+                    }
+                    if (difference != null) {
+                        return new Replay(new ArrayList<List<Move>>(moves.subList(0, i + 1)), "next state: " + difference);
+                    }
+                }
+                return new Replay(moves, null);
+            } catch (Exception | StackOverflowError e) {
+                // The reference failing on the shortened walk says nothing about the subject
+                return new Replay(moves, null);
+            }
+        }
+
+        /**
+         * The answers of the reference in one state.
+         */
+        private final class Answers {
+            final boolean terminal;
+            final List<Set<Move>> moves = new ArrayList<Set<Move>>();
+            final List<List<Move>> sortedMoves = new ArrayList<List<Move>>();
+            final List<Integer> goals = new ArrayList<Integer>();
+
+            /**
+             * @param timedAs Name under which the calls are timed, or null to not time them
+             */
+            Answers(StateMachine machine, MachineState state, String timedAs) throws ReferenceFailure {
+                try {
+                    long start = System.nanoTime();
+                    terminal = machine.isTerminal(state);
+                    record(timedAs, Method.IS_TERMINAL, start);
+                    for (Role role : machine.getRoles()) {
+                        if (terminal) {
+                            goals.add(getGoal(machine, state, role, timedAs));
+                        } else {
+                            start = System.nanoTime();
+                            List<Move> legalMoves = new ArrayList<Move>(machine.getLegalMoves(state, role));
+                            record(timedAs, Method.GET_LEGAL_MOVES, start);
+                            Collections.sort(legalMoves, BY_NAME);
+                            sortedMoves.add(legalMoves);
+                            moves.add(new HashSet<Move>(legalMoves));
+                        }
+                    }
+                } catch (MoveDefinitionException | RuntimeException e) {
+                    throw new ReferenceFailure(e.toString());
+                }
+            }
+
+            private void record(String timedAs, Method method, long start) {
+                if (timedAs != null) {
+                    latency(timedAs, method).record(System.nanoTime() - start);
+                }
+            }
+
+            /**
+             * @return The goal, or null if it is not defined
+             */
+            private Integer getGoal(StateMachine machine, MachineState state, Role role, String timedAs) {
+                long start = System.nanoTime();
+                try {
+                    return machine.getGoal(state, role);
+                } catch (GoalDefinitionException e) {
+                    return null;
+                } finally {
+                    record(timedAs, Method.GET_GOAL, start);
+                }
+            }
+
+            /**
+             * @return How the subject's answers differ from these, or null if they don't
+             */
+            String compare(StateMachine subject, MachineState state, String timedAs) {
+                try {
+                    long start = System.nanoTime();
+                    boolean subjectTerminal = subject.isTerminal(state);
+                    record(timedAs, Method.IS_TERMINAL, start);
+                    if (subjectTerminal != terminal) {
+                        return "isTerminal is " + subjectTerminal + " instead of " + terminal;
+                    }
+                    List<Role> roles = subject.getRoles();
+                    for (int i = 0; i < roles.size(); i++) {
+                        Role role = roles.get(i);
+                        if (terminal) {
+                            Integer goal = getGoal(subject, state, role, timedAs);
+                            if (goals.get(i) != null && !goals.get(i).equals(goal)) {
+                                return "goal of " + role + " is " + goal + " instead of " + goals.get(i);
+                            }
+                        } else {
+                            Set<Move> legalMoves;
+                            start = System.nanoTime();
+                            try {
+                                legalMoves = new HashSet<Move>(subject.getLegalMoves(state, role));
+                            } catch (MoveDefinitionException e) {
+                                legalMoves = Collections.emptySet();
+                            }
+                            record(timedAs, Method.GET_LEGAL_MOVES, start);
+                            if (!legalMoves.equals(moves.get(i))) {
+                                return "legal moves of " + role + " are " + legalMoves + " instead of " + moves.get(i);
+                            }
+                        }
+                    }
+                    return null;
+                } catch (Exception | StackOverflowError e) {
+                    return "threw " + e;
+                }
+            }
+        }
+    }
+
+    private static final class Replay {
+        final List<List<Move>> moves;
+        final String description;
+
+        Replay(List<List<Move>> moves, String description) {
+            this.moves = moves;
+            this.description = description;
+        }
+    }
+
+    /**
+     * The reference machine failed on a walk, which is a problem of the game or of the reference.
+     */
+    private static final class ReferenceFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ReferenceFailure(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @return Null if the states have the same contents or the contents aren't compared, or else what differs
+     */
+    private String compareStates(MachineState expected, MachineState actual) {
+        if (!compareContents) {
+            return null;
+        }
+        Set<GdlSentence> expectedContents = new HashSet<GdlSentence>(expected.getContents());
+        Set<GdlSentence> actualContents = new HashSet<GdlSentence>(actual.getContents());
+        if (expectedContents.equals(actualContents)) {
+            return null;
+        }
+        Set<GdlSentence> missing = new HashSet<GdlSentence>(expectedContents);
+        missing.removeAll(actualContents);
+        Set<GdlSentence> extra = new HashSet<GdlSentence>(actualContents);
+        extra.removeAll(expectedContents);
+        return "missing " + missing + ", extra " + extra;
+    }
+}
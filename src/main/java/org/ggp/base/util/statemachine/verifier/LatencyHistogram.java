@@ -0,0 +1,71 @@
+package org.ggp.base.util.statemachine.verifier;
+
+/**
+ * Counts call latencies in buckets of powers of two nanoseconds, which is
+ * precise enough to compare state machines and costs nothing to record.
+ * Not thread-safe; every thread keeps its own histograms, which are merged
+ * at the end.
+ */
+public final class LatencyHistogram {
+    private final long[] buckets = new long[64];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        totalNanos += other.totalNanos;
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @param fraction Between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return Upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * @return e.g. "n=120 mean=15.2us p50=16us p90=32us p99=64us max=70us"
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%dus p90=%dus p99=%dus max=%dus", count, getMeanNanos() / 1000,
+                getPercentileNanos(0.5) / 1000, getPercentileNanos(0.9) / 1000, getPercentileNanos(0.99) / 1000, maxNanos / 1000);
+    }
+}
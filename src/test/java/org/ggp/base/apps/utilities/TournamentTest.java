@@ -0,0 +1,62 @@
+package org.ggp.base.apps.utilities;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ggp.base.apps.utilities.Tournament.PlayerPool;
+import org.ggp.base.player.GamePlayer;
+import org.ggp.base.player.gamer.statemachine.random.RandomGamer;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.match.Match;
+import org.ggp.base.util.match.MatchJournal;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TournamentTest extends Assert {
+
+    @Test
+    public void testMatchesPlayedAtOnceAreAllSaved() throws Exception {
+        List<GamePlayer> players = new ArrayList<>();
+        List<String> hosts = Arrays.asList("127.0.0.1", "127.0.0.1");
+        List<Integer> xPorts = new ArrayList<>();
+        List<Integer> oPorts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            GamePlayer player = new GamePlayer(9247 + i, new RandomGamer());
+            player.start();
+            players.add(player);
+            (i < 2 ? xPorts : oPorts).add(player.getGamerPort());
+        }
+        File dir = Files.createTempDirectory("tournament").toFile();
+        String tourneyName = new File(dir, "test").getPath();
+        try {
+            Tournament tournament = new Tournament(tourneyName, new TestGameRepository().getGame("ticTacToe"), 5, 5,
+                    Arrays.asList(new PlayerPool("x", hosts, xPorts, 1), new PlayerPool("o", hosts, oPorts, 1)));
+            List<Match> completed = tournament.run(5, 3);
+
+            assertEquals(5, completed.size());
+            List<String> scores = Files.readAllLines(new File(tourneyName, "scores").toPath());
+            assertEquals(5, scores.size());
+            for (String line : scores) {
+                assertTrue(line, line.startsWith("x,o = "));
+            }
+            for (Match match : completed) {
+                assertTrue(new File(tourneyName, match.getMatchId() + ".json").exists());
+                Match journaled = MatchJournal.read(new File(tourneyName, match.getMatchId() + ".journal"), null);
+                assertEquals(match.getMoveHistory(), journaled.getMoveHistory());
+            }
+        } finally {
+            for (GamePlayer player : players) {
+                player.shutdown();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolTooSmallForItsRoles() {
+        PlayerPool pool = PlayerPool.parse("self", "127.0.0.1", 9147, 1);
+        new Tournament("unused", new TestGameRepository().getGame("ticTacToe"), 5, 5, Arrays.asList(pool, pool));
+    }
+}
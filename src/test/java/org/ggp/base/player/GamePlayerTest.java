@@ -0,0 +1,139 @@
+package org.ggp.base.player;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.ggp.base.player.gamer.exception.GamePreviewException;
+import org.ggp.base.player.gamer.statemachine.StateMachineGamer;
+import org.ggp.base.server.request.RequestBuilder;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.scrambler.NoOpGdlScrambler;
+import org.ggp.base.util.http.AsyncHttpClient;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GamePlayerTest extends Assert {
+
+    /**
+     * Takes its time over every move, and remembers the clock it was given.
+     */
+    private static final class SlowGamer extends StateMachineGamer {
+        private volatile long lastTimeout;
+
+        @Override
+        public String getName() {
+            return "Slow";
+        }
+
+        @Override
+        public StateMachine getInitialStateMachine() {
+            return new ProverStateMachine();
+        }
+
+        @Override
+        public void stateMachineMetaGame(long timeout) {
+        }
+
+        @Override
+        public Move stateMachineSelectMove(long timeout) throws MoveDefinitionException {
+            lastTimeout = timeout;
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getStateMachine().getLegalMoves(getCurrentState(), getRole()).get(0);
+        }
+
+        @Override
+        public void stateMachineStop() {
+        }
+
+        @Override
+        public void stateMachineAbort() {
+        }
+
+        @Override
+        public void preview(Game g, long timeout) throws GamePreviewException {
+        }
+    }
+
+    @Test
+    public void testInfoAndAbortAreAnsweredDuringAMove() throws Exception {
+        SlowGamer gamer = new SlowGamer();
+        GamePlayer player = new GamePlayer(0, gamer, true);
+        player.start();
+        List<Gdl> rules = new TestGameRepository().getGame("ticTacToe").getRules();
+        Role role = Role.computeRoles(rules).get(0);
+        int port = player.getGamerPort();
+        try (AsyncHttpClient client = new AsyncHttpClient()) {
+            assertEquals("ready", client.issueRequest("127.0.0.1", port, "", RequestBuilder.getStartRequest("m", role, rules, 10, 10, new NoOpGdlScrambler()), 10000).get());
+
+            long sent = System.currentTimeMillis();
+            CompletableFuture<String> play = client.issueRequest("127.0.0.1", port, "", RequestBuilder.getPlayRequest("m", null, new NoOpGdlScrambler()), 15000);
+            Thread.sleep(200);
+            String info = client.issueRequest("127.0.0.1", port, "", RequestBuilder.getInfoRequest(), 500).get();
+            assertTrue(info, info.contains("busy"));
+            assertEquals("aborted", client.issueRequest("127.0.0.1", port, "", RequestBuilder.getAbortRequest("m"), 500).get());
+            assertFalse(play.isDone());
+
+            assertNotNull(play.get());
+            long timeout = gamer.lastTimeout;
+            assertTrue(timeout >= sent + 10000 && timeout <= System.currentTimeMillis() + 10000);
+        } finally {
+            player.shutdown();
+        }
+    }
+
+    @Test
+    public void testMalformedAndPipelinedRequests() throws Exception {
+        GamePlayer player = new GamePlayer(0, new SlowGamer(), true);
+        player.start();
+        int port = player.getGamerPort();
+        try {
+            // Each of these only costs its own connection
+            exchange(port, "GET /%zz HTTP/1.0\r\n\r\n");
+            exchange(port, "GET /x\r\n\r\n");
+
+            String info = RequestBuilder.getInfoRequest();
+            String post = "POST / HTTP/1.1\r\nContent-Length: " + info.length() + "\r\n";
+            String response = exchange(port, post + "\r\n" + info + post + "Connection: close\r\n\r\n" + info);
+            assertEquals(response, 2, response.split("available", -1).length - 1);
+        } finally {
+            player.shutdown();
+        }
+    }
+
+    /**
+     * Sends the bytes in one write and reads until the player closes the connection.
+     */
+    private static String exchange(int port, String request) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                response.write(buffer, 0, n);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
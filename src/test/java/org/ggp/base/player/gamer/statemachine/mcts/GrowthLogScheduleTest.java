@@ -0,0 +1,53 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the GrowthLogSchedule class, with a simulated clock.
+ */
+public class GrowthLogScheduleTest extends Assert {
+
+    private static final long MILLISECOND = 1000000;
+
+    // Runs a turn at a constant speed and returns the times of the snapshots
+    private static long[] simulateTurn(GrowthLogSchedule schedule, long duration, long nanosPerIteration) {
+        long[] times = new long[1000];
+        int count = 0;
+        long threshold = schedule.startTurn(0, duration);
+        for (long iterations = 1; iterations * nanosPerIteration < duration; iterations++) {
+            if (iterations >= threshold) {
+                times[count++] = iterations * nanosPerIteration;
+                threshold = schedule.next(iterations, iterations * nanosPerIteration);
+            }
+        }
+        return Arrays.copyOf(times, count);
+    }
+
+    @Test
+    public void testBudgetAndSpacing() {
+        GrowthLogSchedule schedule = new GrowthLogSchedule(20, MILLISECOND);
+        // 50000 iterations per second for a 10 s turn
+        long[] times = simulateTurn(schedule, 10000 * MILLISECOND, 20000);
+
+        assertTrue(times.length <= 20);
+        assertTrue(times.length >= 18);
+        assertEquals(50000, schedule.getIterationsPerSecond(), 1);
+        // Denser at the start than at the end
+        assertTrue(times[1] - times[0] < times[times.length - 1] - times[times.length - 2]);
+        assertTrue(times[times.length - 1] > 5000 * MILLISECOND);
+    }
+
+    @Test
+    public void testAdaptsToSpeed() {
+        GrowthLogSchedule schedule = new GrowthLogSchedule(20, MILLISECOND);
+        simulateTurn(schedule, 1000 * MILLISECOND, 20000);
+        // The next turn is ten times slower: the first points are missed, then the snapshots follow the schedule again
+        long[] times = simulateTurn(schedule, 1000 * MILLISECOND, 200000);
+        assertTrue(times.length >= 10);
+        assertTrue(times[times.length - 1] > 500 * MILLISECOND);
+        assertEquals(5000, schedule.getIterationsPerSecond(), 1);
+    }
+}
@@ -0,0 +1,53 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.strategy;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the strategy registry of PoolOfStrategies.
+ */
+public class PoolOfStrategiesTest extends Assert {
+
+    @Test
+    public void testEverySelectionStrategySearches() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+
+        for (String selection : PoolOfStrategies.getSelectionStrategyNames()) {
+            for (String matchSelection : PoolOfStrategies.getSelectionStrategyForMatchNames()) {
+                SearchTree tree = new SearchTree(sm, 1000, new PoolOfStrategies(selection, "random", matchSelection));
+                for (int i = 0; i < 100; i++) {
+                    tree.grow();
+                }
+
+                StatisticsForActions actions = tree.getRoot().getStatistics().getStatisticsForActions();
+                for (int role = 0; role < actions.getNumRoles(); role++) {
+                    int used = 0;
+                    for (int action = 0; action < actions.getNumActions(role); action++) {
+                        used += actions.getNumUsed(role, action);
+                    }
+                    assertEquals(selection, 100, used);
+                }
+                Move move = tree.getBestAction(sm.getRoles().get(0));
+                assertTrue(selection + "/" + matchSelection, sm.getLegalMoves(sm.getInitialState(), sm.getRoles().get(0)).contains(move));
+            }
+        }
+    }
+
+    @Test
+    public void testSpec() {
+        assertEquals("rave/random/max", PoolOfStrategies.fromSpec("RAVE/random/max").toString());
+        assertEquals("rave/random/max", PoolOfStrategies.fromSpec("rave/random/max").copy().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategy() {
+        new PoolOfStrategies("uct", "nonexistent", "robust");
+    }
+}
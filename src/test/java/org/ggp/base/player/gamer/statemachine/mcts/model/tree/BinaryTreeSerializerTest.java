@@ -0,0 +1,48 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Unit tests for the BinaryTreeSerializer class, which writes compact
+ * binary snapshots of the MCTS tree.
+ */
+public class BinaryTreeSerializerTest extends Assert {
+
+    @Test
+    public void testBinarySnapshotConvertsBackToJSON() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        SearchTree tree = new SearchTree(sm);
+        BinaryTreeSerializer serializer = new BinaryTreeSerializer();
+
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 50; j++) {
+                tree.grow();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.write(tree, out);
+            byte[] snapshot = out.toByteArray();
+
+            assertEquals(tree.toJSONbyJackson(), BinaryTreeSerializer.toJSON(new ByteArrayInputStream(snapshot)));
+            assertTrue(snapshot.length * 3 < tree.toJSONbyJackson().toString().length());
+
+            ByteBuffer buffer = ByteBuffer.allocate(snapshot.length);
+            serializer.write(tree, buffer);
+            assertArrayEquals(snapshot, buffer.array());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherDataIsRejected() throws Exception {
+        BinaryTreeSerializer.toJSON(new ByteArrayInputStream("{\"root\":{}}".getBytes()));
+    }
+}
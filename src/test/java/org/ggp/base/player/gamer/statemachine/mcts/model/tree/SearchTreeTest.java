@@ -0,0 +1,180 @@
+package org.ggp.base.player.gamer.statemachine.mcts.model.tree;
+
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.player.gamer.statemachine.mcts.model.strategy.PoolOfStrategies;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Unit tests for the SearchTree class, in particular the sharing of nodes
+ * between transpositions.
+ */
+public class SearchTreeTest extends Assert {
+
+    private static StateMachine ticTacToe() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        return sm;
+    }
+
+    @Test
+    public void testSameSeedRepeatsTheSearch() throws Exception {
+        SearchTree[] trees = new SearchTree[3];
+        System.setProperty("mcts.RANDOM_SEED", "42");
+        try {
+            trees[0] = new SearchTree(ticTacToe(), 100000, new PoolOfStrategies());
+            trees[1] = new SearchTree(ticTacToe(), 100000, new PoolOfStrategies());
+            // A helper tree's generator is split from the main tree's, so it searches differently
+            trees[2] = new SearchTree(ticTacToe(), 100000, new PoolOfStrategies().copy());
+        } finally {
+            System.clearProperty("mcts.RANDOM_SEED");
+        }
+        for (SearchTree tree : trees) {
+            for (int i = 0; i < 300; i++) {
+                tree.grow();
+            }
+        }
+
+        StatisticsForActions first = trees[0].getRoot().getStatistics().getStatisticsForActions();
+        StatisticsForActions second = trees[1].getRoot().getStatistics().getStatisticsForActions();
+        StatisticsForActions helper = trees[2].getRoot().getStatistics().getStatisticsForActions();
+        boolean helperDiffers = false;
+        for (int action = 0; action < first.getNumActions(0); action++) {
+            assertEquals(first.getAction(0, action), second.getAction(0, action));
+            assertEquals(first.getNumUsed(0, action), second.getNumUsed(0, action));
+            assertEquals(first.getScore(0, action), second.getScore(0, action), 0);
+            helperDiffers |= first.getNumUsed(0, action) != helper.getNumUsed(0, action);
+        }
+        assertTrue(helperDiffers);
+        assertEquals(trees[0].getNumNodes(), trees[1].getNumNodes());
+    }
+
+    @Test
+    public void testTranspositionsShareNodes() throws Exception {
+        SearchTree tree = new SearchTree(ticTacToe(), 100000);
+        for (int i = 0; i < 400; i++) {
+            tree.grow();
+        }
+        assertEquals(400, tree.getRoot().getStatistics().getNumVisits());
+
+        Set<SearchTreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<MachineState> states = new HashSet<>();
+        int edges = 0;
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(tree.getRoot());
+        nodes.add(tree.getRoot());
+        while (!pending.isEmpty()) {
+            SearchTreeNode node = pending.pop();
+            assertTrue(states.add(node.getState()));
+            assertSame(node, tree.findNode(node.getState()));
+            assertVisitsMatchActions(node);
+            for (SearchTreeNode child : node.getChildren()) {
+                edges++;
+                if (nodes.add(child)) {
+                    pending.push(child);
+                }
+            }
+        }
+        // Ticktacktoe positions are reached by many move orders
+        assertTrue(edges > nodes.size());
+    }
+
+    @Test
+    public void testWithoutTranspositionTable() throws Exception {
+        SearchTree tree = new SearchTree(ticTacToe(), 0);
+        for (int i = 0; i < 200; i++) {
+            tree.grow();
+        }
+        MachineState someState = tree.getRoot().getChildren().iterator().next().getState();
+        assertEquals(someState, tree.findNode(someState).getState());
+        assertVisitsMatchActions(tree.getRoot());
+    }
+
+    @Test
+    public void testCutKeepsSubTree() throws Exception {
+        SearchTree tree = new SearchTree(ticTacToe(), 100000);
+        for (int i = 0; i < 200; i++) {
+            tree.grow();
+        }
+        SearchTreeNode child = tree.getRoot().getChildren().iterator().next();
+        tree.cut(child);
+        assertTrue(child.isRoot());
+        assertSame(child, tree.findNode(child.getState()));
+        assertNull(tree.findNode(tree.getGameModel().getInitialState()));
+    }
+
+    @Test
+    public void testCutReleasesDiscardedBranches() throws Exception {
+        SearchTree tree = new SearchTree(ticTacToe(), 100000, new PoolOfStrategies(), 0, 100000);
+        for (int i = 0; i < 500; i++) {
+            tree.grow();
+        }
+        int before = tree.getNumNodes();
+        SearchTreeNode child = tree.getRoot().getChildren().iterator().next();
+        tree.cut(child);
+        assertEquals(countNodes(child), tree.getNumNodes());
+        assertEquals(before - tree.getNumNodes(), tree.getNodePool().size());
+
+        for (int i = 0; i < 500; i++) {
+            tree.grow();
+        }
+        assertTrue(tree.getNodePool().getReused() > 0);
+        assertEquals(countNodes(child), tree.getNumNodes());
+        assertVisitsMatchActions(child);
+    }
+
+    @Test
+    public void testNodeLimit() throws Exception {
+        SearchTree tree = new SearchTree(ticTacToe(), 100000, new PoolOfStrategies(), 100, 0);
+        for (int i = 0; i < 2000; i++) {
+            tree.grow();
+            // Одно расширение добавляет не больше девяти узлов
+            assertTrue(tree.getNumNodes() <= 100 + 9);
+        }
+        assertEquals(countNodes(tree.getRoot()), tree.getNumNodes());
+        assertEquals(2000, tree.getRoot().getStatistics().getNumVisits());
+        assertVisitsMatchActions(tree.getRoot());
+        assertNotNull(tree.getBestAction(tree.getGameModel().getRoles().get(0)));
+    }
+
+    private static int countNodes(SearchTreeNode root) {
+        Set<SearchTreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SearchTreeNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        nodes.add(root);
+        while (!pending.isEmpty()) {
+            for (SearchTreeNode child : pending.pop().getChildren()) {
+                if (nodes.add(child)) {
+                    pending.push(child);
+                }
+            }
+        }
+        return nodes.size();
+    }
+
+    // Every iteration through a node uses one action of each role
+    private static void assertVisitsMatchActions(SearchTreeNode node) {
+        CumulativeStatistics statistics = node.getStatistics();
+        for (Role role : statistics.getRoles()) {
+            int used = 0;
+            for (Move action : statistics.getUsedActions(role)) {
+                used += statistics.get(role, action).getNumUsed();
+            }
+            assertEquals(statistics.getNumVisits(), used);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.ggp.base.player.gamer.statemachine.mcts.model.tree.SearchTree;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for delta snapshots of the MCTS tree: a full snapshot plus its
+ * deltas must rebuild exactly the tree a full snapshot would have stored.
+ */
+public class SnapshotReconstructorTest extends Assert {
+
+    private static GsonBuilder gsonBuilder() {
+        return TreeObserver.createGsonBuilder();
+    }
+
+    @Test
+    public void testDeltasRebuildFullSnapshots() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        SearchTree tree = new SearchTree(sm);
+        DeltaSnapshotEncoder encoder = new DeltaSnapshotEncoder(gsonBuilder());
+
+        Map<String, String> stored = new HashMap<>();
+        stored.put("init", encoder.full(tree));
+        String previousKey = "init";
+        for (int i = 1; i <= 4; i++) {
+            for (int j = 0; j < 10 * i; j++) {
+                tree.grow();
+            }
+            String key = "growth" + i;
+            String delta = encoder.delta(tree, previousKey);
+            assertTrue(SnapshotReconstructor.isDelta(delta));
+            stored.put(key, delta);
+            previousKey = key;
+
+            String full = gsonBuilder().create().toJson(tree);
+            if (i > 1) {
+                // Once the tree exists, most of it is left out of the deltas
+                assertTrue(delta.length() < full.length());
+            }
+            assertEquals(normalize(JsonParser.parseString(full)),
+                    normalize(SnapshotReconstructor.reconstruct(stored, key)));
+        }
+
+        List<String> deltas = new ArrayList<>();
+        for (String key : Arrays.asList("growth1", "growth2", "growth3", "growth4")) {
+            deltas.add(stored.get(key));
+        }
+        assertEquals(SnapshotReconstructor.reconstruct(stored, "growth4"),
+                SnapshotReconstructor.reconstruct(stored.get("init"), deltas));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingBaseIsReported() {
+        Map<String, String> stored = new HashMap<>();
+        stored.put("growth1", "{\"delta\":true,\"base\":\"init\",\"root\":\"x\",\"nodes\":{}}");
+        SnapshotReconstructor.reconstruct(stored, "growth1");
+    }
+
+    // Children are kept in hash sets, so their order is not significant
+    private static JsonElement normalize(JsonElement tree) {
+        JsonObject root = tree.getAsJsonObject().getAsJsonObject("root");
+        sortChildren(root);
+        return tree;
+    }
+
+    private static void sortChildren(JsonObject node) {
+        JsonArray children = node.getAsJsonArray("children");
+        if (children == null) {
+            // A node with several parents, written whole elsewhere
+            return;
+        }
+        List<JsonObject> sorted = new ArrayList<>();
+        for (JsonElement child : children) {
+            sortChildren(child.getAsJsonObject());
+            sorted.add(child.getAsJsonObject());
+        }
+        sorted.sort((a, b) -> a.get("nodeId").getAsString().compareTo(b.get("nodeId").getAsString()));
+        JsonArray result = new JsonArray();
+        sorted.forEach(result::add);
+        node.add("children", result);
+    }
+}
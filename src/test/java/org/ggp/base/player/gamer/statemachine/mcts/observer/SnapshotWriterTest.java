@@ -0,0 +1,99 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for the SnapshotWriter class, which writes the MCTS tree
+ * snapshots to Redis in the background. An in-process fake Redis stands
+ * in for the real server.
+ */
+public class SnapshotWriterTest extends Assert {
+
+    /**
+     * Keeps the keys in a map. Writes can be held back to simulate a slow server.
+     */
+    private static class FakeRedis implements SnapshotStore {
+        private final Map<String, byte[]> data = new ConcurrentHashMap<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private final CountDownLatch release;
+        private boolean closed = false;
+
+        FakeRedis(boolean blocked) {
+            release = new CountDownLatch(blocked ? 1 : 0);
+        }
+
+        @Override
+        public void storeAll(Map<String, byte[]> snapshots) throws Exception {
+            release.await();
+            synchronized (batchSizes) {
+                batchSizes.add(snapshots.size());
+            }
+            data.putAll(snapshots);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testSnapshotsAreWritten() throws Exception {
+        FakeRedis redis = new FakeRedis(false);
+        SnapshotWriter writer = new SnapshotWriter(redis, 16, 4);
+        for (int i = 0; i < 10; i++) {
+            final int n = i;
+            assertTrue(writer.offer("key" + i, () -> ("tree" + n).getBytes(), true));
+        }
+        assertTrue(writer.flush(5000));
+        writer.shutdown();
+
+        assertEquals(10, redis.data.size());
+        assertEquals("tree7", new String(redis.data.get("key7")));
+        assertEquals(10, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(0, writer.getQueueDepth());
+        for (int batchSize : redis.batchSizes) {
+            assertTrue(batchSize <= 4);
+        }
+        assertTrue(redis.closed);
+    }
+
+    @Test
+    public void testGrowthSnapshotsAreDroppedUnderBackPressure() throws Exception {
+        FakeRedis redis = new FakeRedis(true);
+        SnapshotWriter writer = new SnapshotWriter(redis, 2, 1);
+        AtomicInteger serialized = new AtomicInteger();
+
+        // Fill the queue while the store is stuck; the writer holds at most one more in flight
+        int queued = 0;
+        for (int i = 0; i < 10; i++) {
+            if (writer.offer("growth" + i, () -> ("tree" + serialized.incrementAndGet()).getBytes(), true)) {
+                queued++;
+            }
+        }
+        assertTrue(queued <= 3);
+        assertEquals(10 - queued, writer.getDroppedCount());
+        // Dropped snapshots are never serialized
+        assertEquals(queued, serialized.get());
+
+        // A final tree makes room for itself
+        assertTrue(writer.offer("final", () -> "final tree".getBytes(), false));
+        assertTrue(writer.getQueueDepth() <= 2);
+
+        redis.release.countDown();
+        assertTrue(writer.flush(5000));
+        writer.shutdown();
+
+        assertEquals("final tree", new String(redis.data.get("final")));
+        assertEquals(11, writer.getWrittenCount() + writer.getDroppedCount());
+    }
+}
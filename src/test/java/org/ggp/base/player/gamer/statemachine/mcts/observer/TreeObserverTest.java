@@ -0,0 +1,74 @@
+package org.ggp.base.player.gamer.statemachine.mcts.observer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.CumulativeStatistics;
+import org.ggp.base.player.gamer.statemachine.mcts.model.statistics.StatisticsForActions;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for the JSON snapshots of the action statistics, which must keep
+ * the shape the map-based statistics had:
+ * {"map": {role: {action: {"actionScore", "actionNumUsed"}}}, "roles": [...]}.
+ */
+public class TreeObserverTest extends Assert {
+
+    private static Move move(String name) {
+        return new Move(GdlPool.getConstant(name));
+    }
+
+    @Test
+    public void testStatisticsKeepTheirJSONShape() {
+        List<Role> roles = Arrays.asList(Role.create("white"), Role.create("black"));
+        CumulativeStatistics statistics = new CumulativeStatistics();
+        statistics.initActions(roles, Arrays.asList(
+                Arrays.asList(move("a"), move("b"), move("c")),
+                Collections.singletonList(move("noop"))));
+        StatisticsForActions actions = statistics.getStatisticsForActions();
+
+        // The action of the first role is the lowest digit of a joint action index
+        statistics.updateUsedActions(1, new double[] {100, 0});
+        statistics.updateUsedActions(1, new double[] {50, 50});
+        statistics.updateUsedActions(2, new double[] {0, 100});
+        assertEquals(3, actions.getNumJointActions());
+        assertEquals(move("b"), actions.getJointActions(1).get(roles.get(0)));
+        assertEquals(2, actions.getActionIndex(2, 0));
+
+        JsonObject json = TreeObserver.createGsonBuilder().create().toJsonTree(actions).getAsJsonObject();
+        assertEquals(2, json.size());
+        JsonObject map = json.getAsJsonObject("map");
+        assertEquals(2, map.size());
+
+        JsonObject white = map.getAsJsonObject("white");
+        assertEquals(3, white.size());
+        assertEquals(0, white.getAsJsonObject("a").get("actionNumUsed").getAsInt());
+        assertEquals(150.0, white.getAsJsonObject("b").get("actionScore").getAsDouble(), 0);
+        assertEquals(2, white.getAsJsonObject("b").get("actionNumUsed").getAsInt());
+        assertEquals(0.0, white.getAsJsonObject("c").get("actionScore").getAsDouble(), 0);
+        assertEquals(1, white.getAsJsonObject("c").get("actionNumUsed").getAsInt());
+        assertEquals(2, white.getAsJsonObject("c").size());
+
+        JsonObject noop = map.getAsJsonObject("black").getAsJsonObject("noop");
+        assertEquals(150.0, noop.get("actionScore").getAsDouble(), 0);
+        assertEquals(3, noop.get("actionNumUsed").getAsInt());
+
+        // The roles as the reflection over the former list of roles rendered them
+        assertEquals(new Gson().toJsonTree(roles), json.get("roles"));
+    }
+
+    @Test
+    public void testEmptyStatisticsHaveNoRoles() {
+        JsonObject json = TreeObserver.createGsonBuilder().create()
+                .toJsonTree(new CumulativeStatistics().getStatisticsForActions()).getAsJsonObject();
+        assertEquals(new JsonObject(), json.getAsJsonObject("map"));
+        assertFalse(json.has("roles"));
+    }
+}
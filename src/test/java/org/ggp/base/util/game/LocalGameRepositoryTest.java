@@ -0,0 +1,105 @@
+package org.ggp.base.util.game;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalGameRepositoryTest extends Assert {
+
+    private static final String RULES = "(role a) (init (p)) (<= (legal a noop) (true (p))) (<= (next (p)) (true (p))) (<= (goal a 100) (true (p))) (<= terminal (true (p)))";
+
+    private static void write(File file, String contents) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGamesAreReadFromDirectoriesAndBundles() throws Exception {
+        File root = Files.createTempDirectory("repository").toFile();
+        File games = new File(root, "games");
+        write(new File(games, "plain/METADATA"), "{\"gameName\": \"Plain\", \"rulesheet\": \"plain.kif\", \"description\": \"plain.txt\"}");
+        write(new File(games, "plain/plain.kif"), "; first version\n" + RULES);
+        write(new File(games, "plain/plain.txt"), "Old description");
+        write(new File(games, "plain/v2/plain.txt"), "New description");
+        write(new File(games, "zipped/METADATA"), "{\"rulesheet\": \"shadowed.kif\"}");
+        write(new File(games, "zipped/shadowed.kif"), RULES);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(games, "bundle.zip")))) {
+            for (String game : new String[] {"zipped", "other"}) {
+                zip.putNextEntry(new ZipEntry("bundle/" + game + "/METADATA"));
+                zip.write(("{\"gameName\": \"" + game + "\", \"rulesheet\": \"game.kif\", \"stylesheet\": \"game.xsl\"}").getBytes(StandardCharsets.UTF_8));
+                zip.putNextEntry(new ZipEntry("bundle/" + game + "/game.kif"));
+                zip.write(RULES.getBytes(StandardCharsets.UTF_8));
+                zip.putNextEntry(new ZipEntry("bundle/" + game + "/game.xsl"));
+                zip.write("<img src=\"&ROOT;/resources/x.png\"/>".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        LocalGameRepository repository = new LocalGameRepository(root);
+        assertEquals(3, repository.getGameKeys().size());
+        assertTrue(repository.getGameKeys().containsAll(Arrays.asList("plain", "zipped", "other")));
+
+        // The latest version, with the files it doesn't change taken from the earlier ones
+        Game plain = repository.getGame("plain");
+        assertEquals("Plain", plain.getName());
+        assertEquals("New description\n", plain.getDescription());
+        assertEquals(6, plain.getRules().size());
+        assertEquals("http://127.0.0.1:9140/games/plain/v2/", plain.getRepositoryURL());
+        assertNull(plain.getStylesheet());
+
+        // A directory takes precedence over a bundled game with the same key
+        assertNull(repository.getGame("zipped").getName());
+
+        Game other = repository.getGame("other");
+        assertEquals("other", other.getName());
+        assertEquals(6, other.getRules().size());
+        assertTrue(other.getStylesheet().contains("<!ENTITY ROOT \"" + root.toURI().toString().replaceAll("/$", "") + "\">"));
+
+        assertSame(other, repository.getGame("other"));
+        assertNull(repository.getGame("missing"));
+        assertNull(repository.getGame("../games/plain"));
+    }
+
+    @Test
+    public void testGamesAreFoundByURL() throws Exception {
+        File root = Files.createTempDirectory("repository").toFile();
+        File games = new File(root, "games");
+        write(new File(games, "plain/METADATA"), "{\"rulesheet\": \"plain.kif\", \"description\": \"plain.txt\"}");
+        write(new File(games, "plain/plain.kif"), RULES);
+        write(new File(games, "plain/plain.txt"), "Old description");
+        write(new File(games, "plain/v2/plain.txt"), "New description");
+
+        LocalGameRepository repository = new LocalGameRepository(root);
+        Game plain = repository.getGame("plain");
+        assertSame(plain, repository.getGameByURL("http://127.0.0.1:9140/games/plain/v2/"));
+        assertSame(plain, repository.getGameByURL("http://127.0.0.1:9140/games/plain/"));
+
+        Game first = repository.getGameByURL("http://127.0.0.1:9140/games/plain/v0/");
+        assertEquals("Old description\n", first.getDescription());
+        assertEquals("http://127.0.0.1:9140/games/plain/v0/", first.getRepositoryURL());
+        assertEquals(plain.getRules(), first.getRules());
+
+        assertNull(repository.getGameByURL("http://127.0.0.1:9140/games/plain/v3/"));
+        assertNull(repository.getGameByURL("http://127.0.0.1:9140/games/missing/v0/"));
+        assertNull(repository.getGameByURL("http://games.ggp.org/base/games/plain/v2/"));
+    }
+
+    @Test
+    public void testBundledGamesOfTheProject() {
+        LocalGameRepository repository = new LocalGameRepository();
+        assertTrue(repository.getGameKeys().contains("ticTacToe"));
+        assertTrue(repository.getGameKeys().contains("AlexHex"));
+        assertEquals("ticTacToe", repository.getGame("ticTacToe").getName());
+        assertFalse(repository.getGame("AlexHex").getRules().isEmpty());
+
+        // Saved matches name local games by their URL
+        Game ticTacToe = RemoteGameRepository.loadSingleGame(repository.getGame("ticTacToe").getRepositoryURL());
+        assertEquals(repository.getGame("ticTacToe").getRules(), ticTacToe.getRules());
+    }
+}
@@ -0,0 +1,137 @@
+package org.ggp.base.util.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncHttpClientTest extends Assert {
+
+    /**
+     * Echoes every request, keeping the connection if keepAlive, and counts the connections.
+     */
+    private static final class EchoServer extends Thread {
+        private final ServerSocket listener;
+        private final boolean keepAlive;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        EchoServer(boolean keepAlive) throws IOException {
+            this.listener = new ServerSocket(0);
+            this.keepAlive = keepAlive;
+            setDaemon(true);
+            start();
+        }
+
+        int getPort() {
+            return listener.getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = listener.accept();
+                    connections.incrementAndGet();
+                    new Thread(() -> serve(socket)).start();
+                }
+            } catch (IOException e) {
+                ;
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                do {
+                    String request = HttpReader.readAsServer(socket);
+                    if (keepAlive) {
+                        OutputStream out = socket.getOutputStream();
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + request.length() + "\r\n\r\n" + request).getBytes());
+                        out.flush();
+                    } else {
+                        HttpWriter.writeAsServer(socket, request);
+                    }
+                } while (keepAlive);
+                socket.close();
+            } catch (IOException e) {
+                ;
+            }
+        }
+
+        void shutdown() throws IOException {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testKeptConnectionIsReused() throws Exception {
+        EchoServer server = new EchoServer(true);
+        try (AsyncHttpClient client = new AsyncHttpClient()) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals("( play " + i + " )", client.issueRequest("127.0.0.1", server.getPort(), "player", "( play " + i + " )", 1000).get());
+            }
+            assertEquals(1, server.connections.get());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testClosedConnectionsAreNotReused() throws Exception {
+        EchoServer server = new EchoServer(false);
+        try (AsyncHttpClient client = new AsyncHttpClient()) {
+            List<CompletableFuture<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                responses.add(client.issueRequest("127.0.0.1", server.getPort(), "player", "( start " + i + " )", 1000));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals("( start " + i + " )", responses.get(i).get());
+            }
+            assertEquals("( stop )", client.issueRequest("127.0.0.1", server.getPort(), "player", "( stop )", 1000).get());
+            assertEquals(5, server.connections.get());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testSilentPlayerTimesOut() throws Exception {
+        ServerSocket silent = new ServerSocket(0);
+        try (AsyncHttpClient client = new AsyncHttpClient()) {
+            long start = System.currentTimeMillis();
+            try {
+                client.issueRequest("127.0.0.1", silent.getLocalPort(), "player", "( play )", 200).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SocketTimeoutException);
+            }
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        } finally {
+            silent.close();
+        }
+    }
+
+    @Test
+    public void testRefusedConnectionFails() throws Exception {
+        ServerSocket closed = new ServerSocket(0);
+        int port = closed.getLocalPort();
+        closed.close();
+        try (AsyncHttpClient client = new AsyncHttpClient()) {
+            try {
+                client.issueRequest("127.0.0.1", port, "player", "( play )", 1000).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+                assertFalse(e.getCause() instanceof SocketTimeoutException);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.ggp.base.util.match;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MatchJournalTest extends Assert {
+
+    @Test
+    public void testJournalRebuildsTheMatch() throws Exception {
+        Game game = new TestGameRepository().getGame("ticTacToe");
+        Match match = new Match("journal", -1, 5, 5, game, "");
+        match.setPlayerNamesFromHost(Arrays.asList("x", "o"));
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(game.getRules());
+        MachineState state = sm.getInitialState();
+        match.appendState(state.getContents());
+
+        File file = File.createTempFile("match", ".journal");
+        file.deleteOnExit();
+        try (MatchJournal journal = new MatchJournal(file, match)) {
+            Random random = new Random(3);
+            match.appendErrors(Arrays.asList("", ""));
+            journal.update();
+            while (!sm.isTerminal(state)) {
+                List<List<Move>> jointMoves = sm.getLegalJointMoves(state);
+                List<Move> jointMove = jointMoves.get(random.nextInt(jointMoves.size()));
+                state = sm.getNextState(state, jointMove);
+                match.appendMoves2(jointMove);
+                match.appendState(state.getContents());
+                match.appendErrors(Arrays.asList("", match.getMoveHistory().size() == 2 ? "TO" : ""));
+                journal.update();
+            }
+            match.markCompleted(sm.getGoals(state));
+            journal.update();
+        }
+
+        // A record cut short does not keep the rest from being read
+        try (FileWriter writer = new FileWriter(file, true)) {
+            writer.write("{\"type\":\"step\",\"mov");
+        }
+
+        Match read = MatchJournal.read(file, null);
+        assertEquals(match.getMatchId(), read.getMatchId());
+        assertEquals(match.getStartTime(), read.getStartTime());
+        assertEquals(match.getPlayerNamesFromHost(), read.getPlayerNamesFromHost());
+        assertEquals(match.getStateHistory(), read.getStateHistory());
+        assertEquals(match.getMoveHistory(), read.getMoveHistory());
+        assertEquals(match.getStateTimeHistory(), read.getStateTimeHistory());
+        assertEquals(match.getErrorHistory(), read.getErrorHistory());
+        assertEquals(match.getGoalValues(), read.getGoalValues());
+        assertTrue(read.isCompleted());
+        assertEquals(game.getRulesheet(), read.getGame().getRulesheet());
+        assertNotNull(read.toXML());
+    }
+}
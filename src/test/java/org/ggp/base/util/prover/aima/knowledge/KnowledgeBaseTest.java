@@ -0,0 +1,64 @@
+package org.ggp.base.util.prover.aima.knowledge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.factory.GdlFactory;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlRule;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KnowledgeBaseTest extends Assert {
+
+    private static List<GdlRule> clauses(String... clauses) throws Exception {
+        List<GdlRule> rules = new ArrayList<>();
+        for (String clause : clauses) {
+            Gdl gdl = GdlFactory.create(clause);
+            rules.add(gdl instanceof GdlRule ? (GdlRule) gdl : GdlPool.getRule((GdlSentence) gdl));
+        }
+        return rules;
+    }
+
+    private static KnowledgeBase knowledgeBase(List<GdlRule> clauses) {
+        Set<Gdl> description = new LinkedHashSet<>(clauses);
+        return new KnowledgeBase(description);
+    }
+
+    private static GdlSentence sentence(String sentence) throws Exception {
+        return (GdlSentence) GdlFactory.create(sentence);
+    }
+
+    @Test
+    public void testVariableFirstArgumentsKeepTheirPlace() throws Exception {
+        List<GdlRule> p = clauses("(p a 1)", "(<= (p ?x 2) (q ?x))", "(p b 3)", "(p a 4)", "(p (f 1) 5)", "(<= (p ?y 6) (q ?y))");
+        KnowledgeBase kb = knowledgeBase(p);
+
+        assertEquals(Arrays.asList(p.get(0), p.get(1), p.get(3), p.get(5)), kb.fetch(sentence("(p a ?z)")));
+        assertEquals(Arrays.asList(p.get(1), p.get(2), p.get(5)), kb.fetch(sentence("(p b ?z)")));
+        assertEquals(Arrays.asList(p.get(1), p.get(4), p.get(5)), kb.fetch(sentence("(p (f ?w) ?z)")));
+        assertEquals(Arrays.asList(p.get(1), p.get(5)), kb.fetch(sentence("(p c ?z)")));
+        assertEquals(p, kb.fetch(sentence("(p ?w ?z)")));
+
+        // Neither another arity nor another name shares the clauses
+        assertTrue(kb.fetch(sentence("(p a)")).isEmpty());
+        assertTrue(kb.fetch(sentence("(q a 1)")).isEmpty());
+    }
+
+    @Test
+    public void testGroundFactsWithRulesOfTheSameRelation() throws Exception {
+        List<GdlRule> r = clauses("(r a)", "(<= (r ?x) (s ?x))", "(r b)", "(<= (r a) (t))", "(r c)");
+        KnowledgeBase kb = knowledgeBase(r);
+
+        // A ground query gets its own fact, if any, and the rules that may conclude it, but none of the other facts
+        assertEquals(Arrays.asList(r.get(0), r.get(1), r.get(3)), kb.fetch(sentence("(r a)")));
+        assertEquals(Arrays.asList(r.get(2), r.get(1)), kb.fetch(sentence("(r b)")));
+        assertEquals(Arrays.asList(r.get(1)), kb.fetch(sentence("(r d)")));
+        assertEquals(r, kb.fetch(sentence("(r ?x)")));
+    }
+}
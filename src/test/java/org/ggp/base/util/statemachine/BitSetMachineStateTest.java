@@ -0,0 +1,89 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BitSetMachineStateTest extends Assert {
+
+    private static GdlSentence sentence(String name) {
+        return GdlPool.getProposition(GdlPool.getConstant(name));
+    }
+
+    private static Set<GdlSentence> sentences(String... names) {
+        Set<GdlSentence> contents = new HashSet<GdlSentence>();
+        for (String name : names) {
+            contents.add(sentence(name));
+        }
+        return contents;
+    }
+
+    @Test
+    public void testMatchesPlainState() {
+        BasePropositionIndex index = new BasePropositionIndex();
+        Set<GdlSentence> contents = sentences("a", "b", "c");
+        BitSetMachineState state = index.encode(contents);
+        MachineState plain = new MachineState(contents);
+
+        assertEquals(contents, state.getContents());
+        assertEquals(plain.hashCode(), state.hashCode());
+        assertEquals(plain, state);
+        assertEquals(state, plain);
+        assertSame(state, state.clone());
+        assertFalse(state.equals(new MachineState(sentences("a", "b"))));
+    }
+
+    @Test
+    public void testEqualityWhileTheIndexGrows() {
+        BasePropositionIndex index = new BasePropositionIndex();
+        BitSetMachineState before = index.encode(sentences("x"));
+        // Enough new propositions to need more words
+        for (int i = 0; i < 200; i++) {
+            index.getIndex(sentence("p" + i));
+        }
+        BitSetMachineState after = index.encode(sentences("x", "p150"));
+        BitSetMachineState again = index.encode(sentences("x"));
+
+        assertEquals(before, again);
+        assertEquals(before.getZobristHash(), again.getZobristHash());
+        assertFalse(before.equals(after));
+        assertNotEquals(before.getZobristHash(), after.getZobristHash());
+        assertTrue(after.contains(index.getIndex(sentence("p150"))));
+        assertFalse(again.contains(index.getIndex(sentence("p150"))));
+        assertEquals(2, after.getNumTrue());
+    }
+
+    @Test
+    public void testStatesOfDifferentIndices() {
+        BasePropositionIndex first = new BasePropositionIndex();
+        BasePropositionIndex second = new BasePropositionIndex();
+        second.getIndex(sentence("b"));
+        BitSetMachineState a = first.encode(sentences("a", "b"));
+        BitSetMachineState b = second.encode(sentences("a", "b"));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertSame(a, first.encode(a));
+        assertEquals(a, first.encode(b));
+    }
+
+    @Test
+    public void testProverStates() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        MachineState state = sm.getInitialState();
+        assertTrue(state instanceof BitSetMachineState);
+        while (!sm.isTerminal(state)) {
+            MachineState next = sm.getRandomNextState(state);
+            MachineState rebuilt = sm.getMachineStateFromSentenceList(new HashSet<GdlSentence>(next.getContents()));
+            assertEquals(next, rebuilt);
+            assertEquals(((BitSetMachineState) next).getZobristHash(), ((BitSetMachineState) rebuilt).getZobristHash());
+            state = next;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DepthChargeServiceTest extends Assert {
+
+    private StateMachine sm;
+    private DepthChargeService service;
+
+    @Before
+    public void setUp() {
+        List<StateMachine> machines = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            StateMachine machine = new ProverStateMachine();
+            machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+            machines.add(machine);
+        }
+        sm = machines.get(0);
+        service = new DepthChargeService(machines.subList(1, 3));
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    private static long farAway() {
+        return System.currentTimeMillis() + 60000;
+    }
+
+    @Test
+    public void testRunsEveryCharge() throws Exception {
+        DepthChargeResult result = service.run(sm.getInitialState(), 100, farAway());
+        assertEquals(100, result.getNumCharges());
+        // Every game of tic-tac-toe ends 100-0, 0-100 or 50-50
+        assertEquals(100 * 100, result.getScoreSum(0) + result.getScoreSum(1));
+        assertEquals(100, result.getMeanScore(0) + result.getMeanScore(1), 1e-9);
+        assertTrue(result.getScoreVariance(0) > 0);
+        assertTrue(result.getScoreVariance(0) <= 50 * 50);
+        assertTrue(result.getAverageDepth() >= 5 && result.getAverageDepth() <= 9);
+    }
+
+    @Test
+    public void testTerminalState() throws Exception {
+        MachineState state = sm.getInitialState();
+        while (!sm.isTerminal(state)) {
+            state = sm.getRandomNextState(state);
+        }
+        DepthChargeResult result = service.run(state, 10, farAway());
+        assertEquals(10, result.getNumCharges());
+        assertEquals(0, result.getAverageDepth(), 0);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(sm.getGoal(state, sm.getRoles().get(i)), result.getMeanScore(i), 0);
+            assertEquals(0, result.getScoreVariance(i), 0);
+        }
+    }
+
+    @Test
+    public void testFirstMoveIsPlayed() throws Exception {
+        MachineState state = sm.getInitialState();
+        Role xplayer = sm.getRoles().get(0);
+        Move move = sm.getLegalMoves(state, xplayer).get(0);
+        DepthChargeResult result = service.run(state, xplayer, move, 20, farAway());
+        assertEquals(20, result.getNumCharges());
+        assertTrue(result.getAverageDepth() >= 5);
+    }
+
+    @Test
+    public void testMovesShareOneBatch() throws Exception {
+        // x has taken (1 1) and (2 1), o (1 2) and (2 2): (3 1) wins right away
+        MachineState state = sm.getInitialState();
+        for (String mark : new String[] {"1 1", "1 2", "2 1", "2 2"}) {
+            for (List<Move> jointMove : sm.getLegalJointMoves(state)) {
+                if (jointMove.toString().contains("mark " + mark + " ")) {
+                    state = sm.getNextState(state, jointMove);
+                    break;
+                }
+            }
+        }
+        Role xplayer = sm.getRoles().get(0);
+        List<Move> moves = sm.getLegalMoves(state, xplayer);
+        assertEquals(5, moves.size());
+
+        DepthChargeResult[] results = service.run(state, xplayer, moves, 50, farAway());
+        assertEquals(5, results.length);
+        for (int i = 0; i < moves.size(); i++) {
+            assertEquals(10, results[i].getNumCharges());
+            if (moves.get(i).toString().contains("mark 3 1 ")) {
+                assertEquals(100, results[i].getMeanScore(0), 0);
+                assertEquals(1, results[i].getAverageDepth(), 0);
+            } else {
+                assertTrue(results[i].getAverageDepth() > 1);
+            }
+        }
+    }
+
+    @Test
+    public void testStopsAtTheDeadline() throws Exception {
+        DepthChargeResult result = service.run(sm.getInitialState(), 100, System.currentTimeMillis() - 1);
+        assertEquals(0, result.getNumCharges());
+        assertEquals(0, result.getMeanScore(0), 0);
+        assertEquals(0, result.getAverageDepth(), 0);
+    }
+}
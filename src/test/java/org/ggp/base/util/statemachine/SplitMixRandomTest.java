@@ -0,0 +1,80 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.implementation.propnet.forwardDeadReckon.ForwardDeadReckonPropnetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SplitMixRandomTest extends Assert {
+
+    @Test
+    public void testSameSequenceAsSplittableRandom() {
+        SplitMixRandom random = new SplitMixRandom(123);
+        SplittableRandom reference = new SplittableRandom(123);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(reference.nextLong(), random.nextLong());
+        }
+    }
+
+    @Test
+    public void testSplitIsReproducible() {
+        SplitMixRandom a = new SplitMixRandom(7).split();
+        SplitMixRandom b = new SplitMixRandom(7).split();
+        SplitMixRandom parent = new SplitMixRandom(7);
+        SplitMixRandom child = parent.split();
+        boolean differs = false;
+        for (int i = 0; i < 100; i++) {
+            long value = a.nextLong();
+            assertEquals(value, b.nextLong());
+            assertEquals(value, child.nextLong());
+            differs |= value != parent.nextLong();
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    public void testBoundedIntsAreUniform() {
+        SplitMixRandom random = new SplitMixRandom(1);
+        int[] counts = new int[7];
+        for (int i = 0; i < 70000; i++) {
+            counts[random.nextInt(7)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 9500 && count < 10500);
+        }
+        // Bounds close to the 32-bit limit take the rejection path
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(Integer.MAX_VALUE - 1);
+            assertTrue(value >= 0 && value < Integer.MAX_VALUE - 1);
+        }
+        assertEquals(0, random.nextInt(1));
+    }
+
+    @Test
+    public void testSeededStateMachineRepeatsDepthCharges() throws Exception {
+        StateMachine sm = new ProverStateMachine();
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        int[] depth = new int[1];
+        sm.setRandomSeed(5);
+        MachineState first = sm.performDepthCharge(sm.getInitialState(), depth);
+        int firstDepth = depth[0];
+        sm.setRandomSeed(5);
+        assertEquals(first, sm.performDepthCharge(sm.getInitialState(), depth));
+        assertEquals(firstDepth, depth[0]);
+    }
+
+    @Test
+    public void testPropnetIsUnseededOnceInitialized() throws Exception {
+        StateMachine sm = new ForwardDeadReckonPropnetStateMachine(1, System.currentTimeMillis() + 10000, null, null);
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        assertSame(ThreadLocalRandom.current(), sm.getRandomGenerator());
+        sm.setRandomSeed(5);
+        assertTrue(sm.getRandomGenerator() instanceof SplitMixRandom);
+        sm.clearRandomSeed();
+        assertSame(ThreadLocalRandom.current(), sm.getRandomGenerator());
+    }
+}
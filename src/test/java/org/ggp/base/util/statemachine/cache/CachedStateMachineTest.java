@@ -0,0 +1,140 @@
+package org.ggp.base.util.statemachine.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.PlayoutBuffer;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateAnswers;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachedStateMachineTest extends Assert {
+
+    private static StateMachine initialize(StateMachine sm) {
+        sm.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        return sm;
+    }
+
+    @Test
+    public void testBoundedCacheAgreesWithProver() throws Exception {
+        StateMachine prover = initialize(new ProverStateMachine());
+        CachedStateMachine cached = (CachedStateMachine) initialize(new CachedStateMachine(new ProverStateMachine(), 50));
+        Random random = new Random(1);
+        for (int game = 0; game < 40; game++) {
+            MachineState state = cached.getInitialState();
+            while (!cached.isTerminal(state)) {
+                assertFalse(prover.isTerminal(state));
+                List<Move> jointMove = new ArrayList<>();
+                for (Role role : cached.getRoles()) {
+                    List<Move> moves = cached.getLegalMoves(state, role);
+                    assertEquals(prover.getLegalMoves(state, role), moves);
+                    jointMove.add(moves.get(random.nextInt(moves.size())));
+                }
+                MachineState next = cached.getNextState(state, jointMove);
+                assertEquals(prover.getNextState(state, jointMove), next);
+                state = next;
+            }
+            assertTrue(prover.isTerminal(state));
+            for (Role role : cached.getRoles()) {
+                assertEquals(prover.getGoal(state, role), cached.getGoal(state, role));
+            }
+            assertTrue(cached.getSize() <= 50);
+        }
+        assertTrue(cached.getHits() > 0);
+        assertTrue(cached.getEvictions() > 0);
+    }
+
+    @Test
+    public void testPlayoutsUseTheCachedMoves() throws Exception {
+        StateMachine prover = initialize(new ProverStateMachine());
+        CachedStateMachine cached = (CachedStateMachine) initialize(new CachedStateMachine(new ProverStateMachine()));
+        PlayoutBuffer buffer = new PlayoutBuffer(2);
+        Random random = new Random(1);
+        for (int playout = 0; playout < 20; playout++) {
+            MachineState state = cached.getInitialState();
+            while (cached.fillLegalMoves(state, buffer)) {
+                for (int i = 0; i < 2; i++) {
+                    assertSame(cached.getLegalMoves(state, cached.getRoles().get(i)), buffer.getLegalMoves(i));
+                }
+                List<Move> jointMove = buffer.chooseRandomJointMove(random);
+                MachineState expected = prover.getNextState(state, jointMove);
+                MachineState next = cached.getNextStateDestructively(state, buffer);
+                assertEquals(expected, next);
+                assertSame(next, cached.getNextState(state, new ArrayList<>(jointMove)));
+                state = next;
+            }
+            assertTrue(prover.isTerminal(state));
+        }
+    }
+
+    @Test
+    public void testAnswersFillTheCache() throws Exception {
+        CachedStateMachine cached = (CachedStateMachine) initialize(new CachedStateMachine(new ProverStateMachine()));
+        MachineState state = cached.getInitialState();
+        StateAnswers answers = cached.getAnswers(state);
+        assertSame(answers, cached.getAnswers(state));
+        long misses = cached.getMisses();
+
+        assertFalse(cached.isTerminal(state));
+        List<Role> roles = cached.getRoles();
+        for (int i = 0; i < roles.size(); i++) {
+            assertEquals(answers.getLegalMoves(i), cached.getLegalMoves(state, roles.get(i)));
+        }
+        for (List<Move> jointMove : cached.getLegalJointMoves(state)) {
+            assertSame(answers.getNextState(jointMove), cached.getNextState(state, jointMove));
+        }
+        assertEquals(misses, cached.getMisses());
+    }
+
+    @Test
+    public void testThreadsShareOneCache() throws Exception {
+        // Nothing is cached before the threads start, so they miss together and fill the cache from the shared prover
+        final CachedStateMachine cached = (CachedStateMachine) initialize(new CachedStateMachine(new ProverStateMachine(), 200));
+        final CyclicBarrier start = new CyclicBarrier(4);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            results.add(threads.submit(() -> {
+                StateMachine prover = initialize(new ProverStateMachine());
+                Random random = new Random(seed);
+                start.await();
+                for (int game = 0; game < 30; game++) {
+                    MachineState state = cached.getInitialState();
+                    while (!cached.isTerminal(state)) {
+                        assertFalse(prover.isTerminal(state));
+                        List<Move> jointMove = new ArrayList<>();
+                        for (Role role : cached.getRoles()) {
+                            List<Move> moves = cached.getLegalMoves(state, role);
+                            assertEquals(prover.getLegalMoves(state, role), moves);
+                            jointMove.add(moves.get(random.nextInt(moves.size())));
+                        }
+                        MachineState next = cached.getNextState(state, jointMove);
+                        assertEquals(prover.getNextState(state, jointMove), next);
+                        state = next;
+                    }
+                    assertEquals(prover.getGoals(state), cached.getGoals(state));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        threads.shutdown();
+        assertTrue(cached.getMisses() > 0);
+        assertTrue(cached.getHits() > 0);
+        assertTrue(cached.getSize() <= 200);
+    }
+}
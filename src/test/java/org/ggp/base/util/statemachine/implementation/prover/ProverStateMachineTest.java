@@ -4,6 +4,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.ggp.base.util.game.TestGameRepository;
 import org.ggp.base.util.gdl.grammar.Gdl;
@@ -12,7 +16,10 @@ import org.ggp.base.util.gdl.grammar.GdlPool;
 import org.ggp.base.util.gdl.grammar.GdlTerm;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.PlayoutBuffer;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateAnswers;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -206,6 +213,145 @@ public class ProverStateMachineTest extends Assert {
         assertEquals(Collections.singletonList(100), sm.getGoals(state));
     }
 
+    @Test
+    public void testAnswersAgreeWithQueries() throws Exception {
+        for (String game : Arrays.asList("ticTacToe", "connectFour", "test_case_3c", "test_case_5b", "test_distinct_beginning_rule")) {
+            List<Gdl> desc = new TestGameRepository().getGame(game).getRules();
+            ProverStateMachine reference = new ProverStateMachine();
+            reference.initialize(desc);
+            sm.initialize(desc);
+            Random random = new Random(game.hashCode());
+            for (int playout = 0; playout < 3; playout++) {
+                MachineState state = sm.getInitialState();
+                while (true) {
+                    StateAnswers answers = sm.getAnswers(state);
+                    assertEquals(reference.isTerminal(state), answers.isTerminal());
+                    List<Role> roles = sm.getRoles();
+                    for (int i = 0; i < roles.size(); i++) {
+                        int goal;
+                        try {
+                            goal = reference.getGoal(state, roles.get(i));
+                        } catch (GoalDefinitionException e) {
+                            goal = StateAnswers.NO_GOAL;
+                        }
+                        assertEquals(game, goal, answers.getGoalOrNone(i));
+                    }
+                    if (answers.isTerminal()) {
+                        assertFalse(answers.hasNextStates());
+                        break;
+                    }
+                    for (int i = 0; i < roles.size(); i++) {
+                        assertEquals(game, ImmutableSet.copyOf(reference.getLegalMoves(state, roles.get(i))),
+                                ImmutableSet.copyOf(answers.getLegalMoves(i)));
+                    }
+                    assertEquals(reference.getLegalJointMoves(state).size(), answers.getNumJointMoves());
+                    for (int i = 0; i < answers.getNumJointMoves(); i++) {
+                        assertEquals(game, reference.getNextState(state, answers.getJointMove(i)), answers.getNextState(i));
+                    }
+                    state = answers.getNextState(random.nextInt(answers.getNumJointMoves()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPlayoutsAgreeWithQueries() throws Exception {
+        for (String game : Arrays.asList("ticTacToe", "connectFour", "test_case_3c")) {
+            List<Gdl> desc = new TestGameRepository().getGame(game).getRules();
+            ProverStateMachine reference = new ProverStateMachine();
+            reference.initialize(desc);
+            sm.initialize(desc);
+            PlayoutBuffer buffer = new PlayoutBuffer(sm.getRoles().size());
+            Random random = new Random(game.hashCode());
+            for (int playout = 0; playout < 3; playout++) {
+                MachineState state = sm.getInitialState();
+                while (sm.fillLegalMoves(state, buffer)) {
+                    assertFalse(game, reference.isTerminal(state));
+                    for (int i = 0; i < sm.getRoles().size(); i++) {
+                        assertEquals(game, ImmutableSet.copyOf(reference.getLegalMoves(state, sm.getRoles().get(i))),
+                                ImmutableSet.copyOf(buffer.getLegalMoves(i)));
+                    }
+                    List<Move> jointMove = buffer.chooseRandomJointMove(random);
+                    MachineState expected = reference.getNextState(state, jointMove);
+                    state = sm.getNextStateDestructively(state, buffer);
+                    assertEquals(game, expected, state);
+                }
+                assertTrue(game, reference.isTerminal(state));
+            }
+
+            // The same generator seed replays the same charge
+            int[] depth = new int[1];
+            MachineState first = sm.performDepthCharge(sm.getInitialState(), depth, new Random(7), buffer);
+            int firstDepth = depth[0];
+            assertEquals(game, first, sm.performDepthCharge(sm.getInitialState(), depth, new Random(7), buffer));
+            assertEquals(game, firstDepth, depth[0]);
+        }
+    }
+
+    @Test
+    public void testThreadsShareOneProver() throws Exception {
+        List<Gdl> desc = new TestGameRepository().getGame("ticTacToe").getRules();
+        sm.initialize(desc);
+        ProverStateMachine reference = new ProverStateMachine();
+        reference.initialize(desc);
+        final List<MachineState> states = new ArrayList<>();
+        final List<List<List<Move>>> jointMoves = new ArrayList<>();
+        final List<List<MachineState>> nextStates = new ArrayList<>();
+        Random random = new Random(5);
+        for (int playout = 0; playout < 5; playout++) {
+            MachineState state = reference.getInitialState();
+            while (!reference.isTerminal(state)) {
+                List<List<Move>> moves = reference.getLegalJointMoves(state);
+                List<MachineState> next = new ArrayList<>();
+                for (List<Move> jointMove : moves) {
+                    next.add(reference.getNextState(state, jointMove));
+                }
+                states.add(state);
+                jointMoves.add(moves);
+                nextStates.add(next);
+                state = next.get(random.nextInt(next.size()));
+            }
+        }
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            results.add(threads.submit(() -> {
+                // Playouts, which keep a prover context per state, interleave with the other threads' queries
+                ProverStateMachine own = new ProverStateMachine();
+                own.initialize(desc);
+                PlayoutBuffer buffer = new PlayoutBuffer(2);
+                Random threadRandom = new Random(offset);
+                for (int playout = 0; playout < 10; playout++) {
+                    MachineState state = sm.getInitialState();
+                    while (sm.fillLegalMoves(state, buffer)) {
+                        assertEquals(ImmutableSet.copyOf(own.getLegalMoves(state, sm.getRoles().get(0))), ImmutableSet.copyOf(buffer.getLegalMoves(0)));
+                        MachineState expected = own.getNextState(state, buffer.chooseRandomJointMove(threadRandom));
+                        state = sm.getNextStateDestructively(state, buffer);
+                        assertEquals(expected, state);
+                    }
+                    assertTrue(own.isTerminal(state));
+                }
+                for (int i = 0; i < 200; i++) {
+                    // Every thread walks the states in its own order, so that they ask about different states at once
+                    int s = (i * 7 + offset * 13) % states.size();
+                    MachineState state = states.get(s);
+                    assertFalse(sm.isTerminal(state));
+                    assertEquals(jointMoves.get(s), sm.getLegalJointMoves(state));
+                    for (int j = 0; j < jointMoves.get(s).size(); j++) {
+                        assertEquals(nextStates.get(s).get(j), sm.getNextState(state, jointMoves.get(s).get(j)));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        threads.shutdown();
+    }
+
     protected Move move(String description) {
         String[] parts = description.split(" ");
         GdlConstant head = GdlPool.getConstant(parts[0]);
@@ -0,0 +1,53 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.verifier.StateMachineVerifier;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReasonerStateMachineTest extends Assert {
+
+    private static void assertAgreesWithProver(String game) {
+        List<Gdl> desc = new TestGameRepository().getGame(game).getRules();
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(desc);
+        StateMachine reasoner = new ReasonerStateMachine();
+        reasoner.initialize(desc);
+        assertEquals(prover.getRoles(), reasoner.getRoles());
+        assertEquals(prover.getInitialState(), reasoner.getInitialState());
+        assertTrue(game, StateMachineVerifier.checkMachineConsistency(prover, reasoner, 300));
+    }
+
+    @Test
+    public void testAgreesWithProver() throws Exception {
+        // Not test_case_5a, whose functions nest without bound; only the prover can play it
+        for (String game : new String[] { "ticTacToe", "connectFour", "simpleMutex",
+                "test_case_1a", "test_case_1b", "test_case_2a", "test_case_2b", "test_case_2c",
+                "test_case_3a", "test_case_3b", "test_case_3c", "test_case_3d", "test_case_3e", "test_case_3f",
+                "test_case_4a", "test_case_5b", "test_case_5c", "test_case_5d", "test_case_5e",
+                "test_clean_not_distinct", "test_distinct_beginning_rule" }) {
+            assertAgreesWithProver(game);
+        }
+    }
+
+    @Test
+    public void testStateIsKeptForMoves() throws Exception {
+        // Every joint move of a state is computed on top of the same derived sentences
+        StateMachine reasoner = new ReasonerStateMachine();
+        reasoner.initialize(new TestGameRepository().getGame("connectFour").getRules());
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(new TestGameRepository().getGame("connectFour").getRules());
+        MachineState state = reasoner.getInitialState();
+        for (List<Move> jointMove : reasoner.getLegalJointMoves(state)) {
+            assertEquals(prover.getNextState(state, jointMove), reasoner.getNextState(state, jointMove));
+            assertFalse(reasoner.isTerminal(state));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.ggp.base.util.statemachine.verifier;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.implementation.reasoner.ReasonerStateMachine;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Divergence;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Method;
+import org.ggp.base.util.statemachine.verifier.DifferentialFuzzer.Report;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DifferentialFuzzerTest extends Assert {
+
+    private static final List<Gdl> TIC_TAC_TOE = new TestGameRepository().getGame("ticTacToe").getRules();
+
+    /**
+     * Wrongly ends the game once the center is taken by x.
+     */
+    private static final class BrokenStateMachine extends ProverStateMachine {
+        @Override
+        public boolean isTerminal(MachineState state) {
+            for (GdlSentence sentence : state.getContents()) {
+                if (sentence.toString().equals("( true ( cell 2 2 x ) )")) {
+                    return true;
+                }
+            }
+            return super.isTerminal(state);
+        }
+    }
+
+    private static long farAway() {
+        return System.currentTimeMillis() + 60000;
+    }
+
+    @Test
+    public void testAgreeingMachines() throws Exception {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(TIC_TAC_TOE, "prover", ProverStateMachine::new,
+                Collections.singletonMap("reasoner", ReasonerStateMachine::new));
+        Report report = fuzzer.run(20, 1, 2, farAway());
+        assertTrue(report.getDivergences().toString(), report.isClean());
+        assertEquals(20, report.getWalks());
+        assertTrue(report.getSteps() >= 20 * 5);
+        assertEquals(report.getSteps(), report.getLatency("prover", Method.GET_NEXT_STATE).getCount());
+        assertEquals(report.getSteps(), report.getLatency("reasoner", Method.GET_NEXT_STATE).getCount());
+        assertEquals(20, report.getLatency("reasoner", Method.GET_INITIAL_STATE).getCount());
+        assertTrue(report.getLatency("reasoner", Method.GET_GOAL).getCount() > 0);
+    }
+
+    @Test
+    public void testDivergenceIsShrunk() throws Exception {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(TIC_TAC_TOE, "prover", ProverStateMachine::new,
+                Collections.singletonMap("broken", BrokenStateMachine::new));
+        Report report = fuzzer.run(30, 1, 2, farAway());
+        assertFalse(report.getDivergences().isEmpty());
+        for (Divergence divergence : report.getDivergences()) {
+            assertEquals("broken", divergence.getSubject());
+            assertEquals(divergence.toString(), 1, divergence.getMoves().size());
+            List<Move> jointMove = divergence.getMoves().get(0);
+            assertEquals("( mark 2 2 )", jointMove.get(0).toString());
+            assertTrue(divergence.getDescription(), divergence.getDescription().startsWith("isTerminal"));
+        }
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMeanNanos(), 1e-9);
+        assertEquals(100000, histogram.getMaxNanos());
+        long median = histogram.getPercentileNanos(0.5);
+        assertTrue(median >= 50000 && median < 2 * 50000);
+        assertEquals(100000, histogram.getPercentileNanos(1));
+    }
+}